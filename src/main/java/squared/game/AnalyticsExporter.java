@@ -0,0 +1,645 @@
+package squared.game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Batch exporter turning archives of {@link GameRecord}s into two columnar
+ * files for analysis: one with a row for every game and one with a row for
+ * every move. Archives are written by {@link GameArchive}: games.rec holds
+ * games finished on this computer, leaderboard-games.rec holds games verified
+ * by {@link LeaderboardServer}. Every game is played again like {@link
+ * ReplayVerifier} does and records whose claimed score does not match the
+ * replay are left out. Archives are read and files are written in pieces
+ * through buffered channels, so amount of exported games is not limited by
+ * memory.
+ * 
+ * File begins with a header: number {@link #MAGIC}, version and names of
+ * columns. Then blocks of at most {@link #BLOCKROWS} rows follow, every block
+ * begins with amount of its rows and holds every column separately: type of
+ * encoding, amount of bytes and encoded values, so a reader can skip columns
+ * it does not need. Every column of a block is written with the smallest of
+ * three encodings: {@link #PLAIN} 8-byte values, {@link #DELTA} differences
+ * between following values as zigzag varints, or {@link #DICTIONARY} of at
+ * most 256 distinct values with one byte per row. File ends with a block of 0
+ * rows.
+ * 
+ * @author bartl_000
+ *
+ */
+public class AnalyticsExporter {
+
+	/**
+	 * Number written at the beginning of every file.
+	 */
+	public static final int MAGIC = 0x53514346;
+
+	/**
+	 * Version of the format of files.
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * The biggest amount of rows of a block.
+	 */
+	public static final int BLOCKROWS = 1 << 16;
+
+	/**
+	 * Encoding of values as 8-byte numbers.
+	 */
+	public static final byte PLAIN = 0;
+
+	/**
+	 * Encoding of differences between following values as zigzag varints,
+	 * first value is a difference from 0.
+	 */
+	public static final byte DELTA = 1;
+
+	/**
+	 * Encoding of distinct values as amount of them and zigzag varints,
+	 * followed with a byte for every row holding number of its value.
+	 */
+	public static final byte DICTIONARY = 2;
+
+	/**
+	 * The biggest amount of values of a dictionary.
+	 */
+	private static final int MAXDICTIONARY = 256;
+
+	/**
+	 * Size of buffers of channels.
+	 */
+	private static final int BUFFERBYTES = 1 << 20;
+
+	/**
+	 * Names of columns of file with games.
+	 */
+	public static final String[] GAMECOLUMNS = { "game", "seed", "rows", "columns", "lineLength", "colors",
+			"spawnCount", "score", "moves", "lines", "durationMillis" };
+
+	/**
+	 * Names of columns of file with moves. Color is number of color of moved
+	 * square, lines and points are counted after the move and added random
+	 * squares, free is amount of free squares after them.
+	 */
+	public static final String[] MOVECOLUMNS = { "game", "move", "from", "to", "color", "lines", "points", "free" };
+
+	/**
+	 * Writer of file with games.
+	 */
+	private final ColumnWriter games;
+
+	/**
+	 * Writer of file with moves.
+	 */
+	private final ColumnWriter moves;
+
+	/**
+	 * Amount of exported games, number of the next game.
+	 */
+	private long gameCount;
+
+	/**
+	 * Amount of exported moves.
+	 */
+	private long moveCount;
+
+	/**
+	 * Amount of records left out.
+	 */
+	private long rejected;
+
+	/**
+	 * Colors of moved squares of the replayed game.
+	 */
+	private int[] moveColors = new int[64];
+
+	/**
+	 * Amounts of lines cleared by moves of the replayed game.
+	 */
+	private int[] moveLines = new int[64];
+
+	/**
+	 * Points gained by moves of the replayed game.
+	 */
+	private long[] movePoints = new long[64];
+
+	/**
+	 * Amounts of free squares after moves of the replayed game.
+	 */
+	private int[] moveFree = new int[64];
+
+	/**
+	 * Constructor that creates both files, existing files are replaced.
+	 * 
+	 * @param gamesFile
+	 *            path of file with games
+	 * @param movesFile
+	 *            path of file with moves
+	 * @exception IOException
+	 *                - file could not be created
+	 */
+	public AnalyticsExporter(Path gamesFile, Path movesFile) throws IOException {
+		games = new ColumnWriter(gamesFile, GAMECOLUMNS);
+		try {
+			moves = new ColumnWriter(movesFile, MOVECOLUMNS);
+		} catch (IOException e) {
+			games.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Exports archives given in arguments and prints amounts of exported games
+	 * and moves.
+	 * 
+	 * @param args
+	 *            path of file with games, path of file with moves and paths
+	 *            of archives holding encoded records one after another
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.out.println("Usage: AnalyticsExporter games-file moves-file archive...");
+			return;
+		}
+		long start = System.nanoTime();
+		AnalyticsExporter exporter;
+		try {
+			exporter = new AnalyticsExporter(Paths.get(args[0]), Paths.get(args[1]));
+		} catch (IOException e) {
+			System.out.println("[EXPORT]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+			return;
+		}
+		try {
+			for (int i = 2; i < args.length; i++)
+				exporter.export(Paths.get(args[i]));
+		} catch (IOException e) {
+			System.out.println("[EXPORT]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		} finally {
+			try {
+				exporter.close();
+			} catch (IOException e) {
+				System.out.println("[EXPORT]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+			}
+		}
+		System.out.println(String.format("%d games, %d moves, %d rejected: %d + %d bytes in %.1f s",
+				exporter.gameCount, exporter.moveCount, exporter.rejected, exporter.games.getBytes(),
+				exporter.moves.getBytes(), (System.nanoTime() - start) / 1e9));
+	}
+
+	/**
+	 * Exports all records of an archive. Reading stops at the first damaged
+	 * record.
+	 * 
+	 * @param archive
+	 *            path of file holding encoded records one after another
+	 * @return amount of records read
+	 * @exception IOException
+	 *                - archive could not be read or files could not be
+	 *                written
+	 */
+	public long export(Path archive) throws IOException {
+		long read = 0;
+		FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERBYTES);
+			buffer.flip();
+			while (true) {
+				int bytes = GameRecord.peekBytes(buffer);
+				if (bytes < 0) {
+					System.out.println("[EXPORT]DAMAGED RECORD IN " + archive + " AFTER " + read + " RECORDS");
+					break;
+				}
+				if (bytes == 0 || buffer.remaining() < bytes) {
+					if (bytes > buffer.capacity()) {
+						ByteBuffer bigger = ByteBuffer.allocateDirect(bytes);
+						bigger.put(buffer);
+						buffer = bigger;
+					} else
+						buffer.compact();
+					int got = channel.read(buffer);
+					buffer.flip();
+					if (got < 0) {
+						if (buffer.hasRemaining())
+							System.out.println(
+									"[EXPORT]TRUNCATED RECORD IN " + archive + " AFTER " + read + " RECORDS");
+						break;
+					}
+					continue;
+				}
+				GameRecord record = GameRecord.decode(buffer);
+				if (record == null)
+					break;
+				read++;
+				add(record);
+			}
+		} finally {
+			channel.close();
+		}
+		return read;
+	}
+
+	/**
+	 * Plays recorded game again and adds its rows to both files.
+	 * 
+	 * @param record
+	 *            exported record
+	 * @return true if record was exported, false if it holds illegal move or
+	 *         its score does not match the replay
+	 * @exception IOException
+	 *                - files could not be written
+	 */
+	public boolean add(GameRecord record) throws IOException {
+		GameParameters parameters = record.getParameters();
+		Board board = new Board(parameters, new GameRandom(record.getSeed()));
+		GameEnding counter = new GameEnding();
+		board.setListener(counter);
+		board.addRandomSquares(3);
+		int size = parameters.getRows() * parameters.getColumns();
+		int count = record.getMoveCount();
+		if (moveColors.length < count) {
+			int length = Math.max(count, 2 * moveColors.length);
+			moveColors = new int[length];
+			moveLines = new int[length];
+			movePoints = new long[length];
+			moveFree = new int[length];
+		}
+		for (int i = 0; i < count; i++) {
+			int from = record.getFrom(i);
+			int to = record.getTo(i);
+			if (counter.isOver() || from < 0 || from >= size || to < 0 || to >= size || board.isFree(from)) {
+				rejected++;
+				return false;
+			}
+			int lines = counter.getLines();
+			long score = board.getScore();
+			moveColors[i] = board.getColor(from).ordinal();
+			if (!board.move(from, to)) {
+				rejected++;
+				return false;
+			}
+			moveLines[i] = counter.getLines() - lines;
+			movePoints[i] = counter.getScore(board) - score;
+			moveFree[i] = board.getFreeCount();
+		}
+		long score = counter.getScore(board);
+		if (score != record.getScore()) {
+			rejected++;
+			return false;
+		}
+		long game = gameCount++;
+		games.set(0, game);
+		games.set(1, record.getSeed());
+		games.set(2, parameters.getRows());
+		games.set(3, parameters.getColumns());
+		games.set(4, parameters.getLineLength());
+		games.set(5, parameters.getColorAmount());
+		games.set(6, parameters.getSpawnCount());
+		games.set(7, score);
+		games.set(8, count);
+		games.set(9, counter.getLines());
+		games.set(10, record.getDurationMillis());
+		games.endRow();
+		for (int i = 0; i < count; i++) {
+			moves.set(0, game);
+			moves.set(1, i);
+			moves.set(2, record.getFrom(i));
+			moves.set(3, record.getTo(i));
+			moves.set(4, moveColors[i]);
+			moves.set(5, moveLines[i]);
+			moves.set(6, movePoints[i]);
+			moves.set(7, moveFree[i]);
+			moves.endRow();
+		}
+		moveCount += count;
+		return true;
+	}
+
+	/**
+	 * Getting amount of exported games.
+	 * 
+	 * @return {@link #gameCount}
+	 */
+	public long getGameCount() {
+		return gameCount;
+	}
+
+	/**
+	 * Getting amount of exported moves.
+	 * 
+	 * @return {@link #moveCount}
+	 */
+	public long getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Getting amount of records left out.
+	 * 
+	 * @return {@link #rejected}
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Writes remaining rows and ends both files.
+	 * 
+	 * @exception IOException
+	 *                - files could not be written
+	 */
+	public void close() throws IOException {
+		try {
+			games.close();
+		} finally {
+			moves.close();
+		}
+	}
+
+	/**
+	 * Writer of one columnar file. Values of a block are collected in arrays,
+	 * one for every column, and written when the block is full.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	private static class ColumnWriter {
+
+		/**
+		 * Channel of the file.
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * Bytes waiting for writing to {@link #channel}.
+		 */
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERBYTES);
+
+		/**
+		 * Values of the current block, one array for every column.
+		 */
+		private final long[][] columns;
+
+		/**
+		 * Distinct values of the column being encoded.
+		 */
+		private final long[] dictionary = new long[MAXDICTIONARY];
+
+		/**
+		 * Hash table of numbers of values in {@link #dictionary} plus one, 0
+		 * marks free slot.
+		 */
+		private final int[] slots = new int[4 * MAXDICTIONARY];
+
+		/**
+		 * Numbers of values in {@link #dictionary} for every row of the
+		 * column being encoded.
+		 */
+		private final byte[] codes = new byte[BLOCKROWS];
+
+		/**
+		 * Amount of values in {@link #dictionary}.
+		 */
+		private int dictionarySize;
+
+		/**
+		 * Amount of rows of the current block.
+		 */
+		private int rows;
+
+		/**
+		 * Amount of bytes written to the file.
+		 */
+		private long bytes;
+
+		/**
+		 * Constructor that creates file and writes its header.
+		 * 
+		 * @param file
+		 *            path of the file
+		 * @param names
+		 *            names of columns
+		 * @exception IOException
+		 *                - file could not be created
+		 */
+		private ColumnWriter(Path file, String[] names) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+			columns = new long[names.length][BLOCKROWS];
+			buffer.putInt(MAGIC);
+			buffer.put(VERSION);
+			buffer.put((byte) names.length);
+			for (String name : names) {
+				byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+				buffer.putShort((short) nameBytes.length);
+				buffer.put(nameBytes);
+			}
+		}
+
+		/**
+		 * Sets value of a column of the current row.
+		 * 
+		 * @param column
+		 *            number of the column
+		 * @param value
+		 *            value of the column
+		 */
+		private void set(int column, long value) {
+			columns[column][rows] = value;
+		}
+
+		/**
+		 * Ends the current row, writes the block when it is full.
+		 * 
+		 * @exception IOException
+		 *                - file could not be written
+		 */
+		private void endRow() throws IOException {
+			if (++rows == BLOCKROWS)
+				writeBlock();
+		}
+
+		/**
+		 * Getting amount of bytes written to the file.
+		 * 
+		 * @return {@link #bytes}
+		 */
+		private long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Writes remaining rows and the last block of 0 rows, closes the file.
+		 * 
+		 * @exception IOException
+		 *                - file could not be written
+		 */
+		private void close() throws IOException {
+			try {
+				if (rows > 0)
+					writeBlock();
+				ensure(4);
+				buffer.putInt(0);
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+
+		/**
+		 * Writes all columns of the current block with their smallest
+		 * encodings.
+		 * 
+		 * @exception IOException
+		 *                - file could not be written
+		 */
+		private void writeBlock() throws IOException {
+			ensure(4);
+			buffer.putInt(rows);
+			for (long[] values : columns) {
+				int plainBytes = 8 * rows;
+				int deltaBytes = 0;
+				long previous = 0;
+				for (int i = 0; i < rows; i++) {
+					deltaBytes += varintBytes(zigzag(values[i] - previous));
+					previous = values[i];
+				}
+				int dictionaryBytes = buildDictionary(values);
+				ensure(5);
+				if (dictionaryBytes >= 0 && dictionaryBytes <= deltaBytes && dictionaryBytes <= plainBytes) {
+					buffer.put(DICTIONARY);
+					buffer.putInt(dictionaryBytes);
+					putVarint(dictionarySize);
+					for (int i = 0; i < dictionarySize; i++)
+						putVarint(zigzag(dictionary[i]));
+					for (int i = 0; i < rows; i++) {
+						ensure(1);
+						buffer.put(codes[i]);
+					}
+				} else if (deltaBytes <= plainBytes) {
+					buffer.put(DELTA);
+					buffer.putInt(deltaBytes);
+					previous = 0;
+					for (int i = 0; i < rows; i++) {
+						putVarint(zigzag(values[i] - previous));
+						previous = values[i];
+					}
+				} else {
+					buffer.put(PLAIN);
+					buffer.putInt(plainBytes);
+					for (int i = 0; i < rows; i++) {
+						ensure(8);
+						buffer.putLong(values[i]);
+					}
+				}
+			}
+			rows = 0;
+		}
+
+		/**
+		 * Fills {@link #dictionary} and {@link #codes} with values of a
+		 * column.
+		 * 
+		 * @param values
+		 *            values of the column
+		 * @return amount of bytes of dictionary encoding, -1 if column has too
+		 *         many distinct values
+		 */
+		private int buildDictionary(long[] values) {
+			Arrays.fill(slots, 0);
+			dictionarySize = 0;
+			int mask = slots.length - 1;
+			for (int i = 0; i < rows; i++) {
+				long value = values[i];
+				int slot = (int) (value * 0x9e3779b97f4a7c15L >>> 32) & mask;
+				while (slots[slot] != 0 && dictionary[slots[slot] - 1] != value)
+					slot = (slot + 1) & mask;
+				if (slots[slot] == 0) {
+					if (dictionarySize == MAXDICTIONARY)
+						return -1;
+					dictionary[dictionarySize++] = value;
+					slots[slot] = dictionarySize;
+				}
+				codes[i] = (byte) (slots[slot] - 1);
+			}
+			int bytes = varintBytes(dictionarySize) + rows;
+			for (int i = 0; i < dictionarySize; i++)
+				bytes += varintBytes(zigzag(dictionary[i]));
+			return bytes;
+		}
+
+		/**
+		 * Writes number as varint, 7 bits in every byte starting with the
+		 * lowest and highest bit set in all bytes except the last.
+		 * 
+		 * @param value
+		 *            written number, treated as unsigned
+		 * @exception IOException
+		 *                - file could not be written
+		 */
+		private void putVarint(long value) throws IOException {
+			ensure(10);
+			while ((value & ~0x7fL) != 0) {
+				buffer.put((byte) (value & 0x7f | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		/**
+		 * Writes buffered bytes when buffer has too little space left.
+		 * 
+		 * @param needed
+		 *            amount of bytes which will be put into buffer
+		 * @exception IOException
+		 *                - file could not be written
+		 */
+		private void ensure(int needed) throws IOException {
+			if (buffer.remaining() < needed)
+				flush();
+		}
+
+		/**
+		 * Writes all buffered bytes to the file.
+		 * 
+		 * @exception IOException
+		 *                - file could not be written
+		 */
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				bytes += channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Maps signed number to unsigned one, so numbers close to 0 have short
+	 * varints.
+	 * 
+	 * @param value
+	 *            signed number
+	 * @return unsigned number
+	 */
+	private static long zigzag(long value) {
+		return value << 1 ^ value >> 63;
+	}
+
+	/**
+	 * Getting size of varint.
+	 * 
+	 * @param value
+	 *            number treated as unsigned
+	 * @return amount of bytes
+	 */
+	private static int varintBytes(long value) {
+		return Math.max(1, (70 - Long.numberOfLeadingZeros(value)) / 7);
+	}
+
+}
@@ -0,0 +1,588 @@
+package squared.game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends recorded games to {@link LeaderboardServer} with asynchronous socket
+ * channel, so no thread ever waits for the network. Games are sent to
+ * {@link LeaderboardServer#GAMESPATH}, where their scores are verified before
+ * they reach the leaderboard. Games are collected into batches, one batch is
+ * sent at a time. Failed batch is sent again after a delay which
+ * doubles after every failure. Games queued while a batch fails are appended
+ * to a spool file at once, so they are kept while server is down, and after
+ * a few failures the batch is appended too. Spooled games are sent first when
+ * server is reachable again, at most {@link #MAXBATCH} in one request, and
+ * only delivered games are removed from the spool. Games left when sink is
+ * closed are spooled too, so they are delivered after the next start. Spool
+ * file holds encoded records one after another, like {@link GameArchive}.
+ * 
+ * @author bartl_000
+ *
+ */
+public class AsyncScoreSink implements ScoreSink {
+
+	/**
+	 * Time between batches in milliseconds.
+	 */
+	private static final long BATCHMILLIS = 500;
+
+	/**
+	 * Biggest amount of games in one batch.
+	 */
+	private static final int MAXBATCH = 256;
+
+	/**
+	 * Biggest amount of queued games, further games are dropped.
+	 */
+	private static final int MAXQUEUED = 10000;
+
+	/**
+	 * Delay before the first retry in milliseconds.
+	 */
+	private static final long MINBACKOFF = 250;
+
+	/**
+	 * The longest delay between retries in milliseconds.
+	 */
+	private static final long MAXBACKOFF = 30000;
+
+	/**
+	 * Amount of failed tries after which batch is spooled.
+	 */
+	private static final int SPOOLATTEMPTS = 3;
+
+	/**
+	 * Time after which sending of a batch fails in milliseconds.
+	 */
+	private static final long TIMEOUTMILLIS = 2000;
+
+	/**
+	 * Address of the server.
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * Path of the spool file.
+	 */
+	private final Path spool;
+
+	/**
+	 * Games waiting for sending.
+	 */
+	private final ConcurrentLinkedQueue<GameRecord> queue = new ConcurrentLinkedQueue<GameRecord>();
+
+	/**
+	 * Amount of games in {@link #queue}.
+	 */
+	private final AtomicInteger queued = new AtomicInteger();
+
+	/**
+	 * Thread collecting batches and running retries.
+	 */
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Batch being sent or waiting for retry, null when no batch is sent.
+	 */
+	private ArrayList<GameRecord> batch;
+
+	/**
+	 * True if {@link #batch} was read from the spool file.
+	 */
+	private boolean spooled;
+
+	/**
+	 * Amount of bytes at the beginning of the spool file holding
+	 * {@link #batch}, valid if batch was read from the spool file.
+	 */
+	private long spooledBytes;
+
+	/**
+	 * Amount of failed tries of {@link #batch}.
+	 */
+	private int attempts;
+
+	/**
+	 * True if request with {@link #batch} is in progress.
+	 */
+	private boolean sending;
+
+	/**
+	 * Delay before the next retry in milliseconds.
+	 */
+	private long backoff = MINBACKOFF;
+
+	/**
+	 * True if sink was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructor that sets server address and spool file and starts sending
+	 * batches.
+	 * 
+	 * @param address
+	 *            address of the server
+	 * @param spoolFile
+	 *            name of the spool file
+	 */
+	public AsyncScoreSink(InetSocketAddress address, String spoolFile) {
+		this.address = address;
+		this.spool = Paths.get(spoolFile);
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "score-sink");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				nextBatch();
+			}
+		}, 0, BATCHMILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.ScoreSink#submit(squared.game.GameRecord)
+	 */
+	@Override
+	public boolean submit(GameRecord record) {
+		if (queued.incrementAndGet() > MAXQUEUED) {
+			queued.decrementAndGet();
+			return false;
+		}
+		queue.add(record);
+		return true;
+	}
+
+	/**
+	 * Stops sending batches, waits for the batch being sent and appends
+	 * games which were not delivered to the spool file.
+	 * 
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for the batch
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		scheduler.shutdownNow();
+		long deadline = System.currentTimeMillis() + TIMEOUTMILLIS;
+		try {
+			long left;
+			while (sending && (left = deadline - System.currentTimeMillis()) > 0)
+				wait(left);
+		} catch (InterruptedException e) {
+			System.out.println("[SINK]INTERRUPTED EXCEPTION: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+		ArrayList<GameRecord> left = new ArrayList<GameRecord>();
+		if (batch != null && !spooled)
+			left.addAll(batch);
+		batch = null;
+		GameRecord record;
+		while ((record = queue.poll()) != null)
+			left.add(record);
+		appendToSpool(left);
+	}
+
+	/**
+	 * Starts sending the next batch when no batch is sent. Spooled games are
+	 * sent before queued games.
+	 */
+	private synchronized void nextBatch() {
+		if (closed || batch != null)
+			return;
+		ArrayList<GameRecord> next = readSpool();
+		spooled = next != null;
+		if (next == null) {
+			next = new ArrayList<GameRecord>();
+			GameRecord record;
+			while (next.size() < MAXBATCH && (record = queue.poll()) != null)
+				next.add(record);
+			queued.addAndGet(-next.size());
+			if (next.isEmpty())
+				return;
+		}
+		batch = next;
+		attempts = 0;
+		send(GameRecord.encode(batch));
+	}
+
+	/**
+	 * Sends encoded batch in one HTTP request: connects, writes request and
+	 * reads status line, every step started by the previous one without
+	 * waiting. Channel is closed after {@link #TIMEOUTMILLIS}, which fails
+	 * the step in progress.
+	 * 
+	 * @param body
+	 *            encoded batch
+	 */
+	private void send(byte[] body) {
+		final long start = System.nanoTime();
+		sending = true;
+		final AsynchronousSocketChannel channel;
+		try {
+			channel = AsynchronousSocketChannel.open();
+		} catch (IOException e) {
+			failed(e);
+			return;
+		}
+		final ScheduledFuture<?> timeout = scheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				closeChannel(channel);
+			}
+		}, TIMEOUTMILLIS, TimeUnit.MILLISECONDS);
+		String head = "POST " + LeaderboardServer.GAMESPATH + " HTTP/1.1\r\nHost: " + address.getHostString() + ":"
+				+ address.getPort() + "\r\nContent-Type: application/octet-stream\r\nContent-Length: "
+				+ body.length + "\r\nConnection: close\r\n\r\n";
+		byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+		final ByteBuffer request = ByteBuffer.allocate(headBytes.length + body.length);
+		request.put(headBytes).put(body).flip();
+		final ByteBuffer response = ByteBuffer.allocate(256);
+		final CompletionHandler<Integer, Void> reader = new CompletionHandler<Integer, Void>() {
+
+			@Override
+			public void completed(Integer read, Void attachment) {
+				int end = statusLineEnd(response);
+				if (end < 0 && read >= 0 && response.hasRemaining()) {
+					channel.read(response, null, this);
+					return;
+				}
+				finish(channel, timeout, start, end < 0 ? -1 : statusCode(response, end));
+			}
+
+			@Override
+			public void failed(Throwable e, Void attachment) {
+				finish(channel, timeout, start, e);
+			}
+		};
+		final CompletionHandler<Integer, Void> writer = new CompletionHandler<Integer, Void>() {
+
+			@Override
+			public void completed(Integer written, Void attachment) {
+				if (request.hasRemaining())
+					channel.write(request, null, this);
+				else
+					channel.read(response, null, reader);
+			}
+
+			@Override
+			public void failed(Throwable e, Void attachment) {
+				finish(channel, timeout, start, e);
+			}
+		};
+		channel.connect(address, null, new CompletionHandler<Void, Void>() {
+
+			@Override
+			public void completed(Void result, Void attachment) {
+				channel.write(request, null, writer);
+			}
+
+			@Override
+			public void failed(Throwable e, Void attachment) {
+				finish(channel, timeout, start, e);
+			}
+		});
+	}
+
+	/**
+	 * Ends sending of a batch with given status code.
+	 * 
+	 * @param channel
+	 *            channel of the request
+	 * @param timeout
+	 *            task closing the channel after timeout
+	 * @param start
+	 *            time when sending started
+	 * @param status
+	 *            HTTP status code, -1 when server did not answer
+	 */
+	private void finish(AsynchronousSocketChannel channel, ScheduledFuture<?> timeout, long start, int status) {
+		timeout.cancel(false);
+		closeChannel(channel);
+		Metrics.LEADERBOARD_IO.recordSince(start);
+		if (status / 100 == 2)
+			delivered();
+		else if (status / 100 == 4) {
+			System.out.println("[SINK]SERVER ERROR: " + status);
+			delivered();
+		} else
+			failed(new IOException("status " + status));
+	}
+
+	/**
+	 * Ends sending of a batch with an error.
+	 * 
+	 * @param channel
+	 *            channel of the request
+	 * @param timeout
+	 *            task closing the channel after timeout
+	 * @param start
+	 *            time when sending started
+	 * @param e
+	 *            error of the failed step
+	 */
+	private void finish(AsynchronousSocketChannel channel, ScheduledFuture<?> timeout, long start, Throwable e) {
+		timeout.cancel(false);
+		closeChannel(channel);
+		Metrics.LEADERBOARD_IO.recordSince(start);
+		failed(e);
+	}
+
+	/**
+	 * Drops delivered batch, removes it from the spool file if batch was read
+	 * from it and starts the next batch at once.
+	 */
+	private synchronized void delivered() {
+		sending = false;
+		if (spooled)
+			removeFromSpool(spooledBytes);
+		batch = null;
+		attempts = 0;
+		backoff = MINBACKOFF;
+		notifyAll();
+		if (!closed)
+			scheduler.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					nextBatch();
+				}
+			});
+	}
+
+	/**
+	 * Schedules retry of the failed batch after {@link #backoff} with random
+	 * jitter, doubles the backoff. Queued games are moved to the spool file at
+	 * once, batch is moved there after {@link #SPOOLATTEMPTS} failures.
+	 * 
+	 * @param e
+	 *            error of the failed step
+	 */
+	private synchronized void failed(Throwable e) {
+		System.out.println("[SINK]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		sending = false;
+		attempts++;
+		notifyAll();
+		if (closed)
+			return;
+		if (attempts >= SPOOLATTEMPTS) {
+			if (!spooled)
+				appendToSpool(batch);
+			batch = null;
+		}
+		ArrayList<GameRecord> waiting = new ArrayList<GameRecord>();
+		GameRecord record;
+		while ((record = queue.poll()) != null)
+			waiting.add(record);
+		queued.addAndGet(-waiting.size());
+		appendToSpool(waiting);
+		long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		backoff = Math.min(2 * backoff, MAXBACKOFF);
+		scheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				retry();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends failed batch again, or the next batch when failed batch was
+	 * spooled.
+	 */
+	private synchronized void retry() {
+		if (closed)
+			return;
+		if (batch == null)
+			nextBatch();
+		else
+			send(GameRecord.encode(batch));
+	}
+
+	/**
+	 * Reads at most {@link #MAXBATCH} games from the beginning of the spool
+	 * file and sets {@link #spooledBytes} to their length. Reading stops at
+	 * the first damaged record.
+	 * 
+	 * @return spooled games, null when spool file is empty
+	 * @exception IOException
+	 *                - spool file could not be read
+	 */
+	private ArrayList<GameRecord> readSpool() {
+		if (!Files.exists(spool))
+			return null;
+		try (FileChannel channel = FileChannel.open(spool, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			ArrayList<GameRecord> records = new ArrayList<GameRecord>();
+			ByteBuffer header = ByteBuffer.allocate(64 * 1024 + 64);
+			while (records.size() < MAXBATCH && position < size) {
+				header.clear();
+				channel.read(header, position);
+				header.flip();
+				int bytes = GameRecord.peekBytes(header);
+				if (bytes <= 0 || position + bytes > size)
+					break;
+				ByteBuffer data = ByteBuffer.allocate(bytes);
+				while (data.hasRemaining() && channel.read(data, position + data.position()) >= 0)
+					;
+				data.flip();
+				GameRecord record = GameRecord.decode(data);
+				if (record == null)
+					break;
+				records.add(record);
+				position += bytes;
+			}
+			spooledBytes = position;
+			return records.isEmpty() ? null : records;
+		} catch (IOException e) {
+			System.out.println("[SPOOL]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Appends games to the spool file and flushes it to the disk.
+	 * 
+	 * @param records
+	 *            appended games
+	 */
+	private void appendToSpool(ArrayList<GameRecord> records) {
+		if (records.isEmpty())
+			return;
+		write(records);
+	}
+
+	/**
+	 * Writes games to the end of the spool file and flushes it to the disk.
+	 * 
+	 * @param records
+	 *            written games
+	 * @exception IOException
+	 *                - spool file could not be written
+	 */
+	private void write(ArrayList<GameRecord> records) {
+		try (FileChannel channel = FileChannel.open(spool, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			ByteBuffer data = ByteBuffer.wrap(GameRecord.encode(records));
+			while (data.hasRemaining())
+				channel.write(data);
+			channel.force(false);
+		} catch (IOException e) {
+			System.out.println("[SPOOL]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes delivered games from the beginning of the spool file. The rest
+	 * is written to a temporary file which replaces the spool file, so games
+	 * are not lost if the game crashes meanwhile.
+	 * 
+	 * @param bytes
+	 *            amount of removed bytes
+	 * @exception IOException
+	 *                - spool file could not be rewritten
+	 */
+	private void removeFromSpool(long bytes) {
+		Path temporary = spool.resolveSibling(spool.getFileName() + ".tmp");
+		try (FileChannel input = FileChannel.open(spool, StandardOpenOption.READ);
+				FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = bytes;
+			long size = input.size();
+			while (position < size)
+				position += input.transferTo(position, size - position, output);
+			output.force(false);
+		} catch (IOException e) {
+			System.out.println("[SPOOL]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+			return;
+		}
+		try {
+			Files.move(temporary, spool, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.out.println("[SPOOL]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Finds end of HTTP status line in the response.
+	 * 
+	 * @param response
+	 *            buffer with read part of the response
+	 * @return position of the line feed, -1 when status line was not read yet
+	 */
+	private static int statusLineEnd(ByteBuffer response) {
+		for (int i = 0; i < response.position(); i++)
+			if (response.get(i) == '\n')
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Reads status code from HTTP status line, for instance 204 from
+	 * "HTTP/1.1 204 No Content".
+	 * 
+	 * @param response
+	 *            buffer with read part of the response
+	 * @param end
+	 *            position of the end of status line
+	 * @return status code, -1 when status line is wrong
+	 */
+	private static int statusCode(ByteBuffer response, int end) {
+		byte[] line = new byte[end];
+		for (int i = 0; i < end; i++)
+			line[i] = response.get(i);
+		String[] parts = new String(line, StandardCharsets.US_ASCII).trim().split(" ");
+		try {
+			return parts.length > 1 ? Integer.parseInt(parts[1]) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Closes channel, errors are ignored because request already ended.
+	 * 
+	 * @param channel
+	 *            closed channel
+	 */
+	private static void closeChannel(AsynchronousSocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.out.println("[SINK]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,905 @@
+package squared.game;
+
+import java.util.Arrays;
+import squared.game.Model.Color;
+
+/**
+ * Game logic working without any view. Holds colors of all squares, set of
+ * grey squares and score. State is compact: colors are packed 16 to a long,
+ * grey squares are kept in a bitmap and score is a primitive, so classic
+ * board takes about 300 bytes. Looking for lines checks only squares around
+ * the moved one and looking for path floods the bitmap of grey squares 64
+ * squares at a time. Thanks to that big boards like 64x64 are handled as fast
+ * as the classic one. Colors of the next random squares are drawn in advance
+ * and kept in a queue, so they can be shown to the player and used by
+ * {@link MoveEvaluator}, places of squares are chosen when they are added.
+ * 
+ * @author bartl_000
+ *
+ */
+public class Board {
+
+	/**
+	 * Id of grey color, used for empty squares.
+	 */
+	private static final int GREY = 0;
+
+	/**
+	 * Amount of colors of the next random squares known in advance.
+	 */
+	public static final int PREVIEW = 3;
+
+	/**
+	 * Estimated amount of bytes of the board object itself, without arrays.
+	 */
+	private static final int OBJECTBYTES = 80;
+
+	/**
+	 * Estimated amount of bytes of the random generator.
+	 */
+	private static final int RANDOMBYTES = 64;
+
+	/**
+	 * Parameters of the game.
+	 */
+	private final GameParameters parameters;
+
+	/**
+	 * Amount of rows.
+	 */
+	private final int rows;
+
+	/**
+	 * Amount of columns.
+	 */
+	private final int columns;
+
+	/**
+	 * Color ids of all squares packed 16 to a long, 4 bits each, indexed with
+	 * {@link #index(int, int)}.
+	 */
+	private long[] cells;
+
+	/**
+	 * Bitmap of grey squares.
+	 */
+	private long[] free;
+
+	/**
+	 * True when {@link #cells} and {@link #free} are shared with a snapshot
+	 * and have to be copied before first change.
+	 */
+	private boolean shared;
+
+	/**
+	 * Amount of grey squares.
+	 */
+	private int freeCount;
+
+	/**
+	 * Current score.
+	 */
+	private long score;
+
+	/**
+	 * Zobrist hash of current position, updated with every changed square.
+	 */
+	private long hash;
+
+	/**
+	 * Color ids of the next {@link #PREVIEW} random squares, 4 bits each, the
+	 * next square in the lowest bits.
+	 */
+	private long preview;
+
+	/**
+	 * Generator used to choose color and place of new squares.
+	 */
+	private final GameRandom random;
+
+	/**
+	 * Bitmap of squares reached while looking for path, created with first
+	 * search.
+	 */
+	private long[] reached;
+
+
+	/**
+	 * Listener notified about changes, can be null.
+	 */
+	private BoardListener listener;
+
+	/**
+	 * History recording moves for undo, can be null.
+	 */
+	private BoardHistory history;
+
+	/**
+	 * Constructor that creates empty board with random generator seeded with
+	 * current time.
+	 * 
+	 * @param parameters
+	 *            parameters of the game
+	 */
+	public Board(GameParameters parameters) {
+		this(parameters, new GameRandom());
+	}
+
+	/**
+	 * Constructor that creates empty board.
+	 * 
+	 * @param parameters
+	 *            parameters of the game
+	 * @param random
+	 *            generator used to add random squares
+	 */
+	public Board(GameParameters parameters, GameRandom random) {
+		this.parameters = parameters;
+		this.rows = parameters.getRows();
+		this.columns = parameters.getColumns();
+		this.random = random;
+		int size = rows * columns;
+		cells = new long[(size + 15) >>> 4];
+		free = new long[(size + 63) >>> 6];
+		for (int i = 0; i < size; i++)
+			free[i >>> 6] |= 1L << i;
+		freeCount = size;
+		for (int i = 0; i < PREVIEW; i++)
+			preview |= (long) randomColor() << (i << 2);
+	}
+
+	/**
+	 * Constructor that creates snapshot of other board. Arrays are shared
+	 * until one of boards changes.
+	 * 
+	 * @param board
+	 *            copied board
+	 * @param random
+	 *            generator used by the snapshot to add random squares
+	 */
+	private Board(Board board, GameRandom random) {
+		this.parameters = board.parameters;
+		this.rows = board.rows;
+		this.columns = board.columns;
+		this.random = random;
+		this.cells = board.cells;
+		this.free = board.free;
+		this.freeCount = board.freeCount;
+		this.score = board.score;
+		this.hash = board.hash;
+		this.preview = board.preview;
+		this.shared = true;
+		board.shared = true;
+	}
+
+	/**
+	 * Creates copy-on-write snapshot of the board, which has no listener.
+	 * Snapshot is cheap, arrays are copied only when snapshot or this board
+	 * changes. Snapshot knows colors of the next squares, squares added after
+	 * them get colors from its own generator. Snapshots of one board can be
+	 * used in different threads as long as the board itself does not change.
+	 * 
+	 * @param random
+	 *            generator used by the snapshot to add random squares
+	 * @return new board with the same squares, score and next colors
+	 */
+	public Board snapshot(GameRandom random) {
+		return new Board(this, random);
+	}
+
+	/**
+	 * Sets listener notified about changes.
+	 * 
+	 * @param listener
+	 *            new listener, null to remove it
+	 */
+	public void setListener(BoardListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets history recording moves made with {@link #move(int, int)} or
+	 * between {@link #beginMove()} and {@link #endMove()}. History is not
+	 * shared with snapshots.
+	 * 
+	 * @param history
+	 *            new history, null to stop recording
+	 */
+	public void setHistory(BoardHistory history) {
+		this.history = history;
+	}
+
+	/**
+	 * Getting history recording moves.
+	 * 
+	 * @return {@link #history}, can be null
+	 */
+	public BoardHistory getHistory() {
+		return history;
+	}
+
+	/**
+	 * Starts recording of a move made with {@link #moveSquare(int, int)},
+	 * {@link #clearLines(int)} and {@link #addRandomSquares(int)}.
+	 */
+	public void beginMove() {
+		if (history != null)
+			history.begin(score, random.getState(), preview);
+	}
+
+	/**
+	 * Ends recording of a move.
+	 */
+	public void endMove() {
+		if (history != null)
+			history.end(score, random.getState(), preview);
+	}
+
+	/**
+	 * Undoes the last recorded move, restores squares, score, next colors and
+	 * generator, so the same move adds the same random squares again.
+	 * 
+	 * @return true if move was undone, false if there is nothing to undo
+	 * @see {@link BoardHistory#undo(Board)}
+	 */
+	public boolean undo() {
+		return history != null && history.undo(this);
+	}
+
+	/**
+	 * Makes again the last undone move.
+	 * 
+	 * @return true if move was made, false if there is nothing to redo
+	 * @see {@link BoardHistory#redo(Board)}
+	 */
+	public boolean redo() {
+		return history != null && history.redo(this);
+	}
+
+	/**
+	 * Sets color of a square while undoing or redoing, listener is notified.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @param color
+	 *            id of the color
+	 */
+	void restore(int index, int color) {
+		setCell(index, color);
+	}
+
+	/**
+	 * Sets score, state of generator and next colors while undoing, redoing or
+	 * loading a game.
+	 * 
+	 * @param score
+	 *            new score
+	 * @param randomState
+	 *            new state of the generator
+	 * @param preview
+	 *            color ids of the next squares packed like {@link #preview}
+	 */
+	void restoreState(long score, long randomState, long preview) {
+		this.score = score;
+		this.preview = preview;
+		random.setSeed(randomState);
+	}
+
+	/**
+	 * Getting parameters of the game.
+	 * 
+	 * @return {@link #parameters}
+	 */
+	public GameParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Counts index of a square.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @return index of the square
+	 */
+	public int index(int x, int y) {
+		return x * columns + y;
+	}
+
+	/**
+	 * Getting color of a square.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @return color of the square
+	 */
+	public Color getColor(int index) {
+		return Color.getColor(cell(index));
+	}
+
+	/**
+	 * Sets color of a square, updates set of grey squares and notifies
+	 * listener. Used to restore saved games.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @param color
+	 *            new color
+	 */
+	public void setColor(int index, Color color) {
+		setCell(index, color.getId());
+	}
+
+	/**
+	 * Getting generator used to add random squares. Its state is saved with
+	 * the game.
+	 * 
+	 * @return {@link #random}
+	 */
+	public GameRandom getRandom() {
+		return random;
+	}
+
+	/**
+	 * Getting color of one of the next random squares.
+	 * 
+	 * @param position
+	 *            number between 0 and {@link #PREVIEW}, 0 for the next square
+	 * @return color of the square
+	 */
+	public Color getPreviewColor(int position) {
+		return Color.getColor((int) (preview >>> (position << 2)) & 15);
+	}
+
+	/**
+	 * Getting color ids of the next random squares. Saved with the game.
+	 * 
+	 * @return {@link #preview}
+	 */
+	public long getPreview() {
+		return preview;
+	}
+
+	/**
+	 * Checks if square is grey.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @return true if square is grey
+	 */
+	public boolean isFree(int index) {
+		return (free[index >>> 6] >>> index & 1) != 0;
+	}
+
+	/**
+	 * Finds grey square with given number, counting grey squares row by row.
+	 * Result depends only on colors of squares, so saved and loaded games add
+	 * random squares in the same places.
+	 * 
+	 * @param position
+	 *            number between 0 and {@link #getFreeCount()}
+	 * @return index of grey square
+	 */
+	public int getFreeCell(int position) {
+		for (int word = 0;; word++) {
+			long bits = free[word];
+			int count = Long.bitCount(bits);
+			if (position < count) {
+				for (; position > 0; position--)
+					bits &= bits - 1;
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			position -= count;
+		}
+	}
+
+	/**
+	 * Getting Zobrist hash of current position.
+	 * 
+	 * @return {@link #hash}
+	 * @see {@link Zobrist}
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Estimates amount of heap memory used by the board, assuming 64-bit JVM
+	 * with compressed references. Arrays shared with snapshots are counted
+	 * fully.
+	 * 
+	 * @return amount of bytes
+	 */
+	public long estimateBytes() {
+		long bytes = OBJECTBYTES + RANDOMBYTES + arrayBytes(cells.length, 8) + arrayBytes(free.length, 8);
+		if (reached != null)
+			bytes += arrayBytes(reached.length, 8);
+		return bytes;
+	}
+
+	/**
+	 * Estimates amount of heap memory used by an array.
+	 * 
+	 * @param length
+	 *            length of the array
+	 * @param elementBytes
+	 *            amount of bytes of one element
+	 * @return amount of bytes, aligned to 8
+	 */
+	private static long arrayBytes(int length, int elementBytes) {
+		return (16 + (long) length * elementBytes + 7) & ~7L;
+	}
+
+	/**
+	 * Getting amount of grey squares.
+	 * 
+	 * @return {@link #freeCount}
+	 */
+	public int getFreeCount() {
+		return freeCount;
+	}
+
+	/**
+	 * Getting current score.
+	 * 
+	 * @return {@link #score}
+	 */
+	public long getScore() {
+		return score;
+	}
+
+	/**
+	 * Sets score to a given value.
+	 * 
+	 * @param score
+	 *            new score
+	 */
+	public void setScore(long score) {
+		this.score = score;
+	}
+
+	/**
+	 * Sets all squares to grey and score to 0.
+	 */
+	public void clear() {
+		for (int i = 0; i < rows * columns; i++)
+			setCell(i, GREY);
+		score = 0;
+	}
+
+	/**
+	 * Plays whole move without notifying anyone about its phases: moves square
+	 * if path exists, removes lines and adds random squares if no line was
+	 * removed. Move is recorded in history if board has one.
+	 * 
+	 * @param from
+	 *            index of moved square
+	 * @param to
+	 *            index of target grey square
+	 * @return true if square was moved, false otherwise
+	 */
+	public boolean move(int from, int to) {
+		if (cell(from) == GREY || !isFree(to) || !findPath(from, to))
+			return false;
+		beginMove();
+		moveSquare(from, to);
+		if (!clearLines(to))
+			addRandomSquares(parameters.getSpawnCount());
+		endMove();
+		return true;
+	}
+
+	/**
+	 * Looks for path between two squares going only through grey squares.
+	 * Floods bitmap of grey squares from the first square.
+	 * 
+	 * @param from
+	 *            index of the first square
+	 * @param to
+	 *            index of the second square
+	 * @return true if path was found, false otherwise
+	 */
+	public boolean findPath(int from, int to) {
+		if (from == to)
+			return true;
+		return flood(from, to);
+	}
+
+	/**
+	 * Finds the shortest path between two squares going only through grey
+	 * squares, with plain breadth first search. Used to show moves, so it
+	 * allocates its arrays and is slower than {@link #findPath(int, int)}.
+	 * 
+	 * @param from
+	 *            index of the first square
+	 * @param to
+	 *            index of the second square
+	 * @param path
+	 *            array where indexes of squares of the path are saved, from
+	 *            the first square to the second one, should be big enough to
+	 *            hold all squares
+	 * @return amount of squares of the path, 0 if path was not found
+	 */
+	public int findShortestPath(int from, int to, int[] path) {
+		int[] previous = new int[rows * columns];
+		int[] queue = new int[rows * columns];
+		Arrays.fill(previous, -1);
+		previous[from] = from;
+		queue[0] = from;
+		int head = 0;
+		int tail = 1;
+		while (head < tail && previous[to] < 0) {
+			int index = queue[head++];
+			int x = index / columns;
+			int y = index % columns;
+			if (x > 0)
+				tail = visit(index, index - columns, previous, queue, tail);
+			if (y < columns - 1)
+				tail = visit(index, index + 1, previous, queue, tail);
+			if (x < rows - 1)
+				tail = visit(index, index + columns, previous, queue, tail);
+			if (y > 0)
+				tail = visit(index, index - 1, previous, queue, tail);
+		}
+		if (previous[to] < 0)
+			return 0;
+		int length = 1;
+		for (int index = to; index != from; index = previous[index])
+			length++;
+		int position = length;
+		for (int index = to; position > 0; index = previous[index])
+			path[--position] = index;
+		return length;
+	}
+
+	/**
+	 * Adds grey square to the queue of breadth first search if it was not
+	 * visited yet.
+	 * 
+	 * @param index
+	 *            index of visited square
+	 * @param next
+	 *            index of its neighbour
+	 * @param previous
+	 *            squares from which squares were reached, -1 for not visited
+	 * @param queue
+	 *            queue of the search
+	 * @param tail
+	 *            position after the last square of the queue
+	 * @return new position after the last square of the queue
+	 */
+	private int visit(int index, int next, int[] previous, int[] queue, int tail) {
+		if (previous[next] >= 0 || !isFree(next))
+			return tail;
+		previous[next] = index;
+		queue[tail] = next;
+		return tail + 1;
+	}
+
+	/**
+	 * Finds all grey squares which can be reached from given square.
+	 * 
+	 * @param from
+	 *            index of the first square
+	 * @param reachable
+	 *            array where indexes of reachable squares are saved, should be
+	 *            big enough to hold all squares
+	 * @return amount of reachable squares
+	 */
+	public int findReachable(int from, int[] reachable) {
+		flood(from, -1);
+		int count = 0;
+		for (int word = 0; word < reached.length; word++) {
+			long bits = reached[word] & free[word];
+			while (bits != 0) {
+				reachable[count++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Moves color from first square to the second one.
+	 * 
+	 * @param from
+	 *            index of moved square
+	 * @param to
+	 *            index of target square
+	 */
+	public void moveSquare(int from, int to) {
+		int color = cell(from);
+		setCell(to, color);
+		setCell(from, GREY);
+	}
+
+	/**
+	 * Adds random squares to the board. Every square takes the first color of
+	 * the queue of next colors, new color is drawn to the end of the queue and
+	 * then place of the square is drawn from grey squares. If board is full
+	 * then notifies listener about end of the game and resets score.
+	 * Additionally removes lines going through added squares.
+	 * 
+	 * @param counter
+	 *            how many squares add
+	 * @return amount of added squares
+	 */
+	public int addRandomSquares(int counter) {
+		int spawned = 0;
+		for (int i = 0; i < counter; i++) {
+			if (freeCount == 0) {
+				if (listener != null)
+					listener.gameOver(score);
+				score = 0;
+				break;
+			}
+			int color = (int) preview & 15;
+			preview = preview >>> 4 | (long) randomColor() << ((PREVIEW - 1) << 2);
+			int index = getFreeCell(random.nextInt(freeCount));
+			setCell(index, color);
+			spawned++;
+			clearLines(index);
+		}
+		return spawned;
+	}
+
+	/**
+	 * Draws color of a random square.
+	 * 
+	 * @return id of any color except grey
+	 */
+	private int randomColor() {
+		return random.nextInt(parameters.getColorAmount() - 1) + 1;
+	}
+
+	/**
+	 * Removes all lines going through a square in one pass. Runs of the color
+	 * of the square are counted in all four directions first, then every run
+	 * long enough is removed and scored on its own, as in the first version of
+	 * the game, so a square completing two lines gives points of both lines.
+	 * Square given as a parameter belongs to all removed lines and is removed
+	 * once, at the end.
+	 * 
+	 * @param index
+	 *            index of a colored square
+	 * @return true if any line was found, false otherwise
+	 */
+	public boolean clearLines(int index) {
+		int color = cell(index);
+		int lineLength = parameters.getLineLength();
+		int x = index / columns;
+		int y = index % columns;
+		int up = countRun(x, y, -1, 0, color);
+		int vertical = 1 + up + countRun(x, y, 1, 0, color);
+		int left = countRun(x, y, 0, -1, color);
+		int horizontal = 1 + left + countRun(x, y, 0, 1, color);
+		int upLeft = countRun(x, y, -1, -1, color);
+		int diagonalLeft = 1 + upLeft + countRun(x, y, 1, 1, color);
+		int downLeft = countRun(x, y, 1, -1, color);
+		int diagonalRight = 1 + downLeft + countRun(x, y, -1, 1, color);
+		boolean found = false;
+		if (vertical >= lineLength) {
+			removeLine(x - up, y, 1, 0, vertical, color, index);
+			found = true;
+		}
+		if (horizontal >= lineLength) {
+			removeLine(x, y - left, 0, 1, horizontal, color, index);
+			found = true;
+		}
+		if (diagonalLeft >= lineLength) {
+			removeLine(x - upLeft, y - upLeft, 1, 1, diagonalLeft, color, index);
+			found = true;
+		}
+		if (diagonalRight >= lineLength) {
+			removeLine(x + downLeft, y - downLeft, -1, 1, diagonalRight, color, index);
+			found = true;
+		}
+		if (found)
+			setCell(index, GREY);
+		return found;
+	}
+
+	/**
+	 * Counts points for a removed line.
+	 * 
+	 * @param length
+	 *            amount of removed squares
+	 * @param colorAmount
+	 *            amount of colors in the game
+	 * @return points added to score
+	 */
+	public static long linePoints(int length, int colorAmount) {
+		long toAdd = (long) ((Math.pow((length - 3) % 3, 2) + 1) * Math.pow(10, Math.floor((length - 3) / 3)));
+		return toAdd * (colorAmount - 4);
+	}
+
+	/**
+	 * Counts squares of given color going from a square in given direction,
+	 * the square itself is not counted.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @param dx
+	 *            step in rows
+	 * @param dy
+	 *            step in columns
+	 * @param color
+	 *            id of looked color
+	 * @return amount of squares
+	 */
+	private int countRun(int x, int y, int dx, int dy, int color) {
+		int count = 0;
+		x += dx;
+		y += dy;
+		while (x >= 0 && x < rows && y >= 0 && y < columns && cell(x * columns + y) == color) {
+			count++;
+			x += dx;
+			y += dy;
+		}
+		return count;
+	}
+
+	/**
+	 * Removes line of squares from the board, sets their color to grey except
+	 * the square shared by all lines. Adds points to score.
+	 * 
+	 * @param x
+	 *            row of the first square
+	 * @param y
+	 *            column of the first square
+	 * @param dx
+	 *            step in rows
+	 * @param dy
+	 *            step in columns
+	 * @param length
+	 *            amount of squares
+	 * @param color
+	 *            id of color of the line
+	 * @param skipped
+	 *            index of square which is left colored
+	 */
+	private void removeLine(int x, int y, int dx, int dy, int length, int color, int skipped) {
+		for (int i = 0; i < length; i++) {
+			int index = (x + i * dx) * columns + y + i * dy;
+			if (index != skipped)
+				setCell(index, GREY);
+		}
+		long points = linePoints(length, parameters.getColorAmount());
+		score += points;
+		if (listener != null)
+			listener.lineCleared(length, Color.getColor(color), points);
+	}
+
+	/**
+	 * Floods bitmap of grey squares from given square. Words of the bitmap are
+	 * swept forward and backward, every word grows until it holds all grey
+	 * squares reachable from squares reached so far, 64 squares in one
+	 * operation. Reached squares are held in {@link #reached}.
+	 * 
+	 * @param from
+	 *            index of the first square
+	 * @param to
+	 *            index of searched square, -1 to reach all squares
+	 * @return true if searched square was reached
+	 */
+	private boolean flood(int from, int to) {
+		if (reached == null)
+			reached = new long[free.length];
+		Arrays.fill(reached, 0);
+		reached[from >>> 6] = 1L << from;
+		int toWord = to >>> 6;
+		long toBit = to >= 0 ? 1L << to : 0;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int word = 0; word < reached.length; word++)
+				changed |= grow(word, word == toWord ? toBit : 0);
+			for (int word = reached.length - 1; word >= 0; word--)
+				changed |= grow(word, word == toWord ? toBit : 0);
+			if (to >= 0 && (reached[toWord] & toBit) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds to one word of {@link #reached} grey neighbours of reached squares
+	 * until nothing more can be added.
+	 * 
+	 * @param word
+	 *            number of the word
+	 * @param extra
+	 *            squares of the word which can be reached even if they are not
+	 *            grey
+	 * @return true if any square was added
+	 */
+	private boolean grow(int word, long extra) {
+		long passable = free[word] | extra;
+		long notFirst = parameters.getNotFirstColumn()[word];
+		long notLast = parameters.getNotLastColumn()[word];
+		long above = shifted(reached, word, columns);
+		long below = shifted(reached, word, -columns);
+		long current = reached[word];
+		long grown = current;
+		do {
+			current = grown;
+			grown = current | (current << 1 & notFirst | current >>> 1 & notLast | current << columns
+					| current >>> columns | above | below | shifted(reached, word, 1) & notFirst
+					| shifted(reached, word, -1) & notLast) & passable;
+		} while (grown != current);
+		if (grown == reached[word])
+			return false;
+		reached[word] = grown;
+		return true;
+	}
+
+	/**
+	 * Getting one word of bitmap moved by given amount of squares.
+	 * 
+	 * @param bits
+	 *            moved bitmap
+	 * @param word
+	 *            number of returned word
+	 * @param shift
+	 *            amount of squares, positive moves squares to higher indexes
+	 * @return word of moved bitmap
+	 */
+	private static long shifted(long[] bits, int word, int shift) {
+		int source = word - (shift >> 6);
+		int bit = shift & 63;
+		long low = source >= 0 && source < bits.length ? bits[source] : 0;
+		if (bit == 0)
+			return low;
+		long below = source >= 1 && source <= bits.length ? bits[source - 1] : 0;
+		return low << bit | below >>> (64 - bit);
+	}
+
+	/**
+	 * Getting color id of a square.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @return id of the color
+	 */
+	private int cell(int index) {
+		return (int) (cells[index >>> 4] >>> ((index & 15) << 2)) & 15;
+	}
+
+	/**
+	 * Sets color of a square, updates bitmap of grey squares and hash and
+	 * notifies listener.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @param color
+	 *            id of the new color
+	 */
+	private void setCell(int index, int color) {
+		int old = cell(index);
+		if (old == color)
+			return;
+		if (shared) {
+			cells = cells.clone();
+			free = free.clone();
+			shared = false;
+		}
+		if (old == GREY) {
+			free[index >>> 6] &= ~(1L << index);
+			freeCount--;
+		} else if (color == GREY) {
+			free[index >>> 6] |= 1L << index;
+			freeCount++;
+		}
+		if (history != null)
+			history.record(index, old, color);
+		int shift = (index & 15) << 2;
+		cells[index >>> 4] = cells[index >>> 4] & ~(15L << shift) | (long) color << shift;
+		hash ^= Zobrist.key(index, old) ^ Zobrist.key(index, color);
+		if (listener != null)
+			listener.colorChanged(index, Color.getColor(color));
+	}
+
+}
@@ -0,0 +1,296 @@
+package squared.game;
+
+/**
+ * Undo and redo of moves on a {@link Board}. Every move is saved as a diff: all
+ * squares it changed with their old and new colors, score, state of the
+ * generator and colors of the next squares before and after the move. Diffs are
+ * kept in primitive ring buffers with fixed size, the oldest moves are
+ * forgotten when buffers are full, so recording, undo and redo never allocate
+ * and take time proportional to amount of changed squares.
+ * 
+ * @author bartl_000
+ *
+ */
+public class BoardHistory {
+
+	/**
+	 * Amount of remembered moves when none is given.
+	 */
+	public static final int DEFAULT_DEPTH = 32;
+
+	/**
+	 * Average amount of changed squares per move the buffer of changes is
+	 * sized for.
+	 */
+	private static final int CHANGESPERMOVE = 16;
+
+	/**
+	 * Amount of remembered moves.
+	 */
+	private final int depth;
+
+	/**
+	 * Position in {@link #changes} of the first change of every move, indexed
+	 * with number of the move modulo {@link #depth}.
+	 */
+	private final long[] firstChange;
+
+	/**
+	 * Position in {@link #changes} after the last change of every move.
+	 */
+	private final long[] endChange;
+
+	/**
+	 * Score before every move.
+	 */
+	private final long[] scoreBefore;
+
+	/**
+	 * Score after every move.
+	 */
+	private final long[] scoreAfter;
+
+	/**
+	 * State of the generator before every move.
+	 */
+	private final long[] randomBefore;
+
+	/**
+	 * State of the generator after every move.
+	 */
+	private final long[] randomAfter;
+
+	/**
+	 * Colors of the next squares before every move.
+	 */
+	private final long[] previewBefore;
+
+	/**
+	 * Colors of the next squares after every move.
+	 */
+	private final long[] previewAfter;
+
+	/**
+	 * Changed squares, index shifted by 8 bits, old color shifted by 4 bits and
+	 * new color. Positions grow all the time and are taken modulo length.
+	 */
+	private final int[] changes;
+
+	/**
+	 * Position of the first change of the oldest remembered move.
+	 */
+	private long changeStart;
+
+	/**
+	 * Position after the last recorded change.
+	 */
+	private long changeEnd;
+
+	/**
+	 * Number of the oldest remembered move.
+	 */
+	private long oldest;
+
+	/**
+	 * Number of the move which is made next, moves before it are made.
+	 */
+	private long current;
+
+	/**
+	 * Number after the newest remembered move, moves from {@link #current}
+	 * are undone and can be redone.
+	 */
+	private long newest;
+
+	/**
+	 * True while a move is recorded.
+	 */
+	private boolean recording;
+
+	/**
+	 * True when recorded move did not fit into {@link #changes}.
+	 */
+	private boolean overflow;
+
+	/**
+	 * Constructor that creates buffers for given amount of moves.
+	 * 
+	 * @param depth
+	 *            amount of remembered moves
+	 */
+	public BoardHistory(int depth) {
+		this.depth = depth;
+		firstChange = new long[depth];
+		endChange = new long[depth];
+		scoreBefore = new long[depth];
+		scoreAfter = new long[depth];
+		randomBefore = new long[depth];
+		randomAfter = new long[depth];
+		previewBefore = new long[depth];
+		previewAfter = new long[depth];
+		changes = new int[depth * CHANGESPERMOVE];
+	}
+
+	/**
+	 * Starts recording of a move. Undone moves are forgotten.
+	 * 
+	 * @param score
+	 *            score before the move
+	 * @param randomState
+	 *            state of the generator before the move
+	 * @param preview
+	 *            colors of the next squares before the move
+	 */
+	void begin(long score, long randomState, long preview) {
+		newest = current;
+		changeEnd = current > oldest ? endChange[slot(current - 1)] : changeStart;
+		if (current - oldest == depth)
+			forgetOldest();
+		int slot = slot(current);
+		firstChange[slot] = changeEnd;
+		scoreBefore[slot] = score;
+		randomBefore[slot] = randomState;
+		previewBefore[slot] = preview;
+		recording = true;
+		overflow = false;
+	}
+
+	/**
+	 * Records change of a square during recorded move.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @param oldColor
+	 *            id of the old color
+	 * @param newColor
+	 *            id of the new color
+	 */
+	void record(int index, int oldColor, int newColor) {
+		if (!recording)
+			return;
+		while (changeEnd - changeStart == changes.length) {
+			if (oldest == current) {
+				overflow = true;
+				return;
+			}
+			forgetOldest();
+		}
+		changes[(int) (changeEnd % changes.length)] = index << 8 | oldColor << 4 | newColor;
+		changeEnd++;
+	}
+
+	/**
+	 * Ends recording of a move. Move which did not fit into the buffer
+	 * forgets whole history, because it cannot be undone.
+	 * 
+	 * @param score
+	 *            score after the move
+	 * @param randomState
+	 *            state of the generator after the move
+	 * @param preview
+	 *            colors of the next squares after the move
+	 */
+	void end(long score, long randomState, long preview) {
+		if (!recording)
+			return;
+		recording = false;
+		if (overflow) {
+			clear();
+			return;
+		}
+		int slot = slot(current);
+		endChange[slot] = changeEnd;
+		scoreAfter[slot] = score;
+		randomAfter[slot] = randomState;
+		previewAfter[slot] = preview;
+		current++;
+		newest = current;
+	}
+
+	/**
+	 * Undoes the last made move.
+	 * 
+	 * @param board
+	 *            board on which the move was made
+	 * @return true if move was undone, false if there is no remembered move
+	 */
+	boolean undo(Board board) {
+		if (current == oldest || recording)
+			return false;
+		current--;
+		int slot = slot(current);
+		for (long position = endChange[slot] - 1; position >= firstChange[slot]; position--) {
+			int change = changes[(int) (position % changes.length)];
+			board.restore(change >>> 8, change >>> 4 & 15);
+		}
+		board.restoreState(scoreBefore[slot], randomBefore[slot], previewBefore[slot]);
+		return true;
+	}
+
+	/**
+	 * Makes again the last undone move.
+	 * 
+	 * @param board
+	 *            board on which the move was undone
+	 * @return true if move was made, false if there is no undone move
+	 */
+	boolean redo(Board board) {
+		if (current == newest || recording)
+			return false;
+		int slot = slot(current);
+		for (long position = firstChange[slot]; position < endChange[slot]; position++) {
+			int change = changes[(int) (position % changes.length)];
+			board.restore(change >>> 8, change & 15);
+		}
+		board.restoreState(scoreAfter[slot], randomAfter[slot], previewAfter[slot]);
+		current++;
+		return true;
+	}
+
+	/**
+	 * Checks if any move can be undone.
+	 * 
+	 * @return true if there is a made move
+	 */
+	public boolean canUndo() {
+		return current > oldest && !recording;
+	}
+
+	/**
+	 * Checks if any move can be redone.
+	 * 
+	 * @return true if there is an undone move
+	 */
+	public boolean canRedo() {
+		return current < newest && !recording;
+	}
+
+	/**
+	 * Forgets all moves.
+	 */
+	public void clear() {
+		oldest = current = newest = 0;
+		changeStart = changeEnd = 0;
+		recording = false;
+	}
+
+	/**
+	 * Forgets the oldest move.
+	 */
+	private void forgetOldest() {
+		oldest++;
+		changeStart = oldest < current || recording ? firstChange[slot(oldest)] : changeEnd;
+	}
+
+	/**
+	 * Getting position of a move in buffers.
+	 * 
+	 * @param move
+	 *            number of the move
+	 * @return position in buffers
+	 */
+	private int slot(long move) {
+		return (int) (move % depth);
+	}
+
+}
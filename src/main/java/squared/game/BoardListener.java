@@ -0,0 +1,42 @@
+package squared.game;
+
+/**
+ * Listener notified about changes on a {@link Board}. Used to update view and
+ * leaderboard when game logic runs.
+ * 
+ * @author bartl_000
+ *
+ */
+public interface BoardListener {
+
+	/**
+	 * Called when color of a square changes.
+	 * 
+	 * @param index
+	 *            index of the square, see {@link Board#index(int, int)}
+	 * @param color
+	 *            new color of the square
+	 */
+	void colorChanged(int index, Model.Color color);
+
+	/**
+	 * Called after a line is removed from the board.
+	 * 
+	 * @param length
+	 *            amount of removed squares
+	 * @param color
+	 *            color of removed squares
+	 * @param points
+	 *            points added to score
+	 */
+	void lineCleared(int length, Model.Color color, long points);
+
+	/**
+	 * Called when there is no place for new square, before score is reset.
+	 * 
+	 * @param score
+	 *            final score
+	 */
+	void gameOver(long score);
+
+}
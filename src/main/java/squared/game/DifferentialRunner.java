@@ -0,0 +1,361 @@
+package squared.game;
+
+import squared.game.Model.Color;
+
+/**
+ * Differential test of {@link Board} against {@link LegacyEngine}. Plays the
+ * same games on both engines: both get generators with the same seed, so they
+ * add the same random squares, and both get the same moves. Most moves are
+ * chosen to complete lines, often two lines at once, so scoring of lines is
+ * tested as much as moving. After every move colors of all squares, colors of
+ * the next random squares, score and amount of ended games are compared and the
+ * first difference is printed with everything needed to repeat it.
+ * 
+ * @author bartl_000
+ *
+ */
+public class DifferentialRunner implements BoardListener {
+
+	/**
+	 * Amount of games when none is given.
+	 */
+	private static final int DEFAULT_GAMES = 1000;
+
+	/**
+	 * Game is abandoned after that many moves, some games never end.
+	 */
+	private static final int MAXMOVES = 2000;
+
+	/**
+	 * Biggest size of boards with random parameters.
+	 */
+	private static final int MAXSIZE = 16;
+
+	/**
+	 * Amount of grey squares tried as target of a move completing lines.
+	 */
+	private static final int TARGETS = 16;
+
+	/**
+	 * Generator of parameters and moves.
+	 */
+	private final GameRandom random;
+
+	/**
+	 * Optimized engine.
+	 */
+	private Board board;
+
+	/**
+	 * Reference engine.
+	 */
+	private LegacyEngine legacy;
+
+	/**
+	 * Amount of games ended on {@link #board}.
+	 */
+	private int gamesOver;
+
+	/**
+	 * Amount of lines cleared during current move.
+	 */
+	private int moveLines;
+
+	/**
+	 * Amount of played moves.
+	 */
+	private long moves;
+
+	/**
+	 * Amount of cleared lines.
+	 */
+	private long lines;
+
+	/**
+	 * Amount of moves which cleared more than one line.
+	 */
+	private long combos;
+
+	/**
+	 * Constructor that sets generator.
+	 * 
+	 * @param random
+	 *            generator of parameters and moves
+	 */
+	public DifferentialRunner(GameRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * Plays games on both engines and stops at the first difference.
+	 * 
+	 * @param args
+	 *            amount of games and seed, random seed is used when none is
+	 *            given
+	 */
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		GameRandom master = new GameRandom(seed);
+		long start = System.nanoTime();
+		DifferentialRunner runner = null;
+		long moves = 0;
+		long lines = 0;
+		long combos = 0;
+		for (int game = 0; game < games; game++) {
+			runner = new DifferentialRunner(master.split(game));
+			String difference = runner.play(game % 2 == 0);
+			moves += runner.moves;
+			lines += runner.lines;
+			combos += runner.combos;
+			if (difference != null) {
+				System.out.println("DIFFERENCE: " + difference);
+				System.out.println("seed " + seed + ", game " + game + ", move " + runner.moves);
+				System.out.println(runner.describe());
+				System.exit(1);
+			}
+		}
+		System.out.println(String.format(
+				"seed %d: %d games, %d moves, %d lines, %d moves clearing more lines, no difference, %d ms", seed,
+				games, moves, lines, combos, (System.nanoTime() - start) / 1_000_000));
+	}
+
+	/**
+	 * Plays one game on both engines.
+	 * 
+	 * @param classic
+	 *            true to use parameters from system properties, false to use
+	 *            random parameters
+	 * @return description of the first difference, null if there was none
+	 */
+	public String play(boolean classic) {
+		GameParameters parameters = classic ? GameParameters.fromSystemProperties()
+				: new GameParameters(1 + random.nextInt(MAXSIZE), 1 + random.nextInt(MAXSIZE),
+						2 + random.nextInt(5), 2 + random.nextInt(GameParameters.MAXCOLORS - 1), 1 + random.nextInt(5));
+		long seed = random.nextLong();
+		board = new Board(parameters, new GameRandom(seed));
+		board.setListener(this);
+		legacy = new LegacyEngine(parameters, new GameRandom(seed));
+		board.addRandomSquares(3);
+		legacy.addRandomSquares(3);
+		String difference = compare();
+		while (difference == null && gamesOver == 0 && moves < MAXMOVES) {
+			int[] move = chooseMove();
+			if (move == null)
+				break;
+			int columns = parameters.getColumns();
+			moveLines = 0;
+			boolean moved = board.move(move[0], move[1]);
+			boolean legacyMoved = legacy.move(move[0] / columns, move[0] % columns, move[1] / columns,
+					move[1] % columns);
+			moves++;
+			if (moveLines > 1)
+				combos++;
+			if (moved != legacyMoved)
+				return "move(" + move[0] + ", " + move[1] + ") is " + moved + ", legacy says " + legacyMoved;
+			difference = compare();
+		}
+		return difference;
+	}
+
+	/**
+	 * Compares both engines.
+	 * 
+	 * @return description of the first difference, null if there was none
+	 */
+	private String compare() {
+		GameParameters parameters = board.getParameters();
+		for (int x = 0; x < parameters.getRows(); x++)
+			for (int y = 0; y < parameters.getColumns(); y++)
+				if (board.getColor(board.index(x, y)) != legacy.getColor(x, y))
+					return "square " + x + "," + y + " is " + board.getColor(board.index(x, y)) + ", legacy says "
+							+ legacy.getColor(x, y);
+		for (int i = 0; i < Board.PREVIEW; i++)
+			if (board.getPreviewColor(i) != legacy.getUpcoming(i))
+				return "next square " + i + " is " + board.getPreviewColor(i) + ", legacy says "
+						+ legacy.getUpcoming(i);
+		if (board.getScore() != legacy.getScore())
+			return "score is " + board.getScore() + ", legacy says " + legacy.getScore();
+		if (gamesOver != legacy.getGamesOver())
+			return "ended games " + gamesOver + ", legacy says " + legacy.getGamesOver();
+		return null;
+	}
+
+	/**
+	 * Chooses next move looking only at {@link #legacy}. Two of three moves go
+	 * to the grey square completing the most lines of a color and take square
+	 * of that color, the rest are random, path is not checked.
+	 * 
+	 * @return index of moved square and index of target square, null if
+	 *         board has no grey or no colored square
+	 */
+	private int[] chooseMove() {
+		GameParameters parameters = board.getParameters();
+		int size = parameters.getRows() * parameters.getColumns();
+		int grey = 0;
+		for (int i = 0; i < size; i++)
+			if (color(i / parameters.getColumns(), i % parameters.getColumns()) == Color.GREY)
+				grey++;
+		if (grey == 0 || grey == size)
+			return null;
+		int to = randomSquare(true, null);
+		Color color = null;
+		if (random.nextInt(3) != 0) {
+			int best = -1;
+			for (int t = 0; t < TARGETS; t++) {
+				int target = randomSquare(true, null);
+				for (int c = 1; c < parameters.getColorAmount(); c++) {
+					int value = lineValue(target, Color.getColor(c));
+					if (value > best) {
+						best = value;
+						to = target;
+						color = Color.getColor(c);
+					}
+				}
+			}
+		}
+		int from = randomSquare(false, color);
+		if (from < 0)
+			from = randomSquare(false, null);
+		return new int[] { from, to };
+	}
+
+	/**
+	 * Rates grey square as target of a square of given color: lines which
+	 * would be completed count much more than shorter runs.
+	 * 
+	 * @param index
+	 *            index of the grey square
+	 * @param color
+	 *            color of moved square
+	 * @return rating of the target
+	 */
+	private int lineValue(int index, Color color) {
+		int columns = board.getParameters().getColumns();
+		int x = index / columns;
+		int y = index % columns;
+		int value = 0;
+		int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+		for (int[] d : directions) {
+			int length = 1 + run(x, y, d[0], d[1], color) + run(x, y, -d[0], -d[1], color);
+			value += length >= board.getParameters().getLineLength() ? 100 * length : length;
+		}
+		return value;
+	}
+
+	/**
+	 * Counts squares of given color going from a square in given direction.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @param dx
+	 *            step in rows
+	 * @param dy
+	 *            step in columns
+	 * @param color
+	 *            looked color
+	 * @return amount of squares, the square itself is not counted
+	 */
+	private int run(int x, int y, int dx, int dy, Color color) {
+		int count = 0;
+		while (color(x + (count + 1) * dx, y + (count + 1) * dy) == color)
+			count++;
+		return count;
+	}
+
+	/**
+	 * Chooses random grey square or random square of given color.
+	 * 
+	 * @param grey
+	 *            true to choose grey square
+	 * @param color
+	 *            color of chosen square when grey is false, null for any
+	 *            color except grey
+	 * @return index of the square, -1 if there is no such square
+	 */
+	private int randomSquare(boolean grey, Color color) {
+		GameParameters parameters = board.getParameters();
+		int size = parameters.getRows() * parameters.getColumns();
+		int first = random.nextInt(size);
+		for (int i = 0; i < size; i++) {
+			int index = (first + i) % size;
+			Color found = color(index / parameters.getColumns(), index % parameters.getColumns());
+			if (grey ? found == Color.GREY : found != Color.GREY && (color == null || found == color))
+				return index;
+		}
+		return -1;
+	}
+
+	/**
+	 * Getting color of a square of {@link #legacy}, null outside of the board.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @return color of the square
+	 */
+	private Color color(int x, int y) {
+		GameParameters parameters = board.getParameters();
+		if (x < 0 || y < 0 || x >= parameters.getRows() || y >= parameters.getColumns())
+			return null;
+		return legacy.getColor(x, y);
+	}
+
+	/**
+	 * Describes both engines for difference report.
+	 * 
+	 * @return parameters and colors of squares of both engines side by side
+	 */
+	private String describe() {
+		GameParameters parameters = board.getParameters();
+		StringBuilder text = new StringBuilder();
+		text.append(parameters.getRows()).append('x').append(parameters.getColumns()).append(", line ")
+				.append(parameters.getLineLength()).append(", colors ").append(parameters.getColorAmount())
+				.append(", spawn ").append(parameters.getSpawnCount()).append("\nboard / legacy");
+		for (int x = 0; x < parameters.getRows(); x++) {
+			text.append('\n');
+			for (int y = 0; y < parameters.getColumns(); y++)
+				text.append(board.getColor(board.index(x, y)).getId());
+			text.append("   ");
+			for (int y = 0; y < parameters.getColumns(); y++)
+				text.append(legacy.getColor(x, y).getId());
+		}
+		return text.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#colorChanged(int,
+	 * squared.game.Model.Color)
+	 */
+	@Override
+	public void colorChanged(int index, Color color) {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#lineCleared(int,
+	 * squared.game.Model.Color, long)
+	 */
+	@Override
+	public void lineCleared(int length, Color color, long points) {
+		moveLines++;
+		lines++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#gameOver(long)
+	 */
+	@Override
+	public void gameOver(long finalScore) {
+		gamesOver++;
+	}
+
+}
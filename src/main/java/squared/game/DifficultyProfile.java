@@ -0,0 +1,174 @@
+package squared.game;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Parameters of easy, medium and hard games chosen in options: amount of
+ * colors, length of removed line and amount of squares added every turn.
+ * Profile is read from a properties file written by {@link DifficultyTuner},
+ * with keys like easy.colors, easy.lineLength and easy.spawnCount. Values
+ * missing in the file keep classic difficulty: 5, 7 or 10 colors with line
+ * length and spawn count of the board.
+ * 
+ * @author bartl_000
+ *
+ */
+public class DifficultyProfile {
+
+	/**
+	 * Name of the file read when system property squared.difficulty is not
+	 * set.
+	 */
+	public static final String FILE = "difficulty.properties";
+
+	/**
+	 * Number of easy level.
+	 */
+	public static final int EASY = 0;
+
+	/**
+	 * Number of medium level.
+	 */
+	public static final int MEDIUM = 1;
+
+	/**
+	 * Number of hard level.
+	 */
+	public static final int HARD = 2;
+
+	/**
+	 * Names of levels used in keys of the file.
+	 */
+	public static final String[] LEVELS = { "easy", "medium", "hard" };
+
+	/**
+	 * Amounts of colors of classic levels.
+	 */
+	private static final int[] CLASSICCOLORS = { 5, 7, 10 };
+
+	/**
+	 * Amounts of colors of levels.
+	 */
+	private final int[] colors = CLASSICCOLORS.clone();
+
+	/**
+	 * Lengths of removed lines of levels, 0 keeps length of the board.
+	 */
+	private final int[] lineLengths = new int[LEVELS.length];
+
+	/**
+	 * Amounts of squares added every turn, 0 keeps amount of the board.
+	 */
+	private final int[] spawnCounts = new int[LEVELS.length];
+
+	/**
+	 * Loads profile from file named by system property squared.difficulty or
+	 * from {@link #FILE}.
+	 * 
+	 * @return loaded profile, classic profile when there is no file
+	 */
+	public static DifficultyProfile load() {
+		return load(System.getProperty("squared.difficulty", FILE));
+	}
+
+	/**
+	 * Loads profile from a file.
+	 * 
+	 * @param file
+	 *            name of the file
+	 * @return loaded profile, values missing or wrong in the file are classic
+	 * @exception IOException
+	 *                - file could not be read
+	 * @exception NumberFormatException
+	 *                - value is not a number
+	 */
+	public static DifficultyProfile load(String file) {
+		DifficultyProfile profile = new DifficultyProfile();
+		Properties properties = new Properties();
+		try (InputStream input = new FileInputStream(file)) {
+			properties.load(input);
+		} catch (FileNotFoundException e) {
+			return profile;
+		} catch (IOException e) {
+			System.out.println("[DIFFICULTY]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+			return profile;
+		}
+		for (int level = 0; level < LEVELS.length; level++) {
+			try {
+				profile.set(level, Integer.parseInt(properties.getProperty(LEVELS[level] + ".colors", "0")),
+						Integer.parseInt(properties.getProperty(LEVELS[level] + ".lineLength", "0")),
+						Integer.parseInt(properties.getProperty(LEVELS[level] + ".spawnCount", "0")));
+			} catch (NumberFormatException e) {
+				System.out.println("[DIFFICULTY]NUMBER FORMAT EXCEPTION: " + e.getMessage());
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Sets parameters of a level.
+	 * 
+	 * @param level
+	 *            {@link #EASY}, {@link #MEDIUM} or {@link #HARD}
+	 * @param colorAmount
+	 *            amount of colors, 0 keeps classic amount
+	 * @param lineLength
+	 *            length of removed line, 0 keeps length of the board
+	 * @param spawnCount
+	 *            amount of squares added every turn, 0 keeps amount of the
+	 *            board
+	 */
+	public void set(int level, int colorAmount, int lineLength, int spawnCount) {
+		colors[level] = colorAmount > 1 && colorAmount <= GameParameters.MAXCOLORS ? colorAmount
+				: CLASSICCOLORS[level];
+		lineLengths[level] = lineLength > 1 ? lineLength : 0;
+		spawnCounts[level] = spawnCount > 0 && spawnCount <= GameParameters.MAXSPAWNCOUNT ? spawnCount : 0;
+	}
+
+	/**
+	 * Creates parameters of a level for a board.
+	 * 
+	 * @param parameters
+	 *            parameters of the board
+	 * @param level
+	 *            {@link #EASY}, {@link #MEDIUM} or {@link #HARD}
+	 * @return parameters with size of the board and difficulty of the level
+	 */
+	public GameParameters apply(GameParameters parameters, int level) {
+		return parameters.withDifficulty(lineLengths[level] > 0 ? lineLengths[level] : parameters.getLineLength(),
+				colors[level], spawnCounts[level] > 0 ? spawnCounts[level] : parameters.getSpawnCount());
+	}
+
+	/**
+	 * Saves profile to a file.
+	 * 
+	 * @param file
+	 *            name of the file
+	 * @param comment
+	 *            comment written at the beginning of the file, can be null
+	 * @exception IOException
+	 *                - file could not be written
+	 */
+	public void save(String file, String comment) {
+		Properties properties = new Properties();
+		for (int level = 0; level < LEVELS.length; level++) {
+			properties.setProperty(LEVELS[level] + ".colors", Integer.toString(colors[level]));
+			if (lineLengths[level] > 0)
+				properties.setProperty(LEVELS[level] + ".lineLength", Integer.toString(lineLengths[level]));
+			if (spawnCounts[level] > 0)
+				properties.setProperty(LEVELS[level] + ".spawnCount", Integer.toString(spawnCounts[level]));
+		}
+		try (OutputStream output = new FileOutputStream(file)) {
+			properties.store(output, comment);
+		} catch (IOException e) {
+			System.out.println("[DIFFICULTY]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,417 @@
+package squared.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Chooses parameters of difficulty levels by simulation. Sweeps amount of
+ * colors, length of removed line and amount of squares added every turn on
+ * the board given by system properties, plays many headless games of every
+ * configuration on all processors and picks for every level the
+ * configuration whose median game length is the closest to its target. Levels
+ * are picked in order and every level gets a configuration other than the
+ * previous level whose median game length lies on the same side of the
+ * previous median as its target lies of the previous target, so shorter
+ * targets always give shorter games. A warning is printed when no such
+ * configuration exists and the closest one is taken. The chosen levels are
+ * saved as a {@link DifficultyProfile} loaded by the game.
+ * 
+ * Games are played by a simple player which, in every turn, looks at a few
+ * random squares and moves one of them to the target making the longest
+ * lines of its color, and makes a random move from time to time. Such player
+ * is much weaker than people, so targets are relative: a level twice as long
+ * for it is about twice as long for a person.
+ * 
+ * @author bartl_000
+ *
+ */
+public class DifficultyTuner {
+
+	/**
+	 * Target median game lengths of easy, medium and hard level in moves,
+	 * used when none are given.
+	 */
+	private static final int[] DEFAULT_TARGETS = { 120, 60, 30 };
+
+	/**
+	 * Amount of games of every configuration when none is given.
+	 */
+	private static final int DEFAULT_GAMES = 200;
+
+	/**
+	 * The lowest amount of colors swept, lower amounts give no points.
+	 * 
+	 * @see {@link Board#linePoints(int, int)}
+	 */
+	private static final int MINCOLORS = 5;
+
+	/**
+	 * The lowest and the highest swept line length.
+	 */
+	private static final int MINLINE = 3, MAXLINE = 7;
+
+	/**
+	 * The highest swept amount of squares added every turn.
+	 */
+	private static final int MAXSPAWN = 5;
+
+	/**
+	 * Amount of squares looked at by the player in every turn.
+	 */
+	private static final int SAMPLES = 8;
+
+	/**
+	 * One in that many moves of the player is random.
+	 */
+	private static final int MISTAKES = 4;
+
+	/**
+	 * The longest simulated game, longer games are stopped.
+	 */
+	private static final int MAXMOVES = 2000;
+
+	/**
+	 * Private constructor, class only holds static methods.
+	 */
+	private DifficultyTuner() {
+	}
+
+	/**
+	 * Sweeps configurations, prints results and saves chosen profile.
+	 * 
+	 * @param args
+	 *            target median game lengths of easy, medium and hard level,
+	 *            amount of games of every configuration, amount of threads
+	 *            and name of the profile file
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for results
+	 * @exception ExecutionException
+	 *                - simulation failed
+	 */
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		int[] targets = DEFAULT_TARGETS.clone();
+		for (int i = 0; i < targets.length && i < args.length; i++)
+			targets[i] = Integer.parseInt(args[i]);
+		int games = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_GAMES;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		String file = args.length > 5 ? args[5] : DifficultyProfile.FILE;
+		GameParameters board = GameParameters.fromSystemProperties();
+		int maxLine = Math.min(MAXLINE, Math.max(board.getRows(), board.getColumns()));
+
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>();
+		GameRandom seeds = new GameRandom(games);
+		for (int colors = MINCOLORS; colors <= GameParameters.MAXCOLORS; colors++)
+			for (int line = MINLINE; line <= maxLine; line++)
+				for (int spawn = 1; spawn <= MAXSPAWN; spawn++) {
+					final GameParameters parameters = board.withDifficulty(line, colors, spawn);
+					final int count = games;
+					final long seed = seeds.nextLong();
+					futures.add(executor.submit(new Callable<Result>() {
+
+						@Override
+						public Result call() {
+							return simulate(parameters, count, seed);
+						}
+					}));
+				}
+		ArrayList<Result> results = new ArrayList<Result>(futures.size());
+		long moves = 0;
+		for (Future<Result> future : futures) {
+			Result result = future.get();
+			results.add(result);
+			moves += result.moves;
+		}
+		executor.shutdown();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		for (Result result : results)
+			System.out.println(result);
+		System.out.println(String.format("%d configurations, %d games, %d moves, %d threads: %.1f s, %.0f moves/s",
+				results.size(), (long) results.size() * games, moves, threads, seconds, moves / seconds));
+
+		DifficultyProfile profile = new DifficultyProfile();
+		StringBuilder comment = new StringBuilder("Median game lengths on ").append(board.getRows()).append('x')
+				.append(board.getColumns()).append(", ").append(games).append(" games of every configuration:");
+		Result previous = null;
+		for (int level = 0; level < targets.length; level++) {
+			Result best = null;
+			for (Result result : results)
+				if ((previous == null || follows(result, previous, targets[level] - targets[level - 1]))
+						&& (best == null || result.distance(targets[level]) < best.distance(targets[level])))
+					best = result;
+			if (best == null) {
+				for (Result result : results)
+					if (best == null || result.distance(targets[level]) < best.distance(targets[level]))
+						best = result;
+				System.out.println("WARNING: no configuration of " + DifficultyProfile.LEVELS[level]
+						+ " is ordered after " + DifficultyProfile.LEVELS[level - 1] + ", the closest one collides");
+			}
+			previous = best;
+			GameParameters chosen = best.parameters;
+			profile.set(level, chosen.getColorAmount(), chosen.getLineLength(), chosen.getSpawnCount());
+			comment.append(' ').append(DifficultyProfile.LEVELS[level]).append(' ').append(best.medianMoves)
+					.append(" (target ").append(targets[level]).append(')');
+			System.out.println(DifficultyProfile.LEVELS[level] + ": " + best);
+		}
+		profile.save(file, comment.toString());
+		System.out.println("Profile saved to " + file);
+	}
+
+	/**
+	 * Checks if configuration can follow configuration of the previous level.
+	 * 
+	 * @param result
+	 *            games of checked configuration
+	 * @param previous
+	 *            games of configuration of the previous level
+	 * @param direction
+	 *            target of the level minus target of the previous level
+	 * @return true if configurations differ and median of checked one is
+	 *         longer for positive direction and shorter for negative one
+	 */
+	private static boolean follows(Result result, Result previous, int direction) {
+		if (result == previous)
+			return false;
+		if (direction > 0)
+			return result.medianMoves > previous.medianMoves;
+		if (direction < 0)
+			return result.medianMoves < previous.medianMoves;
+		return true;
+	}
+
+	/**
+	 * Plays games of one configuration.
+	 * 
+	 * @param parameters
+	 *            parameters of the games
+	 * @param games
+	 *            amount of games
+	 * @param seed
+	 *            seed of the games and of the player
+	 * @return lengths and scores of the games
+	 */
+	private static Result simulate(GameParameters parameters, int games, long seed) {
+		GameRandom random = new GameRandom(seed);
+		int size = parameters.getRows() * parameters.getColumns();
+		int[] reachable = new int[size];
+		int[] lengths = new int[games];
+		long[] scores = new long[games];
+		long moves = 0;
+		for (int game = 0; game < games; game++) {
+			Board board = new Board(parameters, random.split());
+			GameEnding ending = new GameEnding();
+			board.setListener(ending);
+			board.addRandomSquares(3);
+			int played = 0;
+			while (!ending.isOver() && board.getFreeCount() > 0 && played < MAXMOVES) {
+				int move = chooseMove(board, random, reachable);
+				if (move < 0 || !board.move(move / size, move % size))
+					break;
+				played++;
+			}
+			lengths[game] = played;
+			scores[game] = ending.getScore(board);
+			moves += played;
+		}
+		return new Result(parameters, lengths, scores, moves);
+	}
+
+	/**
+	 * Chooses move of the simulated player.
+	 * 
+	 * @param board
+	 *            board of the game
+	 * @param random
+	 *            generator of choices
+	 * @param reachable
+	 *            array for targets of a square, as long as the board
+	 * @return index of moved square multiplied by size of the board plus
+	 *         index of target square, -1 if no square can move
+	 */
+	private static int chooseMove(Board board, GameRandom random, int[] reachable) {
+		GameParameters parameters = board.getParameters();
+		int size = parameters.getRows() * parameters.getColumns();
+		boolean mistake = random.nextInt(MISTAKES) == 0;
+		int best = -1;
+		int bestValue = -1;
+		int looked = 0;
+		int offset = random.nextInt(size);
+		for (int i = 0; i < size && looked < SAMPLES; i++) {
+			int from = (offset + i) % size;
+			if (board.isFree(from))
+				continue;
+			int count = board.findReachable(from, reachable);
+			if (count == 0)
+				continue;
+			looked++;
+			if (mistake)
+				return from * size + reachable[random.nextInt(count)];
+			Model.Color color = board.getColor(from);
+			for (int t = 0; t < count; t++) {
+				int value = lineValue(board, from, reachable[t], color);
+				if (value > bestValue) {
+					bestValue = value;
+					best = from * size + reachable[t];
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Rates target of moved square: lines which would be removed count much
+	 * more than shorter runs.
+	 * 
+	 * @param board
+	 *            board of the game
+	 * @param from
+	 *            index of moved square, not counted in runs
+	 * @param to
+	 *            index of target square
+	 * @param color
+	 *            color of moved square
+	 * @return rating of the target
+	 */
+	private static int lineValue(Board board, int from, int to, Model.Color color) {
+		int columns = board.getParameters().getColumns();
+		int x = to / columns;
+		int y = to % columns;
+		int value = 0;
+		int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+		for (int[] d : directions) {
+			int length = 1 + run(board, from, x, y, d[0], d[1], color) + run(board, from, x, y, -d[0], -d[1], color);
+			value += length >= board.getParameters().getLineLength() ? 100 * length : length * length;
+		}
+		return value;
+	}
+
+	/**
+	 * Counts squares of given color going from a square in given direction.
+	 * 
+	 * @param board
+	 *            board of the game
+	 * @param from
+	 *            index of moved square, which ends the run
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @param dx
+	 *            step in rows
+	 * @param dy
+	 *            step in columns
+	 * @param color
+	 *            looked color
+	 * @return amount of squares, the square itself is not counted
+	 */
+	private static int run(Board board, int from, int x, int y, int dx, int dy, Model.Color color) {
+		GameParameters parameters = board.getParameters();
+		int count = 0;
+		for (x += dx, y += dy; x >= 0 && x < parameters.getRows() && y >= 0
+				&& y < parameters.getColumns(); x += dx, y += dy) {
+			int index = x * parameters.getColumns() + y;
+			if (index == from || board.getColor(index) != color)
+				break;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Lengths and scores of simulated games of one configuration.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	private static class Result {
+
+		/**
+		 * Parameters of the games.
+		 */
+		private final GameParameters parameters;
+
+		/**
+		 * Median amount of moves of a game.
+		 */
+		private final int medianMoves;
+
+		/**
+		 * Amount of moves below which 90% of games ended.
+		 */
+		private final int moves90;
+
+		/**
+		 * Median score.
+		 */
+		private final long medianScore;
+
+		/**
+		 * Amount of games stopped after {@link DifficultyTuner#MAXMOVES}.
+		 */
+		private final int stopped;
+
+		/**
+		 * Amount of moves of all games.
+		 */
+		private final long moves;
+
+		/**
+		 * Constructor that summarizes games, sorts given arrays.
+		 * 
+		 * @param parameters
+		 *            parameters of the games
+		 * @param lengths
+		 *            amounts of moves of games
+		 * @param scores
+		 *            scores of games
+		 * @param moves
+		 *            amount of moves of all games
+		 */
+		private Result(GameParameters parameters, int[] lengths, long[] scores, long moves) {
+			this.parameters = parameters;
+			this.moves = moves;
+			Arrays.sort(lengths);
+			Arrays.sort(scores);
+			medianMoves = lengths[lengths.length / 2];
+			moves90 = lengths[lengths.length * 9 / 10];
+			medianScore = scores[scores.length / 2];
+			int count = 0;
+			for (int length : lengths)
+				if (length >= MAXMOVES)
+					count++;
+			stopped = count;
+		}
+
+		/**
+		 * Measures how far median game length is from a target, the same
+		 * for the same ratio in both directions.
+		 * 
+		 * @param target
+		 *            target median game length
+		 * @return distance, 0 when median equals target
+		 */
+		private double distance(int target) {
+			return Math.abs(Math.log((medianMoves + 1.0) / (target + 1.0)));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("colors %2d, line %d, spawn %d: median %4d moves, 90%% %4d moves, median score %5d%s",
+					parameters.getColorAmount(), parameters.getLineLength(), parameters.getSpawnCount(),
+					medianMoves, moves90, medianScore, stopped > 0 ? ", " + stopped + " stopped" : "");
+		}
+	}
+
+}
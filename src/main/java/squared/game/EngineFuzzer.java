@@ -0,0 +1,861 @@
+package squared.game;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import squared.game.Model.Color;
+
+/**
+ * Fuzzer of game logic. Plays random games with random parameters, passing
+ * clicks on random squares to the same {@link Selection} which handles clicks
+ * of {@link Model}, adding squares the way {@link TimeAttackClock} does and
+ * sending illegal moves straight to {@link Board#move(int, int)}. After every
+ * step checks that selection gives the expected result of the click, that
+ * bitmap of grey squares matches colors, that hash matches colors, that
+ * colors of the next squares are used in the game, that no line survives and
+ * that score grows by points of cleared lines. Once in {@link #CROSSCHECKS}
+ * clicks also checks that selection, {@link Board#findPath(int, int)},
+ * {@link Board#findShortestPath(int, int, int[])} and
+ * {@link Board#findReachable(int, int[])} agree with plain breadth first
+ * search, which is much slower than the board itself. Runs one fuzzer per
+ * processor and stops at the first failure, printing everything needed to
+ * repeat it.
+ * 
+ * Fuzzer keeps its own copy of colors, free count and hash, updated from
+ * {@link BoardListener#colorChanged(int, Color)}. In fast mode steps check
+ * only squares changed by the step against this copy and lines going through
+ * them, the whole board is checked once in {@link #FULLCHECKS} checks and
+ * reference search runs once in {@link #FASTCROSSCHECKS} clicks, so most
+ * checks do not grow with size of the board.
+ * 
+ * @author bartl_000
+ *
+ */
+public class EngineFuzzer implements BoardListener, SelectionListener {
+
+	/**
+	 * Time of fuzzing in seconds when none is given.
+	 */
+	private static final int DEFAULT_SECONDS = 10;
+
+	/**
+	 * Biggest size of usual boards, bigger boards up to
+	 * {@link GameParameters#MAXSIZE} are chosen once in {@link #BIGBOARDS}
+	 * games.
+	 */
+	private static final int SMALLSIZE = 12;
+
+	/**
+	 * One in that many games is played on a big board.
+	 */
+	private static final int BIGBOARDS = 8;
+
+	/**
+	 * Game is abandoned after that many moves, some games never end.
+	 */
+	private static final int MAXMOVES = 5000;
+
+	/**
+	 * Game is abandoned after that many clicks without a move, on some boards
+	 * no square can be moved.
+	 */
+	private static final int IDLECLICKS = 500;
+
+	/**
+	 * The smallest amount of colors, scoring of lines gives negative points
+	 * for fewer colors.
+	 */
+	private static final int MINCOLORS = 4;
+
+	/**
+	 * One in that many clicks is replaced with illegal move.
+	 */
+	private static final int ILLEGALMOVES = 8;
+
+	/**
+	 * One in that many clicks is replaced with squares added on a tick of
+	 * the clock of time attack mode.
+	 */
+	private static final int CLOCKSPAWNS = 32;
+
+	/**
+	 * One in that many clicks is checked against reference search.
+	 */
+	private static final int CROSSCHECKS = 16;
+
+	/**
+	 * In fast mode one in that many clicks is checked against reference
+	 * search.
+	 */
+	private static final int FASTCROSSCHECKS = 256;
+
+	/**
+	 * In fast mode one in that many checks checks the whole board.
+	 */
+	private static final int FULLCHECKS = 64;
+
+	/**
+	 * Generator of parameters and clicks.
+	 */
+	private final GameRandom random;
+
+	/**
+	 * True if steps check only changed squares.
+	 */
+	private final boolean fast;
+
+	/**
+	 * Board of current game.
+	 */
+	private Board board;
+
+	/**
+	 * Selected square, handling clicks.
+	 */
+	private final Selection selection = new Selection(this);
+
+	/**
+	 * Points of lines cleared since last check.
+	 */
+	private long points;
+
+	/**
+	 * True when current game has ended.
+	 */
+	private boolean over;
+
+	/**
+	 * Queue of squares used by reference search.
+	 */
+	private int[] queue = new int[0];
+
+	/**
+	 * Marks of squares visited by reference search, square is visited when its
+	 * mark equals {@link #mark}.
+	 */
+	private int[] visited = new int[0];
+
+	/**
+	 * Distances of squares visited by reference search from its first square.
+	 */
+	private int[] distance = new int[0];
+
+	/**
+	 * Mark of squares visited during current reference search.
+	 */
+	private int mark;
+
+	/**
+	 * Path found by {@link Board#findShortestPath(int, int, int[])}.
+	 */
+	private int[] path = new int[0];
+
+	/**
+	 * Color ids of squares reported by
+	 * {@link #colorChanged(int, Color)}.
+	 */
+	private int[] colors = new int[0];
+
+	/**
+	 * Hash of {@link #colors}.
+	 */
+	private long hash;
+
+	/**
+	 * Amount of grey squares in {@link #colors}.
+	 */
+	private int freeCount;
+
+	/**
+	 * Indexes of squares changed since the last check, first
+	 * {@link #changedCount} are valid.
+	 */
+	private int[] changed = new int[0];
+
+	/**
+	 * Amount of squares changed since the last check.
+	 */
+	private int changedCount;
+
+	/**
+	 * True for squares in {@link #changed}.
+	 */
+	private boolean[] dirty = new boolean[0];
+
+	/**
+	 * Amount of checks in current game.
+	 */
+	private int checks;
+
+	/**
+	 * Amount of started games.
+	 */
+	private long games;
+
+	/**
+	 * Amount of handled clicks in current game.
+	 */
+	private long clicks;
+
+	/**
+	 * Amount of moves in current game.
+	 */
+	private int moves;
+
+	/**
+	 * Amount of clicks since the last move.
+	 */
+	private int idle;
+
+	/**
+	 * Constructor that sets generator, every step checks the whole board.
+	 * 
+	 * @param random
+	 *            generator of parameters and clicks
+	 */
+	public EngineFuzzer(GameRandom random) {
+		this(random, false);
+	}
+
+	/**
+	 * Constructor that sets generator and mode.
+	 * 
+	 * @param random
+	 *            generator of parameters and clicks
+	 * @param fast
+	 *            true to check only squares changed by a step
+	 */
+	public EngineFuzzer(GameRandom random, boolean fast) {
+		this.random = random;
+		this.fast = fast;
+	}
+
+	/**
+	 * Runs fuzzers for given time.
+	 * 
+	 * @param args
+	 *            time of fuzzing in seconds, seed, random seed is used when
+	 *            none is given, and "fast" to check only changed squares
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for fuzzers
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+		final long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		final boolean fast = args.length > 2 && args[2].equals("fast");
+		final long end = System.nanoTime() + seconds * 1_000_000_000L;
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicLong totalMoves = new AtomicLong();
+		final AtomicLong totalClicks = new AtomicLong();
+		final AtomicLong totalGames = new AtomicLong();
+		Thread[] threads = new Thread[Runtime.getRuntime().availableProcessors()];
+		for (int t = 0; t < threads.length; t++) {
+			final int stream = t;
+			threads[t] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					EngineFuzzer fuzzer = new EngineFuzzer(new GameRandom(seed).split(stream), fast);
+					long moveCount = 0;
+					long clickCount = 0;
+					try {
+						while (System.nanoTime() < end && !failed.get()) {
+							fuzzer.newGame();
+							while (!fuzzer.over && fuzzer.moves < MAXMOVES && fuzzer.idle < IDLECLICKS)
+								fuzzer.step();
+							moveCount += fuzzer.moves;
+							clickCount += fuzzer.clicks;
+						}
+					} catch (IllegalStateException e) {
+						if (failed.compareAndSet(false, true)) {
+							System.out.println("FAILED: " + e.getMessage());
+							System.out.println("seed " + seed + ", stream " + stream + ", game " + fuzzer.games
+									+ ", click " + fuzzer.clicks + ", " + fuzzer.describe());
+						}
+					}
+					totalMoves.addAndGet(moveCount);
+					totalClicks.addAndGet(clickCount);
+					totalGames.addAndGet(fuzzer.games);
+				}
+			}, "fuzzer-" + t);
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		System.out.println(String.format("seed %d%s: %d games, %d clicks, %d moves, %.0f moves/s, %d threads",
+				seed, fast ? " fast" : "", totalGames.get(), totalClicks.get(), totalMoves.get(),
+				totalMoves.get() / (double) seconds, threads.length));
+		if (failed.get())
+			System.exit(1);
+	}
+
+	/**
+	 * Starts new game with random parameters and 3 random squares, like
+	 * {@link Model} does.
+	 */
+	public void newGame() {
+		int limit = random.nextInt(BIGBOARDS) == 0 ? GameParameters.MAXSIZE : SMALLSIZE;
+		GameParameters parameters = new GameParameters(1 + random.nextInt(limit), 1 + random.nextInt(limit),
+				2 + random.nextInt(5), MINCOLORS + random.nextInt(GameParameters.MAXCOLORS - MINCOLORS + 1),
+				1 + random.nextInt(5));
+		board = new Board(parameters, random.split());
+		board.setListener(this);
+		int size = parameters.getRows() * parameters.getColumns();
+		if (queue.length < size) {
+			queue = new int[size];
+			visited = new int[size];
+			distance = new int[size];
+			path = new int[size];
+			mark = 0;
+			colors = new int[size];
+			changed = new int[size];
+			dirty = new boolean[size];
+		}
+		Arrays.fill(colors, 0, size, Color.GREY.getId());
+		Arrays.fill(dirty, 0, size, false);
+		changedCount = 0;
+		hash = 0;
+		freeCount = size;
+		checks = 0;
+		selection.setBoard(board);
+		over = false;
+		points = 0;
+		moves = 0;
+		idle = 0;
+		clicks = 0;
+		games++;
+		board.addRandomSquares(3);
+		check(0);
+	}
+
+	/**
+	 * Makes one random click, illegal move or tick of the clock and checks the
+	 * board.
+	 */
+	public void step() {
+		clicks++;
+		idle++;
+		int size = board.getParameters().getRows() * board.getParameters().getColumns();
+		boolean crossCheck = random.nextInt(fast ? FASTCROSSCHECKS : CROSSCHECKS) == 0;
+		if (random.nextInt(ILLEGALMOVES) == 0) {
+			illegalMove(random.nextInt(size), random.nextInt(size), crossCheck);
+			return;
+		}
+		if (random.nextInt(CLOCKSPAWNS) == 0) {
+			spawnOnClock(crossCheck);
+			return;
+		}
+		if (selection.getSelected() >= 0 && random.nextBoolean() && board.getFreeCount() > 0)
+			click(board.getFreeCell(random.nextInt(board.getFreeCount())), crossCheck);
+		else
+			click(random.nextInt(size), crossCheck);
+	}
+
+	/**
+	 * Passes click on a square to {@link #selection} and checks its result:
+	 * colored square is selected, selected square is unselected when clicked
+	 * again and moved to clicked grey square when path exists.
+	 * 
+	 * @param index
+	 *            index of clicked square
+	 * @param crossCheck
+	 *            true to check path against reference search
+	 */
+	private void click(int index, boolean crossCheck) {
+		int from = selection.getSelected();
+		Selection.Click click = selection.click(index);
+		if (from < 0) {
+			Selection.Click expected = board.isFree(index) ? Selection.Click.IGNORED : Selection.Click.SELECTED;
+			if (click != expected)
+				throw new IllegalStateException(describeClick(index, from) + " is " + click + ", expected " + expected);
+			if (click == Selection.Click.SELECTED && crossCheck)
+				checkReachable(index);
+			return;
+		}
+		if (index == from || !board.isFree(index)) {
+			Selection.Click expected = index == from ? Selection.Click.UNSELECTED : Selection.Click.IGNORED;
+			if (click != expected || selection.getSelected() != (index == from ? -1 : from))
+				throw new IllegalStateException(describeClick(index, from) + " is " + click + ", expected " + expected);
+			return;
+		}
+		if (click != Selection.Click.MOVE && click != Selection.Click.BLOCKED)
+			throw new IllegalStateException(describeClick(index, from) + " is " + click + " on grey square");
+		if (crossCheck) {
+			boolean expected = referencePath(from, index);
+			if ((click == Selection.Click.MOVE) != expected)
+				throw new IllegalStateException(describeClick(index, from) + " is " + click + ", reference search says " + expected);
+			if (board.findPath(from, index) != expected)
+				throw new IllegalStateException("findPath(" + from + ", " + index + ") is " + !expected
+						+ ", reference search says " + expected);
+			checkShortestPath(from, index, expected);
+		}
+		if (click == Selection.Click.BLOCKED) {
+			if (selection.getSelected() != from || board.findPath(from, index))
+				throw new IllegalStateException(describeClick(index, from) + " is blocked, but findPath found path");
+			return;
+		}
+		if (selection.getSelected() >= 0)
+			throw new IllegalStateException(describeClick(index, from) + " moved, but square " + selection.getSelected()
+					+ " stays selected");
+		long score = board.getScore();
+		points = 0;
+		if (!board.move(from, index))
+			throw new IllegalStateException("move(" + from + ", " + index + ") rejected move allowed by "
+					+ "selection");
+		moves++;
+		idle = 0;
+		check(score);
+	}
+
+	/**
+	 * Describes click for failure report, text is built only when click
+	 * failed.
+	 * 
+	 * @param index
+	 *            index of clicked square
+	 * @param from
+	 *            index of square selected before the click
+	 * @return description of the click
+	 */
+	private static String describeClick(int index, int from) {
+		return "click(" + index + ") with " + from + " selected";
+	}
+
+	/**
+	 * Adds squares the way {@link Model#spawnOnClock()} does and checks that
+	 * selected square stays selected unless it was removed.
+	 * 
+	 * @param crossCheck
+	 *            true to check reachable squares against reference search
+	 */
+	private void spawnOnClock(boolean crossCheck) {
+		int selected = selection.getSelected();
+		long score = board.getScore();
+		points = 0;
+		board.addRandomSquares(board.getParameters().getSpawnCount());
+		selection.refresh();
+		if (selected >= 0 && selection.getSelected() != (board.isFree(selected) ? -1 : selected))
+			throw new IllegalStateException("selection of " + selected + " is " + selection.getSelected()
+					+ " after squares were added");
+		check(score);
+		if (crossCheck && selection.getSelected() >= 0)
+			checkReachable(selection.getSelected());
+	}
+
+	/**
+	 * Sends move which must be rejected to the board, moves that turn out to
+	 * be legal are skipped.
+	 * 
+	 * @param from
+	 *            index of moved square
+	 * @param to
+	 *            index of target square
+	 * @param crossCheck
+	 *            true to tell legal moves with reference search, false to
+	 *            tell them with {@link Board#findPath(int, int)}
+	 */
+	private void illegalMove(int from, int to, boolean crossCheck) {
+		if (!board.isFree(from) && board.isFree(to) && (crossCheck ? referencePath(from, to)
+				: board.findPath(from, to)))
+			return;
+		long hash = board.getHash();
+		int freeCount = board.getFreeCount();
+		long score = board.getScore();
+		long preview = board.getPreview();
+		if (board.move(from, to) || board.getHash() != hash || board.getFreeCount() != freeCount
+				|| board.getScore() != score || board.getPreview() != preview)
+			throw new IllegalStateException("illegal move(" + from + ", " + to + ") changed the board");
+	}
+
+	/**
+	 * Checks the board after a move, in fast mode only squares changed by the
+	 * move unless it is time to check the whole board.
+	 * 
+	 * @param score
+	 *            score before the move
+	 */
+	private void check(long score) {
+		if (fast && ++checks % FULLCHECKS != 0)
+			checkChanged(score);
+		else
+			checkAll(score);
+	}
+
+	/**
+	 * Checks squares changed since the last check and lines going through
+	 * them. Free count and hash of the board are compared with these kept by
+	 * the fuzzer, so the whole board is not read.
+	 * 
+	 * @param score
+	 *            score before the move
+	 */
+	private void checkChanged(long score) {
+		int columns = board.getParameters().getColumns();
+		for (int i = 0; i < changedCount; i++) {
+			int index = changed[i];
+			dirty[index] = false;
+			Color color = checkSquare(index);
+			if (color != Color.GREY) {
+				int x = index / columns;
+				int y = index % columns;
+				checkLineThrough(x, y, 0, 1);
+				checkLineThrough(x, y, 1, 0);
+				checkLineThrough(x, y, 1, 1);
+				checkLineThrough(x, y, 1, -1);
+			}
+		}
+		changedCount = 0;
+		if (board.getFreeCount() != freeCount)
+			throw new IllegalStateException("free count is " + board.getFreeCount() + ", board has " + freeCount
+					+ " grey squares");
+		if (board.getHash() != hash)
+			throw new IllegalStateException("hash does not match colors");
+		checkPreviewAndScore(score);
+	}
+
+	/**
+	 * Checks the whole board.
+	 * 
+	 * @param score
+	 *            score before the move
+	 */
+	private void checkAll(long score) {
+		GameParameters parameters = board.getParameters();
+		int rows = parameters.getRows();
+		int columns = parameters.getColumns();
+		for (int i = 0; i < changedCount; i++)
+			dirty[changed[i]] = false;
+		changedCount = 0;
+		int grey = 0;
+		long colorsHash = 0;
+		for (int i = 0; i < rows * columns; i++) {
+			Color color = checkSquare(i);
+			if (color == Color.GREY)
+				grey++;
+			colorsHash ^= Zobrist.key(i, color.getId());
+		}
+		if (board.getFreeCount() != grey || freeCount != grey)
+			throw new IllegalStateException("free count is " + board.getFreeCount() + ", board has " + grey
+					+ " grey squares");
+		if (board.getHash() != colorsHash || hash != colorsHash)
+			throw new IllegalStateException("hash does not match colors");
+		for (int x = 0; x < rows; x++)
+			for (int y = 0; y < columns; y++) {
+				checkLine(x, y, 0, 1);
+				checkLine(x, y, 1, 0);
+				checkLine(x, y, 1, 1);
+				checkLine(x, y, 1, -1);
+			}
+		for (int i = 0; i < grey; i++)
+			if (!board.isFree(board.getFreeCell(i)))
+				throw new IllegalStateException("free cell " + i + " is not grey");
+		checkPreviewAndScore(score);
+	}
+
+	/**
+	 * Checks color of a square: it is used in the game, it was reported to the
+	 * listener and bitmap of grey squares agrees with it.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @return color of the square
+	 */
+	private Color checkSquare(int index) {
+		Color color = board.getColor(index);
+		if (color == null || color.getId() >= board.getParameters().getColorAmount())
+			throw new IllegalStateException("square " + index + " has color " + color);
+		if (board.isFree(index) != (color == Color.GREY))
+			throw new IllegalStateException("square " + index + " is " + color + " but isFree says "
+					+ board.isFree(index));
+		if (colors[index] != color.getId())
+			throw new IllegalStateException("square " + index + " is " + color + " but listener was told "
+					+ Color.getColor(colors[index]));
+		return color;
+	}
+
+	/**
+	 * Checks colors of the next squares and points added to score.
+	 * 
+	 * @param score
+	 *            score before the move
+	 */
+	private void checkPreviewAndScore(long score) {
+		GameParameters parameters = board.getParameters();
+		for (int i = 0; i < Board.PREVIEW; i++) {
+			Color color = board.getPreviewColor(i);
+			if (color == null || color == Color.GREY || color.getId() >= parameters.getColorAmount())
+				throw new IllegalStateException("next square " + i + " has color " + color);
+		}
+		if (!over && board.getScore() != score + points)
+			throw new IllegalStateException("score changed from " + score + " to " + board.getScore()
+					+ ", cleared lines gave " + points);
+	}
+
+	/**
+	 * Checks line going through given square in one direction, starting from
+	 * its first square.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @param dx
+	 *            step in rows
+	 * @param dy
+	 *            step in columns
+	 * @see {@link #checkLine(int, int, int, int)}
+	 */
+	private void checkLineThrough(int x, int y, int dx, int dy) {
+		Color color = color(x, y);
+		while (color(x - dx, y - dy) == color) {
+			x -= dx;
+			y -= dy;
+		}
+		checkLine(x, y, dx, dy);
+	}
+
+	/**
+	 * Checks that line starting at given square is shorter than removed
+	 * lines. Only squares which are not continuation of a line are checked.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @param dx
+	 *            step in rows
+	 * @param dy
+	 *            step in columns
+	 */
+	private void checkLine(int x, int y, int dx, int dy) {
+		Color color = color(x, y);
+		if (color == Color.GREY || color(x - dx, y - dy) == color)
+			return;
+		int length = 0;
+		while (color(x + length * dx, y + length * dy) == color)
+			length++;
+		if (length >= board.getParameters().getLineLength())
+			throw new IllegalStateException("line of " + length + " " + color + " squares survived at " + x + ","
+					+ y);
+	}
+
+	/**
+	 * Getting color of a square, null outside of the board.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @return color of the square
+	 */
+	private Color color(int x, int y) {
+		GameParameters parameters = board.getParameters();
+		if (x < 0 || y < 0 || x >= parameters.getRows() || y >= parameters.getColumns())
+			return null;
+		return board.getColor(board.index(x, y));
+	}
+
+	/**
+	 * Checks that squares found reachable by {@link #selection} with
+	 * {@link Board#findReachable(int, int[])} are the same squares as found by
+	 * reference search.
+	 * 
+	 * @param from
+	 *            index of selected square
+	 */
+	private void checkReachable(int from) {
+		int count = selection.getTargetCount();
+		int expected = search(from, -1) - 1;
+		if (count != expected)
+			throw new IllegalStateException("findReachable(" + from + ") found " + count + " squares, reference "
+					+ "search found " + expected);
+		for (int i = 0; i < count; i++) {
+			int target = selection.getTarget(i);
+			if (visited[target] != mark || target == from || !selection.isReachable(target))
+				throw new IllegalStateException("findReachable(" + from + ") found unreachable square " + target);
+		}
+	}
+
+	/**
+	 * Checks that {@link Board#findShortestPath(int, int, int[])} finds path
+	 * of neighbouring grey squares as long as path found by reference search.
+	 * Must be called right after reference search between the same squares.
+	 * 
+	 * @param from
+	 *            index of colored square
+	 * @param to
+	 *            index of grey square
+	 * @param expected
+	 *            true if reference search found path
+	 */
+	private void checkShortestPath(int from, int to, boolean expected) {
+		int length = board.findShortestPath(from, to, path);
+		String call = "findShortestPath(" + from + ", " + to + ")";
+		if (!expected) {
+			if (length != 0)
+				throw new IllegalStateException(call + " found path, reference search did not");
+			return;
+		}
+		if (length != distance[to] + 1)
+			throw new IllegalStateException(call + " found " + length + " squares, reference search found "
+					+ (distance[to] + 1));
+		int columns = board.getParameters().getColumns();
+		for (int i = 0; i < length; i++) {
+			int square = path[i];
+			if (i == 0 ? square != from : !board.isFree(square))
+				throw new IllegalStateException(call + " goes through square " + square);
+			if (i > 0 && Math.abs(square / columns - path[i - 1] / columns)
+					+ Math.abs(square % columns - path[i - 1] % columns) != 1)
+				throw new IllegalStateException(call + " jumps from " + path[i - 1] + " to " + square);
+		}
+		if (path[length - 1] != to)
+			throw new IllegalStateException(call + " ends at " + path[length - 1]);
+	}
+
+	/**
+	 * Reference path search.
+	 * 
+	 * @param from
+	 *            index of the first square
+	 * @param to
+	 *            index of grey square
+	 * @return true if path exists
+	 */
+	private boolean referencePath(int from, int to) {
+		return search(from, to) < 0;
+	}
+
+	/**
+	 * Plain breadth first search through squares which {@link Board} reports
+	 * as grey.
+	 * 
+	 * @param from
+	 *            index of the first square
+	 * @param to
+	 *            index of searched square, -1 to visit all reachable squares
+	 * @return -1 if searched square was found, otherwise amount of visited
+	 *         squares
+	 */
+	private int search(int from, int to) {
+		if (++mark == 0) {
+			Arrays.fill(visited, 0);
+			mark = 1;
+		}
+		int rows = board.getParameters().getRows();
+		int columns = board.getParameters().getColumns();
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = from;
+		visited[from] = mark;
+		distance[from] = 0;
+		while (head < tail) {
+			int current = queue[head++];
+			if (current == to)
+				return -1;
+			int x = current / columns;
+			int y = current % columns;
+			for (int d = 0; d < 4; d++) {
+				int nx = x + (d == 0 ? -1 : d == 1 ? 1 : 0);
+				int ny = y + (d == 2 ? -1 : d == 3 ? 1 : 0);
+				if (nx < 0 || ny < 0 || nx >= rows || ny >= columns)
+					continue;
+				int neighbour = nx * columns + ny;
+				if (visited[neighbour] != mark && board.getColor(neighbour) == Color.GREY) {
+					visited[neighbour] = mark;
+					distance[neighbour] = distance[current] + 1;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Describes current game for failure report.
+	 * 
+	 * @return parameters, selected square and colors of squares
+	 */
+	private String describe() {
+		GameParameters parameters = board.getParameters();
+		StringBuilder text = new StringBuilder();
+		text.append(parameters.getRows()).append('x').append(parameters.getColumns()).append(", line ")
+				.append(parameters.getLineLength()).append(", colors ").append(parameters.getColorAmount())
+				.append(", spawn ").append(parameters.getSpawnCount()).append(", selected ").append(selection.getSelected())
+				.append(", score ").append(board.getScore());
+		for (int x = 0; x < parameters.getRows(); x++) {
+			text.append('\n');
+			for (int y = 0; y < parameters.getColumns(); y++)
+				text.append(board.getColor(board.index(x, y)).getId());
+		}
+		return text.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#colorChanged(int,
+	 * squared.game.Model.Color)
+	 */
+	@Override
+	public void colorChanged(int index, Color color) {
+		int id = color.getId();
+		hash ^= Zobrist.key(index, colors[index]) ^ Zobrist.key(index, id);
+		if (colors[index] == Color.GREY.getId())
+			freeCount--;
+		if (id == Color.GREY.getId())
+			freeCount++;
+		colors[index] = id;
+		if (!dirty[index]) {
+			dirty[index] = true;
+			changed[changedCount++] = index;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#lineCleared(int,
+	 * squared.game.Model.Color, long)
+	 */
+	@Override
+	public void lineCleared(int length, Color color, long points) {
+		if (length < board.getParameters().getLineLength() || points < 0)
+			throw new IllegalStateException("cleared line of " + length + " " + color + " squares for " + points
+					+ " points");
+		this.points += points;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#gameOver(long)
+	 */
+	@Override
+	public void gameOver(long finalScore) {
+		over = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.SelectionListener#selectionChanged(int, boolean)
+	 */
+	@Override
+	public void selectionChanged(int index, boolean selected) {
+		if (selected && board.isFree(index))
+			throw new IllegalStateException("grey square " + index + " was selected");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.SelectionListener#targetChanged(int, boolean)
+	 */
+	@Override
+	public void targetChanged(int index, boolean reachable) {
+		if (reachable && !board.isFree(index))
+			throw new IllegalStateException("colored square " + index + " was found reachable");
+	}
+
+}
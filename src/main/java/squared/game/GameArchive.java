@@ -0,0 +1,263 @@
+package squared.game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * File holding encoded {@link GameRecord}s one after another, read by
+ * {@link AnalyticsExporter}. Records are only appended. Records are encoded
+ * by the caller and written with one flush to the disk by a background thread,
+ * like {@link GameJournal} does, so the caller never waits for the disk.
+ * Before the first write the archive is checked record by record, reading
+ * only headers of records, and an incomplete record left at its end by a
+ * crash is cut off, so records appended later stay readable.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameArchive {
+
+	/**
+	 * Path of the archive.
+	 */
+	private final Path path;
+
+	/**
+	 * Amount of bytes read at once when the archive is checked, enough for
+	 * header of a record with the longest date.
+	 */
+	private static final int SCANBYTES = 64 * 1024 + 64;
+
+	/**
+	 * True after the end of the archive was checked.
+	 */
+	private boolean checked;
+
+	/**
+	 * Lock guarding {@link #pending}, {@link #closed} and {@link #thread}.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Encoded records waiting for writing.
+	 */
+	private ArrayList<byte[]> pending = new ArrayList<byte[]>();
+
+	/**
+	 * True if archive was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Thread writing records, started with the first append.
+	 */
+	private Thread thread;
+
+	/**
+	 * Constructor that sets name of the archive.
+	 * 
+	 * @param file
+	 *            name of the archive, created with the first record
+	 */
+	public GameArchive(String file) {
+		this.path = Paths.get(file);
+	}
+
+	/**
+	 * Getting path of the archive.
+	 * 
+	 * @return {@link #path}
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Appends record to the archive.
+	 * 
+	 * @param record
+	 *            appended record
+	 * @see {@link #append(List)}
+	 */
+	public void append(GameRecord record) {
+		append(Collections.singletonList(record));
+	}
+
+	/**
+	 * Queues records for writing, they are written in one write and flushed
+	 * to the disk by the writing thread. Records are encoded at once, so they
+	 * can be changed after the call.
+	 * 
+	 * @param records
+	 *            appended records
+	 */
+	public void append(List<GameRecord> records) {
+		if (records.isEmpty())
+			return;
+		byte[] encoded = GameRecord.encode(records);
+		synchronized (lock) {
+			pending.add(encoded);
+			if (thread == null) {
+				closed = false;
+				thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						write();
+					}
+				}, "game-archive");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Writes records waiting for writing and stops writing thread. Records
+	 * appended later start it again.
+	 * 
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for the writing
+	 *                thread
+	 */
+	public void close() {
+		Thread writer;
+		synchronized (lock) {
+			closed = true;
+			lock.notify();
+			writer = thread;
+		}
+		try {
+			if (writer != null)
+				writer.join();
+		} catch (InterruptedException e) {
+			System.out.println("[ARCHIVE]INTERRUPTED EXCEPTION: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes queued records until archive is closed. Records queued while the
+	 * previous ones were written are written together.
+	 */
+	private void write() {
+		boolean stop = false;
+		while (!stop) {
+			ArrayList<byte[]> writing;
+			synchronized (lock) {
+				try {
+					while (!closed && pending.isEmpty())
+						lock.wait();
+				} catch (InterruptedException e) {
+					System.out.println("[ARCHIVE]INTERRUPTED EXCEPTION: " + e.getMessage());
+					closed = true;
+				}
+				writing = pending;
+				pending = new ArrayList<byte[]>();
+				stop = closed;
+				if (stop)
+					thread = null;
+			}
+			if (!writing.isEmpty())
+				write(writing);
+		}
+	}
+
+	/**
+	 * Writes encoded records in one write and flushes them to the disk.
+	 * Synchronized, because writing thread started again after
+	 * {@link #close()} can meet the previous one still writing.
+	 * 
+	 * @param writing
+	 *            encoded records
+	 * @exception IOException
+	 *                - archive could not be written
+	 */
+	private synchronized void write(ArrayList<byte[]> writing) {
+		int length = 0;
+		for (byte[] encoded : writing)
+			length += encoded.length;
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		for (byte[] encoded : writing)
+			buffer.put(encoded);
+		buffer.flip();
+		try (FileChannel output = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			long position = checked ? output.size() : completeLength(output);
+			checked = true;
+			output.truncate(position);
+			while (buffer.hasRemaining())
+				position += output.write(buffer, position);
+			output.force(false);
+		} catch (IOException e) {
+			System.out.println("[ARCHIVE]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Finds length of the complete records at the beginning of the archive.
+	 * Archive is read in pieces of {@link #SCANBYTES}, each holding headers of
+	 * many records, and the next piece starts at the first header which does
+	 * not fit in the previous one.
+	 * 
+	 * @param channel
+	 *            open archive
+	 * @return amount of bytes of complete records
+	 * @exception IOException
+	 *                - archive could not be read
+	 */
+	private static long completeLength(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long position = 0;
+		ByteBuffer piece = read(channel, ByteBuffer.allocate(SCANBYTES), 0);
+		long start = 0;
+		while (position < size) {
+			if (position - start > piece.limit()) {
+				start = position;
+				read(channel, piece, start);
+			}
+			piece.position((int) (position - start));
+			int bytes = GameRecord.peekBytes(piece);
+			if (bytes == 0 && start != position) {
+				start = position;
+				bytes = GameRecord.peekBytes(read(channel, piece, start));
+			}
+			if (bytes <= 0 || position + bytes > size) {
+				System.out.println("[ARCHIVE]DAMAGED RECORD AT BYTE " + position);
+				break;
+			}
+			position += bytes;
+		}
+		return position;
+	}
+
+	/**
+	 * Reads bytes of the archive until buffer is full or archive ends.
+	 * 
+	 * @param channel
+	 *            open archive
+	 * @param buffer
+	 *            buffer to which bytes are read
+	 * @param position
+	 *            position of the first read byte
+	 * @return buffer flipped for reading
+	 * @exception IOException
+	 *                - archive could not be read
+	 */
+	private static ByteBuffer read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0)
+			;
+		buffer.flip();
+		return buffer;
+	}
+
+}
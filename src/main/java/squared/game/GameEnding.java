@@ -0,0 +1,100 @@
+package squared.game;
+
+/**
+ * Listener remembering end of a game played without view and counting its
+ * cleared lines. Board resets its score when it gets full, so score reached
+ * in the game is taken from here after the end.
+ * 
+ * @author bartl_000
+ *
+ */
+class GameEnding implements BoardListener {
+
+	/**
+	 * True when board got full.
+	 */
+	private boolean over;
+
+	/**
+	 * Score reached when board got full.
+	 */
+	private long score;
+
+	/**
+	 * Amount of cleared lines.
+	 */
+	private int lines;
+
+	/**
+	 * Checks if game ended.
+	 * 
+	 * @return {@link #over}
+	 */
+	boolean isOver() {
+		return over;
+	}
+
+	/**
+	 * Getting amount of cleared lines.
+	 * 
+	 * @return {@link #lines}
+	 */
+	int getLines() {
+		return lines;
+	}
+
+	/**
+	 * Getting score reached in the game.
+	 * 
+	 * @param board
+	 *            board of the game
+	 * @return score reached when board got full, current score of the board
+	 *         when game did not end
+	 */
+	long getScore(Board board) {
+		return over ? score : board.getScore();
+	}
+
+	/**
+	 * Forgets end of the game and cleared lines, so the listener can be used
+	 * in the next game.
+	 */
+	void reset() {
+		over = false;
+		score = 0;
+		lines = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#colorChanged(int,
+	 * squared.game.Model.Color)
+	 */
+	@Override
+	public void colorChanged(int index, Model.Color color) {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#lineCleared(int,
+	 * squared.game.Model.Color, long)
+	 */
+	@Override
+	public void lineCleared(int length, Model.Color color, long points) {
+		lines++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#gameOver(long)
+	 */
+	@Override
+	public void gameOver(long finalScore) {
+		over = true;
+		score = finalScore;
+	}
+
+}
@@ -0,0 +1,186 @@
+package squared.game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events emitted during the game. Every event has a
+ * duration and a few fields describing what happened, so recordings can show
+ * game actions next to garbage collection and input/output. When recording is
+ * off, creating and committing events costs almost nothing.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameEvents {
+
+	/**
+	 * Private constructor, class only holds event classes.
+	 */
+	private GameEvents() {
+	}
+
+	/**
+	 * Emitted when player tries to move a square.
+	 */
+	@Name("squared.MoveAttempted")
+	@Label("Move Attempted")
+	@Category("Squared")
+	@Description("Player tried to move a square")
+	public static class MoveAttempted extends Event {
+
+		/**
+		 * X coordinate of moved square.
+		 */
+		@Label("From X")
+		public int fromX;
+
+		/**
+		 * Y coordinate of moved square.
+		 */
+		@Label("From Y")
+		public int fromY;
+
+		/**
+		 * X coordinate of target square.
+		 */
+		@Label("To X")
+		public int toX;
+
+		/**
+		 * Y coordinate of target square.
+		 */
+		@Label("To Y")
+		public int toY;
+
+		/**
+		 * True if square was moved.
+		 */
+		@Label("Moved")
+		public boolean moved;
+	}
+
+	/**
+	 * Emitted after looking for path between squares.
+	 */
+	@Name("squared.PathSearch")
+	@Label("Path Search")
+	@Category("Squared")
+	@Description("Looking for path between two squares")
+	public static class PathSearch extends Event {
+
+		/**
+		 * True if path was found.
+		 */
+		@Label("Found")
+		public boolean found;
+	}
+
+	/**
+	 * Emitted when a line of squares is removed.
+	 */
+	@Name("squared.LinesCleared")
+	@Label("Lines Cleared")
+	@Category("Squared")
+	@Description("Line of squares was removed from the board")
+	public static class LinesCleared extends Event {
+
+		/**
+		 * Amount of removed squares.
+		 */
+		@Label("Length")
+		public int length;
+
+		/**
+		 * Color of removed squares.
+		 */
+		@Label("Color")
+		public String color;
+
+		/**
+		 * Points added to score.
+		 */
+		@Label("Points")
+		public long points;
+	}
+
+	/**
+	 * Emitted after adding random squares to the board.
+	 */
+	@Name("squared.SquaresSpawned")
+	@Label("Squares Spawned")
+	@Category("Squared")
+	@Description("Random squares were added to the board")
+	public static class SquaresSpawned extends Event {
+
+		/**
+		 * Amount of squares which should be added.
+		 */
+		@Label("Requested")
+		public int requested;
+
+		/**
+		 * Amount of squares which were added.
+		 */
+		@Label("Spawned")
+		public int spawned;
+	}
+
+	/**
+	 * Emitted when board is full and game ends.
+	 */
+	@Name("squared.GameOver")
+	@Label("Game Over")
+	@Category("Squared")
+	@Description("Board was full and game ended")
+	public static class GameOver extends Event {
+
+		/**
+		 * Final score.
+		 */
+		@Label("Score")
+		public long score;
+	}
+
+	/**
+	 * Emitted after highscores are saved to file.
+	 */
+	@Name("squared.HighscorePersisted")
+	@Label("Highscore Persisted")
+	@Category("Squared")
+	@Description("Highscores were saved to file")
+	public static class HighscorePersisted extends Event {
+
+		/**
+		 * Score which was added, 0 when file was reset.
+		 */
+		@Label("Score")
+		public long score;
+
+		/**
+		 * Amount of scores saved in file.
+		 */
+		@Label("Entries")
+		public int entries;
+	}
+
+	/**
+	 * Emitted after scene is loaded from FXML file.
+	 */
+	@Name("squared.ScreenLoaded")
+	@Label("Screen Loaded")
+	@Category("Squared")
+	@Description("Scene was loaded from FXML file")
+	public static class ScreenLoaded extends Event {
+
+		/**
+		 * Name of loaded FXML file.
+		 */
+		@Label("Screen")
+		public String screen;
+	}
+
+}
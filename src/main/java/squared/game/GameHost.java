@@ -0,0 +1,534 @@
+package squared.game;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless host running many independent games at once, for instance for a
+ * tournament. Every session has its own {@link Board} and its own queue of
+ * move commands, and is run by its own thread: a virtual thread when Java
+ * supports them, a platform thread otherwise. Sessions share nothing but
+ * counters of the host. New sessions are admitted only while amount of
+ * sessions and estimated memory of all sessions stay under limits.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameHost {
+
+	/**
+	 * Amount of commands which can wait in a session queue.
+	 */
+	private static final int MAILBOX = 4;
+
+	/**
+	 * Estimated amount of bytes of a session without its board.
+	 */
+	private static final int SESSIONBYTES = 96 + 16 + 4 * MAILBOX + MAILBOX * 24;
+
+	/**
+	 * Amount of tries to find a possible random move.
+	 */
+	private static final int MOVETRIES = 30;
+
+	/**
+	 * Stack size of platform threads used when virtual threads are not
+	 * supported.
+	 */
+	private static final long PLATFORMSTACK = 256 * 1024;
+
+	/**
+	 * Parameters of games played in sessions.
+	 */
+	private final GameParameters parameters;
+
+	/**
+	 * Biggest amount of sessions.
+	 */
+	private final int maxSessions;
+
+	/**
+	 * Biggest amount of bytes used by all sessions.
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Executor starting one thread for every session.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * True if sessions are run on virtual threads.
+	 */
+	private final boolean virtual;
+
+	/**
+	 * Open sessions indexed with their ids.
+	 */
+	private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+
+	/**
+	 * Amount of open sessions.
+	 */
+	private final AtomicInteger sessionCount = new AtomicInteger();
+
+	/**
+	 * Estimated amount of bytes used by all sessions.
+	 */
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	/**
+	 * Id of the next session.
+	 */
+	private final AtomicLong nextId = new AtomicLong();
+
+	/**
+	 * Amount of sessions which were not admitted.
+	 */
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Amount of played moves in all sessions.
+	 */
+	private final LongAdder moves = new LongAdder();
+
+	/**
+	 * Time between sending a command and playing it in nanoseconds.
+	 */
+	private final Histogram moveLatency = new Histogram("host.move");
+
+	/**
+	 * Constructor that sets limits and creates executor of sessions.
+	 * 
+	 * @param parameters
+	 *            parameters of games played in sessions
+	 * @param maxSessions
+	 *            biggest amount of sessions
+	 * @param maxBytes
+	 *            biggest amount of bytes used by all sessions
+	 */
+	public GameHost(GameParameters parameters, int maxSessions, long maxBytes) {
+		this.parameters = parameters;
+		this.maxSessions = maxSessions;
+		this.maxBytes = maxBytes;
+		ExecutorService virtualExecutor = newVirtualExecutor();
+		virtual = virtualExecutor != null;
+		executor = virtual ? virtualExecutor : Executors.newCachedThreadPool(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(null, runnable, "session", PLATFORMSTACK);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Creates executor starting virtual threads. Method is looked up by
+	 * reflection, because game is built for Java 8.
+	 * 
+	 * @return new executor, null when virtual threads are not supported
+	 */
+	private static ExecutorService newVirtualExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Opens new session with a new game, if limits allow it.
+	 * 
+	 * @param seed
+	 *            seed of the random generator of the session
+	 * @return new session, null when session was not admitted
+	 */
+	public Session open(long seed) {
+		Board board = new Board(parameters, new GameRandom(seed));
+		long bytes = SESSIONBYTES + board.estimateBytes();
+		if (sessionCount.incrementAndGet() > maxSessions) {
+			sessionCount.decrementAndGet();
+			rejected.increment();
+			return null;
+		}
+		if (usedBytes.addAndGet(bytes) > maxBytes) {
+			usedBytes.addAndGet(-bytes);
+			sessionCount.decrementAndGet();
+			rejected.increment();
+			return null;
+		}
+		board.addRandomSquares(3);
+		Session session = new Session(nextId.incrementAndGet(), board, bytes);
+		sessions.put(session.id, session);
+		executor.execute(session);
+		return session;
+	}
+
+	/**
+	 * Getting open session.
+	 * 
+	 * @param id
+	 *            id of the session
+	 * @return session with given id, null when it is not open
+	 */
+	public Session getSession(long id) {
+		return sessions.get(id);
+	}
+
+	/**
+	 * Closes all sessions and waits until their threads end.
+	 * 
+	 * @param timeoutMillis
+	 *            the longest time of waiting
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting
+	 */
+	public void shutdown(long timeoutMillis) {
+		for (Session session : new ArrayList<Session>(sessions.values()))
+			session.close();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			System.out.println("[HOST]INTERRUPTED EXCEPTION: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checking if sessions are run on virtual threads.
+	 * 
+	 * @return {@link #virtual}
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Getting amount of open sessions.
+	 * 
+	 * @return amount of sessions
+	 */
+	public int getSessionCount() {
+		return sessionCount.get();
+	}
+
+	/**
+	 * Getting estimated amount of bytes used by all sessions.
+	 * 
+	 * @return amount of bytes
+	 */
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	/**
+	 * Getting amount of sessions which were not admitted.
+	 * 
+	 * @return amount of sessions
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Getting amount of played moves in all sessions.
+	 * 
+	 * @return amount of moves
+	 */
+	public long getMoves() {
+		return moves.sum();
+	}
+
+	/**
+	 * Getting histogram of time between sending a command and playing it.
+	 * 
+	 * @return {@link #moveLatency}
+	 */
+	public Histogram getMoveLatency() {
+		return moveLatency;
+	}
+
+	/**
+	 * One game played on its own thread, driven by commands sent to its queue.
+	 * When board fills up new game is started.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	public class Session implements Runnable {
+
+		/**
+		 * Id of the session.
+		 */
+		private final long id;
+
+		/**
+		 * Game played in the session.
+		 */
+		private final Board board;
+
+		/**
+		 * Generator of random moves, independent of the game generator.
+		 */
+		private final GameRandom moveRandom;
+
+		/**
+		 * Commands waiting for playing.
+		 */
+		private final ArrayBlockingQueue<Command> mailbox = new ArrayBlockingQueue<Command>(MAILBOX);
+
+		/**
+		 * Estimated amount of bytes counted in {@link GameHost#usedBytes}.
+		 */
+		private long accountedBytes;
+
+		/**
+		 * Amount of played moves.
+		 */
+		private volatile long playedMoves;
+
+		/**
+		 * Amount of finished games.
+		 */
+		private volatile int games;
+
+		/**
+		 * Score of current game.
+		 */
+		private volatile long score;
+
+		/**
+		 * True if session was closed.
+		 */
+		private volatile boolean closed;
+
+		/**
+		 * Thread running the session.
+		 */
+		private volatile Thread runner;
+
+		/**
+		 * Constructor that sets all variables.
+		 * 
+		 * @param id
+		 *            id of the session
+		 * @param board
+		 *            game played in the session
+		 * @param accountedBytes
+		 *            estimated amount of bytes of the session
+		 */
+		Session(long id, Board board, long accountedBytes) {
+			this.id = id;
+			this.board = board;
+			this.moveRandom = board.getRandom().split();
+			this.accountedBytes = accountedBytes;
+		}
+
+		/**
+		 * Sends move command without waiting.
+		 * 
+		 * @param from
+		 *            index of moved square
+		 * @param to
+		 *            index of target square
+		 * @return true if command was queued, false if queue is full, session
+		 *         is closed or index is out of the board
+		 */
+		public boolean submit(int from, int to) {
+			int size = parameters.getRows() * parameters.getColumns();
+			if (from < 0 || from >= size || to < 0 || to >= size)
+				return false;
+			return offer(new Command(from, to, System.nanoTime()));
+		}
+
+		/**
+		 * Sends command playing random possible move without waiting.
+		 * 
+		 * @return true if command was queued, false if queue is full or
+		 *         session is closed
+		 */
+		public boolean submitRandom() {
+			return offer(new Command(-1, -1, System.nanoTime()));
+		}
+
+		/**
+		 * Queues command without waiting.
+		 * 
+		 * @param command
+		 *            queued command
+		 * @return true if command was queued, false if queue is full or
+		 *         session is closed
+		 */
+		private boolean offer(Command command) {
+			return !closed && mailbox.offer(command);
+		}
+
+		/**
+		 * Closes the session, commands left in the queue are not played.
+		 */
+		public void close() {
+			closed = true;
+			Thread thread = runner;
+			if (thread != null)
+				thread.interrupt();
+		}
+
+		/**
+		 * Plays commands until session is closed, then releases its place in
+		 * the host.
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			runner = Thread.currentThread();
+			try {
+				while (!closed) {
+					Command command = mailbox.take();
+					play(command);
+					moveLatency.recordSince(command.submitted);
+				}
+			} catch (InterruptedException e) {
+				closed = true;
+			} finally {
+				sessions.remove(id);
+				sessionCount.decrementAndGet();
+				usedBytes.addAndGet(-accountedBytes);
+			}
+		}
+
+		/**
+		 * Plays one command, starts new game when board fills up and updates
+		 * memory accounting.
+		 * 
+		 * @param command
+		 *            played command
+		 */
+		private void play(Command command) {
+			boolean moved;
+			if (command.from < 0)
+				moved = playRandom();
+			else
+				moved = board.move(command.from, command.to);
+			if (moved) {
+				playedMoves++;
+				moves.increment();
+			}
+			if (board.getFreeCount() == 0) {
+				games++;
+				board.clear();
+				board.addRandomSquares(3);
+			}
+			score = board.getScore();
+			long bytes = SESSIONBYTES + board.estimateBytes();
+			if (bytes != accountedBytes) {
+				usedBytes.addAndGet(bytes - accountedBytes);
+				accountedBytes = bytes;
+			}
+		}
+
+		/**
+		 * Plays random possible move.
+		 * 
+		 * @return true if move was played, false if no move was found
+		 */
+		private boolean playRandom() {
+			int size = board.getParameters().getRows() * board.getParameters().getColumns();
+			for (int tries = 0; tries < MOVETRIES; tries++) {
+				int square = moveRandom.nextInt(size);
+				if (!board.isFree(square)
+						&& board.move(square, board.getFreeCell(moveRandom.nextInt(board.getFreeCount()))))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Getting id of the session.
+		 * 
+		 * @return {@link #id}
+		 */
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * Getting amount of played moves.
+		 * 
+		 * @return {@link #playedMoves}
+		 */
+		public long getPlayedMoves() {
+			return playedMoves;
+		}
+
+		/**
+		 * Getting amount of finished games.
+		 * 
+		 * @return {@link #games}
+		 */
+		public int getGames() {
+			return games;
+		}
+
+		/**
+		 * Getting score of current game.
+		 * 
+		 * @return {@link #score}
+		 */
+		public long getScore() {
+			return score;
+		}
+	}
+
+	/**
+	 * Move command sent to a session.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	private static class Command {
+
+		/**
+		 * Index of moved square, -1 for random move.
+		 */
+		private final int from;
+
+		/**
+		 * Index of target square.
+		 */
+		private final int to;
+
+		/**
+		 * Time when command was sent.
+		 */
+		private final long submitted;
+
+		/**
+		 * Constructor that sets all variables.
+		 * 
+		 * @param from
+		 *            index of moved square, -1 for random move
+		 * @param to
+		 *            index of target square
+		 * @param submitted
+		 *            time when command was sent
+		 */
+		Command(int from, int to, long submitted) {
+			this.from = from;
+			this.to = to;
+			this.submitted = submitted;
+		}
+	}
+
+}
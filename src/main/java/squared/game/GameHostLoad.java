@@ -0,0 +1,120 @@
+package squared.game;
+
+import java.util.ArrayList;
+
+/**
+ * Load generator of {@link GameHost}. For every amount of sessions opens the
+ * sessions, keeps sending random moves to them from a few driver threads for a
+ * while and prints sustained moves per second, move latency percentiles and
+ * estimated memory of the sessions.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameHostLoad {
+
+	/**
+	 * Amounts of sessions used when none are given.
+	 */
+	private static final int[] DEFAULT_SESSIONS = { 10, 100, 1000, 5000 };
+
+	/**
+	 * Time of one step in seconds when none is given.
+	 */
+	private static final int DEFAULT_SECONDS = 5;
+
+	/**
+	 * Time of warming up before every step in milliseconds.
+	 */
+	private static final long WARMUPMILLIS = 1000;
+
+	/**
+	 * Private constructor, class only holds static methods.
+	 */
+	private GameHostLoad() {
+	}
+
+	/**
+	 * Runs load steps.
+	 * 
+	 * @param args
+	 *            time of one step in seconds followed by amounts of sessions
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for drivers
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+		int[] steps = DEFAULT_SESSIONS;
+		if (args.length > 1) {
+			steps = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				steps[i - 1] = Integer.parseInt(args[i]);
+		}
+		GameParameters parameters = GameParameters.fromSystemProperties();
+		System.out.println("sessions  threads   moves/s     p50 us    p99 us   p99.9 us  memory KB  rejected");
+		for (int sessions : steps)
+			System.out.println(runStep(parameters, sessions, seconds));
+	}
+
+	/**
+	 * Runs one load step.
+	 * 
+	 * @param parameters
+	 *            parameters of games
+	 * @param sessionCount
+	 *            amount of sessions
+	 * @param seconds
+	 *            time of measurement
+	 * @return line of the report
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for drivers
+	 */
+	private static String runStep(GameParameters parameters, int sessionCount, int seconds)
+			throws InterruptedException {
+		GameHost host = new GameHost(parameters, sessionCount, Long.MAX_VALUE);
+		final ArrayList<GameHost.Session> sessions = new ArrayList<GameHost.Session>();
+		for (int i = 0; i < sessionCount; i++) {
+			GameHost.Session session = host.open(i);
+			if (session != null)
+				sessions.add(session);
+		}
+		long memory = host.getUsedBytes();
+		int driverCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		final long warmupEnd = System.nanoTime() + WARMUPMILLIS * 1_000_000L;
+		final long end = warmupEnd + seconds * 1_000_000_000L;
+		Thread[] drivers = new Thread[driverCount];
+		for (int d = 0; d < driverCount; d++) {
+			final int first = d;
+			final int step = driverCount;
+			drivers[d] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					while (System.nanoTime() < end) {
+						boolean sent = false;
+						for (int i = first; i < sessions.size(); i += step)
+							sent |= sessions.get(i).submitRandom();
+						if (!sent)
+							Thread.yield();
+					}
+				}
+			}, "driver-" + d);
+			drivers[d].start();
+		}
+		Thread.sleep(WARMUPMILLIS);
+		host.getMoveLatency().reset();
+		long startMoves = host.getMoves();
+		for (Thread driver : drivers)
+			driver.join();
+		long moves = host.getMoves() - startMoves;
+		Histogram latency = host.getMoveLatency();
+		memory = Math.max(memory, host.getUsedBytes());
+		String line = String.format("%8d  %7s  %9.0f  %9.1f  %8.1f  %9.1f  %9d  %8d", sessions.size(),
+				host.isVirtual() ? "virtual" : "platform", moves / (double) seconds,
+				latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+				latency.getValueAtPercentile(99.9) / 1000.0, memory / 1024, host.getRejected());
+		host.shutdown(10000);
+		return line;
+	}
+
+}
@@ -0,0 +1,504 @@
+package squared.game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the current game. Every move is appended to a log
+ * and from time to time whole game is saved as a checkpoint with
+ * {@link SaveGame}, after which log is truncated. Records are collected in
+ * memory and written by a background thread in batches, with one flush to the
+ * disk per batch, so adding a record never waits for the disk. After a crash
+ * game is rebuilt from the checkpoint and moves saved in the log. Checkpoint
+ * also holds {@link GameRecord} of the game, which gets moves of the log too,
+ * so a resumed game is still recorded.
+ * 
+ * Log begins with a header identifying checkpoint it continues: its hash,
+ * state of random generator and score. Log which does not match current
+ * checkpoint is ignored, so crash between saving checkpoint and truncating
+ * log never replays moves twice. Every record ends with CRC32 checksum and
+ * replay stops at the first damaged record.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameJournal implements Runnable {
+
+	/**
+	 * Number written at the beginning of every log.
+	 */
+	private static final int MAGIC = 0x53514a4c;
+
+	/**
+	 * Amount of bytes of the log header.
+	 */
+	private static final int HEADER = 4 + 8 + 8 + 8;
+
+	/**
+	 * Type of record holding a move.
+	 */
+	private static final byte MOVE = 1;
+
+	/**
+	 * Amount of bytes of a move record: type, two indexes and checksum.
+	 */
+	private static final int MOVERECORD = 1 + 2 + 2 + 4;
+
+	/**
+	 * Amount of bytes of records which can wait for writing.
+	 */
+	private static final int PENDINGBYTES = 4096;
+
+	/**
+	 * Default time of collecting records into one batch in milliseconds.
+	 */
+	public static final long DEFAULT_COMMIT_MILLIS = 50;
+
+	/**
+	 * Default amount of moves after which checkpoint is saved.
+	 */
+	public static final int DEFAULT_CHECKPOINT_MOVES = 100;
+
+	/**
+	 * File where checkpoints are saved.
+	 */
+	private final SaveGame saveGame;
+
+	/**
+	 * Path of the log.
+	 */
+	private final Path path;
+
+	/**
+	 * Time of collecting records into one batch in milliseconds.
+	 */
+	private final long commitMillis;
+
+	/**
+	 * Amount of moves after which checkpoint is saved.
+	 */
+	private final int checkpointMoves;
+
+	/**
+	 * Lock guarding buffers shared with the writing thread.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Records waiting for writing.
+	 */
+	private ByteBuffer pending = ByteBuffer.allocate(PENDINGBYTES);
+
+	/**
+	 * Records being written, swapped with {@link #pending}.
+	 */
+	private ByteBuffer writing = ByteBuffer.allocate(PENDINGBYTES);
+
+	/**
+	 * Checkpoint waiting for writing.
+	 */
+	private ByteBuffer checkpoint = ByteBuffer.allocate(SaveGame.MAXBYTES);
+
+	/**
+	 * Checkpoint being written, swapped with {@link #checkpoint}.
+	 */
+	private ByteBuffer writingCheckpoint = ByteBuffer.allocate(SaveGame.MAXBYTES);
+
+	/**
+	 * Header of the log continuing checkpoint waiting for writing.
+	 */
+	private ByteBuffer header = ByteBuffer.allocate(HEADER);
+
+	/**
+	 * Header being written, swapped with {@link #header}.
+	 */
+	private ByteBuffer writingHeader = ByteBuffer.allocate(HEADER);
+
+	/**
+	 * True if checkpoint waits for writing.
+	 */
+	private boolean checkpointRequested;
+
+	/**
+	 * True if journal was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Checksum of records, used only under {@link #lock}.
+	 */
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Amount of moves added since the last checkpoint.
+	 */
+	private int movesSinceCheckpoint;
+
+	/**
+	 * Index of selected square read with last {@link #recover()}.
+	 */
+	private int selected = -1;
+
+	/**
+	 * Record of the game read with last {@link #recover()}, then record given
+	 * with the last checkpoint, saved again with checkpoints made by
+	 * {@link #move(Board, int, int)}. Null when game is not recorded.
+	 */
+	private GameRecord record;
+
+	/**
+	 * Channel of the log, used only by the writing thread.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * True if log header was written by the writing thread, records are
+	 * written only after it.
+	 */
+	private boolean based;
+
+	/**
+	 * Thread writing records and checkpoints.
+	 */
+	private Thread thread;
+
+	/**
+	 * Constructor that sets all variables.
+	 * 
+	 * @param saveGame
+	 *            file where checkpoints are saved
+	 * @param file
+	 *            name of the log
+	 * @param commitMillis
+	 *            time of collecting records into one batch, longer time means
+	 *            less flushes to the disk and more moves lost in a crash
+	 * @param checkpointMoves
+	 *            amount of moves after which checkpoint is saved
+	 */
+	public GameJournal(SaveGame saveGame, String file, long commitMillis, int checkpointMoves) {
+		this.saveGame = saveGame;
+		this.path = Paths.get(file);
+		this.commitMillis = Math.max(0, commitMillis);
+		this.checkpointMoves = Math.max(1, checkpointMoves);
+	}
+
+	/**
+	 * Constructor that reads batch time and checkpoint interval from
+	 * squared.journal.commitMillis and squared.journal.checkpointMoves system
+	 * properties.
+	 * 
+	 * @param saveGame
+	 *            file where checkpoints are saved
+	 * @param file
+	 *            name of the log
+	 */
+	public GameJournal(SaveGame saveGame, String file) {
+		this(saveGame, file, Long.getLong("squared.journal.commitMillis", DEFAULT_COMMIT_MILLIS),
+				Integer.getInteger("squared.journal.checkpointMoves", DEFAULT_CHECKPOINT_MOVES));
+	}
+
+	/**
+	 * Rebuilds the last game from the checkpoint and moves saved in the log,
+	 * then starts writing thread. Has to be called once, before any record is
+	 * added. Record of the game is kept only when played again from its seed
+	 * it gives the rebuilt board.
+	 * 
+	 * @return rebuilt game, null when there is no saved game
+	 * @exception IOException
+	 *                - log could not be read
+	 */
+	public Board recover() {
+		Board board = saveGame.load();
+		selected = saveGame.getSelected();
+		record = board == null ? null : saveGame.getRecord();
+		if (board != null) {
+			int replayed = replay(board);
+			if (replayed > 0)
+				selected = -1;
+			if (record != null && !leadsTo(record, board))
+				record = null;
+		}
+		thread = new Thread(this, "game-journal");
+		thread.setDaemon(true);
+		thread.start();
+		return board;
+	}
+
+	/**
+	 * Getting index of selected square read with last {@link #recover()}.
+	 * 
+	 * @return {@link #selected}
+	 */
+	public int getSelected() {
+		return selected;
+	}
+
+	/**
+	 * Getting record of the game rebuilt with last {@link #recover()}.
+	 * 
+	 * @return record with moves of the checkpoint and of the log, null when
+	 *         game was saved without a record or record does not match the
+	 *         game
+	 */
+	public GameRecord getRecord() {
+		return record;
+	}
+
+	/**
+	 * Adds move which was just played on the board. Saves checkpoint instead
+	 * when enough moves were added since the last one or when records wait too
+	 * long for writing.
+	 * 
+	 * @param board
+	 *            board after the move
+	 * @param from
+	 *            index of moved square
+	 * @param to
+	 *            index of target square
+	 */
+	public void move(Board board, int from, int to) {
+		synchronized (lock) {
+			if (++movesSinceCheckpoint < checkpointMoves && pending.remaining() >= MOVERECORD) {
+				int position = pending.position();
+				pending.put(MOVE);
+				pending.putShort((short) from);
+				pending.putShort((short) to);
+				crc.reset();
+				crc.update(pending.array(), position, MOVERECORD - 4);
+				pending.putInt((int) crc.getValue());
+				if (pending.position() == MOVERECORD)
+					lock.notify();
+				return;
+			}
+		}
+		checkpoint(board, -1, record);
+	}
+
+	/**
+	 * Saves whole game as a checkpoint. Game is encoded at once, file is
+	 * written by the writing thread. Records waiting for writing are dropped,
+	 * because checkpoint already holds them.
+	 * 
+	 * @param board
+	 *            current board
+	 * @param selected
+	 *            index of selected square, -1 when no square is selected
+	 * @param record
+	 *            record of the game, null when game is not recorded
+	 */
+	public void checkpoint(Board board, int selected, GameRecord record) {
+		synchronized (lock) {
+			this.record = record;
+			int bytes = SaveGame.encodedBytes(board, record);
+			if (checkpoint.capacity() < bytes)
+				checkpoint = ByteBuffer.allocate(bytes);
+			checkpoint.clear();
+			SaveGame.encode(board, selected, record, checkpoint);
+			checkpoint.flip();
+			header.clear();
+			header.putInt(MAGIC);
+			header.putLong(board.getHash());
+			header.putLong(board.getRandom().getState());
+			header.putLong(board.getScore());
+			header.flip();
+			pending.clear();
+			movesSinceCheckpoint = 0;
+			checkpointRequested = true;
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Writes records waiting for writing, stops writing thread and closes the
+	 * log.
+	 * 
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for the writing
+	 *                thread
+	 */
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notify();
+		}
+		try {
+			if (thread != null)
+				thread.join();
+		} catch (InterruptedException e) {
+			System.out.println("[JOURNAL]INTERRUPTED EXCEPTION: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes batches of records and checkpoints until journal is closed.
+	 * Waits for the first record of a batch, then collects records for
+	 * {@link #commitMillis} and writes them with one flush to the disk.
+	 * Checkpoints and closing end the batch at once.
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		boolean stop = false;
+		while (!stop) {
+			boolean writeCheckpoint;
+			synchronized (lock) {
+				try {
+					while (!closed && !checkpointRequested && pending.position() == 0)
+						lock.wait();
+					long deadline = System.currentTimeMillis() + commitMillis;
+					long left;
+					while (!closed && !checkpointRequested && (left = deadline - System.currentTimeMillis()) > 0)
+						lock.wait(left);
+				} catch (InterruptedException e) {
+					System.out.println("[JOURNAL]INTERRUPTED EXCEPTION: " + e.getMessage());
+					closed = true;
+				}
+				ByteBuffer swapped = writing;
+				writing = pending;
+				pending = swapped;
+				pending.clear();
+				writeCheckpoint = checkpointRequested;
+				if (writeCheckpoint) {
+					swapped = writingCheckpoint;
+					writingCheckpoint = checkpoint;
+					checkpoint = swapped;
+					swapped = writingHeader;
+					writingHeader = header;
+					header = swapped;
+					checkpointRequested = false;
+				}
+				stop = closed;
+			}
+			commit(writeCheckpoint);
+		}
+		try {
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+			System.out.println("[JOURNAL]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes swapped checkpoint and records and flushes them to the disk. Log
+	 * is truncated after the checkpoint replaced the save file. When the
+	 * checkpoint could not be written the log is kept as it was and records
+	 * are not appended to it until the next checkpoint.
+	 * 
+	 * @param writeCheckpoint
+	 *            true if checkpoint was swapped
+	 * @exception IOException
+	 *                - log could not be written
+	 */
+	private void commit(boolean writeCheckpoint) {
+		writing.flip();
+		if (!writeCheckpoint && !writing.hasRemaining())
+			return;
+		long start = System.nanoTime();
+		try {
+			if (channel == null)
+				channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if (writeCheckpoint) {
+				based = saveGame.write(writingCheckpoint, true);
+				if (based) {
+					channel.truncate(0);
+					while (writingHeader.hasRemaining())
+						channel.write(writingHeader, channel.size());
+				}
+			}
+			if (based)
+				while (writing.hasRemaining())
+					channel.write(writing, channel.size());
+			channel.force(false);
+		} catch (IOException e) {
+			System.out.println("[JOURNAL]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		Metrics.JOURNAL_COMMIT.recordSince(start);
+	}
+
+	/**
+	 * Plays moves saved in the log on the board loaded from the checkpoint
+	 * and adds them to {@link #record}. Log is ignored when its header does
+	 * not match the board. Replay stops at the first damaged record or at the
+	 * first move which is not possible on the board, like
+	 * {@link Board#move(int, int)} says, and such move is not counted.
+	 * 
+	 * @param board
+	 *            board loaded from the checkpoint
+	 * @return amount of replayed moves
+	 * @exception IOException
+	 *                - log could not be read
+	 */
+	private int replay(Board board) {
+		ByteBuffer log;
+		try (FileChannel input = FileChannel.open(path, StandardOpenOption.READ)) {
+			log = ByteBuffer.allocate((int) Math.min(input.size(), Integer.MAX_VALUE));
+			while (log.hasRemaining() && input.read(log) > 0)
+				;
+			log.flip();
+		} catch (NoSuchFileException e) {
+			return 0;
+		} catch (IOException e) {
+			System.out.println("[JOURNAL]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+			return 0;
+		}
+		if (log.remaining() < HEADER || log.getInt() != MAGIC || log.getLong() != board.getHash()
+				|| log.getLong() != board.getRandom().getState() || log.getLong() != board.getScore())
+			return 0;
+		int size = board.getParameters().getRows() * board.getParameters().getColumns();
+		int replayed = 0;
+		while (log.remaining() >= MOVERECORD) {
+			int position = log.position();
+			crc.reset();
+			crc.update(log.array(), position, MOVERECORD - 4);
+			byte type = log.get();
+			int from = log.getShort();
+			int to = log.getShort();
+			if (log.getInt() != (int) crc.getValue() || type != MOVE || from < 0 || from >= size || to < 0
+					|| to >= size || !board.move(from, to))
+				break;
+			if (record != null)
+				record.addMove(from, to);
+			replayed++;
+		}
+		return replayed;
+	}
+
+	/**
+	 * Checks that record played again from its seed gives the board, so moves
+	 * of the record are the moves of the game.
+	 * 
+	 * @param record
+	 *            record of the game
+	 * @param board
+	 *            rebuilt board
+	 * @return true if record leads to the same squares, score, next colors
+	 *         and state of the generator as the board
+	 */
+	private static boolean leadsTo(GameRecord record, Board board) {
+		GameParameters parameters = record.getParameters();
+		if (!parameters.equals(board.getParameters()))
+			return false;
+		Board played = new Board(parameters, new GameRandom(record.getSeed()));
+		played.addRandomSquares(3);
+		int size = parameters.getRows() * parameters.getColumns();
+		for (int i = 0; i < record.getMoveCount(); i++) {
+			int from = record.getFrom(i);
+			int to = record.getTo(i);
+			if (from < 0 || from >= size || to < 0 || to >= size || !played.move(from, to))
+				return false;
+		}
+		return played.getHash() == board.getHash() && played.getScore() == board.getScore()
+				&& played.getPreview() == board.getPreview()
+				&& played.getRandom().getState() == board.getRandom().getState();
+	}
+
+}
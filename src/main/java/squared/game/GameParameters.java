@@ -0,0 +1,287 @@
+package squared.game;
+
+/**
+ * Immutable set of parameters describing a game: size of the board, minimal
+ * length of a line that is removed, amount of colors and amount of random
+ * squares added after a move which removed no line. Default values give
+ * classic 9x9 board with lines of 5 squares and 3 squares added every turn.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameParameters {
+
+	/**
+	 * Maximum number of available colors.
+	 */
+	public static final int MAXCOLORS = Model.Color.values().length;
+
+	/**
+	 * Maximum amount of rows or columns.
+	 */
+	public static final int MAXSIZE = 64;
+
+	/**
+	 * Amount of random squares added every turn in classic game.
+	 */
+	public static final int DEFAULT_SPAWN_COUNT = 3;
+
+	/**
+	 * Maximum amount of random squares added every turn.
+	 */
+	public static final int MAXSPAWNCOUNT = 16;
+
+	/**
+	 * Parameters of classic game.
+	 */
+	public static final GameParameters DEFAULT = new GameParameters(9, 9, 5, 5);
+
+	/**
+	 * Amount of rows of the board.
+	 */
+	private final int rows;
+
+	/**
+	 * Amount of columns of the board.
+	 */
+	private final int columns;
+
+	/**
+	 * Minimal amount of squares in a line which is removed.
+	 */
+	private final int lineLength;
+
+	/**
+	 * Amount of colors chosen by a player, grey included.
+	 */
+	private final int colorAmount;
+
+	/**
+	 * Amount of random squares added after a move which removed no line.
+	 */
+	private final int spawnCount;
+
+	/**
+	 * Bitmap of squares which are not in the first column, shared by all
+	 * boards with these parameters.
+	 */
+	private final long[] notFirstColumn;
+
+	/**
+	 * Bitmap of squares which are not in the last column, shared by all boards
+	 * with these parameters.
+	 */
+	private final long[] notLastColumn;
+
+	/**
+	 * Constructor that sets parameters of a game adding
+	 * {@link #DEFAULT_SPAWN_COUNT} squares every turn.
+	 * 
+	 * @param rows
+	 *            amount of rows, between 1 and {@link #MAXSIZE}
+	 * @param columns
+	 *            amount of columns, between 1 and {@link #MAXSIZE}
+	 * @param lineLength
+	 *            minimal length of removed line, at least 2
+	 * @param colorAmount
+	 *            amount of colors, between 2 and {@link #MAXCOLORS}
+	 * @exception IllegalArgumentException
+	 *                - any of parameters is out of its range
+	 */
+	public GameParameters(int rows, int columns, int lineLength, int colorAmount) {
+		this(rows, columns, lineLength, colorAmount, DEFAULT_SPAWN_COUNT);
+	}
+
+	/**
+	 * Constructor that sets all parameters.
+	 * 
+	 * @param rows
+	 *            amount of rows, between 1 and {@link #MAXSIZE}
+	 * @param columns
+	 *            amount of columns, between 1 and {@link #MAXSIZE}
+	 * @param lineLength
+	 *            minimal length of removed line, at least 2
+	 * @param colorAmount
+	 *            amount of colors, between 2 and {@link #MAXCOLORS}
+	 * @param spawnCount
+	 *            amount of squares added every turn, between 1 and
+	 *            {@link #MAXSPAWNCOUNT}
+	 * @exception IllegalArgumentException
+	 *                - any of parameters is out of its range
+	 */
+	public GameParameters(int rows, int columns, int lineLength, int colorAmount, int spawnCount) {
+		if (rows < 1 || rows > MAXSIZE || columns < 1 || columns > MAXSIZE)
+			throw new IllegalArgumentException("Board size out of range: " + rows + "x" + columns);
+		if (lineLength < 2)
+			throw new IllegalArgumentException("Line length out of range: " + lineLength);
+		if (colorAmount < 2 || colorAmount > MAXCOLORS)
+			throw new IllegalArgumentException("Color amount out of range: " + colorAmount);
+		if (spawnCount < 1 || spawnCount > MAXSPAWNCOUNT)
+			throw new IllegalArgumentException("Spawn count out of range: " + spawnCount);
+		this.rows = rows;
+		this.columns = columns;
+		this.lineLength = lineLength;
+		this.colorAmount = colorAmount;
+		this.spawnCount = spawnCount;
+		int size = rows * columns;
+		notFirstColumn = new long[(size + 63) >>> 6];
+		notLastColumn = new long[(size + 63) >>> 6];
+		for (int i = 0; i < size; i++) {
+			if (i % columns != 0)
+				notFirstColumn[i >>> 6] |= 1L << i;
+			if (i % columns != columns - 1)
+				notLastColumn[i >>> 6] |= 1L << i;
+		}
+	}
+
+	/**
+	 * Creates parameters from system properties squared.rows, squared.columns,
+	 * squared.lineLength and squared.spawnCount. Missing or wrong values are
+	 * replaced with defaults.
+	 * 
+	 * @return parameters read from system properties
+	 * @exception NumberFormatException
+	 *                - property is not a number
+	 * @exception IllegalArgumentException
+	 *                - property is out of range
+	 */
+	public static GameParameters fromSystemProperties() {
+		try {
+			return new GameParameters(Integer.getInteger("squared.rows", DEFAULT.rows),
+					Integer.getInteger("squared.columns", DEFAULT.columns),
+					Integer.getInteger("squared.lineLength", DEFAULT.lineLength), DEFAULT.colorAmount,
+					Integer.getInteger("squared.spawnCount", DEFAULT.spawnCount));
+		} catch (IllegalArgumentException e) {
+			System.out.println("[PARAMETERS]ILLEGAL ARGUMENT EXCEPTION: " + e.getMessage());
+			return DEFAULT;
+		}
+	}
+
+	/**
+	 * Creates copy of parameters with different amount of colors.
+	 * 
+	 * @param colorAmount
+	 *            new amount of colors
+	 * @return new parameters
+	 */
+	public GameParameters withColorAmount(int colorAmount) {
+		return new GameParameters(rows, columns, lineLength, colorAmount, spawnCount);
+	}
+
+	/**
+	 * Creates copy of parameters with different difficulty, board size stays
+	 * the same.
+	 * 
+	 * @param lineLength
+	 *            new minimal length of removed line
+	 * @param colorAmount
+	 *            new amount of colors
+	 * @param spawnCount
+	 *            new amount of squares added every turn
+	 * @return new parameters
+	 */
+	public GameParameters withDifficulty(int lineLength, int colorAmount, int spawnCount) {
+		return new GameParameters(rows, columns, lineLength, colorAmount, spawnCount);
+	}
+
+	/**
+	 * Getting amount of rows.
+	 * 
+	 * @return {@link #rows}
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Getting amount of columns.
+	 * 
+	 * @return {@link #columns}
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Getting minimal length of removed line.
+	 * 
+	 * @return {@link #lineLength}
+	 */
+	public int getLineLength() {
+		return lineLength;
+	}
+
+	/**
+	 * Getting amount of colors.
+	 * 
+	 * @return {@link #colorAmount}
+	 */
+	public int getColorAmount() {
+		return colorAmount;
+	}
+
+	/**
+	 * Getting amount of squares added after a move which removed no line.
+	 * 
+	 * @return {@link #spawnCount}
+	 */
+	public int getSpawnCount() {
+		return spawnCount;
+	}
+
+	/**
+	 * Getting bitmap of squares which are not in the first column. Returned
+	 * array must not be changed.
+	 * 
+	 * @return {@link #notFirstColumn}
+	 */
+	long[] getNotFirstColumn() {
+		return notFirstColumn;
+	}
+
+	/**
+	 * Getting bitmap of squares which are not in the last column. Returned
+	 * array must not be changed.
+	 * 
+	 * @return {@link #notLastColumn}
+	 */
+	long[] getNotLastColumn() {
+		return notLastColumn;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return rows + "x" + columns + " line=" + lineLength + " colors=" + colorAmount + " spawn=" + spawnCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof GameParameters))
+			return false;
+		GameParameters other = (GameParameters) object;
+		return rows == other.rows && columns == other.columns && lineLength == other.lineLength
+				&& colorAmount == other.colorAmount && spawnCount == other.spawnCount;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (((rows * GameParameters.MAXSIZE + columns) * GameParameters.MAXSIZE + lineLength)
+				* GameParameters.MAXCOLORS + colorAmount) * (MAXSPAWNCOUNT + 1) + spawnCount;
+	}
+
+}
@@ -0,0 +1,125 @@
+package squared.game;
+
+import java.util.Random;
+
+/**
+ * Fast random generator based on SplitMix64. Unlike {@link Random} its whole
+ * state is one long value which can be read and restored, so games can be
+ * saved and replayed. New independent generators can be split from it, for
+ * instance one for every worker thread.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameRandom extends Random {
+
+	/**
+	 * Used as a version control in a Serializable class.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Step added to state on every generated number.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Current state of the generator.
+	 */
+	private long state;
+
+	/**
+	 * Constructor that seeds generator with current time.
+	 */
+	public GameRandom() {
+		this(System.nanoTime() ^ System.currentTimeMillis() * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Constructor that seeds generator with given value.
+	 * 
+	 * @param seed
+	 *            initial state
+	 */
+	public GameRandom(long seed) {
+		super(0);
+		state = seed;
+	}
+
+	/**
+	 * Sets state of the generator.
+	 * 
+	 * @see java.util.Random#setSeed(long)
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		state = seed;
+	}
+
+	/**
+	 * Getting state of the generator.
+	 * 
+	 * @return {@link #state}
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Creates new generator which numbers do not depend on numbers of this
+	 * generator.
+	 * 
+	 * @return new generator
+	 */
+	public GameRandom split() {
+		return new GameRandom(mix(nextLong()));
+	}
+
+	/**
+	 * Creates generator for one of many workers. Result depends only on state
+	 * of this generator and given stream number, so it is the same no matter
+	 * which thread asks for it.
+	 * 
+	 * @param stream
+	 *            number of the worker or task
+	 * @return new generator
+	 */
+	public GameRandom split(long stream) {
+		return new GameRandom(mix(state + mix(stream + 1) * GOLDEN_GAMMA));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Random#nextLong()
+	 */
+	@Override
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Random#next(int)
+	 */
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	/**
+	 * Mixes bits of given value.
+	 * 
+	 * @param value
+	 *            value to mix
+	 * @return mixed value
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+}
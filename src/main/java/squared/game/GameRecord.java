@@ -0,0 +1,362 @@
+package squared.game;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Whole game written down so it can be played again: parameters, seed of the
+ * generator adding random squares, all moves, claimed score and duration. Game
+ * starts like {@link Model} starts it, with 3 random squares on empty board,
+ * and claimed score is the score reached when the board got full or, for games
+ * which did not end, the score after the last move. Records are sent in compact
+ * binary form, the same for every platform.
+ * 
+ * @author bartl_000
+ *
+ */
+public class GameRecord {
+
+	/**
+	 * Bytes marking start of encoded record, changed when rules of adding
+	 * random squares or encoding change, so older records are not replayed
+	 * with new rules.
+	 */
+	private static final int MAGIC = 0x5351524a;
+
+	/**
+	 * Size of encoded record without moves and date.
+	 */
+	private static final int HEADERBYTES = 39;
+
+	/**
+	 * Position of length of the date in encoded record.
+	 */
+	private static final int DATEPOSITION = 33;
+
+	/**
+	 * The biggest amount of moves in one record.
+	 */
+	public static final int MAXMOVES = 1 << 20;
+
+	/**
+	 * Parameters of the game.
+	 */
+	private final GameParameters parameters;
+
+	/**
+	 * Initial state of the generator adding random squares.
+	 */
+	private final long seed;
+
+	/**
+	 * Indexes of moved and target squares of all moves, first
+	 * {@link #moveCount} pairs are valid.
+	 */
+	private short[] moves = new short[64];
+
+	/**
+	 * Amount of moves.
+	 */
+	private int moveCount;
+
+	/**
+	 * Amount of moves kept after the last move by {@link #undoMove()}, which
+	 * can be made again with {@link #redoMove()}.
+	 */
+	private int undoneCount;
+
+	/**
+	 * Claimed score.
+	 */
+	private long score;
+
+	/**
+	 * Date of the game shown on the leaderboard.
+	 */
+	private String date = "";
+
+	/**
+	 * Time of playing the game in milliseconds, 0 when not measured.
+	 */
+	private long durationMillis;
+
+	/**
+	 * Constructor that sets parameters and seed of the game.
+	 * 
+	 * @param parameters
+	 *            parameters of the game
+	 * @param seed
+	 *            initial state of the generator adding random squares
+	 */
+	public GameRecord(GameParameters parameters, long seed) {
+		this.parameters = parameters;
+		this.seed = seed;
+	}
+
+	/**
+	 * Adds move to the record.
+	 * 
+	 * @param from
+	 *            index of moved square
+	 * @param to
+	 *            index of target square
+	 */
+	public void addMove(int from, int to) {
+		undoneCount = 0;
+		if (2 * moveCount == moves.length)
+			moves = Arrays.copyOf(moves, 2 * moves.length);
+		moves[2 * moveCount] = (short) from;
+		moves[2 * moveCount + 1] = (short) to;
+		moveCount++;
+	}
+
+	/**
+	 * Takes back the last move, it is kept until another move is added.
+	 * 
+	 * @return true if move was taken back, false if there are no moves
+	 */
+	public boolean undoMove() {
+		if (moveCount == 0)
+			return false;
+		moveCount--;
+		undoneCount++;
+		return true;
+	}
+
+	/**
+	 * Adds again the last move taken back by {@link #undoMove()}.
+	 * 
+	 * @return true if move was added, false if there is no such move
+	 */
+	public boolean redoMove() {
+		if (undoneCount == 0)
+			return false;
+		moveCount++;
+		undoneCount--;
+		return true;
+	}
+
+	/**
+	 * Getting parameters of the game.
+	 * 
+	 * @return {@link #parameters}
+	 */
+	public GameParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Getting initial state of the generator adding random squares.
+	 * 
+	 * @return {@link #seed}
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Getting amount of moves.
+	 * 
+	 * @return {@link #moveCount}
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Getting index of moved square of a move.
+	 * 
+	 * @param move
+	 *            number of the move
+	 * @return index of moved square
+	 */
+	public int getFrom(int move) {
+		return moves[2 * move];
+	}
+
+	/**
+	 * Getting index of target square of a move.
+	 * 
+	 * @param move
+	 *            number of the move
+	 * @return index of target square
+	 */
+	public int getTo(int move) {
+		return moves[2 * move + 1];
+	}
+
+	/**
+	 * Getting claimed score.
+	 * 
+	 * @return {@link #score}
+	 */
+	public long getScore() {
+		return score;
+	}
+
+	/**
+	 * Sets claimed score.
+	 * 
+	 * @param score
+	 *            claimed score
+	 */
+	public void setScore(long score) {
+		this.score = score;
+	}
+
+	/**
+	 * Getting date of the game.
+	 * 
+	 * @return {@link #date}
+	 */
+	public String getDate() {
+		return date;
+	}
+
+	/**
+	 * Sets date of the game.
+	 * 
+	 * @param date
+	 *            date shown on the leaderboard
+	 */
+	public void setDate(String date) {
+		this.date = date;
+	}
+
+	/**
+	 * Getting time of playing the game.
+	 * 
+	 * @return {@link #durationMillis}
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Sets time of playing the game.
+	 * 
+	 * @param durationMillis
+	 *            time in milliseconds
+	 */
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * Getting size of encoded record.
+	 * 
+	 * @return amount of bytes
+	 */
+	public int encodedBytes() {
+		return HEADERBYTES + date.getBytes(StandardCharsets.UTF_8).length + 4 * moveCount;
+	}
+
+	/**
+	 * Encodes record into buffer.
+	 * 
+	 * @param buffer
+	 *            buffer with at least {@link #encodedBytes()} bytes remaining
+	 */
+	public void encode(ByteBuffer buffer) {
+		byte[] dateBytes = date.getBytes(StandardCharsets.UTF_8);
+		buffer.putInt(MAGIC);
+		buffer.put((byte) parameters.getRows());
+		buffer.put((byte) parameters.getColumns());
+		buffer.put((byte) parameters.getLineLength());
+		buffer.put((byte) parameters.getColorAmount());
+		buffer.put((byte) parameters.getSpawnCount());
+		buffer.putLong(seed);
+		buffer.putLong(score);
+		buffer.putLong(durationMillis);
+		buffer.putShort((short) dateBytes.length);
+		buffer.put(dateBytes);
+		buffer.putInt(moveCount);
+		for (int i = 0; i < 2 * moveCount; i++)
+			buffer.putShort(moves[i]);
+	}
+
+	/**
+	 * Encodes records one after another, as they are sent to
+	 * {@link LeaderboardServer} and kept in {@link GameArchive}.
+	 * 
+	 * @param records
+	 *            encoded records
+	 * @return encoded records
+	 */
+	public static byte[] encode(List<GameRecord> records) {
+		int bytes = 0;
+		for (GameRecord record : records)
+			bytes += record.encodedBytes();
+		ByteBuffer buffer = ByteBuffer.allocate(bytes);
+		for (GameRecord record : records)
+			record.encode(buffer);
+		return buffer.array();
+	}
+
+	/**
+	 * Reads size of encoded record without decoding it, so records can be
+	 * read from a stream in pieces.
+	 * 
+	 * @param buffer
+	 *            buffer positioned at encoded record, position is not changed
+	 * @return amount of bytes of the record, 0 if buffer holds too few bytes
+	 *         to tell, -1 if buffer does not hold correct record
+	 */
+	public static int peekBytes(ByteBuffer buffer) {
+		int position = buffer.position();
+		if (buffer.remaining() < 4)
+			return 0;
+		if (buffer.getInt(position) != MAGIC)
+			return -1;
+		if (buffer.remaining() < DATEPOSITION + 2)
+			return 0;
+		int dateBytes = buffer.getShort(position + DATEPOSITION) & 0xffff;
+		if (buffer.remaining() < HEADERBYTES + dateBytes)
+			return 0;
+		int count = buffer.getInt(position + DATEPOSITION + 2 + dateBytes);
+		if (count < 0 || count > MAXMOVES)
+			return -1;
+		return HEADERBYTES + dateBytes + 4 * count;
+	}
+
+	/**
+	 * Decodes record from buffer.
+	 * 
+	 * @param buffer
+	 *            buffer positioned at encoded record, positioned after it when
+	 *            record was decoded
+	 * @return decoded record, null if buffer does not hold correct record
+	 */
+	public static GameRecord decode(ByteBuffer buffer) {
+		try {
+			if (buffer.getInt() != MAGIC)
+				return null;
+			GameParameters parameters = new GameParameters(buffer.get(), buffer.get(), buffer.get(), buffer.get(),
+					buffer.get());
+			GameRecord record = new GameRecord(parameters, buffer.getLong());
+			record.score = buffer.getLong();
+			record.durationMillis = buffer.getLong();
+			byte[] dateBytes = new byte[buffer.getShort() & 0xffff];
+			buffer.get(dateBytes);
+			record.date = new String(dateBytes, StandardCharsets.UTF_8);
+			int count = buffer.getInt();
+			if (count < 0 || count > MAXMOVES || count > buffer.remaining() / 4)
+				return null;
+			record.moves = new short[Math.max(2, 2 * count)];
+			for (int i = 0; i < 2 * count; i++)
+				record.moves[i] = buffer.getShort();
+			record.moveCount = count;
+			return record;
+		} catch (BufferUnderflowException e) {
+			System.out.println("[RECORD]BUFFER UNDERFLOW EXCEPTION: " + e.getMessage());
+			return null;
+		} catch (IllegalArgumentException e) {
+			System.out.println("[RECORD]ILLEGAL ARGUMENT EXCEPTION: " + e.getMessage());
+			return null;
+		}
+	}
+
+}
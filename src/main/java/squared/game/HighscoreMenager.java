@@ -6,12 +6,19 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Class that is used to handle all actions connected with highscores. Mainly
- * used to reset scores, update or load score file.
+ * used to reset scores, update or load score file. Statistics of all games
+ * are updated with every added score in a separate file of constant size.
+ * Every mode has its own partition of scores: names of its files begin with
+ * the name of the partition, so scores of one mode never meet scores of
+ * another.
  * 
  * @author bartl_000
  *
@@ -38,15 +45,82 @@ public class HighscoreMenager {
 	 */
 	private final static String FILE = "highscore.dat";
 
+	/**
+	 * Name of the file where statistics of all games are.
+	 */
+	private final static String STATISTICSFILE = "statistics.dat";
+
+	/**
+	 * Name of the log of all scores.
+	 */
+	private final static String RANKINGFILE = "scores.log";
+
+	/**
+	 * Name of the archive of recorded games.
+	 */
+	private final static String GAMESFILE = "games.rec";
+
+	/**
+	 * Archive of recorded games of normal mode, read by
+	 * {@link AnalyticsExporter}.
+	 */
+	private static final GameArchive archive = new GameArchive(GAMESFILE);
+
+	/**
+	 * Partition of scores of normal mode, its files have no prefix.
+	 */
+	public final static String NORMAL = "";
+
+	/**
+	 * Partition of scores of time attack mode.
+	 */
+	public final static String TIMEATTACK = "timeattack.";
+
+	/**
+	 * Partition of scores, prefix of names of all files of the menager.
+	 */
+	private final String partition;
+
+	/**
+	 * Rankings of all scores of partitions, loaded from {@link #RANKINGFILE}
+	 * of a partition with first use.
+	 */
+	private static final Map<String, ScoreRanking> rankings = new HashMap<String, ScoreRanking>();
+
 	/**
 	 * Maximal amount of scores.
 	 */
 	private final static int SCORESAMOUNT = 10;
 
 	/**
-	 * Constructor which set highscores to a new arrayList.
+	 * Client of shared leaderboard server of normal mode, null when only
+	 * local file is used.
+	 */
+	private static volatile LeaderboardClient leaderboardClient;
+
+	/**
+	 * Destination to which scores of normal mode are sent besides local file,
+	 * can be null.
+	 */
+	private static volatile ScoreSink scoreSink;
+
+	/**
+	 * Constructor which set highscores to a new arrayList, scores belong to
+	 * normal mode.
 	 */
 	public HighscoreMenager() {
+		this(NORMAL);
+	}
+
+	/**
+	 * Constructor which set highscores to a new arrayList and sets partition
+	 * of scores.
+	 * 
+	 * @param partition
+	 *            {@link #NORMAL} or {@link #TIMEATTACK}
+	 */
+	public HighscoreMenager(String partition) {
+		this.partition = partition;
 		highscores = new ArrayList<Score>();
 	}
 
@@ -61,10 +135,13 @@ public class HighscoreMenager {
 	 *                - stream was not handled properly
 	 */
 	public void resetFile() {
+		GameEvents.HighscorePersisted persistEvent = new GameEvents.HighscorePersisted();
+		persistEvent.begin();
+		long start = System.nanoTime();
 		for (int i = highscores.size(); i > 0; i--)
 			highscores.remove(i - 1);
 		try {
-			outputStream = new ObjectOutputStream(new FileOutputStream(FILE));
+			outputStream = new ObjectOutputStream(new FileOutputStream(partition + FILE));
 			outputStream.writeObject(highscores);
 		} catch (FileNotFoundException e) {
 			System.out.println("[RESET]FILE NOT FOUND EXCEPTION: " + e.getMessage());
@@ -79,6 +156,11 @@ public class HighscoreMenager {
 			} catch (IOException e) {
 				System.out.println("[RESET]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
 			}
+			Metrics.HIGHSCORE_IO.recordSince(start);
+		}
+		if (persistEvent.shouldCommit()) {
+			persistEvent.entries = highscores.size();
+			persistEvent.commit();
 		}
 	}
 
@@ -94,8 +176,9 @@ public class HighscoreMenager {
 	 *                - stream was not handled properly
 	 */
 	private void loadFile() {
+		long start = System.nanoTime();
 		try {
-			inputStream = new ObjectInputStream(new FileInputStream(FILE));
+			inputStream = new ObjectInputStream(new FileInputStream(partition + FILE));
 			highscores = (ArrayList<Score>) inputStream.readObject();
 		} catch (FileNotFoundException e) {
 			System.out.println("[LOAD]FILE NOT FOUND EXCEPTION: " + e.getMessage());
@@ -112,6 +195,7 @@ public class HighscoreMenager {
 			} catch (IOException e) {
 				System.out.println("[LOAD]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
 			}
+			Metrics.HIGHSCORE_IO.recordSince(start);
 		}
 	}
 
@@ -125,10 +209,11 @@ public class HighscoreMenager {
 	 *                - stream was not handled properly
 	 */
 	private void updateFile() {
+		long start = System.nanoTime();
 		try {
 			while (highscores.size() > SCORESAMOUNT)
 				highscores.remove(highscores.size() - 1);
-			outputStream = new ObjectOutputStream(new FileOutputStream(FILE));
+			outputStream = new ObjectOutputStream(new FileOutputStream(partition + FILE));
 			outputStream.writeObject(highscores);
 		} catch (FileNotFoundException e) {
 			System.out.println("[UPDATE]FILE NOT FOUND EXCEPTION: " + e.getMessage());
@@ -143,34 +228,179 @@ public class HighscoreMenager {
 			} catch (IOException e) {
 				System.out.println("[UPDATE]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
 			}
+			Metrics.HIGHSCORE_IO.recordSince(start);
 		}
 	}
 
 	/**
-	 * Getting highscores from file after loading file.
+	 * Sets client of shared leaderboard server used by all menagers to read
+	 * highscores.
+	 * 
+	 * @param client
+	 *            client of the server, null to use only local file
+	 */
+	public static void setLeaderboardClient(LeaderboardClient client) {
+		leaderboardClient = client;
+	}
+
+	/**
+	 * Sets destination to which all menagers send scores besides local file.
+	 * 
+	 * @param sink
+	 *            destination of scores, null to save scores only to local file
+	 */
+	public static void setScoreSink(ScoreSink sink) {
+		scoreSink = sink;
+	}
+
+	/**
+	 * Writes records of games waiting for {@link #archive}, called when
+	 * application stops.
+	 * 
+	 * @see {@link GameArchive#close()}
+	 */
+	public static void closeArchive() {
+		archive.close();
+	}
+
+	/**
+	 * Getting highscores from shared leaderboard server, or from file after
+	 * loading file when server is not used or unreachable. Server holds only
+	 * scores of normal mode.
 	 * 
 	 * @return {@link #highscores} - containing best actual scores
 	 * @see #loadFile()
+	 * @see LeaderboardClient#getHighscores()
 	 */
 	public ArrayList<Score> getHighscore() {
+		LeaderboardClient client = partition.equals(NORMAL) ? leaderboardClient : null;
+		ArrayList<Score> shared = client == null ? null : client.getHighscores();
+		if (shared != null) {
+			highscores = shared;
+			return highscores;
+		}
 		loadFile();
 		return highscores;
 	}
 
 	/**
-	 * Adds new highscore to highscores array. Sorts array.
+	 * Getting statistics of all games of the partition, reads only the small
+	 * statistics file.
+	 * 
+	 * @return statistics of all added scores
+	 * @see {@link ScoreStatistics#load(String)}
+	 */
+	public ScoreStatistics getStatistics() {
+		return ScoreStatistics.load(partition + STATISTICSFILE);
+	}
+
+	/**
+	 * Getting ranking of all scores of normal mode, loads it from the log with
+	 * first call.
+	 * 
+	 * @return ranking shared by all menagers of normal mode
+	 * @see {@link #getRanking(String)}
+	 */
+	public static ScoreRanking getRanking() {
+		return getRanking(NORMAL);
+	}
+
+	/**
+	 * Getting ranking of all scores of a partition, loads it from the log with
+	 * first call.
+	 * 
+	 * @param partition
+	 *            {@link #NORMAL} or {@link #TIMEATTACK}
+	 * @return ranking shared by all menagers of the partition
+	 * @see {@link ScoreRanking#load(String)}
+	 */
+	public static synchronized ScoreRanking getRanking(String partition) {
+		ScoreRanking ranking = rankings.get(partition);
+		if (ranking == null) {
+			ranking = ScoreRanking.load(partition + RANKINGFILE);
+			rankings.put(partition, ranking);
+		}
+		return ranking;
+	}
+
+	/**
+	 * Adds score to ranking of all scores of a partition.
+	 * 
+	 * @param score
+	 *            added score
+	 * @param partition
+	 *            partition of the score
+	 * @return place of the score among all scores of the partition
+	 */
+	private static synchronized long rank(long score, String partition) {
+		ScoreRanking current = getRanking(partition);
+		current.append(score, partition + RANKINGFILE);
+		return current.rank(score);
+	}
+
+	/**
+	 * Adds new highscore of a game which was not recorded.
 	 * 
 	 * @param score
 	 *            - number we want to add
 	 * @param date
 	 *            - current date as string
+	 * @return place of the score among all scores of the partition ever added
+	 * @see {@link #addHighscore(long, String, GameRecord)}
 	 */
-	public void addHighscore(long score, String date) {
+	public long addHighscore(long score, String date) {
+		return addHighscore(score, date, null);
+	}
+
+	/**
+	 * Adds new highscore to highscores array at its place, after equal
+	 * scores, and saves file only when score is among the best. Score is
+	 * added to statistics and ranking of all games of the partition. Record of
+	 * the game is appended to {@link #archive} and queued in
+	 * {@link #scoreSink} if it is set, without waiting for delivery, so only
+	 * recorded games reach the shared leaderboard.
+	 * 
+	 * @param score
+	 *            - number we want to add
+	 * @param date
+	 *            - current date as string
+	 * @param record
+	 *            - record of the game reaching the score, can be null
+	 * @return place of the score among all scores of the partition ever added
+	 * @see {@link ScoreRanking#rank(long)}
+	 */
+	public long addHighscore(long score, String date, GameRecord record) {
+		GameEvents.HighscorePersisted persistEvent = new GameEvents.HighscorePersisted();
+		persistEvent.begin();
+		Score newScore = new Score(score);
+		if (record != null) {
+			record.setScore(score);
+			record.setDate(newScore.getDate());
+			archive.append(record);
+		}
+		ScoreSink sink = partition.equals(NORMAL) ? scoreSink : null;
+		if (sink != null && record != null)
+			sink.submit(record);
+		ScoreStatistics statistics = ScoreStatistics.load(partition + STATISTICSFILE);
+		statistics.add(score, LocalDate.now().toEpochDay());
+		statistics.save(partition + STATISTICSFILE);
+		long place = rank(score, partition);
 		loadFile();
-		highscores.add(new Score(score));
-		Collections.sort(highscores);
-		for (int i = 0; i < highscores.size(); i++)
+		int position = Collections.binarySearch(highscores, newScore);
+		if (position < 0)
+			position = -position - 1;
+		while (position < highscores.size() && highscores.get(position).compareTo(newScore) == 0)
+			position++;
+		if (position < SCORESAMOUNT) {
+			highscores.add(position, newScore);
 			updateFile();
+		}
+		if (persistEvent.shouldCommit()) {
+			persistEvent.score = score;
+			persistEvent.entries = highscores.size();
+			persistEvent.commit();
+		}
+		return place;
 	}
 
 }
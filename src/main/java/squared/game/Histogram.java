@@ -0,0 +1,221 @@
+package squared.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of long values (usually nanoseconds). Values are put in
+ * log-linear buckets like in HDR histogram: every power of two is divided into
+ * {@link #SUBBUCKETS} equal parts, so relative error stays around 3% for any
+ * recorded value. Recording never allocates and never takes a lock.
+ * 
+ * @author bartl_000
+ *
+ */
+public class Histogram {
+
+	/**
+	 * Amount of bits used for sub-bucket index.
+	 */
+	private static final int SUBBUCKET_BITS = 5;
+
+	/**
+	 * Amount of sub-buckets in every power of two.
+	 */
+	private static final int SUBBUCKETS = 1 << SUBBUCKET_BITS;
+
+	/**
+	 * Amount of all buckets, enough to hold every positive long value.
+	 */
+	static final int BUCKETS = (64 - SUBBUCKET_BITS) * SUBBUCKETS;
+
+	/**
+	 * Name under which histogram is shown in reports.
+	 */
+	private final String name;
+
+	/**
+	 * Counters of values recorded in every bucket.
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Amount of recorded values.
+	 */
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * Sum of recorded values.
+	 */
+	private final AtomicLong sum = new AtomicLong();
+
+	/**
+	 * Biggest recorded value.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Constructor sets name of the histogram.
+	 * 
+	 * @param name
+	 *            name shown in reports
+	 */
+	public Histogram(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Getting name of the histogram.
+	 * 
+	 * @return {@link #name}
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * 
+	 * @param value
+	 *            value to record
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		buckets.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value))
+			currentMax = max.get();
+	}
+
+	/**
+	 * Records time passed since given moment.
+	 * 
+	 * @param startNanos
+	 *            value of {@link System#nanoTime()} taken at the beginning
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Getting amount of recorded values.
+	 * 
+	 * @return {@link #count}
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Getting mean of recorded values.
+	 * 
+	 * @return mean value, 0 when nothing was recorded
+	 */
+	public double getMean() {
+		long currentCount = count.get();
+		return currentCount == 0 ? 0 : (double) sum.get() / currentCount;
+	}
+
+	/**
+	 * Getting biggest recorded value.
+	 * 
+	 * @return {@link #max}
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Getting value below which given percent of recorded values lay.
+	 * 
+	 * @param percentile
+	 *            number between 0 and 100
+	 * @return highest value of the bucket holding that percentile, 0 when
+	 *         nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long currentCount = count.get();
+		if (currentCount == 0)
+			return 0;
+		long target = (long) Math.ceil(currentCount * Math.min(percentile, 100) / 100);
+		if (target < 1)
+			target = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= target)
+				return Math.min(bucketHighestValue(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Counts index of the bucket where value should be put.
+	 * 
+	 * @param value
+	 *            not negative value
+	 * @return index of the bucket
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUBBUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - SUBBUCKET_BITS;
+		int subBucket = (int) (value >>> exponent);
+		return exponent * SUBBUCKETS + subBucket;
+	}
+
+	/**
+	 * Counts the lowest value which is put in the bucket with given index.
+	 * 
+	 * @param index
+	 *            index of the bucket
+	 * @return lowest value of the bucket
+	 */
+	static long bucketLowestValue(int index) {
+		if (index < 2 * SUBBUCKETS)
+			return index;
+		int exponent = index / SUBBUCKETS - 1;
+		long subBucket = index % SUBBUCKETS + SUBBUCKETS;
+		return subBucket << exponent;
+	}
+
+	/**
+	 * Counts the highest value which is put in the bucket with given index.
+	 * 
+	 * @param index
+	 *            index of the bucket
+	 * @return highest value of the bucket
+	 */
+	static long bucketHighestValue(int index) {
+		if (index + 1 >= BUCKETS)
+			return Long.MAX_VALUE;
+		return bucketLowestValue(index + 1) - 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("%-20s count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", name, getCount(),
+				getMean() / 1000, getValueAtPercentile(50) / 1000.0, getValueAtPercentile(99) / 1000.0,
+				getMax() / 1000.0);
+	}
+
+}
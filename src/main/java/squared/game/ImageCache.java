@@ -0,0 +1,101 @@
+package squared.game;
+
+import java.util.HashMap;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Images shared by the whole view. Every image is read from resources once
+ * and kept until the end of the program, so changing image of a square only
+ * swaps a reference instead of decoding a file. Highlighted versions of
+ * images are made from read images once and cached the same way. Used only
+ * on JavaFX application thread.
+ * 
+ * @author bartl_000
+ *
+ */
+public class ImageCache {
+
+	/**
+	 * Part of white mixed into colors of highlighted images.
+	 */
+	private static final double HIGHLIGHT = 0.35;
+
+	/**
+	 * Images read from resources, keyed with file names.
+	 */
+	private static final HashMap<String, Image> images = new HashMap<String, Image>();
+
+	/**
+	 * Highlighted images, keyed with file names of original images.
+	 */
+	private static final HashMap<String, Image> highlighted = new HashMap<String, Image>();
+
+	/**
+	 * Constructor is private, class has only static methods.
+	 */
+	private ImageCache() {
+	}
+
+	/**
+	 * Getting image from images folder, reads it with first use.
+	 * 
+	 * @param file
+	 *            name of the file
+	 * @return image read from the file
+	 */
+	public static Image get(String file) {
+		Image image = images.get(file);
+		if (image == null) {
+			image = new Image(ImageCache.class.getResourceAsStream("/images/" + file));
+			Metrics.trackImage(image);
+			images.put(file, image);
+		}
+		return image;
+	}
+
+	/**
+	 * Getting brighter version of an image, makes it with first use.
+	 * 
+	 * @param file
+	 *            name of the file of original image
+	 * @return highlighted image
+	 */
+	public static Image highlighted(String file) {
+		Image image = highlighted.get(file);
+		if (image == null) {
+			Image original = get(file);
+			int width = (int) original.getWidth();
+			int height = (int) original.getHeight();
+			WritableImage brighter = new WritableImage(width, height);
+			PixelReader reader = original.getPixelReader();
+			PixelWriter writer = brighter.getPixelWriter();
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++)
+					writer.setArgb(x, y, brighten(reader.getArgb(x, y)));
+			Metrics.trackImage(brighter);
+			highlighted.put(file, brighter);
+			image = brighter;
+		}
+		return image;
+	}
+
+	/**
+	 * Mixes white into a color.
+	 * 
+	 * @param argb
+	 *            color with alpha in the highest byte
+	 * @return brighter color with the same alpha
+	 */
+	private static int brighten(int argb) {
+		int result = argb & 0xff000000;
+		for (int shift = 0; shift < 24; shift += 8) {
+			int channel = argb >>> shift & 0xff;
+			result |= (int) (channel + (255 - channel) * HIGHLIGHT) << shift;
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,180 @@
+package squared.game;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Best scores sent by many players at once. Scores are kept in a few
+ * independent stripes, every one guarded by its own lock, so threads adding
+ * scores rarely wait for each other. Queries never take a lock: they read
+ * immutable snapshot of the best scores, which is rebuilt from stripes only
+ * after a score was added. Scores too low to enter the snapshot are rejected
+ * without any lock.
+ * 
+ * @author bartl_000
+ *
+ */
+public class Leaderboard {
+
+	/**
+	 * Amount of scores kept by the leaderboard.
+	 */
+	private final int size;
+
+	/**
+	 * Stripes holding the best scores added by different threads.
+	 */
+	private final Stripe[] stripes;
+
+	/**
+	 * Mask used to change thread id into stripe number.
+	 */
+	private final int mask;
+
+	/**
+	 * Best scores sorted from the highest, never changed after creation.
+	 */
+	private volatile Score[] snapshot = new Score[0];
+
+	/**
+	 * The lowest score of full {@link #snapshot}, lower or equal scores are
+	 * rejected.
+	 */
+	private volatile long threshold = Long.MIN_VALUE;
+
+	/**
+	 * True if score was added after {@link #snapshot} was built.
+	 */
+	private final AtomicBoolean dirty = new AtomicBoolean();
+
+	/**
+	 * Constructor that sets amount of kept scores and creates stripes, two for
+	 * every processor.
+	 * 
+	 * @param size
+	 *            amount of kept scores
+	 */
+	public Leaderboard(int size) {
+		this.size = size;
+		int count = Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+		stripes = new Stripe[count];
+		for (int i = 0; i < count; i++)
+			stripes[i] = new Stripe(size);
+		mask = count - 1;
+	}
+
+	/**
+	 * Adds score to the leaderboard.
+	 * 
+	 * @param score
+	 *            added score
+	 * @return true if score is one of the best scores, false otherwise
+	 */
+	public boolean submit(Score score) {
+		if (score.getScore() <= threshold)
+			return false;
+		Stripe stripe = stripes[(int) Thread.currentThread().getId() & mask];
+		boolean added;
+		synchronized (stripe) {
+			added = stripe.add(score);
+		}
+		if (added)
+			dirty.set(true);
+		return added;
+	}
+
+	/**
+	 * Getting the best scores. Returned array must not be changed.
+	 * 
+	 * @return scores sorted from the highest
+	 */
+	public Score[] getSnapshot() {
+		if (dirty.compareAndSet(true, false))
+			rebuild();
+		return snapshot;
+	}
+
+	/**
+	 * Removes all scores.
+	 */
+	public synchronized void clear() {
+		for (Stripe stripe : stripes)
+			synchronized (stripe) {
+				stripe.count = 0;
+			}
+		threshold = Long.MIN_VALUE;
+		snapshot = new Score[0];
+	}
+
+	/**
+	 * Merges best scores of all stripes into new {@link #snapshot}.
+	 */
+	private synchronized void rebuild() {
+		Score[] merged = new Score[size * stripes.length];
+		int count = 0;
+		for (Stripe stripe : stripes)
+			synchronized (stripe) {
+				System.arraycopy(stripe.scores, 0, merged, count, stripe.count);
+				count += stripe.count;
+			}
+		Arrays.sort(merged, 0, count);
+		Score[] best = Arrays.copyOf(merged, Math.min(count, size));
+		snapshot = best;
+		if (best.length == size && size > 0)
+			threshold = best[size - 1].getScore();
+	}
+
+	/**
+	 * Best scores added by threads using the same stripe, sorted from the
+	 * highest.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	private static class Stripe {
+
+		/**
+		 * Best scores, first {@link #count} are valid.
+		 */
+		private final Score[] scores;
+
+		/**
+		 * Amount of kept scores.
+		 */
+		private int count;
+
+		/**
+		 * Constructor that sets amount of kept scores.
+		 * 
+		 * @param size
+		 *            amount of kept scores
+		 */
+		Stripe(int size) {
+			scores = new Score[size];
+		}
+
+		/**
+		 * Inserts score keeping scores sorted, the lowest score is dropped
+		 * when stripe is full.
+		 * 
+		 * @param score
+		 *            added score
+		 * @return true if score was inserted, false if it was too low
+		 */
+		boolean add(Score score) {
+			long value = score.getScore();
+			if (count == scores.length && (count == 0 || scores[count - 1].getScore() >= value))
+				return false;
+			int position = count == scores.length ? count - 1 : count;
+			while (position > 0 && scores[position - 1].getScore() < value) {
+				scores[position] = scores[position - 1];
+				position--;
+			}
+			scores[position] = score;
+			if (count < scores.length)
+				count++;
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package squared.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Client reading the best scores from {@link LeaderboardServer}. A background
+ * thread reads them every second. When server is unreachable the thread waits
+ * longer after every failed read, like {@link AsyncScoreSink} does, and only
+ * the first failure and the first read after failures are logged. Game never
+ * waits for the network: it reads the last scores read by the thread, or null
+ * when server was unreachable, in which case local highscore file is used.
+ * Scores are sent to the server by {@link AsyncScoreSink}.
+ * 
+ * @author bartl_000
+ *
+ */
+public class LeaderboardClient implements Runnable {
+
+	/**
+	 * Time between reads in milliseconds.
+	 */
+	private static final long READMILLIS = 1000;
+
+	/**
+	 * The longest time between reads of unreachable server in milliseconds.
+	 */
+	private static final long MAXBACKOFF = 30000;
+
+	/**
+	 * Time of connecting to and reading from server in milliseconds.
+	 */
+	private static final int TIMEOUTMILLIS = 500;
+
+	/**
+	 * Address of scores on the server.
+	 */
+	private final URL url;
+
+	/**
+	 * The best scores read from server, null when server was unreachable.
+	 */
+	private volatile ArrayList<Score> highscores;
+
+	/**
+	 * Lock on which reading thread waits between reads.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * True if client was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Thread reading scores.
+	 */
+	private Thread thread;
+
+	/**
+	 * Time before the next read of unreachable server in milliseconds,
+	 * doubled after every failed read.
+	 */
+	private long backoff = READMILLIS;
+
+	/**
+	 * False since the first failed read until the next successful one, so
+	 * only changes of reachability are logged.
+	 */
+	private boolean reachable = true;
+
+	/**
+	 * Constructor that sets server address and starts reading thread.
+	 * 
+	 * @param address
+	 *            host and port of the server, for instance localhost:8337
+	 * @exception MalformedURLException
+	 *                - address is wrong
+	 */
+	public LeaderboardClient(String address) throws MalformedURLException {
+		url = new URL("http://" + address + LeaderboardServer.PATH);
+		thread = new Thread(this, "leaderboard-client");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Getting the best scores read from server.
+	 * 
+	 * @return copy of {@link #highscores}, null when server was unreachable
+	 */
+	public ArrayList<Score> getHighscores() {
+		ArrayList<Score> current = highscores;
+		return current == null ? null : new ArrayList<Score>(current);
+	}
+
+	/**
+	 * Stops reading thread.
+	 * 
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for the reading
+	 *                thread
+	 */
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notify();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			System.out.println("[LEADERBOARD]INTERRUPTED EXCEPTION: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads the best scores until client is closed. After failed read waits
+	 * {@link #backoff} with random jitter and doubles it.
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		boolean stop = false;
+		while (!stop) {
+			ArrayList<Score> scores = receive();
+			long delay = READMILLIS;
+			if (scores == null) {
+				delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+				backoff = Math.min(2 * backoff, MAXBACKOFF);
+			} else {
+				if (!reachable)
+					System.out.println("[LEADERBOARD]SERVER REACHABLE AGAIN: " + url);
+				backoff = READMILLIS;
+			}
+			reachable = scores != null;
+			highscores = scores;
+			synchronized (lock) {
+				try {
+					if (!closed)
+						lock.wait(delay);
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+				stop = closed;
+			}
+		}
+	}
+
+	/**
+	 * Reads the best scores from server. Failure is logged only when server
+	 * was reachable before.
+	 * 
+	 * @return scores sorted from the highest, null when server is unreachable
+	 * @exception IOException
+	 *                - server is unreachable
+	 * @exception NumberFormatException
+	 *                - server sent wrong score
+	 */
+	private ArrayList<Score> receive() {
+		long start = System.nanoTime();
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(TIMEOUTMILLIS);
+			connection.setReadTimeout(TIMEOUTMILLIS);
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+			ArrayList<Score> scores = new ArrayList<Score>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab > 0)
+					scores.add(new Score(Long.parseLong(line.substring(0, tab)), line.substring(tab + 1)));
+			}
+			reader.close();
+			return scores;
+		} catch (IOException e) {
+			if (reachable)
+				System.out.println("[LEADERBOARD]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		} catch (NumberFormatException e) {
+			if (reachable)
+				System.out.println("[LEADERBOARD]NUMBER FORMAT EXCEPTION: " + e.getMessage());
+		} finally {
+			if (connection != null)
+				connection.disconnect();
+			Metrics.LEADERBOARD_IO.recordSince(start);
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,456 @@
+package squared.game;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Embedded HTTP server sharing one {@link Leaderboard} between many kiosks.
+ * GET /scores returns the best scores as lines holding score and date
+ * separated with a tab. Responses are encoded once for every snapshot of the
+ * leaderboard. Scores reach the leaderboard as games sent with POST /games as
+ * encoded {@link GameRecord}s, which are played again by
+ * {@link ReplayVerifier}, and only scores which match the replay are added.
+ * All games share one leaderboard, so only games played with parameters of
+ * the classic 9x9 game or of a level of the {@link DifficultyProfile} are
+ * played again, games with any other parameters are rejected. POST /scores
+ * with bare scores in the line format cannot be verified, so it is refused
+ * with 403 unless system property squared.leaderboard.acceptScores is true,
+ * e.g. for a trusted test setup. Verified games are appended to a
+ * {@link GameArchive}, named by system property squared.leaderboard.archive,
+ * for {@link AnalyticsExporter}.
+ * 
+ * @author bartl_000
+ *
+ */
+public class LeaderboardServer {
+
+	/**
+	 * Port used when no port is given.
+	 */
+	public static final int DEFAULT_PORT = 8337;
+
+	/**
+	 * Path under which scores are sent and read.
+	 */
+	public static final String PATH = "/scores";
+
+	/**
+	 * Path under which recorded games are sent.
+	 */
+	public static final String GAMESPATH = "/games";
+
+	/**
+	 * Name of the archive of verified games used when system property
+	 * squared.leaderboard.archive is not set.
+	 */
+	public static final String ARCHIVEFILE = "leaderboard-games.rec";
+
+	/**
+	 * The biggest accepted body of POST /games.
+	 */
+	private static final int MAXGAMESBYTES = 16 << 20;
+
+	/**
+	 * Amount of scores kept by the server.
+	 */
+	private static final int SCORESAMOUNT = 10;
+
+	/**
+	 * Leaderboard holding sent scores.
+	 */
+	private final Leaderboard leaderboard;
+
+	/**
+	 * Archive to which verified games are appended, can be null.
+	 */
+	private final GameArchive archive;
+
+	/**
+	 * Running HTTP server, null when server is stopped.
+	 */
+	private HttpServer server;
+
+	/**
+	 * Threads handling requests.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Workers playing sent games again, created when server starts.
+	 */
+	private ReplayVerifier verifier;
+
+	/**
+	 * Parameters with which games are accepted.
+	 */
+	private final HashSet<GameParameters> rulesets = new HashSet<GameParameters>();
+
+	/**
+	 * True if unverified scores sent with POST /scores are added.
+	 */
+	private volatile boolean acceptScores = Boolean.getBoolean("squared.leaderboard.acceptScores");
+
+	/**
+	 * The last snapshot returned to clients with its encoded form.
+	 */
+	private volatile Response response = new Response(new Score[0]);
+
+	/**
+	 * Constructor that creates empty leaderboard and archives verified games
+	 * in file named by system property squared.leaderboard.archive.
+	 */
+	public LeaderboardServer() {
+		this(new Leaderboard(SCORESAMOUNT),
+				new GameArchive(System.getProperty("squared.leaderboard.archive", ARCHIVEFILE)));
+	}
+
+	/**
+	 * Constructor that sets leaderboard, verified games are not archived.
+	 * 
+	 * @param leaderboard
+	 *            leaderboard holding sent scores
+	 */
+	public LeaderboardServer(Leaderboard leaderboard) {
+		this(leaderboard, null);
+	}
+
+	/**
+	 * Constructor that sets leaderboard and archive of verified games.
+	 * 
+	 * @param leaderboard
+	 *            leaderboard holding sent scores
+	 * @param archive
+	 *            archive to which verified games are appended, null to keep
+	 *            no games
+	 */
+	public LeaderboardServer(Leaderboard leaderboard, GameArchive archive) {
+		this(leaderboard, archive, DifficultyProfile.load());
+	}
+
+	/**
+	 * Constructor that sets leaderboard, archive of verified games and
+	 * difficulty levels whose games are accepted.
+	 * 
+	 * @param leaderboard
+	 *            leaderboard holding sent scores
+	 * @param archive
+	 *            archive to which verified games are appended, null to keep
+	 *            no games
+	 * @param difficulty
+	 *            levels of games accepted besides classic game
+	 */
+	public LeaderboardServer(Leaderboard leaderboard, GameArchive archive, DifficultyProfile difficulty) {
+		this.leaderboard = leaderboard;
+		this.archive = archive;
+		rulesets.add(GameParameters.DEFAULT);
+		for (int level = 0; level < DifficultyProfile.LEVELS.length; level++)
+			rulesets.add(difficulty.apply(GameParameters.DEFAULT, level));
+	}
+
+	/**
+	 * Checks if games played with given parameters are accepted.
+	 * 
+	 * @param parameters
+	 *            parameters of a game
+	 * @return true if parameters are these of classic game or of a level
+	 */
+	public boolean isAccepted(GameParameters parameters) {
+		return rulesets.contains(parameters);
+	}
+
+	/**
+	 * Starts server in a standalone application.
+	 * 
+	 * @param args
+	 *            optional port number
+	 */
+	public static void main(String[] args) {
+		LeaderboardServer server = new LeaderboardServer();
+		if (server.start(new InetSocketAddress(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT)))
+			System.out.println("Leaderboard server listening on port " + server.getPort());
+	}
+
+	/**
+	 * Starts server on given address.
+	 * 
+	 * @param address
+	 *            address and port on which server listens, port 0 chooses any
+	 *            free port
+	 * @return true if server was started, false otherwise
+	 * @exception IOException
+	 *                - address could not be bound
+	 */
+	public boolean start(InetSocketAddress address) {
+		try {
+			server = HttpServer.create(address, 0);
+		} catch (IOException e) {
+			System.out.println("[SERVER]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+			return false;
+		}
+		executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		server.setExecutor(executor);
+		server.createContext(PATH, new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				long start = System.nanoTime();
+				try {
+					if ("GET".equals(exchange.getRequestMethod()))
+						sendScores(exchange);
+					else if ("POST".equals(exchange.getRequestMethod()) && acceptScores)
+						receiveScores(exchange);
+					else if ("POST".equals(exchange.getRequestMethod()))
+						exchange.sendResponseHeaders(403, -1);
+					else
+						exchange.sendResponseHeaders(405, -1);
+				} finally {
+					exchange.close();
+					Metrics.LEADERBOARD_REQUEST.recordSince(start);
+				}
+			}
+		});
+		verifier = new ReplayVerifier();
+		server.createContext(GAMESPATH, new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				long start = System.nanoTime();
+				try {
+					if ("POST".equals(exchange.getRequestMethod()))
+						receiveGames(exchange);
+					else
+						exchange.sendResponseHeaders(405, -1);
+				} finally {
+					exchange.close();
+					Metrics.LEADERBOARD_REQUEST.recordSince(start);
+				}
+			}
+		});
+		server.start();
+		return true;
+	}
+
+	/**
+	 * Getting port on which server listens.
+	 * 
+	 * @return port number, -1 when server is stopped
+	 */
+	public int getPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	/**
+	 * Getting leaderboard holding sent scores.
+	 * 
+	 * @return {@link #leaderboard}
+	 */
+	public Leaderboard getLeaderboard() {
+		return leaderboard;
+	}
+
+	/**
+	 * Sets whether unverified scores sent with POST /scores are added.
+	 * 
+	 * @param acceptScores
+	 *            true to add unverified scores, false to refuse them
+	 */
+	public void setAcceptScores(boolean acceptScores) {
+		this.acceptScores = acceptScores;
+	}
+
+	/**
+	 * Stops server and threads handling requests, writes games waiting for the
+	 * archive.
+	 */
+	public void stop() {
+		if (server == null)
+			return;
+		server.stop(0);
+		executor.shutdown();
+		try {
+			verifier.shutdown(0);
+		} catch (InterruptedException e) {
+			System.out.println("[SERVER]INTERRUPTED EXCEPTION: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+		if (archive != null)
+			archive.close();
+		server = null;
+	}
+
+	/**
+	 * Sends the best scores, encoded again only when leaderboard changed.
+	 * 
+	 * @param exchange
+	 *            handled request
+	 * @exception IOException
+	 *                - response could not be sent
+	 */
+	private void sendScores(HttpExchange exchange) throws IOException {
+		Score[] snapshot = leaderboard.getSnapshot();
+		Response current = response;
+		if (current.scores != snapshot) {
+			current = new Response(snapshot);
+			response = current;
+		}
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(200, current.body.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(current.body);
+		output.close();
+	}
+
+	/**
+	 * Adds all scores sent in a request to the leaderboard.
+	 * 
+	 * @param exchange
+	 *            handled request
+	 * @exception IOException
+	 *                - request could not be read
+	 * @exception NumberFormatException
+	 *                - request holds wrong score
+	 */
+	private void receiveScores(HttpExchange exchange) throws IOException {
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				int tab = line.indexOf('\t');
+				long score = Long.parseLong(tab < 0 ? line : line.substring(0, tab));
+				leaderboard.submit(new Score(score, tab < 0 ? "" : line.substring(tab + 1)));
+			}
+		} catch (NumberFormatException e) {
+			System.out.println("[SERVER]NUMBER FORMAT EXCEPTION: " + e.getMessage());
+			exchange.sendResponseHeaders(400, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(204, -1);
+	}
+
+	/**
+	 * Plays again all games sent in a request whose parameters are accepted,
+	 * adds scores of correct games to the leaderboard and appends correct
+	 * games to {@link #archive}. Games with other parameters are rejected
+	 * without playing. Responds with amounts of added and rejected games
+	 * separated with a tab.
+	 * 
+	 * @param exchange
+	 *            handled request
+	 * @exception IOException
+	 *                - request could not be read or response could not be sent
+	 */
+	private void receiveGames(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		InputStream input = exchange.getRequestBody();
+		byte[] chunk = new byte[8192];
+		int read;
+		while ((read = input.read(chunk)) > 0) {
+			body.write(chunk, 0, read);
+			if (body.size() > MAXGAMESBYTES) {
+				exchange.sendResponseHeaders(413, -1);
+				return;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(body.toByteArray());
+		ArrayList<GameRecord> records = new ArrayList<GameRecord>();
+		ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		while (buffer.hasRemaining()) {
+			GameRecord record = GameRecord.decode(buffer);
+			if (record == null) {
+				exchange.sendResponseHeaders(400, -1);
+				return;
+			}
+			records.add(record);
+			results.add(isAccepted(record.getParameters()) ? verifier.submit(record) : null);
+		}
+		ArrayList<GameRecord> verified = new ArrayList<GameRecord>();
+		for (int i = 0; i < records.size(); i++) {
+			try {
+				if (results.get(i) != null && results.get(i).get()) {
+					leaderboard.submit(new Score(records.get(i).getScore(), records.get(i).getDate()));
+					verified.add(records.get(i));
+				}
+			} catch (InterruptedException e) {
+				System.out.println("[SERVER]INTERRUPTED EXCEPTION: " + e.getMessage());
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				System.out.println("[SERVER]EXECUTION EXCEPTION: " + e.getMessage());
+			}
+		}
+		if (archive != null)
+			archive.append(verified);
+		int added = verified.size();
+		byte[] response = (added + "\t" + (records.size() - added) + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(200, response.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(response);
+		output.close();
+	}
+
+	/**
+	 * Encodes scores in the format used by server and client.
+	 * 
+	 * @param scores
+	 *            encoded scores
+	 * @return lines holding score and date separated with a tab
+	 */
+	public static String encode(Iterable<Score> scores) {
+		StringBuilder builder = new StringBuilder();
+		for (Score score : scores)
+			builder.append(score.getScore()).append('\t').append(score.getDate()).append('\n');
+		return builder.toString();
+	}
+
+	/**
+	 * Snapshot of the leaderboard with its encoded form.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	private static class Response {
+
+		/**
+		 * Snapshot of the leaderboard.
+		 */
+		private final Score[] scores;
+
+		/**
+		 * Encoded scores.
+		 */
+		private final byte[] body;
+
+		/**
+		 * Constructor that encodes snapshot.
+		 * 
+		 * @param scores
+		 *            snapshot of the leaderboard
+		 */
+		Response(Score[] scores) {
+			this.scores = scores;
+			this.body = encode(Arrays.asList(scores)).getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,377 @@
+package squared.game;
+
+import java.util.ArrayList;
+
+import squared.game.Model.Color;
+
+/**
+ * Game logic of the first version of {@link Model}, kept as reference for
+ * {@link DifferentialRunner}. Algorithms are copied without changes: path is
+ * looked for with recursive search, lines are collected into lists and
+ * {@link #removeLine(ArrayList)} counts points with the original formula.
+ * Only four things differ from the first version: the board has size and
+ * line length of given parameters instead of 9x9 and 5, squares are held
+ * without view, random squares are added to the k-th grey square counted row
+ * by row, like {@link Board#getFreeCell(int)} does, and their colors are
+ * drawn {@link Board#PREVIEW} squares in advance, like {@link Board} draws
+ * them, so both engines put the same squares in the same places when they
+ * get the same generator.
+ * 
+ * @author bartl_000
+ *
+ */
+public class LegacyEngine {
+
+	/**
+	 * Parameters of the game.
+	 */
+	private final GameParameters parameters;
+
+	/**
+	 * Generator used to add random squares.
+	 */
+	private final GameRandom random;
+
+	/**
+	 * Colors of all squares.
+	 */
+	private final Color[][] squareArray;
+
+	/**
+	 * Colors of the next random squares, the next square first.
+	 */
+	private final ArrayList<Color> upcoming = new ArrayList<Color>();
+
+	/**
+	 * Marks of squares visited while looking for path.
+	 */
+	private int[][] pathArray;
+
+	/**
+	 * Coordinates of the first clicked square, row and column.
+	 */
+	private int[] firstClicked;
+
+	/**
+	 * Coordinates of the second clicked square, row and column.
+	 */
+	private int[] secondClicked;
+
+	/**
+	 * Current score.
+	 */
+	private long score;
+
+	/**
+	 * Amount of games which ended because board was full.
+	 */
+	private int gamesOver;
+
+	/**
+	 * Constructor that creates empty board.
+	 * 
+	 * @param parameters
+	 *            parameters of the game
+	 * @param random
+	 *            generator used to add random squares
+	 */
+	public LegacyEngine(GameParameters parameters, GameRandom random) {
+		this.parameters = parameters;
+		this.random = random;
+		squareArray = new Color[parameters.getRows()][parameters.getColumns()];
+		for (int i = 0; i < parameters.getRows(); i++)
+			for (int j = 0; j < parameters.getColumns(); j++)
+				squareArray[i][j] = Color.GREY;
+		for (int i = 0; i < Board.PREVIEW; i++)
+			upcoming.add(randomColor());
+	}
+
+	/**
+	 * Getting color of a square.
+	 * 
+	 * @param x
+	 *            row of the square
+	 * @param y
+	 *            column of the square
+	 * @return color of the square
+	 */
+	public Color getColor(int x, int y) {
+		return squareArray[x][y];
+	}
+
+	/**
+	 * Getting color of one of the next random squares.
+	 * 
+	 * @param position
+	 *            number between 0 and {@link Board#PREVIEW}, 0 for the next
+	 *            square
+	 * @return color of the square
+	 */
+	public Color getUpcoming(int position) {
+		return upcoming.get(position);
+	}
+
+	/**
+	 * Getting current score.
+	 * 
+	 * @return {@link #score}
+	 */
+	public long getScore() {
+		return score;
+	}
+
+	/**
+	 * Getting amount of games which ended because board was full.
+	 * 
+	 * @return {@link #gamesOver}
+	 */
+	public int getGamesOver() {
+		return gamesOver;
+	}
+
+	/**
+	 * Handles second click of a move like the first version of
+	 * {@link Model#handleClick(View.Square)}: if path was found moves square
+	 * and looks for lines, adds 3 random squares if no line was found.
+	 * 
+	 * @param fromX
+	 *            row of the first clicked square
+	 * @param fromY
+	 *            column of the first clicked square
+	 * @param toX
+	 *            row of the second clicked square
+	 * @param toY
+	 *            column of the second clicked square
+	 * @return true if square was moved, false otherwise
+	 */
+	public boolean move(int fromX, int fromY, int toX, int toY) {
+		if (squareArray[fromX][fromY] == Color.GREY || squareArray[toX][toY] != Color.GREY)
+			return false;
+		Color color = squareArray[fromX][fromY];
+		pathArray = new int[parameters.getRows()][parameters.getColumns()];
+		firstClicked = new int[] { fromX, fromY };
+		secondClicked = new int[] { toX, toY };
+		boolean moved = false;
+		if (findPath(fromX, fromY)) {
+			moveSquare(firstClicked, secondClicked);
+			boolean straightLine = lookForStraightLines(toX, toY);
+			boolean diagonalLine = lookForDiagonalLines(toX, toY, color);
+			if (!straightLine && !diagonalLine)
+				addRandomSquares(parameters.getSpawnCount());
+			moved = true;
+		}
+		firstClicked = null;
+		secondClicked = null;
+		return moved;
+	}
+
+	/**
+	 * Recursive method looks for path between {@link #firstClicked} and
+	 * {@link #secondClicked}.
+	 * 
+	 * @param x
+	 *            with first use its x coordinate of firstClicked
+	 * @param y
+	 *            with first use its y coordinate of firstClicked
+	 * @return true if path was found, false otherwise
+	 */
+	private boolean findPath(int x, int y) {
+		if (x == secondClicked[0] && y == secondClicked[1])
+			return true;
+		if (x < 0 || x >= parameters.getRows() || y < 0 || y >= parameters.getColumns() || pathArray[x][y] == -1)
+			return false;
+		pathArray[x][y] = -1;
+		if (squareArray[x][y] != Color.GREY && !(x == firstClicked[0] && y == firstClicked[1]))
+			return false;
+		if (findPath(x - 1, y) || findPath(x, y + 1) || findPath(x + 1, y) || findPath(x, y - 1))
+			return true;
+		return false;
+	}
+
+	/**
+	 * Moves colors between first and second clicked squares.
+	 * 
+	 * @param firstClicked
+	 *            first clicked square
+	 * @param secondClicked
+	 *            second clicked square
+	 */
+	private void moveSquare(int[] firstClicked, int[] secondClicked) {
+		squareArray[secondClicked[0]][secondClicked[1]] = squareArray[firstClicked[0]][firstClicked[1]];
+		squareArray[firstClicked[0]][firstClicked[1]] = Color.GREY;
+	}
+
+	/**
+	 * Adds random squares to the board. If board is full then ends the game
+	 * and resets score. Additionally looks for straight and diagonal lines.
+	 * 
+	 * @param counter
+	 *            how many squares add
+	 * @see {@link #lookForStraightLines(int, int)}
+	 * @see {@link #lookForDiagonalLines(int, int, Color)}
+	 */
+	public void addRandomSquares(int counter) {
+		Color color = null;
+		int arrayIndex;
+		int squareX, squareY;
+		for (int i = 0; i < counter; i++) {
+			int greyCount = countGreySquares();
+			if (greyCount == 0) {
+				gamesOver++;
+				score = 0;
+				break;
+			}
+			color = upcoming.remove(0);
+			upcoming.add(randomColor());
+			arrayIndex = nthGreySquare(random.nextInt(greyCount));
+			squareX = arrayIndex / parameters.getColumns();
+			squareY = arrayIndex % parameters.getColumns();
+			squareArray[squareX][squareY] = color;
+			lookForStraightLines(squareX, squareY);
+			lookForDiagonalLines(squareX, squareY, color);
+		}
+	}
+
+	/**
+	 * Draws color of a random square.
+	 * 
+	 * @return any color except grey
+	 */
+	private Color randomColor() {
+		return Color.getColor(random.nextInt(parameters.getColorAmount() - 1) + 1);
+	}
+
+	/**
+	 * Counts grey squares.
+	 * 
+	 * @return amount of grey squares
+	 */
+	private int countGreySquares() {
+		int count = 0;
+		for (int i = 0; i < parameters.getRows(); i++)
+			for (int j = 0; j < parameters.getColumns(); j++)
+				if (squareArray[i][j] == Color.GREY)
+					count++;
+		return count;
+	}
+
+	/**
+	 * Finds grey square with given number, counting grey squares row by row.
+	 * 
+	 * @param number
+	 *            number between 0 and amount of grey squares
+	 * @return index of the square, row times amount of columns plus column
+	 */
+	private int nthGreySquare(int number) {
+		for (int i = 0; i < parameters.getRows(); i++)
+			for (int j = 0; j < parameters.getColumns(); j++)
+				if (squareArray[i][j] == Color.GREY && number-- == 0)
+					return i * parameters.getColumns() + j;
+		return -1;
+	}
+
+	/**
+	 * Looks for squares in straight line vertically and horizontally. If line
+	 * was found removes that colored squares from board.
+	 * 
+	 * @param squareX
+	 *            x coordinate of a square
+	 * @param squareY
+	 *            y coordinate of a square
+	 * @return true if line was found, false otherwise
+	 * @see {@link #removeLine(ArrayList)
+	 */
+	private boolean lookForStraightLines(int squareX, int squareY) {
+		int rows = parameters.getRows();
+		int columns = parameters.getColumns();
+		int lineLength = parameters.getLineLength();
+		Color color = squareArray[squareX][squareY];
+		ArrayList<int[]> vertical = new ArrayList<int[]>();
+		ArrayList<int[]> horizontal = new ArrayList<int[]>();
+		int x = squareX;
+		int y = squareY;
+		horizontal.add(new int[] { x, y });
+		while (x >= 0 && squareArray[x][y].equals(color))
+			vertical.add(new int[] { x--, y });
+		x = squareX + 1;
+		while (x < rows && squareArray[x][y].equals(color))
+			vertical.add(new int[] { x++, y });
+		if (vertical.size() >= lineLength)
+			removeLine(vertical);
+		x = squareX;
+		y = squareY - 1;
+		while (y >= 0 && squareArray[x][y].equals(color))
+			horizontal.add(new int[] { x, y-- });
+		y = squareY + 1;
+		while (y < columns && squareArray[x][y].equals(color))
+			horizontal.add(new int[] { x, y++ });
+		if (horizontal.size() >= lineLength)
+			removeLine(horizontal);
+		if (vertical.size() >= lineLength || horizontal.size() >= lineLength)
+			return true;
+		return false;
+	}
+
+	/**
+	 * Looks for squares in diagonal lines. If line was found removes that
+	 * colored squares from board.
+	 * 
+	 * @param squareX
+	 *            x coordinate of a square
+	 * @param squareY
+	 *            y coordinate of a square
+	 * @param color
+	 *            color of the square
+	 * @return true if line was found, false otherwise
+	 * @see {@link #removeLine(ArrayList)
+	 */
+	private boolean lookForDiagonalLines(int squareX, int squareY, Color color) {
+		int rows = parameters.getRows();
+		int columns = parameters.getColumns();
+		int lineLength = parameters.getLineLength();
+		ArrayList<int[]> diagonalLeft = new ArrayList<int[]>();
+		ArrayList<int[]> diagonalRight = new ArrayList<int[]>();
+		int x = squareX - 1;
+		int y = squareY - 1;
+		diagonalLeft.add(new int[] { x + 1, y + 1 });
+		diagonalRight.add(new int[] { x + 1, y + 1 });
+		while (x >= 0 && y >= 0 && squareArray[x][y].equals(color))
+			diagonalLeft.add(new int[] { x--, y-- });
+		x = squareX + 1;
+		y = squareY + 1;
+		while (y < columns && x < rows && squareArray[x][y].equals(color))
+			diagonalLeft.add(new int[] { x++, y++ });
+		if (diagonalLeft.size() >= lineLength)
+			removeLine(diagonalLeft);
+		x = squareX + 1;
+		y = squareY - 1;
+		while (x < rows && y >= 0 && squareArray[x][y].equals(color))
+			diagonalRight.add(new int[] { x++, y-- });
+		x = squareX - 1;
+		y = squareY + 1;
+		while (x >= 0 && y < columns && squareArray[x][y].equals(color))
+			diagonalRight.add(new int[] { x--, y++ });
+		if (diagonalRight.size() >= lineLength)
+			removeLine(diagonalRight);
+		if (diagonalRight.size() >= lineLength || diagonalLeft.size() >= lineLength) {
+			return true;
+		} else
+			return false;
+	}
+
+	/**
+	 * Removes given squares from the board, sets their color to grey. Adds
+	 * point to score.
+	 * 
+	 * @param list
+	 *            list of squares that has to be removed
+	 */
+	private void removeLine(ArrayList<int[]> list) {
+		int listSize = list.size();
+		for (int i = 0; i < listSize; i++)
+			squareArray[list.get(i)[0]][list.get(i)[1]] = Color.GREY;
+		long toAdd = (long) ((Math.pow((listSize - 3) % 3, 2) + 1) * Math.pow(10, Math.floor((listSize - 3) / 3)));
+		score = score + toAdd * (parameters.getColorAmount() - 4);
+	}
+
+}
@@ -2,6 +2,7 @@ package squared.game;
 
 import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.scene.control.Label;
 import javafx.scene.image.ImageView;
 
 /**
@@ -27,6 +28,13 @@ public class MenuController {
 	@FXML
 	private ImageView normalModeIcon;
 
+	/**
+	 * Variable to handle timeAttackIcon actions, written in the menu font,
+	 * because there is no image of time attack mode.
+	 */
+	@FXML
+	private Label timeAttackIcon;
+
 	/**
 	 * Variable to handle optionsIcon actions.
 	 */
@@ -49,6 +57,18 @@ public class MenuController {
 		view.loadNormalMode(model);
 	}
 
+	/**
+	 * Sets current scene to NormalMode with new game of time attack mode.
+	 * 
+	 * @see {@link Model#setTimeAttack(boolean)
+	 * @see {@link View#loadNormalMode(Model)
+	 */
+	@FXML
+	private void openTimeAttack() {
+		model.setTimeAttack(true);
+		view.loadNormalMode(model);
+	}
+
 	/**
 	 * Sets current scene to Options.
 	 * 
@@ -90,6 +110,26 @@ public class MenuController {
 		view.setImageView(normalModeIcon, "NormalModeIcon.png");
 	}
 
+	/**
+	 * Underlines {@link MenuController#timeAttackIcon}, like pointed images
+	 * of other icons, and plays menuClick.mp3.
+	 * 
+	 * @see View#addSound
+	 */
+	@FXML
+	private void enterTimeAttackIcon() {
+		view.addSound("menuClick.mp3");
+		timeAttackIcon.setUnderline(true);
+	}
+
+	/**
+	 * Removes underline of {@link MenuController#timeAttackIcon}.
+	 */
+	@FXML
+	private void exitTimeAttackIcon() {
+		timeAttackIcon.setUnderline(false);
+	}
+
 	/**
 	 * Sets {@link MenuController#optionsIcon} to P_OptionsIcon.png and plays
 	 * menuClick.mp3.
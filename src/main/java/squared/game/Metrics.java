@@ -0,0 +1,346 @@
+package squared.game;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of all metrics recorded during the game. Holds lock-free counters
+ * and {@link Histogram histograms} of hot paths: phases of a move, highscore
+ * file input/output and loading of images and sounds. Report can be saved to a
+ * file or read over JMX.
+ * 
+ * @author bartl_000
+ *
+ */
+public class Metrics implements MetricsMXBean {
+
+	/**
+	 * Name under which metrics are registered in MBean server.
+	 */
+	public static final String OBJECT_NAME = "squared.game:type=Metrics";
+
+	/**
+	 * Histograms sorted by their names.
+	 */
+	private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+
+	/**
+	 * Counters sorted by their names.
+	 */
+	private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<String, LongAdder>();
+
+	/**
+	 * Time of handling whole click on a square, including leaderboard refresh.
+	 */
+	public static final Histogram CLICK = histogram("click.total");
+
+	/**
+	 * Time of looking for path between squares.
+	 */
+	public static final Histogram MOVE_PATH = histogram("move.path");
+
+	/**
+	 * Time of finding squares reachable from selected square.
+	 */
+	public static final Histogram MOVE_REACHABLE = histogram("move.reachable");
+
+	/**
+	 * Time of moving square to a new place.
+	 */
+	public static final Histogram MOVE_MOVE = histogram("move.move");
+
+	/**
+	 * Time of looking for and removing lines after move.
+	 */
+	public static final Histogram MOVE_LINES = histogram("move.lines");
+
+	/**
+	 * Time of adding random squares.
+	 */
+	public static final Histogram MOVE_SPAWN = histogram("move.spawn");
+
+	/**
+	 * Time of reading and writing highscore file.
+	 */
+	public static final Histogram HIGHSCORE_IO = histogram("highscore.io");
+
+	/**
+	 * Time of saving and loading game.
+	 */
+	public static final Histogram SAVE_IO = histogram("save.io");
+
+	/**
+	 * Time of writing and flushing one batch of the game journal.
+	 */
+	public static final Histogram JOURNAL_COMMIT = histogram("journal.commit");
+
+	/**
+	 * Time of playing again one submitted game to check its score.
+	 */
+	public static final Histogram REPLAY_VERIFY = histogram("replay.verify");
+
+	/**
+	 * Time of sending scores to and reading scores from leaderboard server.
+	 */
+	public static final Histogram LEADERBOARD_IO = histogram("leaderboard.io");
+
+	/**
+	 * Time of handling one request by leaderboard server.
+	 */
+	public static final Histogram LEADERBOARD_REQUEST = histogram("leaderboard.request");
+
+	/**
+	 * Time of loading images.
+	 */
+	public static final Histogram VIEW_IMAGE = histogram("view.image");
+
+	/**
+	 * Time of loading and starting sounds.
+	 */
+	public static final Histogram VIEW_SOUND = histogram("view.sound");
+
+	/**
+	 * Time of loading scenes from FXML files.
+	 */
+	public static final Histogram VIEW_SCREEN = histogram("view.screen");
+
+	/**
+	 * Time of moving sprites of animated moves in one frame.
+	 */
+	public static final Histogram VIEW_ANIMATION = histogram("view.animation");
+
+	/**
+	 * Time between two frames rendered by JavaFX.
+	 */
+	public static final Histogram FX_FRAME = histogram("fx.frame");
+
+	/**
+	 * Time by which squares of time attack mode came after their deadline.
+	 */
+	public static final Histogram TIME_ATTACK_LATENESS = histogram("timeattack.lateness");
+
+	/**
+	 * Amount of all loaded images.
+	 */
+	public static final LongAdder IMAGES_LOADED = counter("images.loaded");
+
+	/**
+	 * Amount of all created media players.
+	 */
+	public static final LongAdder MEDIA_PLAYERS_CREATED = counter("mediaPlayers.created");
+
+	/**
+	 * Amount of media players which were created and not disposed yet.
+	 */
+	public static final LongAdder MEDIA_PLAYERS_LIVE = counter("mediaPlayers.live");
+
+	/**
+	 * Amount of images which were loaded and not collected yet.
+	 */
+	public static final LongAdder IMAGES_LIVE = counter("images.live");
+
+	/**
+	 * Amount of all games that ended with full board.
+	 */
+	public static final LongAdder GAMES_OVER = counter("games.over");
+
+	/**
+	 * Queue to which references of collected images are put.
+	 */
+	private static final ReferenceQueue<Object> collectedImages = new ReferenceQueue<Object>();
+
+	/**
+	 * References of tracked images, held so they are not collected before
+	 * images they point to.
+	 */
+	private static final Set<Reference<Object>> trackedImages = Collections
+			.newSetFromMap(new ConcurrentHashMap<Reference<Object>, Boolean>());
+
+	/**
+	 * Only instance of the class, registered in MBean server.
+	 */
+	private static final Metrics instance = new Metrics();
+
+	/**
+	 * Private constructor, metrics are accessed with static methods.
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * Getting histogram with given name, creates it when it does not exist.
+	 * 
+	 * @param name
+	 *            name of the histogram
+	 * @return histogram with given name
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histograms.putIfAbsent(name, new Histogram(name));
+			histogram = histograms.get(name);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Getting counter with given name, creates it when it does not exist.
+	 * 
+	 * @param name
+	 *            name of the counter
+	 * @return counter with given name
+	 */
+	public static LongAdder counter(String name) {
+		LongAdder counter = counters.get(name);
+		if (counter == null) {
+			counters.putIfAbsent(name, new LongAdder());
+			counter = counters.get(name);
+		}
+		return counter;
+	}
+
+	/**
+	 * Starts tracking given image, so it is counted in {@link #IMAGES_LIVE}
+	 * until it is collected.
+	 * 
+	 * @param image
+	 *            loaded image
+	 */
+	public static void trackImage(Object image) {
+		IMAGES_LOADED.increment();
+		IMAGES_LIVE.increment();
+		trackedImages.add(new WeakReference<Object>(image, collectedImages));
+	}
+
+	/**
+	 * Getting amount of images which are not collected yet. Forgets images
+	 * collected since last call, does not allocate when none were collected.
+	 * 
+	 * @return amount of live images
+	 */
+	public static long getLiveImages() {
+		Reference<? extends Object> reference;
+		while ((reference = collectedImages.poll()) != null) {
+			trackedImages.remove(reference);
+			IMAGES_LIVE.decrement();
+		}
+		return IMAGES_LIVE.sum();
+	}
+
+	/**
+	 * Registers metrics in platform MBean server, so they can be read with
+	 * JConsole or any other JMX client.
+	 */
+	public static void registerMBean() {
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				ManagementFactory.getPlatformMBeanServer().registerMBean(instance, name);
+		} catch (JMException e) {
+			System.out.println("[METRICS]JMX EXCEPTION: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Getting only instance of the class.
+	 * 
+	 * @return {@link #instance}
+	 */
+	public static Metrics getInstance() {
+		return instance;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.MetricsMXBean#getHistogramNames()
+	 */
+	@Override
+	public String[] getHistogramNames() {
+		return histograms.keySet().toArray(new String[0]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.MetricsMXBean#getReport()
+	 */
+	@Override
+	public String getReport() {
+		StringBuilder report = new StringBuilder();
+		for (Map.Entry<String, LongAdder> counter : counters.entrySet())
+			report.append(String.format("%-20s %d%n", counter.getKey(), counter.getValue().sum()));
+		for (Histogram histogram : histograms.values())
+			report.append(histogram).append(String.format("%n"));
+		return report.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.MetricsMXBean#getCount(java.lang.String)
+	 */
+	@Override
+	public long getCount(String name) {
+		Histogram histogram = histograms.get(name);
+		return histogram == null ? 0 : histogram.getCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.MetricsMXBean#getPercentileMicros(java.lang.String,
+	 * double)
+	 */
+	@Override
+	public double getPercentileMicros(String name, double percentile) {
+		Histogram histogram = histograms.get(name);
+		return histogram == null ? 0 : histogram.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	/**
+	 * Saves report to a file.
+	 * 
+	 * @exception IOException
+	 *                - file could not be written
+	 */
+	@Override
+	public void dump(String file) {
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(file);
+			writer.print(getReport());
+		} catch (IOException e) {
+			System.out.println("[METRICS]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.MetricsMXBean#reset()
+	 */
+	@Override
+	public void reset() {
+		for (LongAdder counter : counters.values())
+			counter.reset();
+		for (Histogram histogram : histograms.values())
+			histogram.reset();
+	}
+
+}
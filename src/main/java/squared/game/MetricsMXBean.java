@@ -0,0 +1,58 @@
+package squared.game;
+
+/**
+ * Management interface of {@link Metrics}, used to read game metrics over JMX.
+ * 
+ * @author bartl_000
+ *
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * Getting names of all registered histograms.
+	 * 
+	 * @return array of histogram names
+	 */
+	String[] getHistogramNames();
+
+	/**
+	 * Getting text report with all counters and histograms.
+	 * 
+	 * @return report, one metric per line
+	 */
+	String getReport();
+
+	/**
+	 * Getting amount of values recorded in histogram with given name.
+	 * 
+	 * @param name
+	 *            name of the histogram
+	 * @return amount of values, 0 when histogram does not exist
+	 */
+	long getCount(String name);
+
+	/**
+	 * Getting value of the percentile in microseconds.
+	 * 
+	 * @param name
+	 *            name of the histogram
+	 * @param percentile
+	 *            number between 0 and 100
+	 * @return value in microseconds, 0 when histogram does not exist
+	 */
+	double getPercentileMicros(String name, double percentile);
+
+	/**
+	 * Saves report to a file.
+	 * 
+	 * @param file
+	 *            name of the file
+	 */
+	void dump(String file);
+
+	/**
+	 * Removes all recorded values.
+	 */
+	void reset();
+
+}
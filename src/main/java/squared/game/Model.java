@@ -1,33 +1,38 @@
 package squared.game;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.Random;
 import javafx.beans.property.LongProperty;
 import javafx.beans.property.SimpleLongProperty;
-import javafx.util.Pair;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 import squared.game.View.Square;
 
 /**
- * Model class contains all useful variable that can be use during game.
- * Contains all algorithms used in game. Morover there are methods that are
- * responsible for handling square's actions.
+ * Model class contains all useful variable that can be use during game. Game
+ * logic is held in a {@link Board}, model connects it with squares shown on the
+ * screen. Morover there are methods that are responsible for handling square's
+ * actions, clicks themselves are handled by a {@link Selection}.
  * 
  * @author bartl_000
  *
  */
-public class Model {
+public class Model implements BoardListener, SelectionListener {
 
 	/**
-	 * Maximum number of available colors.
+	 * Parameters used when new game starts.
 	 */
-	private static final int MAXCOLORS = 10;
+	private GameParameters parameters;
 
 	/**
-	 * Current amount of colors chosen by a player.
+	 * Parameters of difficulty levels chosen in options.
 	 */
-	private static int colorAmount = 5;
+	private final DifficultyProfile difficulty;
+
+	/**
+	 * Game logic of current game.
+	 */
+	private Board board;
 
 	/**
 	 * Array holdings all shown squares.
@@ -35,29 +40,89 @@ public class Model {
 	private Square[][] squareArray;
 
 	/**
-	 * Variable holding first clicked square.
+	 * Timer animating moves on the screen, can be null.
+	 */
+	private MoveAnimator animator;
+
+	/**
+	 * Squares showing colors of the next random squares, can be null.
+	 */
+	private Square[] previewSquares;
+
+	/**
+	 * Selected square and squares reachable from it.
+	 */
+	private final Selection selection = new Selection(this);
+
+	/**
+	 * Reachable square under the pointer, showing color of selected square,
+	 * null when there is none.
+	 */
+	private Square hovered;
+
+	/**
+	 * Current score shown by the view, created when view asks for it. Score
+	 * itself is held by {@link #board}.
 	 */
-	private Square firstClicked;
+	private LongProperty score;
 
 	/**
-	 * Variable holding second clicked square.
+	 * Place of the final score among all scores shown by the view after game
+	 * over, empty while game goes on.
 	 */
-	private Square secondClicked;
+	private final StringProperty rank = new SimpleStringProperty("");
 
 	/**
-	 * Array used to find way between squares.
+	 * Moves of current game which can be undone, depth read from system
+	 * property squared.undoDepth.
 	 */
-	private int[][] pathArray;
+	private final BoardHistory history = new BoardHistory(
+			Math.max(1, Integer.getInteger("squared.undoDepth", BoardHistory.DEFAULT_DEPTH)));
 
 	/**
-	 * Array of coordinates of all grey squares.
+	 * Journal where every move is saved, can be null.
 	 */
-	private ArrayList<Pair<Integer, Integer>> greySquaresArray;
+	private GameJournal journal;
 
 	/**
-	 * Variable holding current score.
+	 * Index of square selected in loaded game, restored when squares are
+	 * shown, -1 when no square was selected.
 	 */
-	private LongProperty score = new SimpleLongProperty(0);
+	private int savedSelection = -1;
+
+	/**
+	 * True while game of time attack mode is played, in which squares are
+	 * added also by {@link TimeAttackClock}.
+	 */
+	private boolean timeAttack;
+
+	/**
+	 * Game of normal mode kept while game of time attack mode is played.
+	 */
+	private Board normalBoard;
+
+	/**
+	 * True after current game ended, until new game starts.
+	 */
+	private boolean ended;
+
+	/**
+	 * Record of current game of normal mode, sent with its score. Null in time
+	 * attack mode and for games resumed after a restart, whose beginning is not
+	 * known.
+	 */
+	private GameRecord record;
+
+	/**
+	 * Record of game of normal mode kept while game of time attack mode is
+	 * played.
+	 */
+	private GameRecord normalRecord;
+
+	/**
+	 * Time when current game started or was resumed in milliseconds.
+	 */
+	private long playStart = System.currentTimeMillis();
 
 	/**
 	 * Used to differentiate colors with unique name and Id.
@@ -69,6 +134,16 @@ public class Model {
 		GREY(0), BLUE(1), GREEN(2), RED(3), ORANGE(4), YELLOW(5), PURPLE(6), PINK(7), AQUAMARINE(8), LAPIZ(9);
 		private int id;
 
+		/**
+		 * All colors indexed with their ids.
+		 */
+		private static final Color[] byId = new Color[values().length];
+
+		static {
+			for (Color color : values())
+				byId[color.id] = color;
+		}
+
 		/**
 		 * Constructor sets id of the color.
 		 * 
@@ -79,6 +154,15 @@ public class Model {
 			this.id = id;
 		}
 
+		/**
+		 * Getting id of the color.
+		 * 
+		 * @return {@link #id}
+		 */
+		public int getId() {
+			return id;
+		}
+
 		/**
 		 * Getting color name with given id
 		 * 
@@ -88,44 +172,148 @@ public class Model {
 		 *         not found
 		 */
 		public static Color getColor(int id) {
-			for (Color color : Color.values()) {
-				if (color.id == id) {
-					return color;
-				}
-			}
-			return null;
+			if (id < 0 || id >= byId.length)
+				return null;
+			return byId[id];
 		}
 	}
 
 	/**
-	 * Model constructor resets GreySquaresArray.
+	 * Model constructor sets parameters read from system properties and loads
+	 * difficulty profile.
 	 * 
-	 * @see {@link #resetGreySquaresArray()
+	 * @see {@link GameParameters#fromSystemProperties()}
+	 * @see {@link DifficultyProfile#load()}
 	 */
 	public Model() {
-		resetGreySquaresArray();
+		parameters = GameParameters.fromSystemProperties();
+		difficulty = DifficultyProfile.load();
+	}
+
+	/**
+	 * Sets difficulty of the next games on the board given by system
+	 * properties, so parameters of a level do not depend on the level chosen
+	 * before and match parameters accepted by {@link LeaderboardServer}.
+	 * 
+	 * @param level
+	 *            {@link DifficultyProfile#EASY},
+	 *            {@link DifficultyProfile#MEDIUM} or
+	 *            {@link DifficultyProfile#HARD}
+	 * @see {@link DifficultyProfile#apply(GameParameters, int)}
+	 */
+	public void setDifficulty(int level) {
+		parameters = difficulty.apply(GameParameters.fromSystemProperties(), level);
+	}
+
+	/**
+	 * Switches between normal and time attack mode. Game of normal mode is
+	 * kept and resumed when time attack ends. Game of time attack mode cannot
+	 * be resumed, it starts when squares are shown and its score is added to
+	 * leaderboard of time attack mode when it is left before its end. Moves of
+	 * time attack mode are neither saved in {@link #journal} nor undone.
+	 * 
+	 * @param timeAttack
+	 *            true to start time attack mode, false to return to normal
+	 *            mode
+	 */
+	public void setTimeAttack(boolean timeAttack) {
+		if (this.timeAttack == timeAttack)
+			return;
+		finishAnimations();
+		if (timeAttack) {
+			normalBoard = board;
+			board = null;
+			pauseRecord();
+			normalRecord = record;
+			record = null;
+		} else {
+			if (board != null && !ended) {
+				HighscoreMenager menager = new HighscoreMenager(HighscoreMenager.TIMEATTACK);
+				menager.addHighscore(board.getScore(), new SimpleDateFormat("HH:mm dd/MM/yyyy ").format(new Date()));
+			}
+			board = normalBoard;
+			normalBoard = null;
+			record = normalRecord;
+			normalRecord = null;
+			playStart = System.currentTimeMillis();
+		}
+		this.timeAttack = timeAttack;
+		ended = false;
+		savedSelection = -1;
+		rank.set("");
+	}
+
+	/**
+	 * Checks if game of time attack mode is played.
+	 * 
+	 * @return {@link #timeAttack}
+	 */
+	public boolean isTimeAttack() {
+		return timeAttack;
+	}
+
+	/**
+	 * Getting partition of leaderboard to which score of current game goes.
+	 * 
+	 * @return {@link HighscoreMenager#TIMEATTACK} in time attack mode,
+	 *         {@link HighscoreMenager#NORMAL} otherwise
+	 */
+	public String getPartition() {
+		return timeAttack ? HighscoreMenager.TIMEATTACK : HighscoreMenager.NORMAL;
 	}
 
 	/**
 	 * Sets how many colors there will be in a game.
 	 * 
 	 * @param colorAmount
-	 *            it can be a number between 0 and {@link #MAXCOLORS}
+	 *            it can be a number between 2 and
+	 *            {@link GameParameters#MAXCOLORS}
 	 */
 	public void setColorAmount(int colorAmount) {
-		if (colorAmount > 0 && colorAmount <= MAXCOLORS)
-			Model.colorAmount = colorAmount;
+		if (colorAmount > 1 && colorAmount <= GameParameters.MAXCOLORS)
+			parameters = parameters.withColorAmount(colorAmount);
+	}
+
+	/**
+	 * Getting parameters used when new game starts.
+	 * 
+	 * @return {@link #parameters}
+	 */
+	public GameParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Sets parameters used when new game starts.
+	 * 
+	 * @param parameters
+	 *            new parameters
+	 */
+	public void setParameters(GameParameters parameters) {
+		this.parameters = parameters;
 	}
 
 	/**
-	 * Gets current score.
+	 * Gets current score, creates property bound by the view with first call.
 	 * 
 	 * @return current {@link #score}
 	 */
 	public LongProperty getScore() {
+		if (score == null)
+			score = new SimpleLongProperty(board == null ? 0 : board.getScore());
 		return score;
 	}
 
+	/**
+	 * Gets place of the final score among all scores, empty while game goes
+	 * on.
+	 * 
+	 * @return {@link #rank}
+	 */
+	public StringProperty getRank() {
+		return rank;
+	}
+
 	/**
 	 * Sets score to a given value.
 	 * 
@@ -133,21 +321,62 @@ public class Model {
 	 *            long type value, should be positive
 	 */
 	public void setScore(long value) {
-		this.score.set(value);
+		if (board != null)
+			board.setScore(value);
+		if (score != null)
+			score.set(value);
 	}
 
 	/**
-	 * Creates new GreySquareArray which has maximal size and holds all squares.
+	 * Updates {@link #score} shown by the view with score of the board.
 	 */
-	public void resetGreySquaresArray() {
-		greySquaresArray = new ArrayList<Pair<Integer, Integer>>();
-		for (int i = 0; i < 9; i++) {
-			for (int j = 0; j < 9; j++) {
-				greySquaresArray.add(new Pair<Integer, Integer>(i, j));
-			}
+	private void showScore() {
+		if (score != null)
+			score.set(board.getScore());
+	}
+
+	/**
+	 * Updates {@link #previewSquares} with colors of the next random squares
+	 * of the board.
+	 */
+	private void showPreview() {
+		if (previewSquares == null || board == null)
+			return;
+		for (int i = 0; i < previewSquares.length; i++) {
+			Color color = board.getPreviewColor(i);
+			if (previewSquares[i].getColor() != color)
+				previewSquares[i].setColor(color);
 		}
 	}
 
+	/**
+	 * Sets squares showing colors of the next random squares.
+	 * 
+	 * @param previewSquares
+	 *            squares, the next square first
+	 */
+	public void setPreviewSquares(Square[] previewSquares) {
+		this.previewSquares = previewSquares;
+	}
+
+	/**
+	 * Sets timer animating moves. Without it squares change at once.
+	 * 
+	 * @param animator
+	 *            timer animating moves, null to change squares at once
+	 */
+	public void setAnimator(MoveAnimator animator) {
+		this.animator = animator;
+	}
+
+	/**
+	 * Ends all running animations, so squares show state of the board.
+	 */
+	private void finishAnimations() {
+		if (animator != null)
+			animator.finish();
+	}
+
 	/**
 	 * Gets squareArray.
 	 * 
@@ -158,108 +387,289 @@ public class Model {
 	}
 
 	/**
-	 * Sets {@link #firstClicked} to a value given as a parameter.
+	 * Selects square given as a parameter, forgets squares reachable from
+	 * previously selected square.
 	 * 
 	 * @param firstClicked
+	 *            selected square, null to unselect selected square
+	 * @see {@link Selection#select(int)}
 	 */
 	public void setFirstClicked(Square firstClicked) {
-		this.firstClicked = firstClicked;
+		if (firstClicked == null)
+			selection.unselect();
+		else
+			selection.select(index(firstClicked));
+	}
+
+	/**
+	 * Sets journal where game is saved and rebuilds game saved in it. Rebuilt
+	 * game is resumed when squares are shown and is recorded further when it
+	 * was saved with its record.
+	 * 
+	 * @param journal
+	 *            journal of the game
+	 * @see {@link GameJournal#recover()}
+	 */
+	public void setJournal(GameJournal journal) {
+		this.journal = journal;
+		Board recovered = journal.recover();
+		if (recovered != null) {
+			board = recovered;
+			savedSelection = journal.getSelected();
+			record = journal.getRecord();
+			playStart = System.currentTimeMillis();
+			showScore();
+			saveGame();
+		}
 	}
 
 	/**
-	 * Sets {@link #squareArray} to a value given as a parameter and adds 3
-	 * random squares to the board.
+	 * Saves current game with selected square and record of the game, with
+	 * time played so far, as a checkpoint of the {@link #journal}.
+	 * 
+	 * @see {@link GameJournal#checkpoint(Board, int, GameRecord)}
+	 */
+	public void saveGame() {
+		if (journal == null || board == null || timeAttack)
+			return;
+		pauseRecord();
+		journal.checkpoint(board, selection.getSelected() < 0 ? savedSelection : selection.getSelected(), record);
+	}
+
+	/**
+	 * Sets {@link #squareArray} to a value given as a parameter and shows
+	 * current game on it. New game with 3 random squares is started when
+	 * there is no game, when board is full or when parameters were changed
+	 * since the game started. Score of abandoned game is added to leaderboard.
 	 * 
 	 * @param square
-	 * @see {@link #addRandomSquares(int)}
+	 * @see {@link #resetBoard()}
 	 */
 	public void setSquareArray(Square[][] square) {
+		setFirstClicked(null);
 		squareArray = square;
-		addRandomSquares(3);
+		if (board == null || board.getFreeCount() == 0 || !board.getParameters().equals(parameters)) {
+			boolean abandoned = board != null && board.getFreeCount() != 0;
+			newBoard(abandoned);
+			return;
+		}
+		board.setListener(this);
+		selection.setBoard(board);
+		if (!timeAttack && board.getHistory() != history) {
+			history.clear();
+			board.setHistory(history);
+		}
+		repaint();
+		showScore();
+		showPreview();
+		if (savedSelection >= 0)
+			selection.select(savedSelection);
+		savedSelection = -1;
 	}
 
 	/**
-	 * Sets {@link #firstClicked} or {@link #secondClicked}. If secondClicked
-	 * then looks for path.If path was found move squares and looks for lines.
-	 * If path was not found adds 3 random squares.
+	 * Passes click to {@link #selection}, which selects or unselects clicked
+	 * square, and moves selected square to the clicked grey square when
+	 * selection found it reachable. If path was found move squares and looks
+	 * for lines. If no line was found adds 3 random squares. Moved square
+	 * travels along the shortest path when there is {@link #animator}.
 	 * 
 	 * @param handledSquare
 	 *            square that was clicked
-	 * @see {@link #findPath(Integer, Integer)}
-	 * @see {@link #moveSquare(Square, Square)}
-	 * @see {@link #lookForStraightLines(int, int)}
-	 * @see {@link #lookForDiagonalLines(int, int, Color)}
+	 * @see {@link Selection#click(int)}
+	 * @see {@link Board#moveSquare(int, int)}
+	 * @see {@link Board#clearLines(int)}
 	 * @see {@link #addRandomSquares(int)}
 	 */
 	public void handleClick(Square handledSquare) {
-		if (firstClicked == null) {
-			if (handledSquare.getColor() == Color.GREY)
-				return;
-			firstClicked = handledSquare;
-			firstClicked.setClicked();
-		} else {
-			if (handledSquare.equals(firstClicked)) {
-				firstClicked.setUnclicked();
-				firstClicked = null;
-				return;
-			}
-			if (handledSquare.getColor() != Color.GREY)
-				return;
-			Color color = firstClicked.getColor();
-			pathArray = new int[9][9];
-			secondClicked = handledSquare;
-			if (findPath(firstClicked.getIndex().getKey(), firstClicked.getIndex().getValue())) {
-				moveSquare(firstClicked, secondClicked);
-				boolean straightLine = lookForStraightLines(secondClicked.getIndex().getKey(),
-						secondClicked.getIndex().getValue());
-				boolean diagonalLine = lookForDiagonalLines(secondClicked.getIndex().getKey(),
-						secondClicked.getIndex().getValue(), color);
-				if (!straightLine && !diagonalLine)
-					addRandomSquares(3);
-				firstClicked = null;
+		int from = selection.getSelected();
+		int to = index(handledSquare);
+		GameEvents.MoveAttempted moveEvent = new GameEvents.MoveAttempted();
+		moveEvent.begin();
+		GameEvents.PathSearch pathEvent = new GameEvents.PathSearch();
+		pathEvent.begin();
+		long start = System.nanoTime();
+		Selection.Click click = selection.click(to);
+		if (click != Selection.Click.MOVE && click != Selection.Click.BLOCKED)
+			return;
+		boolean pathFound = click == Selection.Click.MOVE;
+		Metrics.MOVE_PATH.recordSince(start);
+		if (pathEvent.shouldCommit()) {
+			pathEvent.found = pathFound;
+			pathEvent.commit();
+		}
+		Square moved = square(from);
+		if (pathFound) {
+			if (animator != null) {
+				int[] path = new int[board.getFreeCount() + 1];
+				animator.move(path, board.findShortestPath(from, to, path), moved.getColor());
 			}
-			secondClicked = null;
+			if (record != null)
+				record.addMove(from, to);
+			board.beginMove();
+			start = System.nanoTime();
+			board.moveSquare(from, to);
+			Metrics.MOVE_MOVE.recordSince(start);
+			start = System.nanoTime();
+			boolean line = board.clearLines(to);
+			Metrics.MOVE_LINES.recordSince(start);
+			if (!line)
+				addRandomSquares(board.getParameters().getSpawnCount());
+			board.endMove();
+			showScore();
+		}
+		if (moveEvent.shouldCommit()) {
+			moveEvent.fromX = moved.getIndex().getKey();
+			moveEvent.fromY = moved.getIndex().getValue();
+			moveEvent.toX = handledSquare.getIndex().getKey();
+			moveEvent.toY = handledSquare.getIndex().getValue();
+			moveEvent.moved = pathFound;
+			moveEvent.commit();
 		}
+		if (pathFound && journal != null && !timeAttack)
+			journal.move(board, from, to);
 	}
 
 	/**
-	 * Recursive method looks for path between {@link #firstClicked} and
-	 * {@link #secondClicked}.
+	 * Undoes the last move, unselects selected square. Game is saved again,
+	 * because journal holds only moves made forward.
 	 * 
-	 * @param x
-	 *            with first use its x coordinate of firstClicked
-	 * @param y
-	 *            with first use its x coordinate of secondClicked
-	 * @return true if path was found, false otherwise
+	 * @return true if move was undone, false if there is nothing to undo
+	 * @see {@link Board#undo()}
 	 */
-	private boolean findPath(Integer x, Integer y) {
-		if (x.equals(secondClicked.getIndex().getKey()) && y.equals(secondClicked.getIndex().getValue()))
-			return true;
-		if (x < 0 || x > 8 || y < 0 || y > 8 || pathArray[x][y] == -1)
+	public boolean undo() {
+		finishAnimations();
+		if (board == null || timeAttack || !history.canUndo())
 			return false;
-		pathArray[x][y] = -1;
-		if (squareArray[x][y].getColor() != Color.GREY
-				&& !firstClicked.getIndex().equals(new Pair<Integer, Integer>(x, y)))
+		selection.unselect();
+		board.undo();
+		if (record != null)
+			record.undoMove();
+		showScore();
+		showPreview();
+		saveGame();
+		return true;
+	}
+
+	/**
+	 * Makes again the last undone move, unselects selected square.
+	 * 
+	 * @return true if move was made, false if there is nothing to redo
+	 * @see {@link Board#redo()}
+	 */
+	public boolean redo() {
+		finishAnimations();
+		if (board == null || timeAttack || !history.canRedo())
 			return false;
-		if (findPath(x - 1, y) || findPath(x, y + 1) || findPath(x + 1, y) || findPath(x, y - 1))
-			return true;
-		return false;
+		selection.unselect();
+		board.redo();
+		if (record != null)
+			record.redoMove();
+		showScore();
+		showPreview();
+		saveGame();
+		return true;
 	}
 
 	/**
-	 * Moves colors between first and second clicked squares.
+	 * Shows selected square as clicked or normally, removes color of selected
+	 * square from the square under the pointer when it is unselected.
 	 * 
-	 * @param firstClicked
-	 *            first clicked square
-	 * @param secondClicked
-	 *            second clicked square
-	 * @see {@link View.Square#setColor(Color)}
+	 * @see squared.game.SelectionListener#selectionChanged(int, boolean)
+	 */
+	@Override
+	public void selectionChanged(int index, boolean selected) {
+		if (selected) {
+			square(index).setClicked();
+			return;
+		}
+		hover(null);
+		square(index).setUnclicked();
+	}
+
+	/**
+	 * Highlights grey square reachable from selected square.
+	 * 
+	 * @see squared.game.SelectionListener#targetChanged(int, boolean)
+	 */
+	@Override
+	public void targetChanged(int index, boolean reachable) {
+		square(index).setHighlighted(reachable);
+	}
+
+	/**
+	 * Shows color of selected square on reachable square under the pointer.
+	 * Uses squares found when it was selected.
+	 * 
+	 * @param square
+	 *            square under the pointer, null when pointer left the board
+	 */
+	public void hover(Square square) {
+		if (hovered != null) {
+			hovered.setTarget(null);
+			hovered = null;
+		}
+		if (square == null || !selection.isReachable(index(square)))
+			return;
+		hovered = square;
+		hovered.setTarget(square(selection.getSelected()).getColor());
+	}
+
+	/**
+	 * Finds the best move on current board, used for hints and auto-play.
+	 * 
+	 * @param evaluator
+	 *            evaluator which scores moves
+	 * @return the best move, null when no move is possible
+	 * @see {@link MoveEvaluator#evaluate(Board, long)}
+	 */
+	public MoveEvaluator.Evaluation suggestMove(MoveEvaluator evaluator) {
+		return evaluator.evaluate(board, System.nanoTime());
+	}
+
+	/**
+	 * Shows hint: selects square of the best move and shows its color on the
+	 * target square. Nothing is moved.
+	 * 
+	 * @param evaluator
+	 *            evaluator which scores moves
+	 * @return true if hint was shown, false if no move is possible
+	 * @see {@link #suggestMove(MoveEvaluator)}
+	 */
+	public boolean showHint(MoveEvaluator evaluator) {
+		finishAnimations();
+		if (board == null)
+			return false;
+		MoveEvaluator.Evaluation move = suggestMove(evaluator);
+		if (move == null)
+			return false;
+		selection.select(move.getFrom());
+		hover(square(move.getTo()));
+		return true;
+	}
+
+	/**
+	 * Counts index of a square on the {@link #board}.
+	 * 
+	 * @param square
+	 *            square shown on the screen
+	 * @return index of the square
 	 */
-	private void moveSquare(Square firstClicked, Square secondClicked) {
-		greySquaresArray.add(firstClicked.getIndex());
-		greySquaresArray.remove(secondClicked.getIndex());
-		secondClicked.setColor(firstClicked.getColor());
-		firstClicked.setColor(Color.GREY);
+	private int index(Square square) {
+		return board.index(square.getIndex().getKey(), square.getIndex().getValue());
+	}
+
+	/**
+	 * Finds square shown on the screen for index of a square of the
+	 * {@link #board}.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @return square from {@link #squareArray}
+	 */
+	private Square square(int index) {
+		int columns = squareArray[0].length;
+		return squareArray[index / columns][index % columns];
 	}
 
 	/**
@@ -268,152 +678,177 @@ public class Model {
 	 * 
 	 * @param counter
 	 *            how many squares add
-	 * @see {@link HighscoreMenager#addHighscore(long, String)}
-	 * @see {@link #lookForStraightLines(int, int)}
-	 * @see {@link #lookForDiagonalLines(int, int, Color)}
+	 * @see {@link Board#addRandomSquares(int)}
+	 * @see {@link #gameOver(long)}
 	 */
 	private void addRandomSquares(int counter) {
-		Random random = new Random();
-		Color color = null;
-		int arrayIndex;
-		int squareX, squareY;
-		for (int i = 0; i < counter; i++) {
-			if (greySquaresArray.size() == 0) {
-				HighscoreMenager menager = new HighscoreMenager();
-				menager.addHighscore(score.longValue(), new SimpleDateFormat("HH:mm dd/MM/yyyy ").format(new Date()));
-				score.set(0);
-				break;
-			}
-			color = Color.getColor(random.nextInt(Model.colorAmount-1) + 1);
-			arrayIndex = random.nextInt(greySquaresArray.size());
-			squareX = greySquaresArray.get(arrayIndex).getKey();
-			squareY = greySquaresArray.get(arrayIndex).getValue();
-			squareArray[squareX][squareY].setColor(color);
-			greySquaresArray.remove(new Pair<Integer, Integer>(squareX, squareY));
-			lookForStraightLines(squareX, squareY);
-			lookForDiagonalLines(squareX, squareY, color);
+		GameEvents.SquaresSpawned spawnEvent = new GameEvents.SquaresSpawned();
+		spawnEvent.begin();
+		long start = System.nanoTime();
+		int spawned = board.addRandomSquares(counter);
+		Metrics.MOVE_SPAWN.recordSince(start);
+		showScore();
+		showPreview();
+		if (spawnEvent.shouldCommit()) {
+			spawnEvent.requested = counter;
+			spawnEvent.spawned = spawned;
+			spawnEvent.commit();
 		}
 	}
 
 	/**
-	 * Looks for squares in straight line vertically and horizontally. If line
-	 * was found removes that colored squares from board.
-	 * 
-	 * @param squareX
-	 *            x coordinate of a square
-	 * @param squareY
-	 *            y coordinate of a square
-	 * @return true if line was found, false otherwise
-	 * @see {@link #removeLine(ArrayList)
-	 */
-	private boolean lookForStraightLines(int squareX, int squareY) {
-		Color color = squareArray[squareX][squareY].getColor();
-		ArrayList<Square> vertical = new ArrayList<Square>();
-		ArrayList<Square> horizontal = new ArrayList<Square>();
-		int x = squareX;
-		int y = squareY;
-		horizontal.add(squareArray[x][y]);
-		while (x >= 0 && squareArray[x][y].getColor().equals(color))
-			vertical.add(squareArray[x--][y]);
-		x = squareX + 1;
-		while (x < 9 && squareArray[x][y].getColor().equals(color))
-			vertical.add(squareArray[x++][y]);
-		if (vertical.size() >= 5)
-			removeLine(vertical);
-		x = squareX;
-		y = squareY - 1;
-		while (y >= 0 && squareArray[x][y].getColor().equals(color))
-			horizontal.add(squareArray[x][y--]);
-		y = squareY + 1;
-		while (y < 9 && squareArray[x][y].getColor().equals(color))
-			horizontal.add(squareArray[x][y++]);
-		if (horizontal.size() >= 5)
-			removeLine(horizontal);
-		if (vertical.size() >= 5 || horizontal.size() >= 5)
-			return true;
-		return false;
-	}
-
-	/**
-	 * Looks for squares in diagonal lines. If line was found removes that
-	 * colored squares from board.
-	 * 
-	 * @param squareX
-	 *            x coordinate of a square
-	 * @param squareY
-	 *            y coordinate of a square
-	 * @param color
-	 *            color of the square
-	 * @return true if line was found, false otherwise
-	 * @see {@link #removeLine(ArrayList)
-	 */
-	private boolean lookForDiagonalLines(int squareX, int squareY, Color color) {
-		ArrayList<Square> diagonalLeft = new ArrayList<Square>();
-		ArrayList<Square> diagonalRight = new ArrayList<Square>();
-		int x = squareX - 1;
-		int y = squareY - 1;
-		diagonalLeft.add(squareArray[x + 1][y + 1]);
-		diagonalRight.add(squareArray[x + 1][y + 1]);
-		while (x >= 0 && y >= 0 && squareArray[x][y].getColor().equals(color))
-			diagonalLeft.add(squareArray[x--][y--]);
-		x = squareX + 1;
-		y = squareY + 1;
-		while (y < 9 && x < 9 && squareArray[x][y].getColor().equals(color))
-			diagonalLeft.add(squareArray[x++][y++]);
-		if (diagonalLeft.size() >= 5)
-			removeLine(diagonalLeft);
-		x = squareX + 1;
-		y = squareY - 1;
-		while (x < 9 && y >= 0 && squareArray[x][y].getColor().equals(color))
-			diagonalRight.add(squareArray[x++][y--]);
-		x = squareX - 1;
-		y = squareY + 1;
-		while (x >= 0 && y < 9 && squareArray[x][y].getColor().equals(color))
-			diagonalRight.add(squareArray[x--][y++]);
-		if (diagonalRight.size() >= 5)
-			removeLine(diagonalRight);
-		if (diagonalRight.size() >= 5 || diagonalLeft.size() >= 5) {
-			return true;
-		} else
+	 * Adds squares of the next tick of {@link TimeAttackClock}, as many as
+	 * after a move which removed no line. Selected square stays selected and
+	 * its reachable squares are found again, unless it was removed with a
+	 * line.
+	 * 
+	 * @return true if game goes on, false if it has ended
+	 * @see {@link #addRandomSquares(int)}
+	 * @see {@link Selection#refresh()}
+	 */
+	public boolean spawnOnClock() {
+		if (board == null || ended)
 			return false;
+		addRandomSquares(board.getParameters().getSpawnCount());
+		selection.refresh();
+		return !ended;
 	}
 
 	/**
-	 * Removes given squares from the board, sets their color to grey. Adds
-	 * point to score.
+	 * Shows colors of all squares of the {@link #board} on the screen at once.
+	 */
+	private void repaint() {
+		int columns = board.getParameters().getColumns();
+		for (int i = 0; i < squareArray.length * squareArray[0].length; i++)
+			squareArray[i / columns][i % columns].setColor(board.getColor(i));
+	}
+
+	/**
+	 * Starts new game with current parameters and adds 3 random squares to the
+	 * board.
 	 * 
-	 * @param list
-	 *            list of squares that has to be removed
+	 * @param recordScore
+	 *            true if score of previous game should be added to leaderboard
+	 * @see {@link HighscoreMenager#addHighscore(long, String, GameRecord)}
+	 * @see {@link #addRandomSquares(int)}
 	 */
-	private void removeLine(ArrayList<Square> list) {
-		int listSize = list.size();
-		for (int i = 0; i < listSize; i++) {
-			greySquaresArray.add(list.get(i).getIndex());
-			list.get(i).setColor(Color.GREY);
+	private void newBoard(boolean recordScore) {
+		if (recordScore) {
+			HighscoreMenager menager = new HighscoreMenager(getPartition());
+			menager.addHighscore(board.getScore(), new SimpleDateFormat("HH:mm dd/MM/yyyy ").format(new Date()),
+					finishRecord());
+		}
+		savedSelection = -1;
+		ended = false;
+		rank.set("");
+		long seed = new GameRandom().nextLong();
+		board = new Board(parameters, new GameRandom(seed));
+		selection.setBoard(board);
+		record = timeAttack ? null : new GameRecord(parameters, seed);
+		playStart = System.currentTimeMillis();
+		board.setListener(this);
+		if (!timeAttack) {
+			history.clear();
+			board.setHistory(history);
 		}
-		long toAdd = (long) ((Math.pow((listSize - 3) % 3, 2) + 1) * Math.pow(10, Math.floor((listSize - 3) / 3)));
-		score.set(score.get() + toAdd * (colorAmount - 4));
+		repaint();
+		setScore(0);
+		addRandomSquares(3);
+		saveGame();
 	}
 
 	/**
-	 * Resets board, {@link #greySquaresArray}, sets first and second clicked
-	 * square to null. Updates leaderboard and adds random squares.
+	 * Changes color of the square shown on the screen, through
+	 * {@link #animator} if there is one.
 	 * 
-	 * @see {@link #resetGreySquaresArray()}
-	 * @see {@link HighscoreMenager#addHighscore(long, String)}
-	 * @see {@link #setScore(long)}
-	 * @see {@link #addRandomSquares(int)}
+	 * @see squared.game.BoardListener#colorChanged(int,
+	 *      squared.game.Model.Color)
+	 */
+	@Override
+	public void colorChanged(int index, Color color) {
+		if (animator != null) {
+			animator.colorChanged(index, color);
+			return;
+		}
+		int columns = board.getParameters().getColumns();
+		squareArray[index / columns][index % columns].setColor(color);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see squared.game.BoardListener#lineCleared(int,
+	 * squared.game.Model.Color, long)
+	 */
+	@Override
+	public void lineCleared(int length, Color color, long points) {
+		GameEvents.LinesCleared lineEvent = new GameEvents.LinesCleared();
+		if (lineEvent.shouldCommit()) {
+			lineEvent.length = length;
+			lineEvent.color = color.toString();
+			lineEvent.points = points;
+			lineEvent.commit();
+		}
+	}
+
+	/**
+	 * Updates leaderboard of current mode with the final score and shows its
+	 * place among all scores of the mode. Ended game cannot be undone.
+	 * 
+	 * @see {@link HighscoreMenager#addHighscore(long, String, GameRecord)}
+	 */
+	@Override
+	public void gameOver(long finalScore) {
+		ended = true;
+		if (!timeAttack)
+			history.clear();
+		GameEvents.GameOver gameOverEvent = new GameEvents.GameOver();
+		gameOverEvent.begin();
+		Metrics.GAMES_OVER.increment();
+		HighscoreMenager menager = new HighscoreMenager(getPartition());
+		long place = menager.addHighscore(finalScore, new SimpleDateFormat("HH:mm dd/MM/yyyy ").format(new Date()),
+				finishRecord());
+		rank.set(String.format("You placed #%,d of %,d", place, HighscoreMenager.getRanking(getPartition()).getCount()));
+		if (gameOverEvent.shouldCommit()) {
+			gameOverEvent.score = finalScore;
+			gameOverEvent.commit();
+		}
+	}
+
+	/**
+	 * Adds time since {@link #playStart} to duration of {@link #record} and
+	 * starts counting time again.
+	 */
+	private void pauseRecord() {
+		long now = System.currentTimeMillis();
+		if (record != null)
+			record.setDurationMillis(record.getDurationMillis() + now - playStart);
+		playStart = now;
+	}
+
+	/**
+	 * Ends {@link #record} of current game, which is not recorded further.
+	 * 
+	 * @return record with time of playing the game, null when game was not
+	 *         recorded
+	 */
+	private GameRecord finishRecord() {
+		pauseRecord();
+		GameRecord finished = record;
+		record = null;
+		return finished;
+	}
+
+	/**
+	 * Resets board, sets first clicked square to null. Updates leaderboard and
+	 * starts new game.
+	 * 
+	 * @see {@link #newBoard(boolean)}
 	 */
 	public void resetBoard() {
-		resetGreySquaresArray();
+		finishAnimations();
 		setFirstClicked(null);
-		HighscoreMenager menager = new HighscoreMenager();
-		menager.addHighscore(score.longValue(), new SimpleDateFormat("HH:mm dd/MM/yyyy ").format(new Date()));
-		setScore(0);
-		for (int i = 0; i < 9; i++)
-			for (int j = 0; j < 9; j++)
-				squareArray[i][j].setColor(Color.GREY);
-		addRandomSquares(3);
+		newBoard(true);
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,383 @@
+package squared.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import javafx.animation.AnimationTimer;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+import squared.game.Model.Color;
+import squared.game.View.Square;
+
+/**
+ * Timer called by JavaFX on every frame which animates all moves on the
+ * board. Moved square travels as a sprite along the shortest path on a layer
+ * above the squares and squares removed in lines fade out. Changes of squares
+ * made by the game while a square travels are held back and shown when it
+ * arrives, so the board never shows result of a move before the move itself.
+ * Sprites are kept in a pool and every frame only sets their positions and
+ * opacity, so overlapping animations do not allocate. Timer runs only while
+ * any sprite is shown. All times come from the clock of frames: animations
+ * start at the last frame, or at the next one when timer was stopped.
+ * 
+ * @author bartl_000
+ *
+ */
+public class MoveAnimator extends AnimationTimer {
+
+	/**
+	 * Time of travelling to a neighbouring square in nanoseconds.
+	 */
+	private static final long STEPNANOS = 40_000_000L;
+
+	/**
+	 * The longest time of travelling in nanoseconds, squares travel faster on
+	 * longer paths.
+	 */
+	private static final long MAXTRAVELNANOS = 600_000_000L;
+
+	/**
+	 * Time of fading out of a removed square in nanoseconds.
+	 */
+	private static final long FADENANOS = 300_000_000L;
+
+	/**
+	 * Layer above the squares on which sprites are shown, placed where pane
+	 * of the squares is.
+	 */
+	private final Pane layer;
+
+	/**
+	 * Squares of the board.
+	 */
+	private final Square[][] squares;
+
+	/**
+	 * Amount of columns of the board.
+	 */
+	private final int columns;
+
+	/**
+	 * Sprites which are not shown.
+	 */
+	private final ArrayList<ImageView> spritePool = new ArrayList<ImageView>();
+
+	/**
+	 * Sprites of fading squares.
+	 */
+	private final ArrayList<ImageView> fading = new ArrayList<ImageView>();
+
+	/**
+	 * Times when sprites of {@link #fading} started fading, 0 for sprites
+	 * which start at the next frame.
+	 */
+	private long[] fadeStarts = new long[16];
+
+	/**
+	 * Sprite of travelling square, null when no square travels.
+	 */
+	private ImageView traveller;
+
+	/**
+	 * Indexes of squares of the path of travelling square.
+	 */
+	private int[] path = new int[16];
+
+	/**
+	 * Amount of squares of the path.
+	 */
+	private int pathLength;
+
+	/**
+	 * Time when square started travelling, 0 if it starts at the next frame.
+	 */
+	private long travelStart;
+
+	/**
+	 * Time of travelling of the whole path.
+	 */
+	private long travelNanos;
+
+	/**
+	 * Indexes of squares changed while square travels, in order of changes.
+	 */
+	private int[] heldIndexes = new int[16];
+
+	/**
+	 * New colors of squares of {@link #heldIndexes}.
+	 */
+	private Color[] heldColors = new Color[16];
+
+	/**
+	 * Amount of held changes.
+	 */
+	private int heldCount;
+
+	/**
+	 * Time of the last handled frame, 0 when timer is stopped.
+	 */
+	private long lastFrame;
+
+	/**
+	 * Called when travelling square arrives, can be null.
+	 */
+	private Runnable onArrived;
+
+	/**
+	 * Constructor sets layer of sprites and squares of the board.
+	 * 
+	 * @param layer
+	 *            pane above the squares, with the same position as their pane
+	 * @param squares
+	 *            squares of the board
+	 */
+	public MoveAnimator(Pane layer, Square[][] squares) {
+		this.layer = layer;
+		this.squares = squares;
+		this.columns = squares[0].length;
+	}
+
+	/**
+	 * Sets action called every time travelling square arrives, for instance
+	 * handling of clicks buffered during the move.
+	 * 
+	 * @param onArrived
+	 *            called action, null for none
+	 */
+	public void setOnArrived(Runnable onArrived) {
+		this.onArrived = onArrived;
+	}
+
+	/**
+	 * Checks if any square travels. Squares show state from before the move
+	 * until it arrives.
+	 * 
+	 * @return true if square travels
+	 */
+	public boolean isMoving() {
+		return traveller != null;
+	}
+
+	/**
+	 * Starts travelling of moved square. Has to be called before the square
+	 * is moved on the board, all later changes of squares are held until the
+	 * square arrives.
+	 * 
+	 * @param path
+	 *            indexes of squares of the path, from moved square to target
+	 *            square
+	 * @param length
+	 *            amount of squares of the path
+	 * @param color
+	 *            color of moved square
+	 * @see {@link Board#findShortestPath(int, int, int[])}
+	 */
+	public void move(int[] path, int length, Color color) {
+		while (traveller != null)
+			arrive();
+		if (this.path.length < length)
+			this.path = new int[Math.max(length, 2 * this.path.length)];
+		System.arraycopy(path, 0, this.path, 0, length);
+		pathLength = length;
+		Square source = square(path[0]);
+		traveller = sprite(color, source);
+		source.setColor(Color.GREY);
+		travelStart = lastFrame;
+		travelNanos = Math.min(STEPNANOS * (length - 1), MAXTRAVELNANOS);
+		start();
+	}
+
+	/**
+	 * Shows new color of a square. Change is held while square travels,
+	 * square which turns grey fades out.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @param color
+	 *            new color of the square
+	 */
+	public void colorChanged(int index, Color color) {
+		if (traveller == null) {
+			show(square(index), color);
+			return;
+		}
+		if (heldCount == heldIndexes.length) {
+			heldIndexes = Arrays.copyOf(heldIndexes, 2 * heldCount);
+			heldColors = Arrays.copyOf(heldColors, 2 * heldCount);
+		}
+		heldIndexes[heldCount] = index;
+		heldColors[heldCount] = color;
+		heldCount++;
+	}
+
+	/**
+	 * Ends all animations at once: travelling square arrives, held changes
+	 * are shown and fading squares disappear.
+	 */
+	public void finish() {
+		while (traveller != null)
+			arrive();
+		for (int i = fading.size() - 1; i >= 0; i--)
+			release(i);
+		stop();
+	}
+
+	/**
+	 * Moves travelling square and fades removed squares.
+	 * 
+	 * @see javafx.animation.AnimationTimer#handle(long)
+	 */
+	@Override
+	public void handle(long now) {
+		long start = System.nanoTime();
+		lastFrame = now;
+		if (traveller != null && travelStart == 0)
+			travelStart = now;
+		for (int i = 0; i < fading.size(); i++)
+			if (fadeStarts[i] == 0)
+				fadeStarts[i] = now;
+		if (traveller != null) {
+			long elapsed = Math.max(0, now - travelStart);
+			if (elapsed >= travelNanos)
+				arrive();
+			else
+				place(traveller, (double) elapsed / travelNanos * (pathLength - 1));
+		}
+		for (int i = fading.size() - 1; i >= 0; i--) {
+			long elapsed = Math.max(0, now - fadeStarts[i]);
+			if (elapsed >= FADENANOS)
+				release(i);
+			else
+				fading.get(i).setOpacity(1 - (double) elapsed / FADENANOS);
+		}
+		if (traveller == null && fading.isEmpty())
+			stop();
+		Metrics.VIEW_ANIMATION.recordSince(start);
+	}
+
+	/**
+	 * Stops the timer and forgets time of the last frame, so animations
+	 * started later begin at the next frame.
+	 * 
+	 * @see javafx.animation.AnimationTimer#stop()
+	 */
+	@Override
+	public void stop() {
+		super.stop();
+		lastFrame = 0;
+	}
+
+	/**
+	 * Ends travelling: hides sprite of travelling square, shows held changes
+	 * and calls {@link #onArrived}.
+	 */
+	private void arrive() {
+		hide(traveller);
+		traveller = null;
+		for (int i = 0; i < heldCount; i++) {
+			show(square(heldIndexes[i]), heldColors[i]);
+			heldColors[i] = null;
+		}
+		heldCount = 0;
+		if (onArrived != null)
+			onArrived.run();
+	}
+
+	/**
+	 * Sets color of a square, starts fading if colored square turns grey.
+	 * 
+	 * @param square
+	 *            changed square
+	 * @param color
+	 *            new color
+	 */
+	private void show(Square square, Color color) {
+		if (color == Color.GREY && square.getColor() != Color.GREY) {
+			if (fading.size() == fadeStarts.length)
+				fadeStarts = Arrays.copyOf(fadeStarts, 2 * fadeStarts.length);
+			fadeStarts[fading.size()] = lastFrame;
+			fading.add(sprite(square.getColor(), square));
+			start();
+		}
+		square.setColor(color);
+	}
+
+	/**
+	 * Places sprite between squares of the path.
+	 * 
+	 * @param sprite
+	 *            placed sprite
+	 * @param position
+	 *            position on the path, number of square with fraction
+	 */
+	private void place(ImageView sprite, double position) {
+		int step = Math.min((int) position, pathLength - 2);
+		double fraction = position - step;
+		Square from = square(path[step]);
+		Square to = square(path[step + 1]);
+		sprite.relocate(from.getLayoutX() + (to.getLayoutX() - from.getLayoutX()) * fraction,
+				from.getLayoutY() + (to.getLayoutY() - from.getLayoutY()) * fraction);
+	}
+
+	/**
+	 * Shows sprite with given color over a square, takes it from the pool if
+	 * there is any.
+	 * 
+	 * @param color
+	 *            color of the sprite
+	 * @param square
+	 *            square over which sprite is shown
+	 * @return shown sprite
+	 */
+	private ImageView sprite(Color color, Square square) {
+		ImageView sprite;
+		if (spritePool.isEmpty()) {
+			sprite = new ImageView();
+			layer.getChildren().add(sprite);
+		} else
+			sprite = spritePool.remove(spritePool.size() - 1);
+		sprite.setImage(ImageCache.get(color + ".png"));
+		sprite.setFitWidth(square.getFitWidth());
+		sprite.setFitHeight(square.getFitHeight());
+		sprite.setOpacity(1);
+		sprite.relocate(square.getLayoutX(), square.getLayoutY());
+		sprite.setVisible(true);
+		return sprite;
+	}
+
+	/**
+	 * Removes fading sprite, the last one takes its place.
+	 * 
+	 * @param i
+	 *            number of the sprite in {@link #fading}
+	 */
+	private void release(int i) {
+		int last = fading.size() - 1;
+		hide(fading.get(i));
+		fading.set(i, fading.get(last));
+		fadeStarts[i] = fadeStarts[last];
+		fading.remove(last);
+	}
+
+	/**
+	 * Hides sprite and returns it to the pool.
+	 * 
+	 * @param sprite
+	 *            hidden sprite
+	 */
+	private void hide(ImageView sprite) {
+		sprite.setVisible(false);
+		spritePool.add(sprite);
+	}
+
+	/**
+	 * Getting square with given index.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @return square of the board
+	 */
+	private Square square(int index) {
+		return squares[index / columns][index % columns];
+	}
+
+}
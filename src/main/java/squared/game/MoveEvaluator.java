@@ -0,0 +1,449 @@
+package squared.game;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores possible moves with Monte Carlo method. For every move many random
+ * games (rollouts) are played on a snapshot of the board, every task makes
+ * moves of a rollout and undoes them with {@link BoardHistory}, so one
+ * snapshot serves all its rollouts. Snapshots know colors of the next random
+ * squares shown to the player, so rollouts draw only places of those squares
+ * and colors of later ones, which lowers variance of results. Rollouts are run
+ * in rounds on a {@link ForkJoinPool} until time budget ends, so evaluation
+ * always finishes on time and uses all available cores. Every task has its own
+ * generator split from the seed, round and move, so each rollout is the same
+ * whichever thread plays it. Tasks check the deadline before every rollout,
+ * so amount of rollouts, and with it the chosen move, depends on speed of the
+ * machine and load of the pool. Results are points gained in the rollout, not
+ * the score, so they can be saved in a {@link TranspositionTable}, keyed also
+ * with colors of the next squares, and moves leading to already evaluated
+ * positions are not evaluated again.
+ * 
+ * @author bartl_000
+ *
+ */
+public class MoveEvaluator {
+
+	/**
+	 * Amount of moves played in one rollout.
+	 */
+	private static final int ROLLOUTDEPTH = 6;
+
+	/**
+	 * Amount of tries to find a possible random move in a rollout.
+	 */
+	private static final int MOVETRIES = 30;
+
+	/**
+	 * Amount of rollouts of one move in one round.
+	 */
+	private static final int ROUNDROLLOUTS = 8;
+
+	/**
+	 * Points lost when board fills up during rollout.
+	 */
+	private static final double GAMEOVERPENALTY = 1000;
+
+	/**
+	 * Amount of saved rollouts after which move is not evaluated again.
+	 */
+	private static final int CACHEDROLLOUTS = 64;
+
+	/**
+	 * Pool on which rollouts are run.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Time budget of one evaluation in nanoseconds.
+	 */
+	private final long budgetNanos;
+
+	/**
+	 * Table of evaluated positions, can be null.
+	 */
+	private final TranspositionTable table;
+
+	/**
+	 * Constructor that sets pool, time budget and table of evaluated positions.
+	 * 
+	 * @param pool
+	 *            pool on which rollouts are run
+	 * @param budgetMillis
+	 *            time budget of one evaluation in milliseconds
+	 * @param table
+	 *            table of evaluated positions, null to evaluate every move
+	 *            again
+	 */
+	public MoveEvaluator(ForkJoinPool pool, long budgetMillis, TranspositionTable table) {
+		this.pool = pool;
+		this.budgetNanos = budgetMillis * 1_000_000L;
+		this.table = table;
+	}
+
+	/**
+	 * Constructor that sets pool and time budget.
+	 * 
+	 * @param pool
+	 *            pool on which rollouts are run
+	 * @param budgetMillis
+	 *            time budget of one evaluation in milliseconds
+	 */
+	public MoveEvaluator(ForkJoinPool pool, long budgetMillis) {
+		this(pool, budgetMillis, null);
+	}
+
+	/**
+	 * Constructor that uses common pool.
+	 * 
+	 * @param budgetMillis
+	 *            time budget of one evaluation in milliseconds
+	 */
+	public MoveEvaluator(long budgetMillis) {
+		this(ForkJoinPool.commonPool(), budgetMillis);
+	}
+
+	/**
+	 * Finds all possible moves and scores them with random games. Board is
+	 * not changed, but it must not be changed by others during evaluation.
+	 * 
+	 * @param board
+	 *            board on which moves are evaluated
+	 * @param seed
+	 *            seed of generators used in rollouts
+	 * @return the best move, null when no move is possible
+	 */
+	public Evaluation evaluate(Board board, long seed) {
+		long deadline = System.nanoTime() + budgetNanos;
+		int size = board.getParameters().getRows() * board.getParameters().getColumns();
+		int[] reachable = new int[size];
+		int[] moves = new int[2 * size];
+		int moveCount = 0;
+		for (int from = 0; from < size; from++) {
+			if (board.isFree(from))
+				continue;
+			int count = board.findReachable(from, reachable);
+			if (2 * (moveCount + count) > moves.length)
+				moves = Arrays.copyOf(moves, Math.max(2 * moves.length, 2 * (moveCount + count)));
+			for (int i = 0; i < count; i++) {
+				moves[2 * moveCount] = from;
+				moves[2 * moveCount + 1] = reachable[i];
+				moveCount++;
+			}
+		}
+		if (moveCount == 0)
+			return null;
+		double[] sums = new double[moveCount];
+		int[] rollouts = new int[moveCount];
+		long[] hashes = new long[moveCount];
+		int[] active = new int[moveCount];
+		int activeCount = 0;
+		long parametersKey = Zobrist.key(board.getParameters()) ^ Zobrist.previewKey(board.getPreview());
+		if (table != null)
+			table.newSearch();
+		for (int i = 0; i < moveCount; i++) {
+			int from = moves[2 * i];
+			hashes[i] = Zobrist.afterMove(board.getHash(), from, moves[2 * i + 1], board.getColor(from).getId())
+					^ parametersKey;
+			long entry = table == null ? 0 : table.probe(hashes[i]);
+			rollouts[i] = TranspositionTable.count(entry);
+			sums[i] = TranspositionTable.value(entry) * rollouts[i];
+			if (rollouts[i] < CACHEDROLLOUTS)
+				active[activeCount++] = i;
+		}
+		GameRandom random = new GameRandom(seed);
+		ThreadLocal<Board> games = new ThreadLocal<Board>();
+		int round = 0;
+		while (activeCount > 0) {
+			pool.invoke(new RolloutTask(board, games, moves, active, sums, rollouts, 0, activeCount,
+					random.split(round++), deadline));
+			if (System.nanoTime() >= deadline)
+				break;
+		}
+		if (table != null)
+			for (int i = 0; i < activeCount; i++)
+				table.store(hashes[active[i]], sums[active[i]] / Math.max(1, rollouts[active[i]]),
+						rollouts[active[i]]);
+		int best = 0;
+		for (int i = 1; i < moveCount; i++)
+			if (rollouts[i] > 0 && (rollouts[best] == 0 || sums[i] / rollouts[i] > sums[best] / rollouts[best]))
+				best = i;
+		int total = 0;
+		for (int i = 0; i < moveCount; i++)
+			total += rollouts[i];
+		return new Evaluation(moves[2 * best], moves[2 * best + 1],
+				rollouts[best] == 0 ? 0 : sums[best] / rollouts[best], total);
+	}
+
+	/**
+	 * Creates board on which rollouts are played: snapshot of evaluated board
+	 * with history long enough to undo whole rollout.
+	 * 
+	 * @param board
+	 *            evaluated board
+	 * @return board for rollouts
+	 */
+	static Board rolloutBoard(Board board) {
+		Board game = board.snapshot(new GameRandom(0));
+		game.setHistory(new BoardHistory(ROLLOUTDEPTH + 1));
+		return game;
+	}
+
+	/**
+	 * Plays random game after given move and undoes all its moves, so the
+	 * same board is used by the next rollout without copying it.
+	 * 
+	 * @param game
+	 *            board created with {@link #rolloutBoard(Board)}
+	 * @param from
+	 *            index of moved square
+	 * @param to
+	 *            index of target square
+	 * @param random
+	 *            generator used in the game
+	 * @return points gained in the game plus amount of grey squares left,
+	 *         points gained before board filled up lowered by penalty
+	 */
+	static double rollout(Board game, int from, int to, GameRandom random) {
+		game.getRandom().setSeed(random.nextLong());
+		long startScore = game.getScore();
+		GameEnding ending = new GameEnding();
+		game.setListener(ending);
+		game.move(from, to);
+		int size = game.getParameters().getRows() * game.getParameters().getColumns();
+		for (int move = 0; move < ROLLOUTDEPTH && game.getFreeCount() > 0; move++) {
+			for (int tries = 0; tries < MOVETRIES; tries++) {
+				int square = random.nextInt(size);
+				if (!game.isFree(square)
+						&& game.move(square, game.getFreeCell(random.nextInt(game.getFreeCount()))))
+					break;
+			}
+		}
+		double result;
+		if (ending.isOver() || game.getFreeCount() == 0)
+			result = ending.getScore(game) - startScore - GAMEOVERPENALTY;
+		else
+			result = game.getScore() - startScore + game.getFreeCount();
+		game.setListener(null);
+		while (game.undo())
+			;
+		return result;
+	}
+
+	/**
+	 * Task running one round of rollouts for a range of moves. Range is split
+	 * in halves until it holds one move.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	private static class RolloutTask extends RecursiveAction {
+
+		/**
+		 * Used as a version control in a Serializable class.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Evaluated board.
+		 */
+		private final Board board;
+
+		/**
+		 * Boards for rollouts of every thread, created with
+		 * {@link MoveEvaluator#rolloutBoard(Board)}.
+		 */
+		private final ThreadLocal<Board> games;
+
+		/**
+		 * Pairs of square indexes: moved square and target square.
+		 */
+		private final int[] moves;
+
+		/**
+		 * Numbers of moves which are evaluated.
+		 */
+		private final int[] active;
+
+		/**
+		 * Sum of rollout results of every move.
+		 */
+		private final double[] sums;
+
+		/**
+		 * Amount of rollouts of every move.
+		 */
+		private final int[] rollouts;
+
+		/**
+		 * First position of the range in {@link #active}.
+		 */
+		private final int low;
+
+		/**
+		 * Position after the last position of the range in {@link #active}.
+		 */
+		private final int high;
+
+		/**
+		 * Generator of this round, split for every move.
+		 */
+		private final GameRandom random;
+
+		/**
+		 * Time when evaluation has to end.
+		 */
+		private final long deadline;
+
+		/**
+		 * Constructor that sets all variables.
+		 * 
+		 * @param board
+		 *            evaluated board
+		 * @param games
+		 *            boards for rollouts of every thread
+		 * @param moves
+		 *            pairs of square indexes
+		 * @param active
+		 *            numbers of evaluated moves
+		 * @param sums
+		 *            sums of rollout results
+		 * @param rollouts
+		 *            amounts of rollouts
+		 * @param low
+		 *            first position of the range
+		 * @param high
+		 *            position after the last position of the range
+		 * @param random
+		 *            generator of this round
+		 * @param deadline
+		 *            time when evaluation has to end
+		 */
+		RolloutTask(Board board, ThreadLocal<Board> games, int[] moves, int[] active, double[] sums, int[] rollouts,
+				int low, int high, GameRandom random, long deadline) {
+			this.board = board;
+			this.games = games;
+			this.moves = moves;
+			this.active = active;
+			this.sums = sums;
+			this.rollouts = rollouts;
+			this.low = low;
+			this.high = high;
+			this.random = random;
+			this.deadline = deadline;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+			if (high - low > 1) {
+				int middle = (low + high) >>> 1;
+				invokeAll(new RolloutTask(board, games, moves, active, sums, rollouts, low, middle, random, deadline),
+						new RolloutTask(board, games, moves, active, sums, rollouts, middle, high, random, deadline));
+				return;
+			}
+			int move = active[low];
+			GameRandom moveRandom = random.split(move);
+			for (int i = 0; i < ROUNDROLLOUTS && System.nanoTime() < deadline; i++) {
+				Board game = games.get();
+				if (game == null || game.getHash() != board.getHash()) {
+					game = rolloutBoard(board);
+					games.set(game);
+				}
+				sums[move] += rollout(game, moves[2 * move], moves[2 * move + 1], moveRandom);
+				rollouts[move]++;
+			}
+		}
+	}
+
+	/**
+	 * Result of evaluation: the best move and its score.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	public static class Evaluation {
+
+		/**
+		 * Index of moved square.
+		 */
+		private final int from;
+
+		/**
+		 * Index of target square.
+		 */
+		private final int to;
+
+		/**
+		 * Mean result of rollouts of the move.
+		 */
+		private final double value;
+
+		/**
+		 * Amount of rollouts of all moves.
+		 */
+		private final int rollouts;
+
+		/**
+		 * Constructor that sets all variables.
+		 * 
+		 * @param from
+		 *            index of moved square
+		 * @param to
+		 *            index of target square
+		 * @param value
+		 *            mean result of rollouts
+		 * @param rollouts
+		 *            amount of all rollouts
+		 */
+		public Evaluation(int from, int to, double value, int rollouts) {
+			this.from = from;
+			this.to = to;
+			this.value = value;
+			this.rollouts = rollouts;
+		}
+
+		/**
+		 * Getting index of moved square.
+		 * 
+		 * @return {@link #from}
+		 */
+		public int getFrom() {
+			return from;
+		}
+
+		/**
+		 * Getting index of target square.
+		 * 
+		 * @return {@link #to}
+		 */
+		public int getTo() {
+			return to;
+		}
+
+		/**
+		 * Getting mean result of rollouts of the move.
+		 * 
+		 * @return {@link #value}
+		 */
+		public double getValue() {
+			return value;
+		}
+
+		/**
+		 * Getting amount of rollouts of all moves.
+		 * 
+		 * @return {@link #rollouts}
+		 */
+		public int getRollouts() {
+			return rollouts;
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package squared.game;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scaling benchmark of {@link MoveEvaluator}. For every amount of threads
+ * evaluates the same positions on a pool of that size and prints rollouts per
+ * second and speedup against one thread, so it shows how many cores the
+ * evaluator really uses.
+ * 
+ * @author bartl_000
+ *
+ */
+public class MoveEvaluatorLoad {
+
+	/**
+	 * Amount of evaluated positions when none is given.
+	 */
+	private static final int DEFAULT_POSITIONS = 20;
+
+	/**
+	 * Time budget of one evaluation in milliseconds when none is given.
+	 */
+	private static final int DEFAULT_BUDGETMILLIS = 200;
+
+	/**
+	 * Amount of random moves played to reach evaluated position.
+	 */
+	private static final int OPENINGMOVES = 20;
+
+	/**
+	 * Private constructor, class only holds static methods.
+	 */
+	private MoveEvaluatorLoad() {
+	}
+
+	/**
+	 * Runs evaluations on pools from one thread to all processors, doubling
+	 * amount of threads.
+	 * 
+	 * @param args
+	 *            amount of positions, time budget of one evaluation in
+	 *            milliseconds and seed of positions
+	 */
+	public static void main(String[] args) {
+		int positionCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_POSITIONS;
+		int budgetMillis = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BUDGETMILLIS;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		GameParameters parameters = GameParameters.fromSystemProperties();
+		ArrayList<Board> positions = positions(parameters, positionCount, seed);
+		int processors = Runtime.getRuntime().availableProcessors();
+		System.out.println(positions.size() + " positions, " + budgetMillis + " ms each, " + processors
+				+ " processors");
+		System.out.println(" threads  rollouts/s  speedup");
+		evaluate(positions, 1, budgetMillis, seed);
+		double single = 0;
+		for (int threads = 1; threads <= processors; threads = threads < processors
+				? Math.min(2 * threads, processors) : threads + 1) {
+			double rate = evaluate(positions, threads, budgetMillis, seed);
+			if (threads == 1)
+				single = rate;
+			System.out.println(String.format("%8d  %10.0f  %7.2f", threads, rate, rate / single));
+		}
+	}
+
+	/**
+	 * Plays random moves on new boards to get positions from the middle of
+	 * the game.
+	 * 
+	 * @param parameters
+	 *            parameters of games
+	 * @param count
+	 *            amount of positions
+	 * @param seed
+	 *            seed of the games and of the moves
+	 * @return boards with at least one possible move
+	 */
+	private static ArrayList<Board> positions(GameParameters parameters, int count, long seed) {
+		GameRandom random = new GameRandom(seed);
+		int size = parameters.getRows() * parameters.getColumns();
+		int[] reachable = new int[size];
+		ArrayList<Board> positions = new ArrayList<Board>();
+		while (positions.size() < count) {
+			Board board = new Board(parameters, random.split());
+			board.addRandomSquares(3);
+			for (int move = 0; move < OPENINGMOVES && board.getFreeCount() > 0;) {
+				int from = random.nextInt(size);
+				if (board.isFree(from))
+					continue;
+				int found = board.findReachable(from, reachable);
+				if (found == 0)
+					continue;
+				board.move(from, reachable[random.nextInt(found)]);
+				move++;
+			}
+			if (board.getFreeCount() > 0)
+				positions.add(board);
+		}
+		return positions;
+	}
+
+	/**
+	 * Evaluates all positions on a new pool.
+	 * 
+	 * @param positions
+	 *            evaluated boards
+	 * @param threads
+	 *            parallelism of the pool
+	 * @param budgetMillis
+	 *            time budget of one evaluation in milliseconds
+	 * @param seed
+	 *            seed of rollouts
+	 * @return rollouts per second
+	 */
+	private static double evaluate(ArrayList<Board> positions, int threads, int budgetMillis, long seed) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			MoveEvaluator evaluator = new MoveEvaluator(pool, budgetMillis);
+			long rollouts = 0;
+			long start = System.nanoTime();
+			for (Board position : positions) {
+				MoveEvaluator.Evaluation evaluation = evaluator.evaluate(position, seed);
+				if (evaluation != null)
+					rollouts += evaluation.getRollouts();
+			}
+			return rollouts * 1e9 / (System.nanoTime() - start);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
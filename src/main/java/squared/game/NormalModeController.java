@@ -1,11 +1,17 @@
 package squared.game;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
 import squared.game.View.Square;
 import javafx.scene.layout.VBox;
 
@@ -18,6 +24,28 @@ import javafx.scene.layout.VBox;
  */
 public class NormalModeController {
 
+	/**
+	 * The biggest amount of clicks buffered while square travels.
+	 */
+	private static final int MAXBUFFEREDCLICKS = 16;
+
+	/**
+	 * Time of looking for a hint in milliseconds.
+	 */
+	private static final long HINTMILLIS = 150;
+
+	/**
+	 * Memory of positions evaluated for hints in bytes.
+	 */
+	private static final long HINTTABLEBYTES = 4 << 20;
+
+	/**
+	 * Evaluator finding hints, shared by all games, so positions evaluated
+	 * for earlier hints are not evaluated again.
+	 */
+	private static final MoveEvaluator hints = new MoveEvaluator(ForkJoinPool.commonPool(), HINTMILLIS,
+			new TranspositionTable(HINTTABLEBYTES));
+
 	/**
 	 * Instance of class {@link View}.
 	 */
@@ -39,6 +67,28 @@ public class NormalModeController {
 	@FXML
 	private FlowPane squareFlowPane;
 
+	/**
+	 * Layer above the squares on which moves are animated.
+	 */
+	@FXML
+	private Pane animationLayer;
+
+	/**
+	 * Timer animating moves on {@link #animationLayer}.
+	 */
+	private MoveAnimator animator;
+
+	/**
+	 * Clicks made while square travels, handled when it arrives.
+	 */
+	private final ArrayDeque<Square> bufferedClicks = new ArrayDeque<Square>();
+
+	/**
+	 * Box showing colors of the next random squares.
+	 */
+	@FXML
+	private HBox previewBox;
+
 	/**
 	 * Flowpane used to hold label with highscores.
 	 */
@@ -51,6 +101,34 @@ public class NormalModeController {
 	@FXML
 	private Label scoreIcon;
 
+	/**
+	 * Label showing place of the final score after game over.
+	 */
+	@FXML
+	private Label rankLabel;
+
+	/**
+	 * Label on which performance statistics are shown.
+	 */
+	@FXML
+	private Label performanceLabel;
+
+	/**
+	 * Timer showing performance statistics on {@link #performanceLabel}.
+	 */
+	private PerformanceOverlay performanceOverlay;
+
+	/**
+	 * Label showing time to the next squares of time attack mode.
+	 */
+	@FXML
+	private Label clockLabel;
+
+	/**
+	 * Clock adding squares in time attack mode, null in normal mode.
+	 */
+	private TimeAttackClock clock;
+
 	/**
 	 * Variable to handle menuIcon actions.
 	 */
@@ -70,22 +148,31 @@ public class NormalModeController {
 	private ImageView muteIcon;
 
 	/**
-	 * Returns to main manu scene after reseting board of squares,
-	 * greySquareArray.
+	 * Returns to main manu scene after saving current game, so it can be
+	 * resumed later. Game of time attack mode is left and game of normal mode
+	 * is resumed instead.
 	 * 
-	 * @see Model#resetBoard()
-	 * @see Model#resetGreySquaresArray()
+	 * @see Model#saveGame()
+	 * @see Model#setTimeAttack(boolean)
 	 */
 	@FXML
 	private void returnToMainMenu() {
-		model.resetBoard();
-		model.resetGreySquaresArray();
+		if (clock != null)
+			clock.stop();
+		performanceOverlay.stop();
+		animator.finish();
+		bufferedClicks.clear();
+		model.setAnimator(null);
+		squareFlowPane.getScene().setOnKeyPressed(null);
+		model.saveGame();
 		model.setFirstClicked(null);
+		model.setTimeAttack(false);
 		view.loadMainMenu(model);
 	}
 
 	/**
-	 * Resets board of squares and updates leaderboard.
+	 * Resets board of squares and updates leaderboard. Clock of time attack
+	 * mode starts counting again.
 	 * 
 	 * @see Model#resetBoard()
 	 * @see View#addLeaderboard(VBox, java.util.ArrayList)
@@ -94,6 +181,10 @@ public class NormalModeController {
 	private void resetSquares() {
 		model.resetBoard();
 		view.addLeaderboard(vBox, scoreMenager.getHighscore());
+		if (clock != null) {
+			clock.reset();
+			clock.start();
+		}
 	}
 
 	/**
@@ -185,17 +276,27 @@ public class NormalModeController {
 	}
 
 	/**
-	 * Sets {@link NormalModeController#model} variable and score to 0 points.
-	 * Binds {@link #scoreIcon} with current score, which is held in Model
-	 * object
+	 * Getting box showing colors of the next random squares.
+	 * 
+	 * @return {@link #previewBox}
+	 */
+	public HBox getPreviewBox() {
+		return previewBox;
+	}
+
+	/**
+	 * Sets {@link NormalModeController#model} variable. Binds
+	 * {@link #scoreIcon} with current score, which is held in Model object,
+	 * and {@link #rankLabel} with place of the final score.
 	 * 
 	 * @param model
-	 * @see Model#setScore(long)
+	 * @see Model#getScore()
+	 * @see Model#getRank()
 	 */
 	public void setModel(Model model) {
 		this.model = model;
-		model.setScore(0);
 		scoreIcon.textProperty().bind(model.getScore().asString());
+		rankLabel.textProperty().bind(model.getRank());
 	}
 
 	/**
@@ -208,8 +309,12 @@ public class NormalModeController {
 	}
 
 	/**
-	 * Shows actual leaderboard and adds event handler to all buttons held in
-	 * Square array.
+	 * Shows actual leaderboard of current mode and adds event handler to all
+	 * buttons held in Square array. Clicks made while moved square travels are
+	 * buffered and handled when it arrives. Moving pointer over squares shows
+	 * possible targets of selected square. Pressing F3 toggles performance
+	 * overlay. In time attack mode starts {@link #clock}, which shows actual
+	 * leaderboard again when game ends.
 	 * 
 	 * @param square
 	 *            - array of squares we want to add handlers to
@@ -217,25 +322,93 @@ public class NormalModeController {
 	 * @see {@link View#addLeaderboard(VBox, java.util.ArrayList)
 	 */
 	public void setSquareHandle(Square[][] square) {
-		scoreMenager = new HighscoreMenager();
+		scoreMenager = new HighscoreMenager(model.getPartition());
 		view.addLeaderboard(vBox, scoreMenager.getHighscore());
+		animator = new MoveAnimator(animationLayer, square);
+		animator.setOnArrived(new Runnable() {
+
+			@Override
+			public void run() {
+				while (!animator.isMoving() && !bufferedClicks.isEmpty())
+					click(bufferedClicks.poll());
+			}
+		});
+		model.setAnimator(animator);
 		model.setSquareArray(square);
 		EventHandler<MouseEvent> handler = new EventHandler<MouseEvent>() {
 
 			@Override
 			public void handle(MouseEvent event) {
 				Square handledSquare = (Square) event.getSource();
-				model.handleClick(handledSquare);
-				vBox.getChildren().clear();
-				view.addLeaderboard(vBox, scoreMenager.getHighscore());
+				if (!animator.isMoving())
+					click(handledSquare);
+				else if (bufferedClicks.size() < MAXBUFFEREDCLICKS)
+					bufferedClicks.add(handledSquare);
 			}
 		};
+		EventHandler<MouseEvent> hoverHandler = new EventHandler<MouseEvent>() {
 
-		for (int i = 0; i < 9; i++) {
-			for (int j = 0; j < 9; j++) {
+			@Override
+			public void handle(MouseEvent event) {
+				if (event.getEventType() == MouseEvent.MOUSE_ENTERED)
+					model.hover((Square) event.getSource());
+				else
+					model.hover(null);
+			}
+		};
+
+		for (int i = 0; i < square.length; i++) {
+			for (int j = 0; j < square[i].length; j++) {
 				square[i][j].addEventHandler(MouseEvent.MOUSE_CLICKED, handler);
+				square[i][j].addEventHandler(MouseEvent.MOUSE_ENTERED, hoverHandler);
+				square[i][j].addEventHandler(MouseEvent.MOUSE_EXITED, hoverHandler);
 			}
 		}
+
+		performanceOverlay = new PerformanceOverlay(performanceLabel);
+		squareFlowPane.getScene().setOnKeyPressed(new EventHandler<KeyEvent>() {
+
+			@Override
+			public void handle(KeyEvent event) {
+				if (event.getCode() == KeyCode.F3)
+					performanceOverlay.toggle();
+				else if (event.isShortcutDown() && event.getCode() == KeyCode.Z)
+					model.undo();
+				else if (event.isShortcutDown() && event.getCode() == KeyCode.Y)
+					model.redo();
+				else if (event.getCode() == KeyCode.H && !animator.isMoving())
+					model.showHint(hints);
+			}
+		});
+
+		if (model.isTimeAttack()) {
+			clock = new TimeAttackClock(model, clockLabel);
+			clock.setOnGameOver(new Runnable() {
+
+				@Override
+				public void run() {
+					vBox.getChildren().clear();
+					view.addLeaderboard(vBox, scoreMenager.getHighscore());
+				}
+			});
+			clockLabel.setVisible(true);
+			clock.start();
+		}
+	}
+
+	/**
+	 * Handles click on a square and shows actual leaderboard.
+	 * 
+	 * @param square
+	 *            clicked square
+	 * @see {@link Model#handleClick(Square)
+	 */
+	private void click(Square square) {
+		long start = System.nanoTime();
+		model.handleClick(square);
+		vBox.getChildren().clear();
+		view.addLeaderboard(vBox, scoreMenager.getHighscore());
+		Metrics.CLICK.recordSince(start);
 	}
 
 }
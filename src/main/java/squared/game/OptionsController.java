@@ -1,6 +1,7 @@
 package squared.game;
 
 import javafx.fxml.FXML;
+import javafx.scene.control.Label;
 import javafx.scene.image.ImageView;
 
 /**
@@ -56,6 +57,12 @@ public class OptionsController {
 	@FXML
 	private ImageView menuIcon;
 
+	/**
+	 * Label on which statistics of all games are shown.
+	 */
+	@FXML
+	private Label statisticsLabel;
+
 	/**
 	 * Sets current scene to Menu.
 	 * 
@@ -67,40 +74,43 @@ public class OptionsController {
 	}
 
 	/**
-	 * Sets color amount to 5.
-	 * @see {@link Model#setColorAmount(int)}
+	 * Sets easy difficulty, 5 colors unless difficulty profile says otherwise.
+	 * @see {@link Model#setDifficulty(int)}
 	 */
 	@FXML
 	private void setEasyMode() {
-		model.setColorAmount(5);
+		model.setDifficulty(DifficultyProfile.EASY);
 	}
 
 	/**
-	 * Sets color amount to 7.
-	 * @see {@link Model#setColorAmount(int)}
+	 * Sets medium difficulty, 7 colors unless difficulty profile says
+	 * otherwise.
+	 * @see {@link Model#setDifficulty(int)}
 	 */
 	@FXML
 	private void setMediumMode() {
-		model.setColorAmount(7);
+		model.setDifficulty(DifficultyProfile.MEDIUM);
 	}
 
 	/**
-	 * Sets color amount to 9.
-	 * @see {@link Model#setColorAmount(int)}
+	 * Sets hard difficulty, 10 colors unless difficulty profile says
+	 * otherwise.
+	 * @see {@link Model#setDifficulty(int)}
 	 */
 	@FXML
 	private void setHardMode() {
-		model.setColorAmount(10);
+		model.setDifficulty(DifficultyProfile.HARD);
 	}
 
 	/**
-	 * Resets leaderboard.
+	 * Resets leaderboards of normal and time attack mode.
 	 * @see {@link HighscoreMenager#resetFile()}
 	 */
 	@FXML
 	private void resetLeaderboard() {
 		HighscoreMenager menager = new HighscoreMenager();
 		menager.resetFile();
+		new HighscoreMenager(HighscoreMenager.TIMEATTACK).resetFile();
 	}
 
 	/**
@@ -250,6 +260,30 @@ public class OptionsController {
 		view.setImageView(menuIcon, "MenuIcon.png");
 	}
 
+	/**
+	 * Shows statistics of all games on {@link #statisticsLabel}.
+	 * 
+	 * @param statistics
+	 *            statistics of all games
+	 * @see {@link HighscoreMenager#getStatistics()}
+	 */
+	public void showStatistics(ScoreStatistics statistics) {
+		if (statistics.getGames() == 0) {
+			statisticsLabel.setText("No games played yet");
+			return;
+		}
+		statisticsLabel.setText(String.format(
+				"Games: %d   Mean: %.1f \u00b1 %.1f   Lowest: %d   Highest: %d%n"
+						+ "Median: %.0f   90th percentile: %.0f   99th percentile: %.0f%n"
+						+ "Scoring streak: %d (best %d)   Day streak: %d (best %d)%n"
+						+ "Games per day: %.1f   Days played: %d   Most games in a day: %d",
+				statistics.getGames(), statistics.getMean(), statistics.getDeviation(), statistics.getMin(),
+				statistics.getMax(), statistics.getMedian(), statistics.getPercentile90(),
+				statistics.getPercentile99(), statistics.getScoringStreak(), statistics.getBestScoringStreak(),
+				statistics.getDayStreak(), statistics.getBestDayStreak(), statistics.getGamesPerDay(),
+				statistics.getDays(), statistics.getBestDayGames()));
+	}
+
 	/**
 	 * Sets {@link OptionsController#model} variable.
 	 * 
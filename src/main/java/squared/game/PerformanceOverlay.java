@@ -0,0 +1,139 @@
+package squared.game;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+
+/**
+ * Timer called by JavaFX on every frame. Records frame times and shows FPS,
+ * the worst frame time, amount of live images and media players and used heap
+ * on a label. Frame times are kept in a preallocated ring, so recording does
+ * not allocate. Label is updated only a few times per second.
+ * 
+ * @author bartl_000
+ *
+ */
+public class PerformanceOverlay extends AnimationTimer {
+
+	/**
+	 * Amount of last frames which are taken into account.
+	 */
+	private static final int FRAMES = 120;
+
+	/**
+	 * Time between label updates in nanoseconds.
+	 */
+	private static final long UPDATE_INTERVAL = 500_000_000L;
+
+	/**
+	 * Amount of bytes in a megabyte.
+	 */
+	private static final long MEGABYTE = 1024 * 1024;
+
+	/**
+	 * Label on which statistics are shown.
+	 */
+	private final Label label;
+
+	/**
+	 * Ring of last frame times in nanoseconds.
+	 */
+	private final long[] frameTimes = new long[FRAMES];
+
+	/**
+	 * Index in {@link #frameTimes} where next frame time will be saved.
+	 */
+	private int frameIndex;
+
+	/**
+	 * Amount of frame times saved in {@link #frameTimes}, at most
+	 * {@link #FRAMES}.
+	 */
+	private int frameCount;
+
+	/**
+	 * Time of the previous frame, 0 before first frame.
+	 */
+	private long lastFrame;
+
+	/**
+	 * Time of the last label update.
+	 */
+	private long lastUpdate;
+
+	/**
+	 * Amount of frames since the last label update.
+	 */
+	private int framesSinceUpdate;
+
+	/**
+	 * Constructor sets label on which statistics are shown.
+	 * 
+	 * @param label
+	 *            label to show statistics, hidden until overlay is toggled
+	 */
+	public PerformanceOverlay(Label label) {
+		this.label = label;
+	}
+
+	/**
+	 * Shows label and starts recording if overlay is hidden, otherwise hides
+	 * it and stops recording.
+	 */
+	public void toggle() {
+		if (label.isVisible()) {
+			stop();
+			label.setVisible(false);
+		} else {
+			lastFrame = 0;
+			frameCount = 0;
+			label.setVisible(true);
+			start();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javafx.animation.AnimationTimer#handle(long)
+	 */
+	@Override
+	public void handle(long now) {
+		if (lastFrame == 0) {
+			lastFrame = now;
+			lastUpdate = now;
+			framesSinceUpdate = 0;
+			return;
+		}
+		long frameTime = now - lastFrame;
+		lastFrame = now;
+		Metrics.FX_FRAME.record(frameTime);
+		frameTimes[frameIndex] = frameTime;
+		frameIndex = (frameIndex + 1) % FRAMES;
+		if (frameCount < FRAMES)
+			frameCount++;
+		framesSinceUpdate++;
+		if (now - lastUpdate >= UPDATE_INTERVAL) {
+			updateLabel(now);
+			lastUpdate = now;
+			framesSinceUpdate = 0;
+		}
+	}
+
+	/**
+	 * Shows current statistics on {@link #label}.
+	 * 
+	 * @param now
+	 *            time of current frame
+	 */
+	private void updateLabel(long now) {
+		long worst = 0;
+		for (int i = 0; i < frameCount; i++)
+			worst = Math.max(worst, frameTimes[i]);
+		double fps = framesSinceUpdate * 1e9 / (now - lastUpdate);
+		Runtime runtime = Runtime.getRuntime();
+		long heap = (runtime.totalMemory() - runtime.freeMemory()) / MEGABYTE;
+		label.setText(String.format("FPS %.0f  WORST %.1fms  IMAGES %d  PLAYERS %d  HEAP %dMB", fps, worst / 1e6,
+				Metrics.getLiveImages(), Metrics.MEDIA_PLAYERS_LIVE.sum(), heap));
+	}
+
+}
@@ -0,0 +1,252 @@
+package squared.game;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks submitted scores by playing their {@link GameRecord} again without
+ * any view. Records wait in a bounded queue for a pool of workers, when the
+ * queue is full the submitting thread verifies the record itself, so
+ * producers slow down instead of filling memory. Replay uses the same
+ * {@link Board} rules as {@link Model}: the game starts with 3 random squares
+ * from the recorded seed, every move must be legal and the claimed score must
+ * equal the score reached.
+ * 
+ * @author bartl_000
+ *
+ */
+public class ReplayVerifier {
+
+	/**
+	 * Result of {@link #replay(GameRecord)} for records with illegal moves.
+	 */
+	public static final long ILLEGAL = Long.MIN_VALUE;
+
+	/**
+	 * Capacity of the queue when none is given.
+	 */
+	private static final int DEFAULT_QUEUE = 1024;
+
+	/**
+	 * Amount of games verified by {@link #main(String[])} when none is given.
+	 */
+	private static final int DEFAULT_GAMES = 20000;
+
+	/**
+	 * One in that many games generated by {@link #main(String[])} claims wrong
+	 * score or makes illegal move.
+	 */
+	private static final int CHEATERS = 10;
+
+	/**
+	 * Workers verifying records.
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Amount of records with correct score.
+	 */
+	private final LongAdder verified = new LongAdder();
+
+	/**
+	 * Amount of rejected records.
+	 */
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Constructor that creates worker for every processor.
+	 */
+	public ReplayVerifier() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE);
+	}
+
+	/**
+	 * Constructor that creates workers and queue.
+	 * 
+	 * @param threads
+	 *            amount of workers
+	 * @param queueCapacity
+	 *            amount of records waiting for a worker
+	 */
+	public ReplayVerifier(int threads, int queueCapacity) {
+		final AtomicInteger number = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "replay-verifier-" + number.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Verifies records generated from random games, some of them cheating, and
+	 * prints throughput.
+	 * 
+	 * @param args
+	 *            amount of games and amount of workers
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting for results
+	 * @exception ExecutionException
+	 *                - verification failed
+	 */
+	public static void main(String[] args) throws InterruptedException, ExecutionException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		GameRandom random = new GameRandom(games);
+		GameParameters parameters = GameParameters.fromSystemProperties();
+		ArrayList<GameRecord> records = new ArrayList<GameRecord>(games);
+		int cheaters = 0;
+		long moves = 0;
+		for (int i = 0; i < games; i++) {
+			GameRecord record = play(parameters, random.split());
+			if (random.nextInt(CHEATERS) == 0) {
+				cheaters++;
+				if (record.getMoveCount() > 0 && random.nextBoolean())
+					record.addMove(record.getFrom(0), record.getTo(0));
+				else
+					record.setScore(record.getScore() + 1 + random.nextInt(100));
+			}
+			moves += record.getMoveCount();
+			records.add(record);
+		}
+		ReplayVerifier verifier = new ReplayVerifier(threads, DEFAULT_QUEUE);
+		ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>(games);
+		long start = System.nanoTime();
+		for (GameRecord record : records)
+			results.add(verifier.submit(record));
+		for (Future<Boolean> result : results)
+			result.get();
+		long nanos = System.nanoTime() - start;
+		verifier.shutdown(1000);
+		System.out.println(String.format(
+				"%d games, %d moves, %d threads: %.0f games/min, %.0f moves/s, %d verified, %d rejected, %d cheaters",
+				games, moves, threads, games * 60e9 / nanos, moves * 1e9 / nanos, verifier.getVerified(),
+				verifier.getRejected(), cheaters));
+	}
+
+	/**
+	 * Plays random game until board is full, recording it.
+	 * 
+	 * @param parameters
+	 *            parameters of the game
+	 * @param random
+	 *            generator of moves and seed
+	 * @return record of the game with reached score
+	 */
+	static GameRecord play(GameParameters parameters, GameRandom random) {
+		GameRecord record = new GameRecord(parameters, random.nextLong());
+		Board board = new Board(parameters, new GameRandom(record.getSeed()));
+		GameEnding ending = new GameEnding();
+		board.setListener(ending);
+		board.addRandomSquares(3);
+		int size = parameters.getRows() * parameters.getColumns();
+		int[] reachable = new int[size];
+		while (!ending.isOver() && board.getFreeCount() > 0) {
+			int from = random.nextInt(size);
+			if (board.isFree(from))
+				continue;
+			int count = board.findReachable(from, reachable);
+			if (count == 0)
+				continue;
+			int to = reachable[random.nextInt(count)];
+			board.move(from, to);
+			record.addMove(from, to);
+		}
+		record.setScore(ending.getScore(board));
+		return record;
+	}
+
+	/**
+	 * Queues record for verification, verifies it on the calling thread when
+	 * queue is full.
+	 * 
+	 * @param record
+	 *            verified record
+	 * @return true when score is correct, false otherwise
+	 */
+	public Future<Boolean> submit(final GameRecord record) {
+		return executor.submit(new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() {
+				long start = System.nanoTime();
+				boolean correct = replay(record) == record.getScore();
+				Metrics.REPLAY_VERIFY.recordSince(start);
+				if (correct)
+					verified.increment();
+				else
+					rejected.increment();
+				return correct;
+			}
+		});
+	}
+
+	/**
+	 * Plays recorded game again.
+	 * 
+	 * @param record
+	 *            played record
+	 * @return score reached when board got full or after the last move,
+	 *         {@link #ILLEGAL} if any move was illegal or was made after the
+	 *         end of the game
+	 */
+	public static long replay(GameRecord record) {
+		GameParameters parameters = record.getParameters();
+		Board board = new Board(parameters, new GameRandom(record.getSeed()));
+		GameEnding ending = new GameEnding();
+		board.setListener(ending);
+		board.addRandomSquares(3);
+		int size = parameters.getRows() * parameters.getColumns();
+		for (int i = 0; i < record.getMoveCount(); i++) {
+			int from = record.getFrom(i);
+			int to = record.getTo(i);
+			if (ending.isOver() || from < 0 || from >= size || to < 0 || to >= size || !board.move(from, to))
+				return ILLEGAL;
+		}
+		return ending.getScore(board);
+	}
+
+	/**
+	 * Getting amount of records with correct score.
+	 * 
+	 * @return amount of records
+	 */
+	public long getVerified() {
+		return verified.sum();
+	}
+
+	/**
+	 * Getting amount of rejected records.
+	 * 
+	 * @return amount of records
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Stops workers after queued records are verified.
+	 * 
+	 * @param millis
+	 *            time of waiting for workers
+	 * @exception InterruptedException
+	 *                - thread was interrupted while waiting
+	 */
+	public void shutdown(long millis) throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(millis, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,386 @@
+package squared.game;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import squared.game.Model.Color;
+
+/**
+ * Saves current game to a small binary file and loads it back. Layout of the
+ * file: magic number, version, amount of rows and columns, line length, amount
+ * of colors, amount of squares added every turn, score, state of random
+ * generator, colors of the next random squares, index of selected square and
+ * colors of all squares packed two per byte, then a flag and
+ * {@link GameRecord} of the game when the flag is set, so a resumed game can
+ * still be recorded. Classic board without a record takes 78 bytes. Files of
+ * the first three versions, without colors of the next squares, amount of
+ * added squares or record of the game, are still loaded.
+ * Game is written to a temporary file which then replaces the save file in one
+ * atomic rename, so a crash during a save leaves either the old or the new
+ * game, never a mix of both. Buffer is reused by every save.
+ * 
+ * @author bartl_000
+ *
+ */
+public class SaveGame {
+
+	/**
+	 * Number written at the beginning of every save file.
+	 */
+	private static final int MAGIC = 0x53515244;
+
+	/**
+	 * Version of the file layout.
+	 */
+	private static final byte VERSION = 4;
+
+	/**
+	 * Amount of bytes before square colors.
+	 */
+	private static final int HEADER = 4 + 1 + 5 + 8 + 8 + 8 + 2;
+
+	/**
+	 * Biggest amount of bytes of a saved game without a record.
+	 */
+	public static final int MAXBYTES = HEADER + (GameParameters.MAXSIZE * GameParameters.MAXSIZE + 1) / 2 + 1;
+
+	/**
+	 * Path of the save file.
+	 */
+	private final Path path;
+
+	/**
+	 * Path of the file to which game is written before it replaces
+	 * {@link #path}.
+	 */
+	private final Path temporaryPath;
+
+	/**
+	 * Buffer reused by every save and load, replaced by a bigger one when
+	 * saved game does not fit.
+	 */
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(MAXBYTES);
+
+	/**
+	 * Index of selected square read with last {@link #load()}, -1 when no
+	 * square was selected.
+	 */
+	private int selected = -1;
+
+	/**
+	 * Record of the game read with last {@link #load()}, null when game was
+	 * saved without a record.
+	 */
+	private GameRecord record;
+
+	/**
+	 * Constructor that sets name of the save file.
+	 * 
+	 * @param file
+	 *            name of the file
+	 */
+	public SaveGame(String file) {
+		this.path = Paths.get(file).toAbsolutePath();
+		this.temporaryPath = Paths.get(file + ".tmp").toAbsolutePath();
+	}
+
+	/**
+	 * Counts bytes of a saved game.
+	 * 
+	 * @param board
+	 *            saved board
+	 * @param record
+	 *            record of the game, can be null
+	 * @return amount of bytes written by
+	 *         {@link #encode(Board, int, GameRecord, ByteBuffer)}
+	 */
+	public static int encodedBytes(Board board, GameRecord record) {
+		int size = board.getParameters().getRows() * board.getParameters().getColumns();
+		return HEADER + (size + 1) / 2 + 1 + (record == null ? 0 : record.encodedBytes());
+	}
+
+	/**
+	 * Writes board without a record to a buffer.
+	 * 
+	 * @param board
+	 *            saved board
+	 * @param selected
+	 *            index of selected square, -1 when no square is selected
+	 * @param buffer
+	 *            buffer to which board is written
+	 * @see {@link #encode(Board, int, GameRecord, ByteBuffer)}
+	 */
+	public static void encode(Board board, int selected, ByteBuffer buffer) {
+		encode(board, selected, null, buffer);
+	}
+
+	/**
+	 * Writes board and record of its game to a buffer.
+	 * 
+	 * @param board
+	 *            saved board
+	 * @param selected
+	 *            index of selected square, -1 when no square is selected
+	 * @param record
+	 *            record of the game, null when game is not recorded
+	 * @param buffer
+	 *            buffer with at least {@link #encodedBytes(Board, GameRecord)}
+	 *            bytes remaining
+	 */
+	public static void encode(Board board, int selected, GameRecord record, ByteBuffer buffer) {
+		GameParameters parameters = board.getParameters();
+		int size = parameters.getRows() * parameters.getColumns();
+		buffer.putInt(MAGIC);
+		buffer.put(VERSION);
+		buffer.put((byte) parameters.getRows());
+		buffer.put((byte) parameters.getColumns());
+		buffer.put((byte) parameters.getLineLength());
+		buffer.put((byte) parameters.getColorAmount());
+		buffer.put((byte) parameters.getSpawnCount());
+		buffer.putLong(board.getScore());
+		buffer.putLong(board.getRandom().getState());
+		buffer.putLong(board.getPreview());
+		buffer.putShort((short) selected);
+		for (int i = 0; i < size; i += 2) {
+			int high = board.getColor(i).getId();
+			int low = i + 1 < size ? board.getColor(i + 1).getId() : 0;
+			buffer.put((byte) (high << 4 | low));
+		}
+		buffer.put((byte) (record == null ? 0 : 1));
+		if (record != null)
+			record.encode(buffer);
+	}
+
+	/**
+	 * Reads board from a buffer.
+	 * 
+	 * @param buffer
+	 *            buffer holding saved board
+	 * @param selectedOut
+	 *            array where index of selected square is saved, can be null
+	 * @return board read from buffer, null when buffer does not hold a saved
+	 *         game
+	 * @see {@link #decode(ByteBuffer, int[], GameRecord[])}
+	 */
+	public static Board decode(ByteBuffer buffer, int[] selectedOut) {
+		return decode(buffer, selectedOut, null);
+	}
+
+	/**
+	 * Reads board and record of its game from a buffer. Damaged record is
+	 * skipped, board is still read.
+	 * 
+	 * @param buffer
+	 *            buffer holding saved board
+	 * @param selectedOut
+	 *            array where index of selected square is saved, can be null
+	 * @param recordOut
+	 *            array where record of the game is saved, null when game was
+	 *            saved without a correct record, can be null
+	 * @return board read from buffer, null when buffer does not hold a saved
+	 *         game
+	 */
+	public static Board decode(ByteBuffer buffer, int[] selectedOut, GameRecord[] recordOut) {
+		try {
+			if (buffer.getInt() != MAGIC)
+				return null;
+			byte version = buffer.get();
+			if (version < 1 || version > VERSION)
+				return null;
+			int rows = buffer.get();
+			int columns = buffer.get();
+			int lineLength = buffer.get();
+			int colorAmount = buffer.get();
+			int spawnCount = version > 2 ? buffer.get() : GameParameters.DEFAULT_SPAWN_COUNT;
+			GameParameters parameters = new GameParameters(rows, columns, lineLength, colorAmount, spawnCount);
+			long score = buffer.getLong();
+			long randomState = buffer.getLong();
+			long preview = version > 1 ? checkPreview(buffer.getLong(), parameters) : 0;
+			short selected = buffer.getShort();
+			Board board = new Board(parameters, new GameRandom(randomState));
+			int size = parameters.getRows() * parameters.getColumns();
+			for (int i = 0; i < size; i += 2) {
+				int packed = buffer.get();
+				board.setColor(i, color(packed >> 4 & 0xf));
+				if (i + 1 < size)
+					board.setColor(i + 1, color(packed & 0xf));
+			}
+			if (version > 1)
+				board.restoreState(score, randomState, preview);
+			else
+				board.setScore(score);
+			if (selectedOut != null)
+				selectedOut[0] = selected >= 0 && selected < size && !board.isFree(selected) ? selected : -1;
+			if (version > 3 && buffer.get() != 0) {
+				GameRecord record = GameRecord.decode(buffer);
+				if (recordOut != null)
+					recordOut[0] = record;
+			}
+			return board;
+		} catch (BufferUnderflowException e) {
+			System.out.println("[LOAD]BUFFER UNDERFLOW EXCEPTION: " + e.getMessage());
+		} catch (IllegalArgumentException e) {
+			System.out.println("[LOAD]ILLEGAL ARGUMENT EXCEPTION: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Checks colors of the next squares read from a file.
+	 * 
+	 * @param preview
+	 *            color ids packed like {@link Board#getPreview()}
+	 * @param parameters
+	 *            parameters of the saved game
+	 * @return given colors
+	 * @exception IllegalArgumentException
+	 *                - any color is grey or not used in the game
+	 */
+	private static long checkPreview(long preview, GameParameters parameters) {
+		for (int i = 0; i < Board.PREVIEW; i++) {
+			int id = (int) (preview >>> (i << 2)) & 15;
+			if (id == 0 || id >= parameters.getColorAmount())
+				throw new IllegalArgumentException("wrong color " + id + " of next square " + i);
+		}
+		if (preview >>> (Board.PREVIEW << 2) != 0)
+			throw new IllegalArgumentException("too many next squares");
+		return preview;
+	}
+
+	/**
+	 * Saves board to the file.
+	 * 
+	 * @param board
+	 *            saved board
+	 * @param selected
+	 *            index of selected square, -1 when no square is selected
+	 * @exception IOException
+	 *                - file could not be written
+	 */
+	public void save(Board board, int selected) {
+		buffer.clear();
+		encode(board, selected, buffer);
+		buffer.flip();
+		write(buffer, false);
+	}
+
+	/**
+	 * Replaces the file with a game encoded by
+	 * {@link #encode(Board, int, ByteBuffer)}. Game is written to
+	 * {@link #temporaryPath}, which is renamed to {@link #path} at once, so the
+	 * file holds either the old or the new game at any moment.
+	 * 
+	 * @param data
+	 *            flipped buffer holding encoded game
+	 * @param force
+	 *            true if game and rename should be flushed to the disk before
+	 *            returning
+	 * @return true if file was replaced, false if it still holds the old game
+	 * @exception IOException
+	 *                - file could not be written
+	 */
+	public boolean write(ByteBuffer data, boolean force) {
+		long start = System.nanoTime();
+		boolean written = false;
+		try {
+			try (FileChannel output = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (data.hasRemaining())
+					output.write(data);
+				if (force)
+					output.force(true);
+			}
+			Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			written = true;
+			if (force)
+				forceDirectory();
+		} catch (IOException e) {
+			System.out.println("[SAVE]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		Metrics.SAVE_IO.recordSince(start);
+		return written;
+	}
+
+	/**
+	 * Flushes directory of the file to the disk, so rename of the file
+	 * survives a crash. Systems which cannot open directories, like Windows,
+	 * flush renames with the file itself.
+	 */
+	private void forceDirectory() {
+		try (FileChannel directory = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+			directory.force(true);
+		} catch (IOException e) {
+			// directory cannot be opened on this system
+		}
+	}
+
+	/**
+	 * Loads board from the file. Index of selected square can be read with
+	 * {@link #getSelected()} and record of the game with {@link #getRecord()}.
+	 * 
+	 * @return loaded board, null when there is no saved game
+	 * @exception IOException
+	 *                - file could not be read
+	 */
+	public Board load() {
+		long start = System.nanoTime();
+		Board board = null;
+		int[] selectedOut = { -1 };
+		GameRecord[] recordOut = { null };
+		try (FileChannel input = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (input.size() > buffer.capacity())
+				buffer = ByteBuffer.allocateDirect((int) Math.min(input.size(), Integer.MAX_VALUE));
+			buffer.clear();
+			while (buffer.hasRemaining() && input.read(buffer) > 0)
+				;
+			buffer.flip();
+			board = decode(buffer, selectedOut, recordOut);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			System.out.println("[LOAD]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		selected = selectedOut[0];
+		record = recordOut[0];
+		Metrics.SAVE_IO.recordSince(start);
+		return board;
+	}
+
+	/**
+	 * Getting index of selected square read with last {@link #load()}.
+	 * 
+	 * @return {@link #selected}
+	 */
+	public int getSelected() {
+		return selected;
+	}
+
+	/**
+	 * Getting record of the game read with last {@link #load()}.
+	 * 
+	 * @return {@link #record}, null when game was saved without a record
+	 */
+	public GameRecord getRecord() {
+		return record;
+	}
+
+	/**
+	 * Getting color with given id, grey for unknown ids.
+	 * 
+	 * @param id
+	 *            id of the color
+	 * @return color with given id
+	 */
+	private static Color color(int id) {
+		Color color = Color.getColor(id);
+		return color == null ? Color.GREY : color;
+	}
+
+}
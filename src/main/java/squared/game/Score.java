@@ -42,6 +42,19 @@ public class Score implements Serializable, Comparable<Score> {
 		this.score = score;
 	}
 
+	/**
+	 * Contructor that creates object with given date.
+	 * 
+	 * @param score
+	 *            - score that has to be set
+	 * @param date
+	 *            - date when score was set
+	 */
+	public Score(long score, String date) {
+		this.date = date;
+		this.score = score;
+	}
+
 	/**
 	 * Getting score.
 	 * 
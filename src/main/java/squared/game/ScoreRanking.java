@@ -0,0 +1,205 @@
+package squared.game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Ranking of all scores ever added, answering which place a score takes and
+ * which score takes a place in logarithmic time without sorting anything.
+ * Scores are counted in buckets held in a Fenwick tree: every score below
+ * {@link #EXACT} has its own bucket, higher scores share log-linear buckets of
+ * {@link Histogram}, so places of such scores are accurate to about 3%.
+ * History is kept in a log to which every score is appended as 8 bytes, the
+ * tree is built from it in linear time when ranking is loaded.
+ * 
+ * @author bartl_000
+ *
+ */
+public class ScoreRanking {
+
+	/**
+	 * Scores lower than that have their own buckets.
+	 */
+	public static final int EXACT = 1 << 16;
+
+	/**
+	 * Index of bucket of {@link Histogram} holding {@link #EXACT}.
+	 */
+	private static final int FIRSTSHARED = Histogram.bucketIndex(EXACT);
+
+	/**
+	 * Amount of buckets.
+	 */
+	private static final int SIZE = EXACT + Histogram.BUCKETS - FIRSTSHARED;
+
+	/**
+	 * Amount of scores read from the log at once.
+	 */
+	private static final int READSCORES = 8192;
+
+	/**
+	 * Fenwick tree of amounts of scores in buckets, counted from 1: element i
+	 * holds amount of scores in buckets from i minus its lowest set bit to
+	 * i - 1.
+	 */
+	private final long[] tree = new long[SIZE + 1];
+
+	/**
+	 * Amount of scores.
+	 */
+	private long count;
+
+	/**
+	 * Adds score to the ranking.
+	 * 
+	 * @param score
+	 *            added score, negative scores are added as 0
+	 */
+	public void add(long score) {
+		for (int i = bucket(score) + 1; i <= SIZE; i += i & -i)
+			tree[i]++;
+		count++;
+	}
+
+	/**
+	 * Getting amount of scores.
+	 * 
+	 * @return {@link #count}
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Getting place which a score takes among all scores, scores equal to it
+	 * share the place.
+	 * 
+	 * @param score
+	 *            checked score
+	 * @return place counted from 1, one more than amount of higher scores
+	 */
+	public long rank(long score) {
+		return count - countUpTo(bucket(score)) + 1;
+	}
+
+	/**
+	 * Getting score which takes given place.
+	 * 
+	 * @param place
+	 *            place counted from 1, the best score takes place 1
+	 * @return the score, the lowest score of its bucket for scores not lower
+	 *         than {@link #EXACT}, -1 if there are less scores than place
+	 */
+	public long nthBest(long place) {
+		if (place < 1 || place > count)
+			return -1;
+		long remaining = count - place + 1;
+		int position = 0;
+		for (int step = Integer.highestOneBit(SIZE); step > 0; step >>= 1) {
+			int next = position + step;
+			if (next <= SIZE && tree[next] < remaining) {
+				position = next;
+				remaining -= tree[next];
+			}
+		}
+		return position < EXACT ? position : Histogram.bucketLowestValue(position - EXACT + FIRSTSHARED);
+	}
+
+	/**
+	 * Counts scores in buckets up to given one.
+	 * 
+	 * @param bucket
+	 *            index of the last counted bucket
+	 * @return amount of scores
+	 */
+	private long countUpTo(int bucket) {
+		long sum = 0;
+		for (int i = bucket + 1; i > 0; i -= i & -i)
+			sum += tree[i];
+		return sum;
+	}
+
+	/**
+	 * Getting index of bucket of a score.
+	 * 
+	 * @param score
+	 *            score
+	 * @return index of the bucket
+	 */
+	private static int bucket(long score) {
+		if (score < EXACT)
+			return (int) Math.max(0, score);
+		return EXACT + Histogram.bucketIndex(score) - FIRSTSHARED;
+	}
+
+	/**
+	 * Loads ranking from a log of scores.
+	 * 
+	 * @param file
+	 *            name of the log
+	 * @return loaded ranking, empty when log does not exist
+	 * @exception IOException
+	 *                - log could not be read
+	 */
+	public static ScoreRanking load(String file) {
+		long start = System.nanoTime();
+		ScoreRanking ranking = new ScoreRanking();
+		ByteBuffer buffer = ByteBuffer.allocate(8 * READSCORES);
+		try (FileChannel input = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			while (input.read(buffer) > 0) {
+				buffer.flip();
+				while (buffer.remaining() >= 8) {
+					ranking.tree[bucket(buffer.getLong()) + 1]++;
+					ranking.count++;
+				}
+				buffer.compact();
+			}
+		} catch (NoSuchFileException e) {
+			return ranking;
+		} catch (IOException e) {
+			System.out.println("[RANKING]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		long[] tree = ranking.tree;
+		for (int i = 1; i <= SIZE; i++) {
+			int parent = i + (i & -i);
+			if (parent <= SIZE)
+				tree[parent] += tree[i];
+		}
+		Metrics.HIGHSCORE_IO.recordSince(start);
+		return ranking;
+	}
+
+	/**
+	 * Adds score to the ranking and appends it to the log. Incomplete score
+	 * left at the end of the log by a crash is overwritten.
+	 * 
+	 * @param score
+	 *            added score
+	 * @param file
+	 *            name of the log
+	 * @exception IOException
+	 *                - log could not be written
+	 */
+	public void append(long score, String file) {
+		long start = System.nanoTime();
+		add(score);
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putLong(score);
+		buffer.flip();
+		try (FileChannel output = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE)) {
+			long position = output.size() & ~7L;
+			while (buffer.hasRemaining())
+				position += output.write(buffer, position);
+			output.truncate(position);
+		} catch (IOException e) {
+			System.out.println("[RANKING]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		Metrics.HIGHSCORE_IO.recordSince(start);
+	}
+
+}
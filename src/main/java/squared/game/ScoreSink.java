@@ -0,0 +1,29 @@
+package squared.game;
+
+/**
+ * Destination of scores of finished games other than local highscore file,
+ * for instance shared leaderboard server. Scores are delivered as
+ * {@link GameRecord}s, so the destination can play games again and verify
+ * their scores. Implementations must not wait for the network in
+ * {@link #submit(GameRecord)}, because it is called when game ends.
+ * 
+ * @author bartl_000
+ *
+ */
+public interface ScoreSink {
+
+	/**
+	 * Queues recorded game for delivery and returns at once.
+	 * 
+	 * @param record
+	 *            record of the game with its score and date
+	 * @return true if game was queued, false if it was dropped
+	 */
+	boolean submit(GameRecord record);
+
+	/**
+	 * Delivers or saves queued scores and releases resources of the sink.
+	 */
+	void close();
+
+}
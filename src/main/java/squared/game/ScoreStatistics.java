@@ -0,0 +1,583 @@
+package squared.game;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Statistics of all finished games updated with every score, so they never need
+ * the whole history. Mean and standard deviation are kept with Welford's
+ * method, percentiles with P-square estimators of Jain and Chlamtac which keep
+ * 5 markers each, and streaks and games per day with a few counters. Whole
+ * state has constant size and is saved in a small binary file.
+ * 
+ * @author bartl_000
+ *
+ */
+public class ScoreStatistics {
+
+	/**
+	 * Number written at the beginning of the file.
+	 */
+	private static final int MAGIC = 0x53515354;
+
+	/**
+	 * Estimated percentiles, as fractions.
+	 */
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+	/**
+	 * Size of saved statistics.
+	 */
+	public static final int BYTES = 4 + 8 + 8 + 8 + 8 + 8 + PERCENTILES.length * Quantile.BYTES + 6 * 8 + 3 * 8;
+
+	/**
+	 * Amount of games.
+	 */
+	private long games;
+
+	/**
+	 * Mean of scores.
+	 */
+	private double mean;
+
+	/**
+	 * Sum of squared differences between scores and {@link #mean}.
+	 */
+	private double squares;
+
+	/**
+	 * The lowest score.
+	 */
+	private long min;
+
+	/**
+	 * The highest score.
+	 */
+	private long max;
+
+	/**
+	 * Estimators of {@link #PERCENTILES}.
+	 */
+	private final Quantile[] quantiles = new Quantile[PERCENTILES.length];
+
+	/**
+	 * Amount of the last games in a row which scored any points.
+	 */
+	private long scoringStreak;
+
+	/**
+	 * The longest row of games which scored any points.
+	 */
+	private long bestScoringStreak;
+
+	/**
+	 * Amount of the last days in a row on which any game was played.
+	 */
+	private long dayStreak;
+
+	/**
+	 * The longest row of days on which any game was played.
+	 */
+	private long bestDayStreak;
+
+	/**
+	 * Amount of games played on {@link #lastDay}.
+	 */
+	private long lastDayGames;
+
+	/**
+	 * The highest amount of games played on one day.
+	 */
+	private long bestDayGames;
+
+	/**
+	 * Day of the first game, counted from 1970-01-01.
+	 */
+	private long firstDay;
+
+	/**
+	 * Day of the last game, counted from 1970-01-01.
+	 */
+	private long lastDay;
+
+	/**
+	 * Amount of days on which any game was played.
+	 */
+	private long days;
+
+	/**
+	 * Constructor that creates statistics of no games.
+	 */
+	public ScoreStatistics() {
+		for (int i = 0; i < quantiles.length; i++)
+			quantiles[i] = new Quantile(PERCENTILES[i]);
+	}
+
+	/**
+	 * Adds score of a finished game.
+	 * 
+	 * @param score
+	 *            score of the game
+	 * @param day
+	 *            day of the game counted from 1970-01-01
+	 */
+	public void add(long score, long day) {
+		games++;
+		double delta = score - mean;
+		mean += delta / games;
+		squares += delta * (score - mean);
+		min = games == 1 ? score : Math.min(min, score);
+		max = games == 1 ? score : Math.max(max, score);
+		for (Quantile quantile : quantiles)
+			quantile.add(score);
+		scoringStreak = score > 0 ? scoringStreak + 1 : 0;
+		bestScoringStreak = Math.max(bestScoringStreak, scoringStreak);
+		if (games == 1) {
+			firstDay = day;
+			lastDay = day;
+			days = 1;
+			dayStreak = 1;
+			lastDayGames = 0;
+		} else if (day != lastDay) {
+			dayStreak = day == lastDay + 1 ? dayStreak + 1 : 1;
+			lastDay = day;
+			days++;
+			lastDayGames = 0;
+		}
+		lastDayGames++;
+		bestDayStreak = Math.max(bestDayStreak, dayStreak);
+		bestDayGames = Math.max(bestDayGames, lastDayGames);
+	}
+
+	/**
+	 * Getting amount of games.
+	 * 
+	 * @return {@link #games}
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 * Getting mean of scores.
+	 * 
+	 * @return {@link #mean}, 0 when there are no games
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * Getting sample standard deviation of scores.
+	 * 
+	 * @return standard deviation, 0 when there are less than 2 games
+	 */
+	public double getDeviation() {
+		return games < 2 ? 0 : Math.sqrt(squares / (games - 1));
+	}
+
+	/**
+	 * Getting the lowest score.
+	 * 
+	 * @return {@link #min}
+	 */
+	public long getMin() {
+		return min;
+	}
+
+	/**
+	 * Getting the highest score.
+	 * 
+	 * @return {@link #max}
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Getting estimated median of scores.
+	 * 
+	 * @return median, 0 when there are no games
+	 */
+	public double getMedian() {
+		return quantiles[0].get();
+	}
+
+	/**
+	 * Getting estimated score lower than 90% of scores.
+	 * 
+	 * @return 90th percentile, 0 when there are no games
+	 */
+	public double getPercentile90() {
+		return quantiles[1].get();
+	}
+
+	/**
+	 * Getting estimated score lower than 99% of scores.
+	 * 
+	 * @return 99th percentile, 0 when there are no games
+	 */
+	public double getPercentile99() {
+		return quantiles[2].get();
+	}
+
+	/**
+	 * Getting amount of the last games in a row which scored any points.
+	 * 
+	 * @return {@link #scoringStreak}
+	 */
+	public long getScoringStreak() {
+		return scoringStreak;
+	}
+
+	/**
+	 * Getting the longest row of games which scored any points.
+	 * 
+	 * @return {@link #bestScoringStreak}
+	 */
+	public long getBestScoringStreak() {
+		return bestScoringStreak;
+	}
+
+	/**
+	 * Getting amount of the last days in a row on which any game was played.
+	 * 
+	 * @return {@link #dayStreak}
+	 */
+	public long getDayStreak() {
+		return dayStreak;
+	}
+
+	/**
+	 * Getting the longest row of days on which any game was played.
+	 * 
+	 * @return {@link #bestDayStreak}
+	 */
+	public long getBestDayStreak() {
+		return bestDayStreak;
+	}
+
+	/**
+	 * Getting the highest amount of games played on one day.
+	 * 
+	 * @return {@link #bestDayGames}
+	 */
+	public long getBestDayGames() {
+		return bestDayGames;
+	}
+
+	/**
+	 * Getting mean amount of games played on a day, counting days without
+	 * games since the first game.
+	 * 
+	 * @return games per day, 0 when there are no games
+	 */
+	public double getGamesPerDay() {
+		return games == 0 ? 0 : (double) games / (lastDay - firstDay + 1);
+	}
+
+	/**
+	 * Getting amount of days on which any game was played.
+	 * 
+	 * @return {@link #days}
+	 */
+	public long getDays() {
+		return days;
+	}
+
+	/**
+	 * Encodes statistics into buffer.
+	 * 
+	 * @param buffer
+	 *            buffer with at least {@link #BYTES} bytes remaining
+	 */
+	public void encode(ByteBuffer buffer) {
+		buffer.putInt(MAGIC);
+		buffer.putLong(games);
+		buffer.putDouble(mean);
+		buffer.putDouble(squares);
+		buffer.putLong(min);
+		buffer.putLong(max);
+		for (Quantile quantile : quantiles)
+			quantile.encode(buffer);
+		buffer.putLong(scoringStreak);
+		buffer.putLong(bestScoringStreak);
+		buffer.putLong(dayStreak);
+		buffer.putLong(bestDayStreak);
+		buffer.putLong(lastDayGames);
+		buffer.putLong(bestDayGames);
+		buffer.putLong(firstDay);
+		buffer.putLong(lastDay);
+		buffer.putLong(days);
+	}
+
+	/**
+	 * Decodes statistics from buffer.
+	 * 
+	 * @param buffer
+	 *            buffer positioned at encoded statistics
+	 * @return decoded statistics, null if buffer does not hold correct
+	 *         statistics
+	 */
+	public static ScoreStatistics decode(ByteBuffer buffer) {
+		try {
+			if (buffer.getInt() != MAGIC)
+				return null;
+			ScoreStatistics statistics = new ScoreStatistics();
+			statistics.games = buffer.getLong();
+			statistics.mean = buffer.getDouble();
+			statistics.squares = buffer.getDouble();
+			statistics.min = buffer.getLong();
+			statistics.max = buffer.getLong();
+			for (Quantile quantile : statistics.quantiles)
+				if (!quantile.decode(buffer))
+					return null;
+			statistics.scoringStreak = buffer.getLong();
+			statistics.bestScoringStreak = buffer.getLong();
+			statistics.dayStreak = buffer.getLong();
+			statistics.bestDayStreak = buffer.getLong();
+			statistics.lastDayGames = buffer.getLong();
+			statistics.bestDayGames = buffer.getLong();
+			statistics.firstDay = buffer.getLong();
+			statistics.lastDay = buffer.getLong();
+			statistics.days = buffer.getLong();
+			return statistics;
+		} catch (BufferUnderflowException e) {
+			System.out.println("[STATISTICS]BUFFER UNDERFLOW EXCEPTION: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Loads statistics from a file.
+	 * 
+	 * @param file
+	 *            name of the file
+	 * @return loaded statistics, statistics of no games when file does not
+	 *         exist or is damaged
+	 * @exception IOException
+	 *                - file could not be read
+	 */
+	public static ScoreStatistics load(String file) {
+		long start = System.nanoTime();
+		ScoreStatistics statistics = null;
+		ByteBuffer buffer = ByteBuffer.allocate(BYTES);
+		try (FileChannel input = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			while (buffer.hasRemaining() && input.read(buffer) > 0)
+				;
+			buffer.flip();
+			statistics = decode(buffer);
+		} catch (NoSuchFileException e) {
+			statistics = new ScoreStatistics();
+		} catch (IOException e) {
+			System.out.println("[STATISTICS]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		Metrics.HIGHSCORE_IO.recordSince(start);
+		return statistics == null ? new ScoreStatistics() : statistics;
+	}
+
+	/**
+	 * Saves statistics to a file, replacing its content.
+	 * 
+	 * @param file
+	 *            name of the file
+	 * @exception IOException
+	 *                - file could not be written
+	 */
+	public void save(String file) {
+		long start = System.nanoTime();
+		ByteBuffer buffer = ByteBuffer.allocate(BYTES);
+		encode(buffer);
+		buffer.flip();
+		Path path = Paths.get(file);
+		try (FileChannel output = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			int position = 0;
+			while (buffer.hasRemaining())
+				position += output.write(buffer, position);
+			output.truncate(BYTES);
+		} catch (IOException e) {
+			System.out.println("[STATISTICS]INPUT/OUTPUT EXCEPTION: " + e.getMessage());
+		}
+		Metrics.HIGHSCORE_IO.recordSince(start);
+	}
+
+	/**
+	 * P-square estimator of one quantile. Keeps 5 markers: the lowest value,
+	 * the highest value, the estimated quantile and two estimates halfway
+	 * between them. Every added value moves positions of markers and markers
+	 * which drift away from their desired positions are adjusted with parabolic
+	 * formula. The first 5 values are kept as they are.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	private static class Quantile {
+
+		/**
+		 * Size of encoded estimator.
+		 */
+		private static final int BYTES = 8 + 4 + 5 * 8 + 5 * 4 + 5 * 8;
+
+		/**
+		 * Estimated quantile, as a fraction.
+		 */
+		private final double p;
+
+		/**
+		 * Increments of {@link #desired} for every added value.
+		 */
+		private final double[] increments;
+
+		/**
+		 * Heights of markers, the first values until there are 5 of them.
+		 */
+		private final double[] heights = new double[5];
+
+		/**
+		 * Positions of markers, counted from 1.
+		 */
+		private final int[] positions = { 1, 2, 3, 4, 5 };
+
+		/**
+		 * Desired positions of markers.
+		 */
+		private final double[] desired;
+
+		/**
+		 * Amount of added values, at most 5.
+		 */
+		private int count;
+
+		/**
+		 * Constructor that sets estimated quantile.
+		 * 
+		 * @param p
+		 *            quantile as a fraction
+		 */
+		private Quantile(double p) {
+			this.p = p;
+			increments = new double[] { 0, p / 2, p, (1 + p) / 2, 1 };
+			desired = new double[] { 1, 1 + 2 * p, 1 + 4 * p, 3 + 2 * p, 5 };
+		}
+
+		/**
+		 * Adds value.
+		 * 
+		 * @param value
+		 *            added value
+		 */
+		private void add(double value) {
+			if (count < 5) {
+				heights[count++] = value;
+				if (count == 5)
+					Arrays.sort(heights);
+				return;
+			}
+			int k;
+			if (value < heights[0]) {
+				heights[0] = value;
+				k = 0;
+			} else if (value >= heights[4]) {
+				heights[4] = value;
+				k = 3;
+			} else {
+				k = 0;
+				while (value >= heights[k + 1])
+					k++;
+			}
+			for (int i = k + 1; i < 5; i++)
+				positions[i]++;
+			for (int i = 0; i < 5; i++)
+				desired[i] += increments[i];
+			for (int i = 1; i < 4; i++) {
+				double d = desired[i] - positions[i];
+				if (d >= 1 && positions[i + 1] - positions[i] > 1 || d <= -1 && positions[i - 1] - positions[i] < -1) {
+					int sign = d > 0 ? 1 : -1;
+					double height = parabolic(i, sign);
+					if (heights[i - 1] < height && height < heights[i + 1])
+						heights[i] = height;
+					else
+						heights[i] += sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+					positions[i] += sign;
+				}
+			}
+		}
+
+		/**
+		 * Computes new height of a marker with parabolic formula.
+		 * 
+		 * @param i
+		 *            number of the marker
+		 * @param sign
+		 *            direction of moving the marker, 1 or -1
+		 * @return new height
+		 */
+		private double parabolic(int i, int sign) {
+			double left = positions[i] - positions[i - 1];
+			double right = positions[i + 1] - positions[i];
+			return heights[i] + sign / (double) (positions[i + 1] - positions[i - 1])
+					* ((left + sign) * (heights[i + 1] - heights[i]) / right
+							+ (right - sign) * (heights[i] - heights[i - 1]) / left);
+		}
+
+		/**
+		 * Getting estimated quantile.
+		 * 
+		 * @return estimate, 0 when no value was added
+		 */
+		private double get() {
+			if (count >= 5)
+				return heights[2];
+			if (count == 0)
+				return 0;
+			double[] sorted = Arrays.copyOf(heights, count);
+			Arrays.sort(sorted);
+			return sorted[Math.min(count - 1, (int) (p * count))];
+		}
+
+		/**
+		 * Encodes estimator into buffer.
+		 * 
+		 * @param buffer
+		 *            buffer with at least {@link #BYTES} bytes remaining
+		 */
+		private void encode(ByteBuffer buffer) {
+			buffer.putDouble(p);
+			buffer.putInt(count);
+			for (int i = 0; i < 5; i++) {
+				buffer.putDouble(heights[i]);
+				buffer.putInt(positions[i]);
+				buffer.putDouble(desired[i]);
+			}
+		}
+
+		/**
+		 * Decodes estimator from buffer.
+		 * 
+		 * @param buffer
+		 *            buffer positioned at encoded estimator
+		 * @return true if estimator was encoded for the same quantile
+		 */
+		private boolean decode(ByteBuffer buffer) {
+			if (buffer.getDouble() != p)
+				return false;
+			count = buffer.getInt();
+			if (count < 0 || count > 5)
+				return false;
+			for (int i = 0; i < 5; i++) {
+				heights[i] = buffer.getDouble();
+				positions[i] = buffer.getInt();
+				desired[i] = buffer.getDouble();
+			}
+			return true;
+		}
+	}
+
+}
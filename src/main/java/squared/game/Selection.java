@@ -0,0 +1,234 @@
+package squared.game;
+
+/**
+ * Handling of clicks on the board without any view: first click selects
+ * colored square, click on it again unselects it and click on grey square
+ * moves it there if path exists. Grey squares reachable from selected square
+ * are found with one flood of the board when it is selected and kept until it
+ * is unselected, so neither pointer moves nor clicks look for path again.
+ * Moves themselves are made by the caller. Used by {@link Model} and fuzzed
+ * by {@link EngineFuzzer}.
+ * 
+ * @author bartl_000
+ *
+ */
+public class Selection {
+
+	/**
+	 * Results of a click.
+	 * 
+	 * @author bartl_000
+	 *
+	 */
+	public static enum Click {
+		/**
+		 * Click changed nothing.
+		 */
+		IGNORED,
+		/**
+		 * Clicked colored square was selected.
+		 */
+		SELECTED,
+		/**
+		 * Selected square was clicked again and unselected.
+		 */
+		UNSELECTED,
+		/**
+		 * Clicked grey square cannot be reached, square stays selected.
+		 */
+		BLOCKED,
+		/**
+		 * Clicked grey square can be reached, square was unselected and
+		 * should be moved there.
+		 */
+		MOVE
+	}
+
+	/**
+	 * Listener notified about changes, can be null.
+	 */
+	private final SelectionListener listener;
+
+	/**
+	 * Board on which squares are selected.
+	 */
+	private Board board;
+
+	/**
+	 * Index of selected square, -1 when no square is selected.
+	 */
+	private int selected = -1;
+
+	/**
+	 * Indexes of grey squares reachable from {@link #selected}, first
+	 * {@link #targetCount} are valid.
+	 */
+	private int[] targets = new int[0];
+
+	/**
+	 * Amount of grey squares reachable from {@link #selected}.
+	 */
+	private int targetCount;
+
+	/**
+	 * True for squares reachable from {@link #selected}, indexed like squares
+	 * of the {@link #board}.
+	 */
+	private boolean[] reachable = new boolean[0];
+
+	/**
+	 * Constructor that sets listener.
+	 * 
+	 * @param listener
+	 *            listener notified about changes, null for none
+	 */
+	public Selection(SelectionListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets board on which squares are selected, selected square of the
+	 * previous board is forgotten.
+	 * 
+	 * @param board
+	 *            board of current game
+	 */
+	public void setBoard(Board board) {
+		if (this.board != board)
+			unselect();
+		this.board = board;
+	}
+
+	/**
+	 * Getting selected square.
+	 * 
+	 * @return index of {@link #selected} square, -1 when no square is
+	 *         selected
+	 */
+	public int getSelected() {
+		return selected;
+	}
+
+	/**
+	 * Checks if selected square can be moved to a square.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @return true if square was found reachable when selected square was
+	 *         selected
+	 */
+	public boolean isReachable(int index) {
+		return selected >= 0 && reachable[index];
+	}
+
+	/**
+	 * Getting amount of squares reachable from selected square.
+	 * 
+	 * @return {@link #targetCount}
+	 */
+	public int getTargetCount() {
+		return targetCount;
+	}
+
+	/**
+	 * Getting square reachable from selected square.
+	 * 
+	 * @param i
+	 *            number of the square, lower than {@link #getTargetCount()}
+	 * @return index of the square
+	 */
+	public int getTarget(int i) {
+		return targets[i];
+	}
+
+	/**
+	 * Handles click on a square: selects clicked colored square when no
+	 * square is selected, unselects selected square clicked again and
+	 * unselects selected square when clicked grey square is reachable, so
+	 * caller can move it. Clicks on other colored squares are ignored.
+	 * 
+	 * @param index
+	 *            index of clicked square
+	 * @return result of the click, {@link Click#MOVE} when selected square
+	 *         should be moved to clicked square
+	 */
+	public Click click(int index) {
+		if (selected < 0)
+			return select(index) ? Click.SELECTED : Click.IGNORED;
+		if (index == selected) {
+			unselect();
+			return Click.UNSELECTED;
+		}
+		if (!board.isFree(index))
+			return Click.IGNORED;
+		if (!reachable[index])
+			return Click.BLOCKED;
+		unselect();
+		return Click.MOVE;
+	}
+
+	/**
+	 * Selects colored square and finds all grey squares reachable from it.
+	 * Previously selected square is unselected.
+	 * 
+	 * @param index
+	 *            index of selected square
+	 * @return true if square was selected, false if it is grey
+	 * @see {@link Board#findReachable(int, int[])}
+	 */
+	public boolean select(int index) {
+		unselect();
+		if (board.isFree(index))
+			return false;
+		int size = board.getParameters().getRows() * board.getParameters().getColumns();
+		if (targets.length < size) {
+			targets = new int[size];
+			reachable = new boolean[size];
+		}
+		selected = index;
+		if (listener != null)
+			listener.selectionChanged(index, true);
+		long start = System.nanoTime();
+		targetCount = board.findReachable(index, targets);
+		Metrics.MOVE_REACHABLE.recordSince(start);
+		for (int i = 0; i < targetCount; i++) {
+			reachable[targets[i]] = true;
+			if (listener != null)
+				listener.targetChanged(targets[i], true);
+		}
+		return true;
+	}
+
+	/**
+	 * Unselects selected square if any square is selected and forgets squares
+	 * reachable from it.
+	 */
+	public void unselect() {
+		if (selected < 0)
+			return;
+		for (int i = 0; i < targetCount; i++) {
+			reachable[targets[i]] = false;
+			if (listener != null)
+				listener.targetChanged(targets[i], false);
+		}
+		targetCount = 0;
+		int index = selected;
+		selected = -1;
+		if (listener != null)
+			listener.selectionChanged(index, false);
+	}
+
+	/**
+	 * Finds squares reachable from selected square again after squares were
+	 * added without a move. Selected square is unselected if it was removed
+	 * with a line.
+	 */
+	public void refresh() {
+		if (selected < 0)
+			return;
+		int index = selected;
+		unselect();
+		select(index);
+	}
+
+}
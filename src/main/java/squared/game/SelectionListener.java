@@ -0,0 +1,33 @@
+package squared.game;
+
+/**
+ * Listener notified about changes of a {@link Selection}. Used to show
+ * selected square and squares to which it can be moved.
+ * 
+ * @author bartl_000
+ *
+ */
+public interface SelectionListener {
+
+	/**
+	 * Called when square is selected or unselected.
+	 * 
+	 * @param index
+	 *            index of the square, see {@link Board#index(int, int)}
+	 * @param selected
+	 *            true if square was selected, false if it was unselected
+	 */
+	void selectionChanged(int index, boolean selected);
+
+	/**
+	 * Called when grey square becomes or stops being reachable from selected
+	 * square.
+	 * 
+	 * @param index
+	 *            index of the square, see {@link Board#index(int, int)}
+	 * @param reachable
+	 *            true if selected square can be moved to the square
+	 */
+	void targetChanged(int index, boolean reachable);
+
+}
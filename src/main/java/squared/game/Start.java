@@ -1,5 +1,7 @@
 package squared.game;
 
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
@@ -15,6 +17,67 @@ import javafx.stage.Stage;
  */
 public class Start extends Application {
 
+	/**
+	 * System property holding name of the file where metrics are saved.
+	 */
+	private static final String METRICS_PROPERTY = "squared.metrics";
+
+	/**
+	 * System property holding host and port of shared leaderboard server.
+	 */
+	private static final String LEADERBOARD_PROPERTY = "squared.leaderboard";
+
+	/**
+	 * System property holding port on which leaderboard server is started
+	 * inside the game.
+	 */
+	private static final String LEADERBOARD_SERVER_PROPERTY = "squared.leaderboardServer";
+
+	/**
+	 * Name of the file where scores which could not be sent are saved.
+	 */
+	private static final String SPOOL_FILE = "scores.spool";
+
+	/**
+	 * Name of the file where checkpoint of current game is saved.
+	 */
+	private static final String SAVE_FILE = "save.dat";
+
+	/**
+	 * Name of the file where moves played after the checkpoint are saved.
+	 */
+	private static final String JOURNAL_FILE = "save.log";
+
+	/**
+	 * Instance of class {@link Model}.
+	 */
+	private Model model;
+
+	/**
+	 * File where checkpoint of current game is saved.
+	 */
+	private SaveGame saveGame;
+
+	/**
+	 * Journal of current game.
+	 */
+	private GameJournal journal;
+
+	/**
+	 * Leaderboard server started inside the game, can be null.
+	 */
+	private LeaderboardServer leaderboardServer;
+
+	/**
+	 * Client of shared leaderboard server, can be null.
+	 */
+	private LeaderboardClient leaderboardClient;
+
+	/**
+	 * Destination to which scores are sent, can be null.
+	 */
+	private ScoreSink scoreSink;
+
 	/**
 	 * Main method in application. Launches a standalone application.
 	 * 
@@ -32,11 +95,84 @@ public class Start extends Application {
 	 */
 	@Override
 	public void start(Stage primaryStage) throws Exception {
+		Metrics.registerMBean();
+		startLeaderboard();
 		View view = new View(primaryStage);
-		Model model = new Model();
+		model = new Model();
+		saveGame = new SaveGame(SAVE_FILE);
+		journal = new GameJournal(saveGame, JOURNAL_FILE);
+		model.setJournal(journal);
 		MenuController menuController = view.getMenuController();
 		menuController.setView(view);
 		menuController.setModel(model);
 	}
 
+	/**
+	 * Starts leaderboard server on port taken from
+	 * {@value #LEADERBOARD_SERVER_PROPERTY} system property and connects to
+	 * server taken from {@value #LEADERBOARD_PROPERTY} system property, or to
+	 * the started server when it is not set. Highscores are read with
+	 * {@link LeaderboardClient} and recorded games are sent with
+	 * {@link AsyncScoreSink}. Only local highscore file is used when none of
+	 * the properties is set.
+	 * 
+	 * @exception NumberFormatException
+	 *                - port is not a number
+	 * @exception MalformedURLException
+	 *                - server address is wrong
+	 * @see {@link HighscoreMenager#setLeaderboardClient(LeaderboardClient)}
+	 * @see {@link HighscoreMenager#setScoreSink(ScoreSink)}
+	 */
+	private void startLeaderboard() {
+		String address = System.getProperty(LEADERBOARD_PROPERTY);
+		String port = System.getProperty(LEADERBOARD_SERVER_PROPERTY);
+		try {
+			if (port != null) {
+				leaderboardServer = new LeaderboardServer();
+				if (leaderboardServer.start(new InetSocketAddress(Integer.parseInt(port))) && address == null)
+					address = "localhost:" + leaderboardServer.getPort();
+			}
+			if (address != null) {
+				if (address.lastIndexOf(':') < 0)
+					address += ":" + LeaderboardServer.DEFAULT_PORT;
+				leaderboardClient = new LeaderboardClient(address);
+				HighscoreMenager.setLeaderboardClient(leaderboardClient);
+				int colon = address.lastIndexOf(':');
+				scoreSink = new AsyncScoreSink(new InetSocketAddress(address.substring(0, colon),
+						Integer.parseInt(address.substring(colon + 1))), SPOOL_FILE);
+				HighscoreMenager.setScoreSink(scoreSink);
+			}
+		} catch (NumberFormatException e) {
+			System.out.println("[LEADERBOARD]NUMBER FORMAT EXCEPTION: " + e.getMessage());
+		} catch (MalformedURLException e) {
+			System.out.println("[LEADERBOARD]MALFORMED URL EXCEPTION: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Saves current game and metrics report to a file when application stops.
+	 * Name of the metrics file is taken from {@value #METRICS_PROPERTY} system
+	 * property, report is not saved when it is not set.
+	 * 
+	 * @see {@link Model#saveGame()}
+	 * @see {@link Metrics#dump(String)}
+	 */
+	@Override
+	public void stop() {
+		if (model != null) {
+			model.saveGame();
+			journal.close();
+		}
+		HighscoreMenager.closeArchive();
+		if (scoreSink != null)
+			scoreSink.close();
+		if (leaderboardClient != null)
+			leaderboardClient.close();
+		if (leaderboardServer != null)
+			leaderboardServer.stop();
+		String metricsFile = System.getProperty(METRICS_PROPERTY);
+		if (metricsFile != null)
+			Metrics.getInstance().dump(metricsFile);
+	}
+
 }
@@ -0,0 +1,188 @@
+package squared.game;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+
+/**
+ * The only clock of time attack mode, called by JavaFX on every frame. Squares
+ * are added on fixed deadlines kept in nanoseconds of the monotonic clock of
+ * frames: every deadline is the previous one plus the period, so errors of
+ * frames never add up and squares come on the first frame after their
+ * deadline. Deadlines missed while frames were late are caught up at once, at
+ * most {@link #MAXCATCHUP} of them, then the clock starts counting from the
+ * current frame. Every period is a bit shorter than the previous one, down to
+ * {@link #MINPERIOD}. Lateness of added squares is recorded in
+ * {@link Metrics#TIME_ATTACK_LATENESS}.
+ * 
+ * @author bartl_000
+ *
+ */
+public class TimeAttackClock extends AnimationTimer {
+
+	/**
+	 * Time between first squares in nanoseconds, used when system property
+	 * squared.timeAttackPeriod with milliseconds is not set.
+	 */
+	public static final long DEFAULT_PERIOD = 5_000_000_000L;
+
+	/**
+	 * The shortest time between squares in nanoseconds.
+	 */
+	public static final long MINPERIOD = 1_000_000_000L;
+
+	/**
+	 * Part of the period by which every period is shorter than the previous
+	 * one, in thousandths.
+	 */
+	private static final long SPEEDUP = 20;
+
+	/**
+	 * The biggest amount of missed deadlines caught up in one frame.
+	 */
+	private static final int MAXCATCHUP = 4;
+
+	/**
+	 * Time between countdown updates in nanoseconds.
+	 */
+	private static final long UPDATE_INTERVAL = 100_000_000L;
+
+	/**
+	 * Model to which squares are added.
+	 */
+	private final Model model;
+
+	/**
+	 * Label on which time to the next squares is shown, can be null.
+	 */
+	private final Label label;
+
+	/**
+	 * Called when game ends on a tick of the clock, can be null.
+	 */
+	private Runnable onGameOver;
+
+	/**
+	 * Time between first squares in nanoseconds.
+	 */
+	private final long firstPeriod;
+
+	/**
+	 * Current time between squares in nanoseconds.
+	 */
+	private long period;
+
+	/**
+	 * Deadline of the next squares, valid while clock runs.
+	 */
+	private long deadline;
+
+	/**
+	 * Time to the next squares left when clock was paused.
+	 */
+	private long remaining;
+
+	/**
+	 * Time of the previous frame, 0 before first frame after start.
+	 */
+	private long lastFrame;
+
+	/**
+	 * Time of the last countdown update.
+	 */
+	private long lastUpdate;
+
+	/**
+	 * Constructor sets model and label and reads the first period from system
+	 * property squared.timeAttackPeriod.
+	 * 
+	 * @param model
+	 *            model to which squares are added
+	 * @param label
+	 *            label to show time to the next squares, can be null
+	 */
+	public TimeAttackClock(Model model, Label label) {
+		this.model = model;
+		this.label = label;
+		long millis = Long.getLong("squared.timeAttackPeriod", DEFAULT_PERIOD / 1_000_000L);
+		firstPeriod = Math.max(MINPERIOD, millis * 1_000_000L);
+		reset();
+	}
+
+	/**
+	 * Sets action called when game ends on a tick of the clock.
+	 * 
+	 * @param onGameOver
+	 *            called after clock stopped, null for no action
+	 */
+	public void setOnGameOver(Runnable onGameOver) {
+		this.onGameOver = onGameOver;
+	}
+
+	/**
+	 * Starts counting from the first period, used when new game starts.
+	 */
+	public void reset() {
+		period = firstPeriod;
+		remaining = firstPeriod;
+		lastFrame = 0;
+	}
+
+	/**
+	 * Stops the clock and keeps time to the next squares, so it is not lost
+	 * when the clock is started again.
+	 */
+	public void pause() {
+		stop();
+		if (lastFrame != 0)
+			remaining = Math.max(0, deadline - lastFrame);
+		lastFrame = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javafx.animation.AnimationTimer#handle(long)
+	 */
+	@Override
+	public void handle(long now) {
+		if (lastFrame == 0) {
+			deadline = now + remaining;
+			lastUpdate = 0;
+		}
+		lastFrame = now;
+		int caughtUp = 0;
+		while (now - deadline >= 0) {
+			if (caughtUp == MAXCATCHUP) {
+				deadline = now + period;
+				break;
+			}
+			if (!model.spawnOnClock()) {
+				pause();
+				showCountdown(0);
+				if (onGameOver != null)
+					onGameOver.run();
+				return;
+			}
+			Metrics.TIME_ATTACK_LATENESS.record(now - deadline);
+			caughtUp++;
+			period = Math.max(MINPERIOD, period - period * SPEEDUP / 1000);
+			deadline += period;
+		}
+		if (now - lastUpdate >= UPDATE_INTERVAL) {
+			showCountdown(deadline - now);
+			lastUpdate = now;
+		}
+	}
+
+	/**
+	 * Shows time to the next squares on {@link #label}.
+	 * 
+	 * @param left
+	 *            time in nanoseconds
+	 */
+	private void showCountdown(long left) {
+		if (label != null)
+			label.setText(String.format("NEXT SQUARES IN %.1fs", left / 1e9));
+	}
+
+}
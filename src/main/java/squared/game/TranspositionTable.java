@@ -0,0 +1,177 @@
+package squared.game;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free table of evaluated positions, indexed with
+ * {@link Zobrist} hashes. Every slot holds two longs: packed data and data
+ * XOR hash. Slot is valid only when both longs match, so torn writes of
+ * different threads are detected without any lock. Position is looked for in
+ * a few neighbouring slots; when all are taken, entry from the oldest search
+ * or with the fewest rollouts is replaced.
+ * 
+ * @author bartl_000
+ *
+ */
+public class TranspositionTable {
+
+	/**
+	 * Amount of neighbouring slots checked for a position.
+	 */
+	private static final int PROBES = 4;
+
+	/**
+	 * Amount of bytes used by one slot.
+	 */
+	private static final int SLOTBYTES = 16;
+
+	/**
+	 * Biggest amount of rollouts which can be saved.
+	 */
+	private static final int MAXCOUNT = (1 << 24) - 1;
+
+	/**
+	 * Pairs of longs: data XOR hash and data.
+	 */
+	private final AtomicLongArray slots;
+
+	/**
+	 * Mask used to change hash into slot number.
+	 */
+	private final int mask;
+
+	/**
+	 * Age of current search, saved with every entry.
+	 */
+	private volatile int age;
+
+	/**
+	 * Constructor that creates table using at most given amount of memory.
+	 * 
+	 * @param bytes
+	 *            amount of memory, rounded down to power of two slots
+	 */
+	public TranspositionTable(long bytes) {
+		long slotCount = Long.highestOneBit(Math.max(PROBES, Math.min(bytes / SLOTBYTES, 1L << 28)));
+		slots = new AtomicLongArray((int) (2 * slotCount));
+		mask = (int) slotCount - 1;
+	}
+
+	/**
+	 * Getting amount of memory used by slots.
+	 * 
+	 * @return amount of bytes
+	 */
+	public long getBytes() {
+		return (long) slots.length() * 8;
+	}
+
+	/**
+	 * Starts new search, entries saved in older searches are replaced first.
+	 */
+	public void newSearch() {
+		age = (age + 1) & 0xff;
+	}
+
+	/**
+	 * Looks for a position.
+	 * 
+	 * @param hash
+	 *            hash of the position
+	 * @return packed entry, 0 when position was not found
+	 * @see #value(long)
+	 * @see #count(long)
+	 */
+	public long probe(long hash) {
+		int slot = (int) hash & mask;
+		for (int i = 0; i < PROBES; i++) {
+			int index = 2 * ((slot + i) & mask);
+			long data = slots.get(index + 1);
+			if (data != 0 && (slots.get(index) ^ data) == hash)
+				return data;
+		}
+		return 0;
+	}
+
+	/**
+	 * Saves evaluation of a position.
+	 * 
+	 * @param hash
+	 *            hash of the position
+	 * @param value
+	 *            mean result of rollouts
+	 * @param count
+	 *            amount of rollouts
+	 */
+	public void store(long hash, double value, int count) {
+		if (count <= 0)
+			return;
+		long data = pack(value, Math.min(count, MAXCOUNT), age);
+		int slot = (int) hash & mask;
+		int replaced = -1;
+		int replacedScore = Integer.MAX_VALUE;
+		for (int i = 0; i < PROBES; i++) {
+			int index = 2 * ((slot + i) & mask);
+			long old = slots.get(index + 1);
+			if (old == 0 || (slots.get(index) ^ old) == hash) {
+				replaced = index;
+				break;
+			}
+			int oldAge = (int) (old >>> 24) & 0xff;
+			int score = oldAge == age ? MAXCOUNT + (int) (old & MAXCOUNT) : (int) (old & MAXCOUNT);
+			if (score < replacedScore) {
+				replacedScore = score;
+				replaced = index;
+			}
+		}
+		slots.set(replaced, data ^ hash);
+		slots.set(replaced + 1, data);
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++)
+			slots.set(i, 0);
+	}
+
+	/**
+	 * Getting value saved in an entry.
+	 * 
+	 * @param entry
+	 *            packed entry returned by {@link #probe(long)}
+	 * @return mean result of rollouts
+	 */
+	public static double value(long entry) {
+		return Float.intBitsToFloat((int) (entry >>> 32));
+	}
+
+	/**
+	 * Getting amount of rollouts saved in an entry.
+	 * 
+	 * @param entry
+	 *            packed entry returned by {@link #probe(long)}
+	 * @return amount of rollouts, 0 when entry is empty
+	 */
+	public static int count(long entry) {
+		return (int) (entry & MAXCOUNT);
+	}
+
+	/**
+	 * Packs entry data into one long: value in upper 32 bits, then 8 bits of
+	 * age and 24 bits of rollout count.
+	 * 
+	 * @param value
+	 *            mean result of rollouts
+	 * @param count
+	 *            amount of rollouts
+	 * @param age
+	 *            age of the search
+	 * @return packed data
+	 */
+	private static long pack(double value, int count, int age) {
+		return ((long) Float.floatToIntBits((float) value) << 32) | ((long) age << 24) | count;
+	}
+
+}
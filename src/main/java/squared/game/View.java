@@ -9,6 +9,7 @@ import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
@@ -27,6 +28,16 @@ import javafx.scene.text.Font;
  */
 public class View {
 
+	/**
+	 * Amount of squares in a row of classic board.
+	 */
+	private static final int BOARDCELLS = 9;
+
+	/**
+	 * Gap between squares on classic board.
+	 */
+	private static final double BOARDGAP = 10;
+
 	/**
 	 * Variable holding object loaded from FXML file.
 	 */
@@ -86,8 +97,11 @@ public class View {
 	 * loop.
 	 */
 	private void setBackgroundMusic() {
+		long start = System.nanoTime();
 		URL resource = getClass().getResource("/sounds/backgroundMusic.mp3");
 		backgroundMusic = new MediaPlayer(new Media(resource.toString()));
+		Metrics.MEDIA_PLAYERS_CREATED.increment();
+		Metrics.MEDIA_PLAYERS_LIVE.increment();
 		backgroundMusic.setVolume(0.07);
 		backgroundMusic.setOnEndOfMedia(new Runnable() {
 			public void run() {
@@ -95,6 +109,7 @@ public class View {
 			}
 		});
 		backgroundMusic.play();
+		Metrics.VIEW_SOUND.recordSince(start);
 	}
 
 	/**
@@ -116,7 +131,9 @@ public class View {
 	 *            name of picture
 	 */
 	public void setImageView(ImageView imageView, String image) {
-		imageView.setImage(new Image(this.getClass().getResourceAsStream("/images/" + image)));
+		long start = System.nanoTime();
+		imageView.setImage(ImageCache.get(image));
+		Metrics.VIEW_IMAGE.recordSince(start);
 	}
 
 	/**
@@ -126,9 +143,19 @@ public class View {
 	 *            name of the track
 	 */
 	public void addSound(String sound) {
+		long start = System.nanoTime();
 		Media media = new Media(this.getClass().getResource("/sounds/" + sound).toString());
-		MediaPlayer mediaPlayer = new MediaPlayer(media);
+		final MediaPlayer mediaPlayer = new MediaPlayer(media);
+		Metrics.MEDIA_PLAYERS_CREATED.increment();
+		Metrics.MEDIA_PLAYERS_LIVE.increment();
+		mediaPlayer.setOnEndOfMedia(new Runnable() {
+			public void run() {
+				mediaPlayer.dispose();
+				Metrics.MEDIA_PLAYERS_LIVE.decrement();
+			}
+		});
 		mediaPlayer.play();
+		Metrics.VIEW_SOUND.recordSince(start);
 	}
 
 	/**
@@ -138,6 +165,9 @@ public class View {
 	 *            loader we want to load
 	 */
 	private void setLoader(FXMLLoader loader) {
+		GameEvents.ScreenLoaded screenEvent = new GameEvents.ScreenLoaded();
+		screenEvent.begin();
+		long start = System.nanoTime();
 		this.loader = loader;
 		Pane pane = null;
 		try {
@@ -147,6 +177,11 @@ public class View {
 		}
 		mainPane.getChildren().clear();
 		mainPane.getChildren().add(pane);
+		Metrics.VIEW_SCREEN.recordSince(start);
+		if (screenEvent.shouldCommit()) {
+			screenEvent.screen = loader.getLocation().getPath();
+			screenEvent.commit();
+		}
 	}
 
 	/**
@@ -164,7 +199,8 @@ public class View {
 	}
 
 	/**
-	 * Loads options from Options.fxml file. Sets options controller.
+	 * Loads options from Options.fxml file. Sets options controller and shows
+	 * statistics of all games.
 	 * 
 	 * @param model
 	 *            instance of class {@link Model}
@@ -175,6 +211,7 @@ public class View {
 		OptionsController optionsController = loader.getController();
 		optionsController.setModel(model);
 		optionsController.setView(this);
+		optionsController.showStatistics(new HighscoreMenager().getStatistics());
 	}
 
 	/**
@@ -189,7 +226,9 @@ public class View {
 		NormalModeController normalModeController = loader.getController();
 		normalModeController.setModel(model);
 		normalModeController.setView(this);
-		normalModeController.setSquareHandle(loadSquares(normalModeController.getFlowPane()));
+		model.setPreviewSquares(loadPreview(normalModeController.getPreviewBox()));
+		normalModeController
+				.setSquareHandle(loadSquares(normalModeController.getFlowPane(), model.getParameters()));
 	}
 
 	/**
@@ -204,22 +243,57 @@ public class View {
 
 	/**
 	 * Creates adday of squares and adds them to flowPane given as an argument.
+	 * Size of squares and gaps between them are scaled, so the whole board
+	 * fits in the pane.
 	 * 
 	 * @param flowPane
 	 *            pane to add squares
+	 * @param parameters
+	 *            parameters holding size of the board
 	 * @return identifier of created square array
 	 */
-	private Square[][] loadSquares(FlowPane flowPane) {
-		Square[][] square = new Square[9][9];
-		for (int i = 0; i < 9; i++) {
-			for (int j = 0; j < 9; j++) {
+	private Square[][] loadSquares(FlowPane flowPane, GameParameters parameters) {
+		int rows = parameters.getRows();
+		int columns = parameters.getColumns();
+		int cells = Math.max(rows, columns);
+		double gap = Math.max(1, Math.floor(BOARDGAP * BOARDCELLS / cells));
+		double size = Math.floor((flowPane.getPrefWidth() - (cells - 1) * gap) / cells);
+		flowPane.setHgap(gap);
+		flowPane.setVgap(gap);
+		double width = columns * size + (columns - 1) * gap;
+		flowPane.setPrefWidth(width);
+		flowPane.setPrefWrapLength(width);
+		Square[][] square = new Square[rows][columns];
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < columns; j++) {
 				square[i][j] = new Square(i, j);
+				square[i][j].setFitWidth(size);
+				square[i][j].setFitHeight(size);
 				flowPane.getChildren().add(square[i][j]);
 			}
 		}
 		return square;
 	}
 
+	/**
+	 * Creates squares showing colors of the next random squares and adds them
+	 * to hBox given as an argument. Squares are as high as the box.
+	 * 
+	 * @param hBox
+	 *            box to add squares
+	 * @return created squares, the next square first
+	 */
+	private Square[] loadPreview(HBox hBox) {
+		Square[] square = new Square[Board.PREVIEW];
+		for (int i = 0; i < square.length; i++) {
+			square[i] = new Square(-1, i);
+			square[i].setFitWidth(hBox.getPrefHeight());
+			square[i].setFitHeight(hBox.getPrefHeight());
+			hBox.getChildren().add(square[i]);
+		}
+		return square;
+	}
+
 	/**
 	 * Creates leaderboard table, adds highscores to it.
 	 * 
@@ -265,6 +339,12 @@ public class View {
 		 */
 		private Model.Color color = Model.Color.GREY;
 
+		/**
+		 * True when grey square is shown brighter as a possible target of a
+		 * move.
+		 */
+		private boolean highlighted;
+
 		/**
 		 * index of the square.
 		 */
@@ -289,22 +369,56 @@ public class View {
 		 * 
 		 * @param color
 		 *            given color we want to change it to
+		 * @see {@link ImageCache#get(String)}
 		 */
 		private void setSquareImage(String color) {
-			setImage(new Image(this.getClass().getResourceAsStream("/images/" + color + ".png")));
+			long start = System.nanoTime();
+			setImage(ImageCache.get(color + ".png"));
+			Metrics.VIEW_IMAGE.recordSince(start);
 		}
 
 		/**
-		 * Sets color of the square.
+		 * Sets color of the square, removes highlight.
 		 * 
 		 * @param color
 		 *            to which we want to change square
 		 */
 		public void setColor(Model.Color color) {
 			this.color = color;
+			highlighted = false;
 			setSquareImage(color.toString());
 		}
 
+		/**
+		 * Shows square brighter as a possible target of a move or normally.
+		 * Image is changed only when highlight changes.
+		 * 
+		 * @param highlighted
+		 *            true to show square brighter
+		 * @see {@link ImageCache#highlighted(String)}
+		 */
+		public void setHighlighted(boolean highlighted) {
+			if (this.highlighted == highlighted)
+				return;
+			this.highlighted = highlighted;
+			setTarget(null);
+		}
+
+		/**
+		 * Shows color of moved square on the square when pointer is over it.
+		 * 
+		 * @param moved
+		 *            color of moved square, null to show square itself
+		 */
+		public void setTarget(Model.Color moved) {
+			if (moved != null)
+				setImage(ImageCache.get("P_" + moved + ".png"));
+			else if (highlighted)
+				setImage(ImageCache.highlighted(color + ".png"));
+			else
+				setImage(ImageCache.get(color + ".png"));
+		}
+
 		/**
 		 * Getting color of the square.
 		 * 
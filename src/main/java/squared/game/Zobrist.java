@@ -0,0 +1,100 @@
+package squared.game;
+
+/**
+ * Zobrist hashing of board positions. Every pair of square and color has a
+ * random key, hash of a position is XOR of keys of all its squares. Because
+ * XOR can be undone, hash is updated in O(1) when a square changes. Grey
+ * squares have key 0, so empty board has hash 0.
+ * 
+ * @author bartl_000
+ *
+ */
+public class Zobrist {
+
+	/**
+	 * Seed of generator creating keys, fixed so hashes are the same in every
+	 * run.
+	 */
+	private static final long SEED = 0x5175617265644c4cL;
+
+	/**
+	 * Keys of all squares and colors, indexed with square index multiplied by
+	 * amount of colors plus color id.
+	 */
+	private static final long[] keys = new long[GameParameters.MAXSIZE * GameParameters.MAXSIZE
+			* GameParameters.MAXCOLORS];
+
+	static {
+		GameRandom random = new GameRandom(SEED);
+		for (int i = 0; i < keys.length; i++)
+			if (i % GameParameters.MAXCOLORS != 0)
+				keys[i] = random.nextLong();
+	}
+
+	/**
+	 * Private constructor, class only holds static methods.
+	 */
+	private Zobrist() {
+	}
+
+	/**
+	 * Getting key of a square with given color.
+	 * 
+	 * @param index
+	 *            index of the square
+	 * @param color
+	 *            id of the color
+	 * @return key of the square, 0 for grey
+	 */
+	public static long key(int index, int color) {
+		return keys[index * GameParameters.MAXCOLORS + color];
+	}
+
+	/**
+	 * Getting key of game parameters. Mixed into hashes saved in tables shared
+	 * by games with different parameters. Key covers size of the board, length
+	 * of lines, amount of colors and amount of squares added every turn.
+	 * 
+	 * @param parameters
+	 *            parameters of the game
+	 * @return key of the parameters
+	 */
+	public static long key(GameParameters parameters) {
+		long seed = ((((long) parameters.getRows() * GameParameters.MAXSIZE + parameters.getColumns())
+				* GameParameters.MAXSIZE + parameters.getLineLength()) * GameParameters.MAXCOLORS)
+				+ parameters.getColorAmount()
+				+ ((long) (parameters.getSpawnCount() - GameParameters.DEFAULT_SPAWN_COUNT) << 32);
+		return new GameRandom(SEED ^ seed).nextLong();
+	}
+
+	/**
+	 * Getting key of colors of the next random squares. Mixed into hashes of
+	 * positions evaluated with known colors of the next squares.
+	 * 
+	 * @param preview
+	 *            color ids packed like {@link Board#getPreview()}
+	 * @return key of the colors
+	 */
+	public static long previewKey(long preview) {
+		return new GameRandom(~SEED ^ preview).nextLong();
+	}
+
+	/**
+	 * Counts hash of position after moving a square, without changing the
+	 * board.
+	 * 
+	 * @param hash
+	 *            hash of current position
+	 * @param from
+	 *            index of moved square
+	 * @param to
+	 *            index of target grey square
+	 * @param color
+	 *            id of color of moved square
+	 * @return hash of position after move
+	 */
+	public static long afterMove(long hash, int from, int to, int color) {
+		return hash ^ key(from, color) ^ key(to, color);
+	}
+
+}
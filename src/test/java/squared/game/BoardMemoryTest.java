@@ -0,0 +1,63 @@
+package squared.game;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Checks {@link Board#estimateBytes()} against size of the board measured by
+ * JOL, which walks all objects reachable from the board. Parameters are shared
+ * by all boards of a game and are not counted.
+ * 
+ * @author bartl_000
+ *
+ */
+public class BoardMemoryTest {
+
+	/**
+	 * Largest accepted difference between estimated and measured size, as a
+	 * part of the measured size.
+	 */
+	private static final double TOLERANCE = 0.1;
+
+	/**
+	 * Checks boards from the smallest to the biggest one, before and after
+	 * path search creates its bitmap.
+	 */
+	@Test
+	public void estimateMatchesLayout() {
+		int[] sizes = { 1, 9, 20, GameParameters.MAXSIZE };
+		for (int rows : sizes)
+			for (int columns : sizes) {
+				GameParameters parameters = new GameParameters(rows, columns, 5, 7, 3);
+				Board board = new Board(parameters, new GameRandom(rows * 31 + columns));
+				board.addRandomSquares(3);
+				assertWithinTolerance(board, parameters, "new");
+				int colored = 0;
+				while (board.isFree(colored))
+					colored++;
+				board.findReachable(colored, new int[rows * columns]);
+				assertWithinTolerance(board, parameters, "searched");
+			}
+	}
+
+	/**
+	 * Compares estimated size of a board with its size measured by JOL.
+	 * 
+	 * @param board
+	 *            measured board
+	 * @param parameters
+	 *            parameters of the board, not counted
+	 * @param state
+	 *            description of the board for failure message
+	 */
+	private static void assertWithinTolerance(Board board, GameParameters parameters, String state) {
+		long measured = GraphLayout.parseInstance(board).subtract(GraphLayout.parseInstance(parameters))
+				.totalSize();
+		long estimated = board.estimateBytes();
+		assertTrue(state + " " + parameters.getRows() + "x" + parameters.getColumns() + " board: estimated "
+				+ estimated + " bytes, measured " + measured, Math.abs(estimated - measured) <= TOLERANCE * measured);
+	}
+
+}
@@ -0,0 +1,328 @@
+package squared.game;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs {@link LeaderboardServer} on a free port of the loopback address and
+ * checks that scores sent to it end up in the same order as in a
+ * {@link Leaderboard} filled directly, also when many clients send at once.
+ * 
+ * @author bartl_000
+ *
+ */
+public class LeaderboardServerTest {
+
+	/**
+	 * Amount of scores kept by tested leaderboard.
+	 */
+	private static final int SIZE = 10;
+
+	/**
+	 * Amount of clients sending at once.
+	 */
+	private static final int CLIENTS = 8;
+
+	/**
+	 * Amount of requests of every client.
+	 */
+	private static final int REQUESTS = 25;
+
+	/**
+	 * Tested server.
+	 */
+	private LeaderboardServer server;
+
+	/**
+	 * Address of scores on the tested server.
+	 */
+	private String scoresUrl;
+
+	/**
+	 * Address of games on the tested server.
+	 */
+	private String gamesUrl;
+
+	/**
+	 * Starts server on any free port.
+	 */
+	@Before
+	public void start() {
+		server = new LeaderboardServer(new Leaderboard(SIZE), null, new DifficultyProfile());
+		if (!server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)))
+			throw new IllegalStateException("server did not start");
+		String address = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort();
+		scoresUrl = address + LeaderboardServer.PATH;
+		gamesUrl = address + LeaderboardServer.GAMESPATH;
+	}
+
+	/**
+	 * Stops server.
+	 */
+	@After
+	public void stop() {
+		server.stop();
+	}
+
+	/**
+	 * Checks that GET /scores returns the best scores of the leaderboard.
+	 * 
+	 * @exception IOException
+	 *                - request failed
+	 */
+	@Test
+	public void fetchReturnsBestScores() throws IOException {
+		Leaderboard expected = new Leaderboard(SIZE);
+		for (int i = 0; i < 3 * SIZE; i++) {
+			Score score = new Score((i * 37) % 101, "date " + i);
+			server.getLeaderboard().submit(score);
+			expected.submit(score);
+		}
+		assertEquals(LeaderboardServer.encode(Arrays.asList(expected.getSnapshot())), get(scoresUrl));
+	}
+
+	/**
+	 * Checks that verified games are added and games with changed score are
+	 * rejected.
+	 * 
+	 * @exception IOException
+	 *                - request failed
+	 */
+	@Test
+	public void submitVerifiesGames() throws IOException {
+		Leaderboard expected = new Leaderboard(SIZE);
+		List<GameRecord> records = new ArrayList<GameRecord>();
+		for (int i = 0; i < 2 * SIZE; i++) {
+			GameRecord record = play(i);
+			records.add(record);
+			expected.submit(new Score(record.getScore(), record.getDate()));
+		}
+		assertEquals(records.size() + "\t0\n", postGames(records));
+		GameRecord cheated = play(-1);
+		cheated.setScore(cheated.getScore() + 1000);
+		assertEquals("0\t1\n", postGames(Arrays.asList(cheated)));
+		assertEquals(LeaderboardServer.encode(Arrays.asList(expected.getSnapshot())), get(scoresUrl));
+	}
+
+	/**
+	 * Checks that games played with parameters other than these of classic
+	 * game and of difficulty levels are rejected, even when their score is
+	 * correct.
+	 * 
+	 * @exception IOException
+	 *                - request failed
+	 */
+	@Test
+	public void otherRulesetsAreRejected() throws IOException {
+		GameRecord small = new GameRecord(new GameParameters(4, 4, 2, 5, 1), 1);
+		small.setScore(ReplayVerifier.replay(small));
+		assertEquals("0\t1\n", postGames(Arrays.asList(small)));
+		GameRecord classic = new GameRecord(GameParameters.DEFAULT, 1);
+		classic.setScore(ReplayVerifier.replay(classic));
+		assertEquals("1\t0\n", postGames(Arrays.asList(classic)));
+	}
+
+	/**
+	 * Checks that POST /scores is refused unless server accepts unverified
+	 * scores.
+	 * 
+	 * @exception IOException
+	 *                - request failed
+	 */
+	@Test
+	public void unverifiedScoresAreRefused() throws IOException {
+		byte[] body = "500\tdate\n".getBytes(StandardCharsets.UTF_8);
+		assertEquals(403, post(scoresUrl, body));
+		assertEquals("", get(scoresUrl));
+		server.setAcceptScores(true);
+		assertEquals(204, post(scoresUrl, body));
+		assertEquals("500\tdate\n", get(scoresUrl));
+	}
+
+	/**
+	 * Sends scores and games from many clients at once and checks that
+	 * server keeps the same best scores as leaderboard filled from one
+	 * thread.
+	 * 
+	 * @exception Exception
+	 *                - request failed or clients were interrupted
+	 */
+	@Test
+	public void concurrentPostsMatchLeaderboard() throws Exception {
+		server.setAcceptScores(true);
+		final Leaderboard expected = new Leaderboard(SIZE);
+		List<Callable<Integer>> clients = new ArrayList<Callable<Integer>>();
+		for (int c = 0; c < CLIENTS; c++) {
+			final int client = c;
+			final List<byte[]> bodies = new ArrayList<byte[]>();
+			for (int r = 0; r < REQUESTS; r++) {
+				List<Score> scores = new ArrayList<Score>();
+				for (int s = 0; s < 4; s++) {
+					long value = ((client * REQUESTS + r) * 4L + s) * 7919 % 100_003;
+					scores.add(new Score(value, "client " + client));
+				}
+				for (Score score : scores)
+					expected.submit(score);
+				bodies.add(LeaderboardServer.encode(scores).getBytes(StandardCharsets.UTF_8));
+			}
+			final GameRecord record = play(client);
+			expected.submit(new Score(record.getScore(), record.getDate()));
+			clients.add(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws IOException {
+					int failed = 0;
+					for (int r = 0; r < REQUESTS; r++) {
+						if (post(scoresUrl, bodies.get(r)) != 204)
+							failed++;
+						if (r == REQUESTS / 2 && !"1\t0\n".equals(postGames(Arrays.asList(record))))
+							failed++;
+					}
+					return failed;
+				}
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+		try {
+			for (Future<Integer> result : executor.invokeAll(clients))
+				assertEquals(0, result.get().intValue());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(LeaderboardServer.encode(Arrays.asList(expected.getSnapshot())), get(scoresUrl));
+	}
+
+	/**
+	 * Plays random game of classic parameters until board is full.
+	 * 
+	 * @param seed
+	 *            seed of the game and of the moves
+	 * @return record of the game with reached score
+	 * @see {@link ReplayVerifier#play(GameParameters, GameRandom)}
+	 */
+	private static GameRecord play(long seed) {
+		GameRecord record = ReplayVerifier.play(GameParameters.DEFAULT, new GameRandom(seed));
+		record.setDate("game " + seed);
+		return record;
+	}
+
+	/**
+	 * Sends GET request.
+	 * 
+	 * @param url
+	 *            address of the request
+	 * @return body of the response
+	 * @exception IOException
+	 *                - request failed
+	 */
+	private static String get(String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			assertEquals(200, connection.getResponseCode());
+			return read(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Sends games with POST /games.
+	 * 
+	 * @param records
+	 *            sent games
+	 * @return body of the response, amounts of added and rejected games
+	 * @exception IOException
+	 *                - request failed
+	 */
+	private String postGames(List<GameRecord> records) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(gamesUrl).openConnection();
+		try {
+			send(connection, GameRecord.encode(records));
+			assertEquals(200, connection.getResponseCode());
+			return read(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Reads body of the response.
+	 * 
+	 * @param connection
+	 *            connection with the response
+	 * @return body of the response
+	 * @exception IOException
+	 *                - response could not be read
+	 */
+	private static String read(HttpURLConnection connection) throws IOException {
+		InputStream input = connection.getInputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int read;
+		while ((read = input.read(chunk)) > 0)
+			body.write(chunk, 0, read);
+		input.close();
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends body of POST request.
+	 * 
+	 * @param connection
+	 *            connection of the request
+	 * @param body
+	 *            body of the request
+	 * @exception IOException
+	 *                - request could not be sent
+	 */
+	private static void send(HttpURLConnection connection, byte[] body) throws IOException {
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(body.length);
+		OutputStream output = connection.getOutputStream();
+		output.write(body);
+		output.close();
+	}
+
+	/**
+	 * Sends POST request.
+	 * 
+	 * @param url
+	 *            address of the request
+	 * @param body
+	 *            body of the request
+	 * @return status of the response
+	 * @exception IOException
+	 *                - request failed
+	 */
+	private static int post(String url, byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try {
+			send(connection, body);
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+}